@@ -31,4 +31,70 @@ public @interface NRpcMethod {
      * @return method timeout
      */
     int timeout() default -1;
+
+    /**
+     * invoke the method in the event loop of the channel. (no thread pool hop)
+     * only for the method that never block. e.g. return CompletableFuture, RpcEmitter
+     *
+     * @return true = invoke in the event loop
+     */
+    boolean eventLoop() default false;
+
+    /**
+     * hedged request of the client. (only for the idempotent method)
+     * if no response after the delay, send the same request to other address. the first response win, the other is cancelled.
+     * hedge is limited by the retry budget. (netty.nrpc.client-retry-budget-ratio)
+     * -1 is disable. 0 is the percentile latency of the method. (netty.nrpc.client-hedge-percentile)
+     *
+     * @return milliseconds
+     */
+    int hedgeDelay() default -1;
+
+    /**
+     * retry other address on the timeout or the transport error. (only for the idempotent method)
+     * retry is limited by the retry budget. (netty.nrpc.client-retry-budget-ratio)
+     *
+     * @return max retry count
+     */
+    int retries() default 0;
+
+    /**
+     * the batch method of the server. collect the concurrent calls, and invoke the batch method once.
+     * the method has one argument (the key). the batch method is (List&lt;KEY&gt; or Set&lt;KEY&gt;) -&gt; Map&lt;KEY, RESULT&gt; in the same class.
+     * each caller get the value of the key. (null if absent)
+     * e.g. User getUser(Integer id) -&gt; Map&lt;Integer, User&gt; getUsers(List&lt;Integer&gt; ids)
+     *
+     * @return batch method name. empty is disable
+     * @see com.github.netty.protocol.nrpc.RpcServerMethodBatcher
+     */
+    String batch() default "";
+
+    /**
+     * invoke the batch method when the calls reach the size
+     *
+     * @return max keys of the batch
+     */
+    int batchMaxSize() default 64;
+
+    /**
+     * invoke the batch method when the first call wait the delay
+     *
+     * @return microseconds
+     */
+    int batchMaxDelayMicros() default 500;
+
+    /**
+     * cache the response in the client. (only for the read-mostly method)
+     * the key is the arguments. the concurrent calls of the same arguments share one request.
+     * the server can remove the cache by NRpcProtocol#invalidateClientCache or RpcServer#invalidateClientCache
+     *
+     * @return milliseconds. less than or equal to 0 is disable
+     * @see com.github.netty.protocol.nrpc.RpcClientCache
+     */
+    int cacheExpiry() default 0;
+
+    /**
+     * @return max responses of the method in the client cache
+     */
+    int cacheMaxSize() default 1024;
 }
\ No newline at end of file
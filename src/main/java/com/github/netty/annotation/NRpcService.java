@@ -45,4 +45,13 @@ public @interface NRpcService {
      * @return method timeout (milliseconds)
      */
     int timeout() default DEFAULT_TIME_OUT;
+
+    /**
+     * invoke the async methods of the service in the event loop of the channel. (no thread pool hop)
+     * async method = return CompletableFuture, CompletionStage, RpcEmitter, Publisher ...
+     * the method of {@link NRpcMethod#eventLoop()} always in the event loop.
+     *
+     * @return true = invoke the async methods in the event loop
+     */
+    boolean eventLoop() default false;
 }
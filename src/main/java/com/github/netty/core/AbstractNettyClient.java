@@ -33,6 +33,10 @@ public abstract class AbstractNettyClient implements Closeable {
     protected InetSocketAddress remoteAddress;
     private Bootstrap bootstrap;
     private EventLoopGroup worker;
+    /**
+     * 共享其他客户端的worker线程 (stop时不关闭)
+     */
+    private EventLoopGroup sharedWorker;
     private final boolean enableEpoll;
     private volatile SocketChannel channel;
     private int ioThreadCount = 0;
@@ -98,7 +102,7 @@ public abstract class AbstractNettyClient implements Closeable {
 
     protected AbstractNettyClient init() {
         this.bootstrap = newClientBootstrap();
-        this.worker = newWorkerEventLoopGroup();
+        this.worker = sharedWorker != null ? sharedWorker : newWorkerEventLoopGroup();
         ChannelFactory<? extends Channel> channelFactory = newClientChannelFactory();
         ChannelHandler bossChannelHandler = newBossChannelHandler();
 
@@ -173,6 +177,19 @@ public abstract class AbstractNettyClient implements Closeable {
         return worker;
     }
 
+    public EventLoopGroup getSharedWorker() {
+        return sharedWorker;
+    }
+
+    /**
+     * 使用其他客户端的worker线程, 需要在connect之前设置. 由创建者负责关闭
+     *
+     * @param sharedWorker worker
+     */
+    public void setSharedWorker(EventLoopGroup sharedWorker) {
+        this.sharedWorker = sharedWorker;
+    }
+
     public int getIoRatio() {
         return ioRatio;
     }
@@ -212,7 +229,9 @@ public abstract class AbstractNettyClient implements Closeable {
         }
         return channel.close().addListener((ChannelFutureListener) future -> {
             AbstractNettyClient.this.bootstrap = null;
-            AbstractNettyClient.this.worker.shutdownGracefully();
+            if (AbstractNettyClient.this.worker != sharedWorker) {
+                AbstractNettyClient.this.worker.shutdownGracefully();
+            }
             AbstractNettyClient.this.worker = null;
             AbstractNettyClient.this.initFlag.set(false);
             AbstractNettyClient.this.channel = null;
@@ -0,0 +1,185 @@
+package com.github.netty.core.util;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Batch write and flush of a channel. (writeAndFlush of many threads cost one flush)
+ * <p>
+ * 1. the messages of any thread are put into a lock-free queue, and only one drain task is scheduled to the event loop.
+ * 2. the drain task write all queued messages, and flush once at the end,
+ * or every maxBatchPackets messages, or if the pending bytes of the channel more than maxBatchBytes.
+ * 3. the messages written in the event loop (e.g. the responses of a read) are flushed when the current task finished,
+ * so one read batch cost one flush.
+ *
+ * @author wangzihao
+ */
+public class ChannelBatchWriter implements Runnable {
+    private static final AttributeKey<ChannelBatchWriter> ATTR_KEY_BATCH_WRITER = AttributeKey.valueOf(ChannelBatchWriter.class + "#ChannelBatchWriter");
+    /**
+     * max messages of one drain task. then re-schedule, so the other tasks of the event loop can run.
+     */
+    private static final int MAX_DRAIN_PACKETS = 4096;
+    private final Channel channel;
+    private final Queue<PendingWrite> queue = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final int maxBatchPackets;
+    private final int maxBatchBytes;
+    /**
+     * only write by the event loop
+     */
+    private volatile long writeCount;
+    private volatile long flushCount;
+
+    public ChannelBatchWriter(Channel channel, int maxBatchPackets, int maxBatchBytes) {
+        this.channel = channel;
+        this.maxBatchPackets = Math.max(1, maxBatchPackets);
+        this.maxBatchBytes = Math.max(1, maxBatchBytes);
+    }
+
+    /**
+     * Bind a batch writer to the channel
+     *
+     * @param channel         channel
+     * @param maxBatchPackets flush every N messages
+     * @param maxBatchBytes   flush if the pending bytes more than this
+     * @return the batch writer of the channel
+     */
+    public static ChannelBatchWriter bind(Channel channel, int maxBatchPackets, int maxBatchBytes) {
+        Attribute<ChannelBatchWriter> attribute = channel.attr(ATTR_KEY_BATCH_WRITER);
+        ChannelBatchWriter writer = attribute.get();
+        if (writer == null) {
+            writer = new ChannelBatchWriter(channel, maxBatchPackets, maxBatchBytes);
+            attribute.set(writer);
+        }
+        return writer;
+    }
+
+    /**
+     * @param channel channel
+     * @return null = the channel not bind
+     */
+    public static ChannelBatchWriter get(Channel channel) {
+        return channel.hasAttr(ATTR_KEY_BATCH_WRITER) ? channel.attr(ATTR_KEY_BATCH_WRITER).get() : null;
+    }
+
+    /**
+     * Write and flush. use the batch writer if the channel has bind
+     *
+     * @param channel channel
+     * @param msg     msg
+     * @return ChannelFuture
+     */
+    public static ChannelFuture writeAndFlush(Channel channel, Object msg) {
+        ChannelBatchWriter writer = get(channel);
+        if (writer != null) {
+            return writer.write(msg);
+        } else {
+            return channel.writeAndFlush(msg);
+        }
+    }
+
+    public ChannelFuture write(Object msg) {
+        return write(msg, channel.newPromise());
+    }
+
+    public ChannelFuture write(Object msg, ChannelPromise promise) {
+        queue.offer(new PendingWrite(msg, promise));
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                channel.eventLoop().execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                failAll(e);
+            }
+        }
+        return promise;
+    }
+
+    @Override
+    public void run() {
+        scheduled.set(false);
+        int batchPackets = 0;
+        int drainPackets = 0;
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            channel.write(pending.msg, pending.promise);
+            writeCount++;
+            if (++batchPackets >= maxBatchPackets || pendingBytes() >= maxBatchBytes) {
+                flush();
+                batchPackets = 0;
+            }
+            if (++drainPackets >= MAX_DRAIN_PACKETS) {
+                if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                    channel.eventLoop().execute(this);
+                }
+                break;
+            }
+        }
+        if (batchPackets > 0) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        channel.flush();
+        flushCount++;
+    }
+
+    private long pendingBytes() {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+    }
+
+    private void failAll(Throwable cause) {
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            RecyclableUtil.release(pending.msg);
+            pending.promise.tryFailure(cause);
+        }
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    public int getMaxBatchPackets() {
+        return maxBatchPackets;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelBatchWriter{writeCount=" + writeCount + ", flushCount=" + flushCount + ", pending=" + queue.size() + "}";
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.lang.ref.Reference;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -18,6 +19,7 @@ import java.util.function.Function;
  * 5. gc回收 Reference(Weak,Soft,strong). {@link #ExpiryLRUMap(int, long, long, ConcurrentLinkedHashMap.Weigher, Class)}
  * 6. 统计功能(miss, hit) {@link #getHitCount()} {@link #getMissCount()}
  * 7. null值替换, 防止缓存击穿 {@link #setReplaceNullValueFlag(boolean)} {@link #NULL} if(data == ExpiryLRUMap.NULL)
+ * 8. 过期由分层时间轮调度 {@link TimingWheel}, 加入和取消都是O(1). 过期通知批量投递 {@link #setOnExpiryBatchConsumer(Consumer)}
  * <p>
  * 常用场景 ： localCache
  *
@@ -30,17 +32,12 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
             return "ExpiryLRUMap.NULL";
         }
     };
-    private static final ConcurrentSkipListSet<Node> NO_EXPIRY_NODES = new ConcurrentSkipListSet<>((o1, o2) -> {
-        if (o1 == o2) {
-            return 0;
-        }
-        long x = o1.getExpiryTimestamp();
-        long y = o2.getExpiryTimestamp();
-        return x <= y ? -1 : 1;
-    });
-    private static final BlockingQueue<Node<?, ?>> EXPIRY_NOTIFY_QUEUE = new LinkedBlockingQueue<>();
     private static final Set<ExpiryLRUMap<?, ?>> INSTANCE_SET = Collections.newSetFromMap(new WeakHashMap<>());
-    private static volatile ScheduledFuture<?> SCHEDULED_FUTURE;
+    /**
+     * @deprecated 过期通知由 {@link TimingWheel} 批量投递, 不再经过这个队列
+     */
+    @Deprecated
+    private static final BlockingQueue<Node<?, ?>> EXPIRY_NOTIFY_QUEUE = new LinkedBlockingQueue<>();
     private final transient LongAdder missCount = new LongAdder();
     private final transient LongAdder hitCount = new LongAdder();
     private final ConcurrentLinkedHashMap<K, Node<K, V>> map;
@@ -55,6 +52,14 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
      * 超过时间的 过期通知
      */
     private transient volatile Consumer<Node<K, V>> onExpiryConsumer = this::onExpiry;
+    /**
+     * 超过时间的 批量过期通知(同一次时间轮推进中这个map过期的节点). 不为空时代替 onExpiryConsumer
+     */
+    private transient volatile Consumer<List<Node<K, V>>> onExpiryBatchConsumer;
+    /**
+     * 过期调度的时间轮. 已经加入的节点留在原来的时间轮
+     */
+    private transient volatile TimingWheel timingWheel = TimingWheel.DEFAULT;
     /**
      * 超过上限的 淘汰通知
      */
@@ -96,6 +101,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
                 .referenceType(referenceType)
                 .weigher(weigher == null ? ConcurrentLinkedHashMap.Weighers.singleton() : weigher)
                 .listener((key, value) -> {
+                    value.cancelExpiry();
                     Consumer<Node<K, V>> onEvictionConsumer = ExpiryLRUMap.this.onEvictionConsumer;
                     if (onEvictionConsumer != null) {
                         onEvictionConsumer.accept(value);
@@ -103,12 +109,8 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
                 })
 //                .catchup()
                 .build();
-        //init static block. thread scheduled.
         synchronized (INSTANCE_SET) {
             INSTANCE_SET.add(this);
-            if (SCHEDULED_FUTURE == null) {
-                SCHEDULED_FUTURE = ExpiresScan.scheduleWithFixedDelay();
-            }
         }
     }
 
@@ -116,8 +118,20 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         return Collections.unmodifiableSet(INSTANCE_SET);
     }
 
+    /**
+     * @return 默认的时间轮 (没有{@link #setTimingWheel(TimingWheel)}的map共用)
+     */
+    public static TimingWheel getDefaultTimingWheel() {
+        return TimingWheel.DEFAULT;
+    }
+
+    /**
+     * @return 旧的过期通知队列. 放进来的节点仍由 {@link ExpiresNotify} 通知
+     * @deprecated 过期通知由 {@link TimingWheel} 批量投递, 使用 {@link #setOnExpiryBatchConsumer(Consumer)}
+     */
+    @Deprecated
     public static BlockingQueue<Node<?, ?>> getExpiryNotifyQueue() {
-        return EXPIRY_NOTIFY_QUEUE;
+        return ExpiresScan.notifyQueue();
     }
 
     public static boolean isExpiry(Node node) {
@@ -222,6 +236,28 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         this.onExpiryConsumer = onExpiryConsumer;
     }
 
+    public Consumer<List<Node<K, V>>> getOnExpiryBatchConsumer() {
+        return onExpiryBatchConsumer;
+    }
+
+    /**
+     * @param onExpiryBatchConsumer 批量过期通知. 不为空时代替 {@link #setOnExpiryConsumer(Consumer)}
+     */
+    public void setOnExpiryBatchConsumer(Consumer<List<Node<K, V>>> onExpiryBatchConsumer) {
+        this.onExpiryBatchConsumer = onExpiryBatchConsumer;
+    }
+
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * @param timingWheel 之后put的节点由这个时间轮调度过期
+     */
+    public void setTimingWheel(TimingWheel timingWheel) {
+        this.timingWheel = Objects.requireNonNull(timingWheel);
+    }
+
     public void setOnRemoveConsumer(Consumer<Node<K, V>> onRemoveConsumer) {
         this.onRemoveConsumer = onRemoveConsumer;
     }
@@ -292,7 +328,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         if (old == null) {
             return null;
         } else {
-            NO_EXPIRY_NODES.remove(old);
+            old.cancelExpiry();
             notifyRemove(old);
             return old.getData();
         }
@@ -317,6 +353,16 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         }
     }
 
+    /**
+     * 取节点(包含过期时间), 不计入统计(miss, hit)
+     *
+     * @param key key
+     * @return 节点, 可能已过期 {@link Node#isExpiry()}
+     */
+    public Node<K, V> getNode(Object key) {
+        return map.get(key);
+    }
+
     @Override
     public Set<K> keySet() {
         return map.keySet();
@@ -326,7 +372,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
     public void clear() {
         ArrayList<Node<K, V>> nodes = new ArrayList<>(map.values());
         map.clear();
-        nodes.forEach(NO_EXPIRY_NODES::remove);
+        nodes.forEach(Node::cancelExpiry);
     }
 
     @Override
@@ -358,7 +404,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         Node<K, V> old = map.get(key);
         if (old != null && Objects.equals(old.getData(), value)) {
             map.remove(key, old);
-            NO_EXPIRY_NODES.remove(old);
+            old.cancelExpiry();
             notifyRemove(old);
             return true;
         }
@@ -497,6 +543,14 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
          * 是否被put方法覆盖
          */
         private volatile boolean covered = false;
+        /**
+         * 时间轮的分片. null=永不过期. 下面的字段由分片的锁保护
+         */
+        private final TimingWheel.Shard wheelShard;
+        private Node<?, ?> wheelPrev;
+        private Node<?, ?> wheelNext;
+        private int wheelBucket = -1;
+        private long deadlineTick;
 
         Node(long timeout, KEY key, VALUE value, ExpiryLRUMap<KEY, VALUE> expiryLRUMap) {
             long expiryTimestamp;
@@ -515,7 +569,20 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
             this.data = value;
             this.expiryLRUMap = expiryLRUMap;
             if (expiryLRUMap != null && expiryTimestamp != Long.MAX_VALUE) {
-                NO_EXPIRY_NODES.add(this);
+                TimingWheel timingWheel = expiryLRUMap.timingWheel;
+                this.wheelShard = timingWheel.shard();
+                wheelShard.schedule(this, timingWheel.toTick(expiryTimestamp));
+            } else {
+                this.wheelShard = null;
+            }
+        }
+
+        /**
+         * 从时间轮取消. O(1)
+         */
+        void cancelExpiry() {
+            if (wheelShard != null) {
+                wheelShard.cancel(this);
             }
         }
 
@@ -580,6 +647,428 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         }
     }
 
+    /**
+     * 分层时间轮 (过期调度). 加入和取消都是O(1), 代替按过期时间排序的跳表扫描
+     * <p>
+     * 1. 分片: 按put的线程分到多个分片(默认CPU核数), 每个分片一把锁, 多个线程put不竞争同一把锁
+     * 2. 分层: 第0层每格tickMillis毫秒, 共wheelSize格. 第n层的一格是第n-1层的一圈. 高层的格到时间后, 里面的节点降到低层
+     * 3. 推进: 一个线程每tickMillis推进有节点的分片. 到期的节点先从map删除(和之前一样, 被put覆盖的节点也通知), 然后整批交给通知线程.
+     * 所有分片都没有节点时线程停下, 下一次加入时唤醒
+     * 4. 通知: 通知线程按map分组, 调用 {@link #setOnExpiryBatchConsumer(Consumer)} 或者逐个调用 {@link #setOnExpiryConsumer(Consumer)}
+     * <p>
+     * 默认时间轮的配置(系统属性): ExpiryLRUMap.tickMillis(默认100), ExpiryLRUMap.wheelSize(默认256), ExpiryLRUMap.wheelShards(默认CPU核数)
+     */
+    public static class TimingWheel {
+        static final TimingWheel DEFAULT = new TimingWheel("ExpiryLRUMap",
+                getProperty("ExpiryLRUMap.tickMillis", getProperty("ExpiryLRUMap-ExpiresScan.interval", 100)),
+                (int) getProperty("ExpiryLRUMap.wheelSize", 256),
+                (int) getProperty("ExpiryLRUMap.wheelShards", Runtime.getRuntime().availableProcessors()));
+        private final String name;
+        private final long tickMillis;
+        private final int wheelBits;
+        private final int wheelMask;
+        private final int levels;
+        private final Shard[] shards;
+        private final BlockingQueue<List<Node<?, ?>>> notifyQueue = new LinkedBlockingQueue<>();
+        private final LongAdder scheduleCount = new LongAdder();
+        private final LongAdder cancelCount = new LongAdder();
+        private final LongAdder expiryCount = new LongAdder();
+        private final LongAdder batchCount = new LongAdder();
+        private volatile boolean started;
+        private volatile Thread tickThread;
+        /**
+         * 推进线程停下了 (没有等待过期的节点), 加入节点时需要唤醒
+         */
+        private volatile boolean idle;
+
+        /**
+         * @param name       线程名称前缀
+         * @param tickMillis 第0层一格的毫秒数 (过期通知的精度)
+         * @param wheelSize  每层的格数 (向上取2的幂)
+         * @param shards     分片数 (向上取2的幂)
+         */
+        public TimingWheel(String name, long tickMillis, int wheelSize, int shards) {
+            int wheelBits = 1;
+            while ((1 << wheelBits) < wheelSize && wheelBits < 16) {
+                wheelBits++;
+            }
+            this.name = name;
+            this.tickMillis = Math.max(1, tickMillis);
+            this.wheelBits = wheelBits;
+            this.wheelMask = (1 << wheelBits) - 1;
+            // 最高层覆盖所有的long
+            this.levels = (63 + wheelBits - 1) / wheelBits;
+            int shardCount = 1;
+            while (shardCount < shards) {
+                shardCount <<= 1;
+            }
+            this.shards = new Shard[shardCount];
+            long currentTick = toTick(System.currentTimeMillis());
+            for (int i = 0; i < shardCount; i++) {
+                this.shards[i] = new Shard(currentTick);
+            }
+        }
+
+        private static long getProperty(String key, long defaultValue) {
+            String value = System.getProperty(key);
+            if (value != null && !value.isEmpty()) {
+                try {
+                    return Long.parseLong(value);
+                } catch (Exception e) {
+                    //skip
+                }
+            }
+            return defaultValue;
+        }
+
+        /**
+         * @param expiryTimestamp 过期时间戳
+         * @return 过期时间之后的第一个tick
+         */
+        long toTick(long expiryTimestamp) {
+            return expiryTimestamp / tickMillis + 1;
+        }
+
+        /**
+         * @return 当前线程的分片
+         */
+        Shard shard() {
+            if (!started) {
+                start();
+            }
+            return shards[(int) Thread.currentThread().getId() & (shards.length - 1)];
+        }
+
+        private synchronized void start() {
+            if (started) {
+                return;
+            }
+            Thread tickThread = new Thread(this::runTick, name + "-TimingWheel");
+            tickThread.setDaemon(true);
+            Thread notifyThread = new Thread(this::runNotify, name + "-ExpiresNotify");
+            notifyThread.setDaemon(true);
+            this.tickThread = tickThread;
+            tickThread.start();
+            notifyThread.start();
+            started = true;
+        }
+
+        private void runTick() {
+            List<Node<?, ?>> expiredList = new ArrayList<>();
+            while (true) {
+                try {
+                    advance(System.currentTimeMillis(), expiredList);
+                    if (size() == 0) {
+                        // 先标记再检查, 检查之后加入的节点会看到标记并唤醒
+                        idle = true;
+                        if (size() == 0) {
+                            LockSupport.park(this);
+                        }
+                        idle = false;
+                        if (Thread.interrupted()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    long sleep = tickMillis - System.currentTimeMillis() % tickMillis;
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * 推进所有分片, 删除到期的节点, 整批交给通知线程
+         *
+         * @param currentTimeMillis 当前时间
+         * @param expiredList       复用的list
+         */
+        void advance(long currentTimeMillis, List<Node<?, ?>> expiredList) {
+            long nowTick = currentTimeMillis / tickMillis;
+            for (Shard shard : shards) {
+                shard.advance(nowTick, expiredList);
+            }
+            if (expiredList.isEmpty()) {
+                return;
+            }
+            List<Node<?, ?>> batch = new ArrayList<>(expiredList.size());
+            for (Node node : expiredList) {
+                boolean remove = node.expiryLRUMap.map.remove(node.key, node);
+                // 被put覆盖的节点也通知
+                if (remove || node.covered) {
+                    batch.add(node);
+                }
+            }
+            expiredList.clear();
+            if (!batch.isEmpty()) {
+                expiryCount.add(batch.size());
+                batchCount.increment();
+                notifyQueue.offer(batch);
+            }
+        }
+
+        private void runNotify() {
+            while (true) {
+                List<Node<?, ?>> batch;
+                try {
+                    batch = notifyQueue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    notifyBatch(batch);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private static void notifyBatch(List<Node<?, ?>> batch) {
+            // 按map分组. 通常一批只有少数几个map
+            Map<ExpiryLRUMap, List<Node>> mapBatch = new IdentityHashMap<>();
+            for (Node node : batch) {
+                mapBatch.computeIfAbsent(node.expiryLRUMap, k -> new ArrayList<>()).add(node);
+            }
+            for (Map.Entry<ExpiryLRUMap, List<Node>> entry : mapBatch.entrySet()) {
+                ExpiryLRUMap expiryLRUMap = entry.getKey();
+                List<Node> nodeList = entry.getValue();
+                Consumer<List<Node>> batchConsumer = expiryLRUMap.onExpiryBatchConsumer;
+                if (batchConsumer != null) {
+                    try {
+                        batchConsumer.accept(nodeList);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    continue;
+                }
+                Consumer<Node> consumer = expiryLRUMap.onExpiryConsumer;
+                if (consumer == null) {
+                    continue;
+                }
+                for (Node node : nodeList) {
+                    try {
+                        consumer.accept(node);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        public long getTickMillis() {
+            return tickMillis;
+        }
+
+        public int getWheelSize() {
+            return wheelMask + 1;
+        }
+
+        public int getLevels() {
+            return levels;
+        }
+
+        public int getShardCount() {
+            return shards.length;
+        }
+
+        /**
+         * @return 等待过期的节点数
+         */
+        public long size() {
+            long size = 0;
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    size += shard.size;
+                }
+            }
+            return size;
+        }
+
+        public long getScheduleCount() {
+            return scheduleCount.sum();
+        }
+
+        public long getCancelCount() {
+            return cancelCount.sum();
+        }
+
+        /**
+         * @return 通知的过期节点数
+         */
+        public long getExpiryCount() {
+            return expiryCount.sum();
+        }
+
+        /**
+         * @return 通知的批次数
+         */
+        public long getBatchCount() {
+            return batchCount.sum();
+        }
+
+        /**
+         * @return 等待通知的批次数
+         */
+        public int getPendingBatchCount() {
+            return notifyQueue.size();
+        }
+
+        @Override
+        public String toString() {
+            return "TimingWheel{" +
+                    "name='" + name + '\'' +
+                    ", tickMillis=" + tickMillis +
+                    ", wheelSize=" + getWheelSize() +
+                    ", levels=" + levels +
+                    ", shards=" + shards.length +
+                    ", size=" + size() +
+                    ", expiryCount=" + expiryCount +
+                    ", batchCount=" + batchCount +
+                    '}';
+        }
+
+        /**
+         * 一个分片. 所有的层共用一个数组: 格的下标 = (层 << wheelBits) | 层内下标
+         */
+        class Shard {
+            private final Node<?, ?>[] buckets = new Node<?, ?>[levels << wheelBits];
+            /**
+             * 已经处理过的tick
+             */
+            private long currentTick;
+            private int size;
+
+            Shard(long currentTick) {
+                this.currentTick = currentTick;
+            }
+
+            synchronized void schedule(Node<?, ?> node, long deadlineTick) {
+                if (size == 0) {
+                    // 推进线程停下时没有推进这个分片
+                    currentTick = Math.max(currentTick, System.currentTimeMillis() / tickMillis);
+                }
+                node.deadlineTick = deadlineTick;
+                // 当前tick已经处理过
+                link(node, currentTick + 1);
+                size++;
+                scheduleCount.increment();
+                if (idle) {
+                    LockSupport.unpark(tickThread);
+                }
+            }
+
+            synchronized void cancel(Node<?, ?> node) {
+                if (node.wheelBucket < 0) {
+                    return;
+                }
+                unlink(node);
+                size--;
+                cancelCount.increment();
+            }
+
+            /**
+             * @param nowTick     推进到这个tick
+             * @param expiredList 到期的节点
+             */
+            synchronized void advance(long nowTick, List<Node<?, ?>> expiredList) {
+                if (size == 0) {
+                    currentTick = Math.max(currentTick, nowTick);
+                    return;
+                }
+                while (currentTick < nowTick) {
+                    long tick = ++currentTick;
+                    // 从高到低, 降到低层的节点如果在这个tick的格子里, 同一轮就能处理
+                    for (int level = levels - 1; level > 0; level--) {
+                        int shift = wheelBits * level;
+                        if ((tick & ((1L << shift) - 1)) == 0) {
+                            Node<?, ?> node = detach((level << wheelBits) | (int) ((tick >>> shift) & wheelMask));
+                            while (node != null) {
+                                Node<?, ?> next = node.wheelNext;
+                                node.wheelNext = null;
+                                link(node, tick);
+                                node = next;
+                            }
+                        }
+                    }
+                    Node<?, ?> node = detach((int) (tick & wheelMask));
+                    while (node != null) {
+                        Node<?, ?> next = node.wheelNext;
+                        node.wheelNext = null;
+                        if (node.deadlineTick <= tick) {
+                            size--;
+                            expiredList.add(node);
+                        } else {
+                            link(node, tick + 1);
+                        }
+                        node = next;
+                    }
+                    if (size == 0) {
+                        currentTick = nowTick;
+                        break;
+                    }
+                }
+            }
+
+            /**
+             * @return 格子里的链表. 节点的wheelBucket被清空
+             */
+            private Node<?, ?> detach(int bucket) {
+                Node<?, ?> head = buckets[bucket];
+                buckets[bucket] = null;
+                for (Node<?, ?> node = head; node != null; node = node.wheelNext) {
+                    node.wheelBucket = -1;
+                    node.wheelPrev = null;
+                }
+                return head;
+            }
+
+            /**
+             * @param node    node
+             * @param minTick 还没处理的最小tick. 已经过期的节点放到这个tick
+             */
+            private void link(Node<?, ?> node, long minTick) {
+                long deadlineTick = Math.max(node.deadlineTick, minTick);
+                long delta = deadlineTick - currentTick;
+                int level = 0;
+                while (level < levels - 1 && (delta >>> (wheelBits * (level + 1))) != 0) {
+                    level++;
+                }
+                int bucket = (level << wheelBits) | (int) ((deadlineTick >>> (wheelBits * level)) & wheelMask);
+                Node<?, ?> head = buckets[bucket];
+                node.wheelPrev = null;
+                node.wheelNext = head;
+                if (head != null) {
+                    head.wheelPrev = node;
+                }
+                buckets[bucket] = node;
+                node.wheelBucket = bucket;
+            }
+
+            private void unlink(Node<?, ?> node) {
+                Node<?, ?> prev = node.wheelPrev;
+                Node<?, ?> next = node.wheelNext;
+                if (prev == null) {
+                    buckets[node.wheelBucket] = next;
+                } else {
+                    prev.wheelNext = next;
+                }
+                if (next != null) {
+                    next.wheelPrev = prev;
+                }
+                node.wheelPrev = null;
+                node.wheelNext = null;
+                node.wheelBucket = -1;
+            }
+        }
+    }
+
+    /**
+     * @deprecated 由 {@link TimingWheel} 的通知线程代替. 只通知 {@link #getExpiryNotifyQueue()} 里的节点
+     */
+    @Deprecated
     public static class ExpiresNotify extends Thread {
         @Override
         public void run() {
@@ -602,6 +1091,10 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         }
     }
 
+    /**
+     * @deprecated 由 {@link TimingWheel} 代替. {@link #run()} 推进默认的时间轮
+     */
+    @Deprecated
     public static class ExpiresScan implements Runnable {
         public static final ExpiresNotify NOTIFY_INSTANCE = new ExpiresNotify();
         static final ScheduledExecutorService SCHEDULED = Executors.newScheduledThreadPool(1, runnable -> {
@@ -619,17 +1112,12 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
             NOTIFY_INSTANCE.start();
         }
 
+        static BlockingQueue<Node<?, ?>> notifyQueue() {
+            return EXPIRY_NOTIFY_QUEUE;
+        }
+
         static long getScheduleInterval() {
-            String intervalMillisecond = System.getProperty("ExpiryLRUMap-ExpiresScan.interval");
-            long intervalLong = 100;
-            if (intervalMillisecond != null && !intervalMillisecond.isEmpty()) {
-                try {
-                    intervalLong = Long.parseLong(intervalMillisecond);
-                } catch (Exception e) {
-                    //skip
-                }
-            }
-            return intervalLong;
+            return TimingWheel.DEFAULT.getTickMillis();
         }
 
         public static ScheduledFuture<?> scheduleWithFixedDelay() {
@@ -640,51 +1128,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         @Override
         public void run() {
             try {
-                if (INSTANCE_SET.isEmpty()) {
-                    synchronized (INSTANCE_SET) {
-                        if (INSTANCE_SET.isEmpty()) {
-                            NO_EXPIRY_NODES.clear();
-                            ScheduledFuture<?> scheduledFuture = SCHEDULED_FUTURE;
-                            scheduledFuture.cancel(false);
-                            SCHEDULED_FUTURE = null;
-                        }
-                    }
-                    return;
-                }
-                if (NO_EXPIRY_NODES.isEmpty()) {
-                    return;
-                }
-                Node now = new Node<>(0, null, null, null);
-                NavigableSet<Node> expiryNodes = NO_EXPIRY_NODES.headSet(now);
-                if (expiryNodes.isEmpty()) {
-                    return;
-                }
-                Iterator<Node> iterator = expiryNodes.iterator();
-                List<Node> removeList = new ArrayList<>();
-                while (iterator.hasNext()) {
-                    Node expiryRemoveNode = iterator.next();
-                    synchronized (expiryRemoveNode) {
-                        boolean remove = expiryRemoveNode.getExpiryLRUMap().map.remove(expiryRemoveNode.getKey(), expiryRemoveNode);
-                        if (!remove && !expiryRemoveNode.covered) {
-                            continue;
-                        }
-                    }
-
-                    try {
-                        iterator.remove();
-                        removeList.add(expiryRemoveNode);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                try {
-                    for (Node expiryRemoveNode : removeList) {
-                        EXPIRY_NOTIFY_QUEUE.offer(expiryRemoveNode);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                TimingWheel.DEFAULT.advance(System.currentTimeMillis(), new ArrayList<>());
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -1388,9 +1388,8 @@ public class JavaClassFile {
                         return target.getDeclaredConstructor(argumentTypes);
                     } else if (isStaticConstructor()) {
                         return new StaticConstructor(this);
-                    } else if (isStatic()) {
-                        return target.getMethod(name, argumentTypes);
                     } else {
+                        // the member of this class file. (include the private static and the synthetic)
                         return target.getDeclaredMethod(name, argumentTypes);
                     }
                 } catch (NoSuchMethodException e) {
@@ -126,6 +126,7 @@ public class HttpServletProtocol extends AbstractProtocol {
         listenerManager.onServletDefaultInitializer(servletContext.getDefaultServlet(), servletContext);
 
         listenerManager.onServletContainerInitializerStartup(Collections.emptySet(), servletContext);
+        servletContext.compileMapping();
 
         if (sslContextBuilder != null) {
             this.sslContext = SslContextBuilders.newSslContext(sslContextBuilder, enableH2);
@@ -142,6 +143,7 @@ public class HttpServletProtocol extends AbstractProtocol {
 
         destroyFilter();
         destroyServlet();
+        servletContext.flushSessionService();
     }
 
     @Override
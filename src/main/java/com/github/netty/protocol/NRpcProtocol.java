@@ -10,12 +10,22 @@ import com.github.netty.protocol.nrpc.codec.DataCodecUtil;
 import com.github.netty.protocol.nrpc.codec.RpcDecoder;
 import com.github.netty.protocol.nrpc.codec.RpcEncoder;
 import com.github.netty.protocol.nrpc.service.RpcCommandServiceImpl;
+import com.github.netty.protocol.nrpc.service.RpcDBLog;
+import com.github.netty.protocol.nrpc.service.RpcDBReplica;
+import com.github.netty.protocol.nrpc.service.RpcDBReplicationLog;
+import com.github.netty.protocol.nrpc.service.RpcDBReplicationServiceImpl;
 import com.github.netty.protocol.nrpc.service.RpcDBServiceImpl;
+import com.github.netty.protocol.nrpc.service.RpcDBSlabStore;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
+import java.io.File;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
@@ -64,7 +74,52 @@ public class NRpcProtocol extends AbstractProtocol {
      * so the name of the method to ensure that each class is unique)
      */
     private boolean methodOverwriteCheck = true;
+    /**
+     * Allow the client to call by the interned (service, version, method) id
+     */
+    private boolean enableSymbolId = true;
+    /**
+     * The responses and chunks cost one flush per event loop task
+     */
+    private boolean enableWriteBatch = true;
+    private int writeBatchMaxPackets = 128;
+    private int writeBatchMaxBytes = 64 * 1024;
+    /**
+     * Invoke all the non-blocking methods in the event loop, not the thread pool
+     */
+    private boolean eventLoopAsyncMethod = false;
+    private int eventLoopBlockedWarnMillis = 10;
+    /**
+     * The data directory of the durable {@link RpcDBServiceImpl}. null is the memory mode
+     */
+    private File dbDataDir;
+    private int dbShards = 16;
+    private RpcDBLog.FsyncPolicy dbFsyncPolicy = RpcDBLog.FsyncPolicy.BATCH;
+    private long dbFsyncIntervalMs = 1000;
+    private long dbSnapshotIntervalMs = 5 * 60 * 1000;
+    /**
+     * The max bytes of the off-heap values. less than or equal to 0 is the heap
+     */
+    private long dbOffHeapMaxBytes = 0;
+    /**
+     * The directory of the mapped file of the off-heap values. null is the direct memory
+     */
+    private File dbOffHeapMappedDir;
+    /**
+     * The backlog bytes of the primary. less than or equal to 0 is not the primary
+     */
+    private long dbReplicationBacklogBytes = 0;
+    /**
+     * The primary address of the replica. null is not the replica
+     */
+    private InetSocketAddress dbReplicaOf;
+    private RpcDBServiceImpl dbService;
+    private RpcDBReplica dbReplica;
     private final Map<Object, Instance> instanceMap = new LinkedHashMap<>();
+    /**
+     * the connections. push the {@link RpcPacket#TYPE_SERVER_CACHE_INVALIDATE}
+     */
+    private final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     private String serverDefaultVersion;
 
     public NRpcProtocol(ApplicationX application) {
@@ -116,6 +171,42 @@ public class NRpcProtocol extends AbstractProtocol {
         return instanceMap.containsKey(instance);
     }
 
+    /**
+     * @param instance The implementation class
+     * @return the instance of all the channels. (e.g. the metrics of {@link RpcServerInstance#getBatchers()}). null if not found or init error
+     */
+    public RpcServerInstance getRpcServerInstance(Object instance) {
+        Instance value = instanceMap.get(instance);
+        return value != null ? value.rpcServerInstance : null;
+    }
+
+    /**
+     * Tell the clients to remove the cached responses. {@link NRpcMethod#cacheExpiry()}
+     *
+     * @param instance   The implementation class
+     * @param methodName the rpc method name. null is all the methods of the instance
+     * @param args       the arguments of the cached call. null is all the calls of the method
+     * @return the count of the notified connections
+     */
+    public int invalidateClientCache(Object instance, String methodName, Object[] args) {
+        Instance value = instanceMap.get(instance);
+        if (value == null) {
+            throw new IllegalArgumentException("not found instance " + instance.getClass().getSimpleName());
+        }
+        String requestMappingName = value.requestMappingName;
+        if (requestMappingName == null || requestMappingName.isEmpty()) {
+            requestMappingName = RpcServerChannelHandler.generateRequestMappingName(instance.getClass());
+        }
+        int count = 0;
+        for (Channel channel : channelGroup) {
+            if (channel.isActive()) {
+                channel.writeAndFlush(RpcClientCache.newInvalidatePacket(requestMappingName, value.version, methodName, args));
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Override
     public String getProtocolName() {
         return RpcVersion.CURRENT_VERSION.getText();
@@ -129,8 +220,15 @@ public class NRpcProtocol extends AbstractProtocol {
     @Override
     public void addPipeline(Channel channel, ByteBuf clientFirstMsg) throws Exception {
         super.addPipeline(channel, clientFirstMsg);
+        channelGroup.add(channel);
         RpcServerChannelHandler rpcServerHandler = new RpcServerChannelHandler();
         rpcServerHandler.setExecutorSupplier(executorSupplier);
+        rpcServerHandler.setEnableSymbolId(enableSymbolId);
+        rpcServerHandler.setEnableWriteBatch(enableWriteBatch);
+        rpcServerHandler.setWriteBatchMaxPackets(writeBatchMaxPackets);
+        rpcServerHandler.setWriteBatchMaxBytes(writeBatchMaxBytes);
+        rpcServerHandler.setEventLoopAsyncMethod(eventLoopAsyncMethod);
+        rpcServerHandler.setEventLoopBlockedWarnMillis(eventLoopBlockedWarnMillis);
         rpcServerHandler.getAopList().addAll(rpcServerAopList);
         for (Instance instance : instanceMap.values()) {
             rpcServerHandler.addRpcServerInstance(instance.requestMappingName, instance.version,
@@ -195,7 +293,14 @@ public class NRpcProtocol extends AbstractProtocol {
 
     @Override
     public <T extends AbstractNettyServer> void onServerStop(T server) throws Exception {
-
+        RpcDBReplica dbReplica = this.dbReplica;
+        if (dbReplica != null) {
+            dbReplica.close();
+        }
+        RpcDBServiceImpl dbService = this.dbService;
+        if (dbService != null) {
+            dbService.close();
+        }
     }
 
     /**
@@ -205,7 +310,21 @@ public class NRpcProtocol extends AbstractProtocol {
         //The RPC basic command service is enabled by default
         addInstance(new RpcCommandServiceImpl());
         //Open DB service by default
-        addInstance(new RpcDBServiceImpl());
+        RpcDBSlabStore slabStore = dbOffHeapMaxBytes > 0 ? new RpcDBSlabStore(dbOffHeapMaxBytes, RpcDBSlabStore.DEFAULT_PAGE_SIZE, dbOffHeapMappedDir) : null;
+        if (dbDataDir != null) {
+            dbService = new RpcDBServiceImpl(dbDataDir, dbShards, dbFsyncPolicy, dbFsyncIntervalMs, dbSnapshotIntervalMs, slabStore);
+        } else {
+            dbService = new RpcDBServiceImpl(dbShards, slabStore);
+        }
+        if (dbReplicationBacklogBytes > 0) {
+            dbService.setReplicationLog(new RpcDBReplicationLog(dbReplicationBacklogBytes));
+        }
+        addInstance(dbService);
+        addInstance(new RpcDBReplicationServiceImpl(dbService));
+        if (dbReplicaOf != null) {
+            dbReplica = new RpcDBReplica(dbService, dbReplicaOf);
+            dbReplica.start();
+        }
     }
 
     protected ApplicationX getApplication() {
@@ -220,6 +339,134 @@ public class NRpcProtocol extends AbstractProtocol {
         this.messageMaxLength = messageMaxLength;
     }
 
+    public boolean isEnableSymbolId() {
+        return enableSymbolId;
+    }
+
+    public void setEnableSymbolId(boolean enableSymbolId) {
+        this.enableSymbolId = enableSymbolId;
+    }
+
+    public boolean isEnableWriteBatch() {
+        return enableWriteBatch;
+    }
+
+    public void setEnableWriteBatch(boolean enableWriteBatch) {
+        this.enableWriteBatch = enableWriteBatch;
+    }
+
+    public int getWriteBatchMaxPackets() {
+        return writeBatchMaxPackets;
+    }
+
+    public void setWriteBatchMaxPackets(int writeBatchMaxPackets) {
+        this.writeBatchMaxPackets = writeBatchMaxPackets;
+    }
+
+    public int getWriteBatchMaxBytes() {
+        return writeBatchMaxBytes;
+    }
+
+    public void setWriteBatchMaxBytes(int writeBatchMaxBytes) {
+        this.writeBatchMaxBytes = writeBatchMaxBytes;
+    }
+
+    public boolean isEventLoopAsyncMethod() {
+        return eventLoopAsyncMethod;
+    }
+
+    public void setEventLoopAsyncMethod(boolean eventLoopAsyncMethod) {
+        this.eventLoopAsyncMethod = eventLoopAsyncMethod;
+    }
+
+    public int getEventLoopBlockedWarnMillis() {
+        return eventLoopBlockedWarnMillis;
+    }
+
+    public void setEventLoopBlockedWarnMillis(int eventLoopBlockedWarnMillis) {
+        this.eventLoopBlockedWarnMillis = eventLoopBlockedWarnMillis;
+    }
+
+    public File getDbDataDir() {
+        return dbDataDir;
+    }
+
+    public void setDbDataDir(File dbDataDir) {
+        this.dbDataDir = dbDataDir;
+    }
+
+    public int getDbShards() {
+        return dbShards;
+    }
+
+    public void setDbShards(int dbShards) {
+        this.dbShards = dbShards;
+    }
+
+    public RpcDBLog.FsyncPolicy getDbFsyncPolicy() {
+        return dbFsyncPolicy;
+    }
+
+    public void setDbFsyncPolicy(RpcDBLog.FsyncPolicy dbFsyncPolicy) {
+        this.dbFsyncPolicy = dbFsyncPolicy;
+    }
+
+    public long getDbFsyncIntervalMs() {
+        return dbFsyncIntervalMs;
+    }
+
+    public void setDbFsyncIntervalMs(long dbFsyncIntervalMs) {
+        this.dbFsyncIntervalMs = dbFsyncIntervalMs;
+    }
+
+    public long getDbSnapshotIntervalMs() {
+        return dbSnapshotIntervalMs;
+    }
+
+    public void setDbSnapshotIntervalMs(long dbSnapshotIntervalMs) {
+        this.dbSnapshotIntervalMs = dbSnapshotIntervalMs;
+    }
+
+    public long getDbOffHeapMaxBytes() {
+        return dbOffHeapMaxBytes;
+    }
+
+    public void setDbOffHeapMaxBytes(long dbOffHeapMaxBytes) {
+        this.dbOffHeapMaxBytes = dbOffHeapMaxBytes;
+    }
+
+    public File getDbOffHeapMappedDir() {
+        return dbOffHeapMappedDir;
+    }
+
+    public void setDbOffHeapMappedDir(File dbOffHeapMappedDir) {
+        this.dbOffHeapMappedDir = dbOffHeapMappedDir;
+    }
+
+    public long getDbReplicationBacklogBytes() {
+        return dbReplicationBacklogBytes;
+    }
+
+    public void setDbReplicationBacklogBytes(long dbReplicationBacklogBytes) {
+        this.dbReplicationBacklogBytes = dbReplicationBacklogBytes;
+    }
+
+    public InetSocketAddress getDbReplicaOf() {
+        return dbReplicaOf;
+    }
+
+    public void setDbReplicaOf(InetSocketAddress dbReplicaOf) {
+        this.dbReplicaOf = dbReplicaOf;
+    }
+
+    public RpcDBServiceImpl getDbService() {
+        return dbService;
+    }
+
+    public RpcDBReplica getDbReplica() {
+        return dbReplica;
+    }
+
     static class Instance {
         private String requestMappingName;
         private String version;
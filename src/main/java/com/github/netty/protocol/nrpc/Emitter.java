@@ -14,4 +14,18 @@ public interface Emitter<RESULT, CHUNK> {
     boolean isComplete();
 
     int getSendCount();
+
+    /**
+     * @return false = the receiver is slow, the chunks wait in the emitter. (the producer should pause)
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * @param listener call once when writable
+     */
+    default void whenWritable(Runnable listener) {
+        listener.run();
+    }
 }
@@ -10,6 +10,7 @@ import com.github.netty.protocol.nrpc.codec.DataCodec;
 import com.github.netty.protocol.nrpc.codec.DataCodecUtil;
 import com.github.netty.protocol.nrpc.codec.RpcDecoder;
 import com.github.netty.protocol.nrpc.codec.RpcEncoder;
+import com.github.netty.protocol.nrpc.codec.RpcSymbolTable;
 import com.github.netty.protocol.nrpc.exception.RpcConnectException;
 import com.github.netty.protocol.nrpc.exception.RpcException;
 import com.github.netty.protocol.nrpc.exception.RpcTimeoutException;
@@ -17,6 +18,8 @@ import com.github.netty.protocol.nrpc.exception.RpcWriteException;
 import com.github.netty.protocol.nrpc.service.RpcCommandAsyncService;
 import com.github.netty.protocol.nrpc.service.RpcCommandService;
 import com.github.netty.protocol.nrpc.service.RpcDBService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
@@ -28,6 +31,7 @@ import org.reactivestreams.Subscription;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +43,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.github.netty.protocol.nrpc.RpcClientAop.CONTEXT_LOCAL;
 import static com.github.netty.protocol.nrpc.RpcContext.RpcState.*;
@@ -74,7 +79,11 @@ public class RpcClient extends AbstractNettyClient {
         }
     };
     protected final DataCodec dataCodec;
+    /**
+     * the overflow of rpcDoneTable
+     */
     protected final ExpiryLRUMap<Integer, RpcDone> rpcDoneMap = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    protected final RpcDoneTable rpcDoneTable = new RpcDoneTable(rpcDoneMap);
     private final Map<String, Sender> rpcInstanceMap = new LinkedHashMap<>(6);
     private final AtomicInteger requestIdIncr = new AtomicInteger();
     private final AtomicBoolean scheduleReconnectTaskIngFlag = new AtomicBoolean(false);
@@ -104,6 +113,28 @@ public class RpcClient extends AbstractNettyClient {
     private BiConsumer<Long, RpcClient> reconnectTaskSuccessConsumer;
     private boolean enableRpcHeartLog = true;
     private boolean enableReconnectScheduledTask = false;
+    /**
+     * negotiate the interned (service, version, method) id after connected. {@link RpcSymbolTable}
+     */
+    private boolean enableSymbolId = true;
+    /**
+     * the requests of many threads cost one flush. {@link ChannelBatchWriter}
+     */
+    private boolean enableWriteBatch = true;
+    private int writeBatchMaxPackets = 128;
+    private int writeBatchMaxBytes = 64 * 1024;
+    /**
+     * the chunks of the {@link RpcEmitter} can be unconsumed. less than or equal to 0 is no limit. {@link RpcClientChunkCompletableFuture#creditWindow(int)}
+     */
+    private int chunkCreditWindow = 64;
+    /**
+     * the feature bits of the server. {@link RpcPacket#FEATURE_CHUNK_CREDIT_ACK}
+     */
+    private volatile int serverFeatures;
+    /**
+     * the responses of {@link com.github.netty.annotation.NRpcMethod#cacheExpiry()}
+     */
+    private RpcClientCache cache = new RpcClientCache();
     private long reconnectCount = 0;
 
     public RpcClient(String remoteHost, int remotePort) {
@@ -153,6 +184,23 @@ public class RpcClient extends AbstractNettyClient {
         return dataCodec;
     }
 
+    /**
+     * Encode the args into the buffer of the frame. (no copy)
+     *
+     * @param rpcContext rpcContext
+     * @return the data buffer. the request packet owns it
+     */
+    ByteBuf encodeRequestData(RpcContext<RpcClient> rpcContext) {
+        ByteBuf dataBuf = ByteBufAllocator.DEFAULT.ioBuffer();
+        try {
+            dataCodec.encodeRequestData(rpcContext.getArgs(), rpcContext.getRpcMethod(), dataBuf);
+        } catch (Throwable t) {
+            dataBuf.release();
+            throw t;
+        }
+        return dataBuf;
+    }
+
     public List<RpcClientAop> getAopList() {
         return nettyRpcClientAopList;
     }
@@ -176,6 +224,65 @@ public class RpcClient extends AbstractNettyClient {
         this.enableReconnectScheduledTask = enableReconnectScheduledTask;
     }
 
+    public boolean isEnableWriteBatch() {
+        return enableWriteBatch;
+    }
+
+    public void setEnableWriteBatch(boolean enableWriteBatch) {
+        this.enableWriteBatch = enableWriteBatch;
+    }
+
+    public int getWriteBatchMaxPackets() {
+        return writeBatchMaxPackets;
+    }
+
+    public void setWriteBatchMaxPackets(int writeBatchMaxPackets) {
+        this.writeBatchMaxPackets = writeBatchMaxPackets;
+    }
+
+    public int getWriteBatchMaxBytes() {
+        return writeBatchMaxBytes;
+    }
+
+    public void setWriteBatchMaxBytes(int writeBatchMaxBytes) {
+        this.writeBatchMaxBytes = writeBatchMaxBytes;
+    }
+
+    public RpcClientCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache share one cache by the clients of the same service. (the connection pool)
+     */
+    public void setCache(RpcClientCache cache) {
+        this.cache = cache;
+    }
+
+    public int getChunkCreditWindow() {
+        return chunkCreditWindow;
+    }
+
+    public void setChunkCreditWindow(int chunkCreditWindow) {
+        this.chunkCreditWindow = chunkCreditWindow;
+    }
+
+    /**
+     * @param feature {@link RpcPacket#FEATURE_CHUNK_CREDIT_ACK}
+     * @return true = the server of the current connection support the feature
+     */
+    public boolean isServerFeature(int feature) {
+        return (serverFeatures & feature) != 0;
+    }
+
+    public boolean isEnableSymbolId() {
+        return enableSymbolId;
+    }
+
+    public void setEnableSymbolId(boolean enableSymbolId) {
+        this.enableSymbolId = enableSymbolId;
+    }
+
     public int getMessageMaxLength() {
         return messageMaxLength;
     }
@@ -317,6 +424,9 @@ public class RpcClient extends AbstractNettyClient {
                 pipeline.addLast(new RpcEncoder());
                 pipeline.addLast(new RpcDecoder(messageMaxLength));
                 pipeline.addLast(new ReceiverChannelHandler());
+                if (enableWriteBatch) {
+                    ChannelBatchWriter.bind(channel, writeBatchMaxPackets, writeBatchMaxBytes);
+                }
             }
         };
     }
@@ -354,10 +464,17 @@ public class RpcClient extends AbstractNettyClient {
         return scheduleReconnectTaskIngFlag.get();
     }
 
+    /**
+     * @return the overflow of {@link #getRpcDoneTable()}
+     */
     public ExpiryLRUMap<Integer, RpcDone> getRpcDoneMap() {
         return rpcDoneMap;
     }
 
+    public RpcDoneTable getRpcDoneTable() {
+        return rpcDoneTable;
+    }
+
     public SocketChannel channel() {
         return super.getChannel();
     }
@@ -496,6 +613,7 @@ public class RpcClient extends AbstractNettyClient {
             reconnectScheduleFuture.cancel(false);
         }
         scheduleReconnectTaskIngFlag.set(false);
+        rpcDoneTable.close("RpcClient stop. remoteAddress = " + getRemoteAddress());
         if (future.cause() != null) {
             logger.warn(future.cause().getMessage(), future.cause());
         }
@@ -551,6 +669,48 @@ public class RpcClient extends AbstractNettyClient {
         return state;
     }
 
+    /**
+     * Tell the server the client no longer wait the response. (best effort, the old server ignore it)
+     * remove the request from the done table before it.
+     *
+     * @param requestId requestId
+     */
+    public void cancel(int requestId) {
+        SocketChannel channel = super.getChannel();
+        if (channel == null || !channel.isActive()) {
+            return;
+        }
+        byte[] data = new byte[IOUtil.INT_LENGTH];
+        IOUtil.setInt(data, 0, requestId);
+        RpcPacket packet = new RpcPacket(TYPE_CLIENT_CANCEL);
+        packet.setData(data);
+        ChannelBatchWriter.writeAndFlush(channel, packet);
+    }
+
+    /**
+     * Tell the server the chunks the client can receive. (best effort, the old server ignore it)
+     *
+     * @param requestId   requestId
+     * @param creditLimit the chunks the server can send in total
+     * @param ackChunkIds the consumed chunk ids. need {@link RpcPacket#FEATURE_CHUNK_CREDIT_ACK}. nullable
+     * @param ackCount    the count of the ackChunkIds
+     */
+    public void writeChunkCredit(int requestId, long creditLimit, int[] ackChunkIds, int ackCount) {
+        SocketChannel channel = super.getChannel();
+        if (channel == null || !channel.isActive()) {
+            return;
+        }
+        byte[] data = new byte[IOUtil.INT_LENGTH + IOUtil.LONG_LENGTH + IOUtil.INT_LENGTH * ackCount];
+        IOUtil.setInt(data, 0, requestId);
+        IOUtil.setLong(data, IOUtil.INT_LENGTH, creditLimit);
+        for (int i = 0, offset = IOUtil.INT_LENGTH + IOUtil.LONG_LENGTH; i < ackCount; i++, offset += IOUtil.INT_LENGTH) {
+            IOUtil.setInt(data, offset, ackChunkIds[i]);
+        }
+        RpcPacket packet = new RpcPacket(TYPE_CLIENT_CHUNK_CREDIT);
+        packet.setData(data);
+        ChannelBatchWriter.writeAndFlush(channel, packet);
+    }
+
     protected int newRequestId() {
         int id = requestIdIncr.getAndIncrement();
         if (id < 0) {
@@ -587,6 +747,10 @@ public class RpcClient extends AbstractNettyClient {
         private final String version;
         private final Map<String, RpcMethod<RpcClient>> rpcMethodMap;
         private final RpcClient rpcClient;
+        /**
+         * proxy method to rpc method. (the proxy class passes the same Method instance on every call)
+         */
+        private volatile Map<Method, RpcMethod<RpcClient>> rpcMethodCache = new IdentityHashMap<>();
         private int timeout;
         private int defaultTimeout;
 
@@ -634,25 +798,32 @@ public class RpcClient extends AbstractNettyClient {
          */
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            String methodName = method.getName();
-            int parameterCount = method.getParameterCount();
-            if (method.getDeclaringClass() == Object.class) {
-                return method.invoke(this, args);
-            }
-            if ("toString".equals(methodName) && parameterCount == 0) {
-                return this.toString();
-            }
-            if ("hashCode".equals(methodName) && parameterCount == 0) {
-                return this.hashCode();
-            }
-            if ("equals".equals(methodName) && parameterCount == 1) {
-                return this.equals(args[0]);
-            }
-
-            String rpcMethodName = RpcMethod.getMethodDescriptorName(method);
-            RpcMethod<RpcClient> rpcMethod = rpcMethodMap.get(rpcMethodName);
+            RpcMethod<RpcClient> rpcMethod = rpcMethodCache.get(method);
             if (rpcMethod == null) {
-                throw new IllegalStateException("not found rpc method. name = " + methodName);
+                String methodName = method.getName();
+                int parameterCount = method.getParameterCount();
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(this, args);
+                }
+                if ("toString".equals(methodName) && parameterCount == 0) {
+                    return this.toString();
+                }
+                if ("hashCode".equals(methodName) && parameterCount == 0) {
+                    return this.hashCode();
+                }
+                if ("equals".equals(methodName) && parameterCount == 1) {
+                    return this.equals(args[0]);
+                }
+
+                String rpcMethodName = RpcMethod.getMethodDescriptorName(method);
+                rpcMethod = rpcMethodMap.get(rpcMethodName);
+                if (rpcMethod == null) {
+                    throw new IllegalStateException("not found rpc method. name = " + methodName);
+                }
+                // copy on write. the cache is only grow
+                Map<Method, RpcMethod<RpcClient>> rpcMethodCache = new IdentityHashMap<>(this.rpcMethodCache);
+                rpcMethodCache.put(method, rpcMethod);
+                this.rpcMethodCache = rpcMethodCache;
             }
             int timeout = choseTimeout(defaultTimeout, rpcMethod.getTimeout(), this.timeout);
             Object result;
@@ -675,20 +846,229 @@ public class RpcClient extends AbstractNettyClient {
                     // rpcMethod.isReturnFutureFlag() || rpcMethod.isReturnCompletionStageFlag()
                     result = new RpcClientCompletableFuture(publisher);
                 }
+            } else if (isCache(rpcMethod)) {
+                RpcMethod<RpcClient> cacheMethod = rpcMethod;
+                result = rpcClient.cache.get(RpcClientCache.getMethodKey(requestMappingName, version, rpcMethod.getMethodName()),
+                        rpcMethod, args, () -> invokeSync(cacheMethod, args, timeout));
             } else {
-                RpcContext<RpcClient> rpcContext = CONTEXT_LOCAL.get();
-                if (rpcContext == null) {
-                    rpcContext = new RpcContext<>();
-                    CONTEXT_LOCAL.set(rpcContext);
+                result = invokeSync(rpcMethod, args, timeout);
+            }
+            return result;
+        }
+
+        private Object invokeSync(RpcMethod<RpcClient> rpcMethod, Object[] args, int timeout) throws Throwable {
+            RpcContext<RpcClient> rpcContext = CONTEXT_LOCAL.get();
+            if (rpcContext == null) {
+                rpcContext = new RpcContext<>();
+                CONTEXT_LOCAL.set(rpcContext);
+            } else {
+                rpcContext.recycle();
+            }
+            try {
+                rpcContext.setRpcBeginTimestamp(System.currentTimeMillis());
+                rpcContext.setArgs(args);
+                rpcContext.setRpcMethod(rpcMethod);
+                return requestSync(rpcContext, timeout);
+            } finally {
+                CONTEXT_LOCAL.set(null);
+            }
+        }
+
+        private boolean isCache(RpcMethod<RpcClient> rpcMethod) {
+            return rpcMethod.isCache() && !rpcMethod.isReturnVoid() && rpcClient.cache != null;
+        }
+
+        /**
+         * @param method the method of the proxy interface
+         * @return rpc method. null if not rpc method
+         */
+        public RpcMethod<RpcClient> getRpcMethod(Method method) {
+            RpcMethod<RpcClient> rpcMethod = rpcMethodCache.get(method);
+            if (rpcMethod == null && method.getDeclaringClass() != Object.class) {
+                rpcMethod = rpcMethodMap.get(RpcMethod.getMethodDescriptorName(method));
+                if (rpcMethod != null) {
+                    // copy on write. the cache is only grow
+                    Map<Method, RpcMethod<RpcClient>> rpcMethodCache = new IdentityHashMap<>(this.rpcMethodCache);
+                    rpcMethodCache.put(method, rpcMethod);
+                    this.rpcMethodCache = rpcMethodCache;
+                }
+            }
+            return rpcMethod;
+        }
+
+        /**
+         * Hedged request. (only for the idempotent method)
+         * send to this connection, if no response after the hedgeDelay then send the same request to the connection of the hedge sender.
+         * the first response win, the other is removed and cancelled on the server. {@link RpcPacket#TYPE_CLIENT_CANCEL}
+         * the async or void method is not hedged.
+         *
+         * @param proxy               proxy
+         * @param method              method
+         * @param args                args
+         * @param hedgeDelay          milliseconds
+         * @param hedgeSenderSupplier the sender of other address. return null then no hedge (e.g. no retry budget)
+         * @return Object
+         * @throws Throwable Throwable
+         */
+        public Object invokeHedged(Object proxy, Method method, Object[] args, long hedgeDelay, Supplier<Sender> hedgeSenderSupplier) throws Throwable {
+            RpcMethod<RpcClient> rpcMethod = getRpcMethod(method);
+            if (rpcMethod == null || hedgeDelay < 0 || rpcMethod.isReturnAsync() || rpcMethod.isReturnVoid()) {
+                return invoke(proxy, method, args);
+            }
+            if (isCache(rpcMethod)) {
+                return rpcClient.cache.get(RpcClientCache.getMethodKey(requestMappingName, version, rpcMethod.getMethodName()),
+                        rpcMethod, args, () -> invokeHedged(rpcMethod, args, hedgeDelay, hedgeSenderSupplier));
+            }
+            return invokeHedged(rpcMethod, args, hedgeDelay, hedgeSenderSupplier);
+        }
+
+        private Object invokeHedged(RpcMethod<RpcClient> rpcMethod, Object[] args, long hedgeDelay, Supplier<Sender> hedgeSenderSupplier) throws Throwable {
+            Method method = rpcMethod.getMethod();
+            int timeout = choseTimeout(defaultTimeout, rpcMethod.getTimeout(), this.timeout);
+            long beginTimestamp = System.currentTimeMillis();
+            RpcClientHedgeFuture hedgeFuture = new RpcClientHedgeFuture();
+            RpcClientHedgeFuture.Leg primary = sendLeg(hedgeFuture, rpcMethod, args, timeout);
+            Throwable primaryThrowable = primary.rpcContext.getThrowable();
+            RpcClientHedgeFuture.Leg hedge = null;
+            RpcClientHedgeFuture.Leg winner = null;
+            try {
+                if (primaryThrowable == null) {
+                    winner = hedgeFuture.await(timeout > 0 ? Math.min(hedgeDelay, timeout) : hedgeDelay);
+                    long remaining = timeout > 0 ? timeout - (System.currentTimeMillis() - beginTimestamp) : -1;
+                    Sender hedgeSender;
+                    if (winner == null && (timeout <= 0 || remaining > 0)
+                            && (hedgeSender = hedgeSenderSupplier.get()) != null) {
+                        RpcMethod<RpcClient> hedgeMethod = hedgeSender.getRpcMethod(method);
+                        if (hedgeMethod != null) {
+                            hedge = hedgeSender.sendLeg(hedgeFuture, hedgeMethod, args, (int) remaining);
+                            if (hedge.rpcContext.getThrowable() != null) {
+                                // the hedge fail is not the fail of the call
+                                hedgeSender.finishLeg(hedge, null, false);
+                                hedge = null;
+                            }
+                        }
+                    }
+                    if (winner == null) {
+                        winner = hedgeFuture.await(timeout > 0 ? Math.max(1L, timeout - (System.currentTimeMillis() - beginTimestamp)) : -1);
+                    }
+                }
+            } finally {
+                if (winner == null) {
+                    // the late response (after the await timeout) is released
+                    hedgeFuture.close();
+                }
+                if (winner != primary && primaryThrowable == null) {
+                    cancelLeg(primary, winner == null);
+                }
+                if (hedge != null && winner != hedge) {
+                    hedge.sender.cancelLeg(hedge, winner == null);
+                }
+            }
+
+            if (winner == null) {
+                if (primaryThrowable != null) {
+                    finishLeg(primary, null, false);
+                    if (primaryThrowable instanceof RpcException) {
+                        throw primaryThrowable;
+                    }
+                    throw new RpcWriteException("rpc write exception. " + primaryThrowable, primaryThrowable);
+                }
+                long expiryTimestamp = System.currentTimeMillis();
+                throw new RpcTimeoutException("RpcRequestTimeout : maxTimeout = [" + timeout +
+                        "], timeout = [" + (expiryTimestamp - beginTimestamp) + "], hedged = [" + (hedge != null) + "], [" + this + "]", true,
+                        beginTimestamp, expiryTimestamp);
+            }
+            return winner.sender.finishLeg(winner, winner.getResponse(), true);
+        }
+
+        private RpcClientHedgeFuture.Leg sendLeg(RpcClientHedgeFuture hedgeFuture, RpcMethod<RpcClient> rpcMethod, Object[] args, int timeout) {
+            RpcContext<RpcClient> rpcContext = new RpcContext<>();
+            rpcContext.setRpcBeginTimestamp(System.currentTimeMillis());
+            rpcContext.setArgs(args);
+            rpcContext.setRpcMethod(rpcMethod);
+            RpcClientHedgeFuture.Leg leg = hedgeFuture.newLeg(this, rpcContext);
+            CONTEXT_LOCAL.set(rpcContext);
+            try {
+                leg.requestId = send(rpcContext, timeout, leg);
+            } finally {
+                CONTEXT_LOCAL.set(null);
+            }
+            return leg;
+        }
+
+        /**
+         * the leg lose. no wait the response
+         *
+         * @param leg     leg
+         * @param timeout true = all the legs timeout, false = the other leg win
+         */
+        private void cancelLeg(RpcClientHedgeFuture.Leg leg, boolean timeout) {
+            rpcClient.rpcDoneTable.remove(leg.requestId);
+            rpcClient.cancel(leg.requestId);
+            RpcContext<RpcClient> rpcContext = leg.rpcContext;
+            rpcContext.setRpcEndTimestamp(System.currentTimeMillis());
+            CONTEXT_LOCAL.set(rpcContext);
+            try {
+                if (timeout) {
+                    rpcClient.onStateUpdate(rpcContext, TIMEOUT);
+                    for (RpcClientAop aop : rpcClient.nettyRpcClientAopList) {
+                        aop.onTimeout(rpcContext);
+                    }
                 } else {
-                    rpcContext.recycle();
+                    // the latency of the loser is at least the hedge delay. (the peak EWMA see it)
+                    rpcClient.onStateUpdate(rpcContext, END);
+                    for (RpcClientAop aop : rpcClient.nettyRpcClientAopList) {
+                        aop.onResponseAfter(rpcContext);
+                    }
+                }
+            } finally {
+                CONTEXT_LOCAL.set(null);
+            }
+        }
+
+        /**
+         * decode the response and call aop
+         *
+         * @param leg      leg
+         * @param response response. null if write fail
+         * @param throwIfFail throw the exception of the response
+         * @return the result
+         * @throws Throwable the exception of the response
+         */
+        private Object finishLeg(RpcClientHedgeFuture.Leg leg, ResponseLastPacket response, boolean throwIfFail) throws Throwable {
+            RpcContext<RpcClient> rpcContext = leg.rpcContext;
+            rpcContext.setRpcEndTimestamp(System.currentTimeMillis());
+            CONTEXT_LOCAL.set(rpcContext);
+            Object result = null;
+            try {
+                if (response != null) {
+                    rpcContext.setResponse(response);
+                    rpcClient.onStateUpdate(rpcContext, READ_ING);
+                    leg.handlerResponseIfNeedThrow(response);
+                    if (response.getEncode() == BINARY) {
+                        result = response.getData();
+                    } else if (response.getDataBuf() != null) {
+                        result = rpcClient.dataCodec.decodeResponseData(response.getDataBuf(), rpcContext.getRpcMethod());
+                    } else {
+                        result = rpcClient.dataCodec.decodeResponseData(response.getData(), rpcContext.getRpcMethod());
+                    }
+                    rpcContext.setResult(result);
+                    rpcClient.onStateUpdate(rpcContext, READ_FINISH);
+                }
+            } catch (Throwable e) {
+                rpcContext.setThrowable(e);
+                if (throwIfFail) {
+                    throw e;
                 }
+            } finally {
+                rpcClient.rpcDoneTable.remove(leg.requestId);
                 try {
-                    rpcContext.setRpcBeginTimestamp(System.currentTimeMillis());
-                    rpcContext.setArgs(args);
-                    rpcContext.setRpcMethod(rpcMethod);
-                    result = requestSync(rpcContext, timeout);
+                    rpcClient.onStateUpdate(rpcContext, END);
+                    for (RpcClientAop aop : rpcClient.nettyRpcClientAopList) {
+                        aop.onResponseAfter(rpcContext);
+                    }
                 } finally {
+                    RecyclableUtil.release(response);
                     CONTEXT_LOCAL.set(null);
                 }
             }
@@ -730,9 +1110,17 @@ public class RpcClient extends AbstractNettyClient {
             return resultTimeout;
         }
 
-        private Object requestSync(RpcContext<RpcClient> rpcContext, int timeout) throws Throwable {
+        /**
+         * write the request. (the write exception is set to the {@link RpcContext#getThrowable()})
+         *
+         * @param rpcContext rpcContext
+         * @param timeout    timeout
+         * @param rpcDone    wait the response. null then no ack
+         * @return requestId
+         */
+        private int send(RpcContext<RpcClient> rpcContext, int timeout, RpcDone rpcDone) {
             RpcMethod<RpcClient> method = rpcContext.getRpcMethod();
-            byte ackFlag = method.isReturnVoid() ? ACK_NO : ACK_YES;
+            byte ackFlag = rpcDone == null ? ACK_NO : ACK_YES;
 
             int requestId = rpcClient.newRequestId();
             RequestPacket rpcRequest = RequestPacket.newInstance();
@@ -740,6 +1128,7 @@ public class RpcClient extends AbstractNettyClient {
             rpcRequest.setRequestMappingName(requestMappingName);
             rpcRequest.setVersion(version);
             rpcRequest.setMethodName(method.getMethodName());
+            rpcRequest.setSymbolKey(method);
             rpcRequest.setAck(ackFlag);
             rpcRequest.setTimeout(timeout);
 
@@ -747,21 +1136,19 @@ public class RpcClient extends AbstractNettyClient {
             rpcContext.setTimeout(timeout);
             rpcClient.onStateUpdate(rpcContext, INIT);
 
-            rpcRequest.setData(rpcClient.dataCodec.encodeRequestData(rpcContext.getArgs(), rpcContext.getRpcMethod()));
+            rpcRequest.setDataBuf(rpcClient.encodeRequestData(rpcContext));
             rpcClient.onStateUpdate(rpcContext, WRITE_ING);
 
-            RpcClientFuture future = null;
             try {
                 rpcContext.setRemoteAddress(rpcClient.getRemoteAddress());
                 SocketChannel channel = rpcClient.getChannel();
                 rpcContext.setRemoteAddress(channel.remoteAddress());
                 rpcContext.setLocalAddress(channel.localAddress());
-                if (ackFlag == ACK_YES) {
-                    future = RpcClientFuture.newInstance(rpcContext);
-                    rpcClient.rpcDoneMap.put(requestId, future);
+                if (rpcDone != null) {
+                    rpcClient.rpcDoneTable.put(requestId, rpcDone, -1, channel.eventLoop());
                 }
                 rpcRequest.setTimeout(timeout);
-                channel.writeAndFlush(rpcRequest).addListener((ChannelFutureListener) channelFuture -> {
+                ChannelBatchWriter.writeAndFlush(channel, rpcRequest).addListener((ChannelFutureListener) channelFuture -> {
                     if (rpcContext.getState() == INIT) {
                         logger.warn("on timeout after. write event. isSuccess={},channel={}",
                                 channelFuture.isSuccess(), channelFuture.channel());
@@ -780,8 +1167,24 @@ public class RpcClient extends AbstractNettyClient {
                     }
                 });
             } catch (RpcException rpcException) {
+                rpcRequest.releaseDataBuf();
                 rpcContext.setThrowable(rpcException);
             }
+            return requestId;
+        }
+
+        private Object requestSync(RpcContext<RpcClient> rpcContext, int timeout) throws Throwable {
+            RpcMethod<RpcClient> method = rpcContext.getRpcMethod();
+            RpcClientFuture future = method.isReturnVoid() ? null : RpcClientFuture.newInstance(rpcContext);
+            int requestId;
+            try {
+                requestId = send(rpcContext, timeout, future);
+            } catch (Throwable t) {
+                if (future != null) {
+                    future.recycle();
+                }
+                throw t;
+            }
 
             Object result = null;
             ResponsePacket rpcResponse = null;
@@ -804,6 +1207,8 @@ public class RpcClient extends AbstractNettyClient {
                     //If the server is not encoded, return directly
                     if (rpcResponse.getEncode() == BINARY) {
                         result = rpcResponse.getData();
+                    } else if (rpcResponse.getDataBuf() != null) {
+                        result = rpcClient.dataCodec.decodeResponseData(rpcResponse.getDataBuf(), rpcContext.getRpcMethod());
                     } else {
                         result = rpcClient.dataCodec.decodeResponseData(rpcResponse.getData(), rpcContext.getRpcMethod());
                     }
@@ -818,7 +1223,7 @@ public class RpcClient extends AbstractNettyClient {
                 throw e;
             } finally {
                 if (future != null) {
-                    rpcClient.rpcDoneMap.remove(requestId);
+                    rpcClient.rpcDoneTable.remove(requestId);
                 }
                 try {
                     boolean isTimeout = rpcContext.getState() == TIMEOUT;
@@ -889,7 +1294,12 @@ public class RpcClient extends AbstractNettyClient {
                 ackPacket.setEncode(DataCodec.Encode.APP);
             }
             ChannelPromise promise = ctx.newPromise();
-            ctx.writeAndFlush(ackPacket, promise);
+            ChannelBatchWriter batchWriter = ChannelBatchWriter.get(ctx.channel());
+            if (batchWriter != null) {
+                batchWriter.write(ackPacket, promise);
+            } else {
+                ctx.writeAndFlush(ackPacket, promise);
+            }
             return promise;
         }
 
@@ -943,7 +1353,7 @@ public class RpcClient extends AbstractNettyClient {
         protected void onMessageReceived(ChannelHandlerContext ctx, RpcPacket packet) throws Exception {
             if (packet instanceof ResponseChunkPacket) {
                 ResponseChunkPacket chunk = (ResponseChunkPacket) packet;
-                RpcDone rpcDone = rpcDoneMap.get(chunk.getRequestId());
+                RpcDone rpcDone = rpcDoneTable.get(chunk.getRequestId());
                 if (rpcDone != null) {
                     ChunkAck ack;
                     if (chunk.getAck() == RpcPacket.ACK_YES) {
@@ -952,13 +1362,37 @@ public class RpcClient extends AbstractNettyClient {
                         ack = ChunkAck.DONT_NEED_ACK;
                     }
                     rpcDone.chunk(chunk, ack);
+                } else {
+                    chunk.recycle();
                 }
             } else if (packet instanceof ResponseLastPacket) {
                 ResponseLastPacket last = (ResponseLastPacket) packet;
-                RpcDone rpcDone = rpcDoneMap.remove(last.getRequestId());
+                Integer status = last.getStatus();
+                if (status != null && status == ResponsePacket.NO_SUCH_SYMBOL && resendByFullName(ctx, last)) {
+                    return;
+                }
+                RpcDone rpcDone = rpcDoneTable.remove(last.getRequestId());
                 if (rpcDone != null) {
                     rpcDone.done(last);
+                } else {
+                    last.recycle();
+                }
+            } else if (packet.getPacketType() == TYPE_SERVER_CACHE_INVALIDATE) {
+                RpcClientCache cache = RpcClient.this.cache;
+                if (cache != null) {
+                    cache.onInvalidatePacket(packet.getData());
+                }
+                packet.recycle();
+            } else if (packet.getPacketType() == TYPE_SYMBOL_HELLO) {
+                // the server support the interned id
+                RpcSymbolTable symbolTable = RpcSymbolTable.get(ctx.channel());
+                byte[] data = packet.getData();
+                if (symbolTable != null) {
+                    symbolTable.enable(data != null && data.length >= IOUtil.INT_LENGTH ? IOUtil.getInt(data, 0) : 0);
                 }
+                // the old server has no feature bits
+                serverFeatures = data != null && data.length >= IOUtil.INT_LENGTH * 2 ? IOUtil.getInt(data, IOUtil.INT_LENGTH) : 0;
+                packet.recycle();
             } else {
                 if (logger.isDebugEnabled()) {
                     logger.debug("client received packet={}", String.valueOf(packet));
@@ -967,6 +1401,39 @@ public class RpcClient extends AbstractNettyClient {
             }
         }
 
+        /**
+         * The server forget the interned id. clear the ids of the connection, and resend the request by full name once
+         *
+         * @param ctx  ctx
+         * @param last NO_SUCH_SYMBOL response
+         * @return true = resend
+         */
+        private boolean resendByFullName(ChannelHandlerContext ctx, ResponseLastPacket last) {
+            RpcSymbolTable symbolTable = RpcSymbolTable.get(ctx.channel());
+            if (symbolTable != null) {
+                symbolTable.clear();
+            }
+            RpcDone rpcDone = rpcDoneTable.get(last.getRequestId());
+            RpcContext<RpcClient> rpcContext;
+            if (rpcDone instanceof RpcClientFuture) {
+                rpcContext = ((RpcClientFuture) rpcDone).getRpcContext();
+            } else if (rpcDone instanceof RpcClientReactivePublisher) {
+                rpcContext = ((RpcClientReactivePublisher) rpcDone).getRpcContext();
+            } else {
+                return false;
+            }
+            RequestPacket request = rpcContext == null ? null : rpcContext.getRequest();
+            if (request == null || request.getRequestId() != last.getRequestId() || request.getSymbolKey() == null) {
+                return false;
+            }
+            request.setSymbolKey(null);
+            // the data buffer was released by the first write
+            request.setDataBuf(encodeRequestData(rpcContext));
+            ctx.writeAndFlush(request).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            last.recycle();
+            return true;
+        }
+
         @Override
         protected void onReaderIdle(ChannelHandlerContext ctx) {
             //heart beat
@@ -976,6 +1443,11 @@ public class RpcClient extends AbstractNettyClient {
         @Override
         public void channelActive(ChannelHandlerContext ctx) throws Exception {
             state = State.UP;
+            serverFeatures = 0;
+            if (enableSymbolId) {
+                RpcSymbolTable.getOrCreate(ctx.channel());
+                ctx.writeAndFlush(new RpcPacket(TYPE_SYMBOL_HELLO));
+            }
             for (RpcClientAop aop : nettyRpcClientAopList) {
                 aop.onConnectAfter(RpcClient.this);
             }
@@ -0,0 +1,300 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.annotation.NRpcMethod;
+import com.github.netty.core.util.ExpiryLRUMap;
+import com.github.netty.core.util.IOUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client response cache of the method of {@link NRpcMethod#cacheExpiry()}.
+ * the key is the arguments. the concurrent calls of the same arguments share one request. (single-flight)
+ * the server remove the cache by the push {@link RpcPacket#TYPE_SERVER_CACHE_INVALIDATE}.
+ * share one cache by the clients of the same service. {@link RpcClient#setCache(RpcClientCache)}
+ * <p>
+ * the cached response is shared by the callers. do not modify it.
+ *
+ * @author wangzihao
+ */
+public class RpcClientCache {
+    private final ConcurrentMap<String, MethodCache> methodCacheMap = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestMappingName requestMappingName
+     * @param version            version
+     * @param methodName         {@link RpcMethod#getMethodName()}
+     * @return the key of the method cache. same as the server
+     */
+    public static String getMethodKey(String requestMappingName, String version, String methodName) {
+        return RpcServerInstance.getServerInstanceKey(requestMappingName, version) + "/" + methodName;
+    }
+
+    /**
+     * the server and the client must get the same hash of the same arguments.
+     * (String, Number, Boolean, Enum name, List... the jdk hashCode is same in every process)
+     *
+     * @param args args
+     * @return hash
+     */
+    public static int hashArgs(Object[] args) {
+        return args == null ? 0 : Arrays.deepHashCode(args);
+    }
+
+    /**
+     * @param requestMappingName requestMappingName
+     * @param version            version
+     * @param methodName         the rpc method name. null is all the methods of the service
+     * @param args               the arguments of the cached call. null is all the calls of the method
+     * @return {@link RpcPacket#TYPE_SERVER_CACHE_INVALIDATE}
+     */
+    public static RpcPacket newInvalidatePacket(String requestMappingName, String version, String methodName, Object[] args) {
+        byte[] name = getMethodKey(requestMappingName, version, methodName == null ? "" : methodName).getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[IOUtil.INT_LENGTH + 1 + name.length];
+        IOUtil.setInt(data, 0, hashArgs(args));
+        data[IOUtil.INT_LENGTH] = (byte) (methodName != null && args != null ? 1 : 0);
+        System.arraycopy(name, 0, data, IOUtil.INT_LENGTH + 1, name.length);
+        RpcPacket packet = new RpcPacket(RpcPacket.TYPE_SERVER_CACHE_INVALIDATE);
+        packet.setData(data);
+        return packet;
+    }
+
+    /**
+     * @param methodKey {@link #getMethodKey(String, String, String)}
+     * @param rpcMethod the method of {@link NRpcMethod#cacheExpiry()}
+     * @param args      args
+     * @param loader    the request
+     * @return the cached response, or the response of the request (of this or other thread)
+     * @throws Throwable the exception of the request
+     */
+    public Object get(String methodKey, RpcMethod<RpcClient> rpcMethod, Object[] args, Loader loader) throws Throwable {
+        MethodCache methodCache = methodCacheMap.get(methodKey);
+        if (methodCache == null) {
+            NRpcMethod annotation = rpcMethod.getMethodAnnotation();
+            methodCache = methodCacheMap.computeIfAbsent(methodKey, k -> new MethodCache(k, annotation.cacheExpiry(), annotation.cacheMaxSize()));
+        }
+        return methodCache.get(args, loader);
+    }
+
+    /**
+     * the data of the {@link RpcPacket#TYPE_SERVER_CACHE_INVALIDATE}
+     *
+     * @param data data
+     */
+    public void onInvalidatePacket(byte[] data) {
+        if (data == null || data.length < IOUtil.INT_LENGTH + 1) {
+            return;
+        }
+        int argsHash = IOUtil.getInt(data, 0);
+        boolean byArgs = data[IOUtil.INT_LENGTH] == 1;
+        String methodKey = new String(data, IOUtil.INT_LENGTH + 1, data.length - IOUtil.INT_LENGTH - 1, StandardCharsets.UTF_8);
+        if (methodKey.endsWith("/")) {
+            // all the methods of the service
+            for (MethodCache methodCache : methodCacheMap.values()) {
+                if (methodCache.methodKey.startsWith(methodKey)) {
+                    methodCache.invalidateAll();
+                }
+            }
+        } else {
+            MethodCache methodCache = methodCacheMap.get(methodKey);
+            if (methodCache == null) {
+                return;
+            }
+            if (byArgs) {
+                methodCache.invalidate(argsHash);
+            } else {
+                methodCache.invalidateAll();
+            }
+        }
+    }
+
+    public MethodCache getMethodCache(String methodKey) {
+        return methodCacheMap.get(methodKey);
+    }
+
+    public Collection<MethodCache> getMethodCaches() {
+        return methodCacheMap.values();
+    }
+
+    public void clear() {
+        for (MethodCache methodCache : methodCacheMap.values()) {
+            methodCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcClientCache" + methodCacheMap.values();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        Object load() throws Throwable;
+    }
+
+    public static class MethodCache {
+        private final String methodKey;
+        private final long expiry;
+        private final ExpiryLRUMap<Key, Object> cacheMap;
+        private final ConcurrentMap<Key, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+        private final LongAdder hitCount = new LongAdder();
+        private final LongAdder missCount = new LongAdder();
+        private final LongAdder shareCount = new LongAdder();
+        private final LongAdder invalidateCount = new LongAdder();
+        /**
+         * +1 on invalidate (before remove). the response of the request before the invalidate is not cached
+         */
+        private final AtomicLong invalidateVersion = new AtomicLong();
+
+        MethodCache(String methodKey, long expiry, int maxSize) {
+            this.methodKey = methodKey;
+            this.expiry = expiry;
+            this.cacheMap = new ExpiryLRUMap<>(Math.min(256, Math.max(16, maxSize)), Math.max(1, maxSize), expiry, null);
+            this.cacheMap.setReplaceNullValueFlag(true);
+        }
+
+        Object get(Object[] args, Loader loader) throws Throwable {
+            Key key = new Key(args);
+            Object value = cacheMap.get(key);
+            if (value != null) {
+                hitCount.increment();
+                return value == ExpiryLRUMap.NULL ? null : value;
+            }
+            CompletableFuture<Object> loading = new CompletableFuture<>();
+            CompletableFuture<Object> exist = loadingMap.putIfAbsent(key, loading);
+            if (exist != null) {
+                shareCount.increment();
+                try {
+                    return exist.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+            }
+            missCount.increment();
+            long version = invalidateVersion.get();
+            try {
+                Object result = loader.load();
+                if (version == invalidateVersion.get()) {
+                    cacheMap.put(key, result, expiry);
+                    // the invalidate between the check and the put
+                    if (version != invalidateVersion.get()) {
+                        cacheMap.remove(key);
+                    }
+                }
+                loading.complete(result);
+                return result;
+            } catch (Throwable t) {
+                loading.completeExceptionally(t);
+                throw t;
+            } finally {
+                loadingMap.remove(key, loading);
+            }
+        }
+
+        void invalidate(int argsHash) {
+            invalidateVersion.incrementAndGet();
+            invalidateCount.increment();
+            // hash collision only remove more
+            List<Key> removeList = new ArrayList<>();
+            for (Key key : cacheMap.keySet()) {
+                if (key.hash == argsHash) {
+                    removeList.add(key);
+                }
+            }
+            for (Key key : removeList) {
+                cacheMap.remove(key);
+            }
+        }
+
+        void invalidateAll() {
+            invalidateVersion.incrementAndGet();
+            invalidateCount.increment();
+            cacheMap.clear();
+        }
+
+        public String getMethodKey() {
+            return methodKey;
+        }
+
+        public int size() {
+            return cacheMap.size();
+        }
+
+        public long getHitCount() {
+            return hitCount.sum();
+        }
+
+        public long getMissCount() {
+            return missCount.sum();
+        }
+
+        /**
+         * @return the calls wait the request of other thread. (single-flight)
+         */
+        public long getShareCount() {
+            return shareCount.sum();
+        }
+
+        public long getInvalidateCount() {
+            return invalidateCount.sum();
+        }
+
+        /**
+         * @return (hit + share) / all
+         */
+        public double getHitRate() {
+            long hit = hitCount.sum() + shareCount.sum();
+            long all = hit + missCount.sum();
+            return all == 0 ? 0D : (double) hit / all;
+        }
+
+        @Override
+        public String toString() {
+            return "MethodCache{" +
+                    "methodKey='" + methodKey + '\'' +
+                    ", size=" + size() +
+                    ", hitCount=" + hitCount +
+                    ", missCount=" + missCount +
+                    ", shareCount=" + shareCount +
+                    ", invalidateCount=" + invalidateCount +
+                    '}';
+        }
+    }
+
+    private static class Key {
+        private final Object[] args;
+        private final int hash;
+
+        private Key(Object[] args) {
+            // the caller can reuse the array
+            this.args = args == null ? null : args.clone();
+            this.hash = hashArgs(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.github.netty.protocol.nrpc;
 
 import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -24,11 +26,26 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
     private final Collection<Consumer3<CHUNK, Integer, ChunkAck>> chunkIndexAckConsumerList = new ConcurrentLinkedQueue<>();
     private final RpcMethod<RpcClient> rpcMethod;
     private final AtomicBoolean chunkBuildEndFlag = new AtomicBoolean();
+    /**
+     * the chunk callbacks in the chunkScheduler. flush the acks when the last one is consumed
+     */
+    private final AtomicInteger pendingChunkCount = new AtomicInteger();
+    private final RpcClientReactivePublisher source;
     private Executor chunkScheduler;
     private Subscription subscription;
+    private int creditWindow;
+    /**
+     * guarded by this. the state of the {@link RpcPacket#TYPE_CLIENT_CHUNK_CREDIT}
+     */
+    private long consumedChunkCount;
+    private long creditLimit;
+    private int[] creditAckChunkIds;
+    private int creditAckCount;
 
     RpcClientChunkCompletableFuture(RpcMethod<RpcClient> rpcMethod, RpcClientReactivePublisher source) {
         this.rpcMethod = rpcMethod;
+        this.source = source;
+        this.creditWindow = rpcMethod.getInstance().getChunkCreditWindow();
         source.subscribe(new SubscriberAdapter(this));
     }
 
@@ -62,6 +79,22 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
         return this;
     }
 
+    /**
+     * 未消费完的chunk最多有几个 (服务端的RpcEmitter超过后会等待客户端消费, 不会堆积在客户端内存里). 小于等于0是不限制.
+     * 需要在请求发出前设置 (whenComplete, get等方法会发出请求)
+     *
+     * @param creditWindow 窗口大小 (chunk的个数)
+     * @return this
+     */
+    public RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> creditWindow(int creditWindow) {
+        this.creditWindow = creditWindow;
+        return this;
+    }
+
+    public int getCreditWindow() {
+        return creditWindow;
+    }
+
     public RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> whenChunk(Consumer<CHUNK> consumer) {
         getChunkConsumerList().add(consumer);
         return this;
@@ -167,9 +200,13 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
         return chunkIndexAckConsumerList;
     }
 
-    public void callbackChunkConsumerList(CHUNK chunk, int index, int chunkId, ChunkAck ack) {
+    public void callbackChunkConsumerList(CHUNK chunk, int index, int chunkId, ChunkAck sourceAck) {
+        // the ack of no data is send in the credit
+        ChunkAck ack = creditWindow > 0 && sourceAck != ChunkAck.DONT_NEED_ACK && source.isSupportCreditAck() ?
+                new CreditChunkAck(sourceAck, chunkId) : sourceAck;
         if (!existChunkCallback()) {
             ack.ack();
+            onChunkConsumed();
             return;
         }
         Executor chunkScheduler = this.chunkScheduler;
@@ -177,6 +214,7 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
             chunkScheduler = GlobalEventExecutor.INSTANCE;
         }
         RpcContext<RpcClient> rpcContext = CONTEXT_LOCAL.get();
+        pendingChunkCount.incrementAndGet();
         chunkScheduler.execute(() -> {
             CONTEXT_LOCAL.set(rpcContext);
             try {
@@ -218,11 +256,55 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
                 if (!ack.isAck()) {
                     ack.ack();
                 }
+                pendingChunkCount.decrementAndGet();
+                onChunkConsumed();
                 CONTEXT_LOCAL.remove();
             }
         });
     }
 
+    /**
+     * give the server more credit after consumed half of the window.
+     * the acks are send together. (when no more chunk in the chunkScheduler)
+     */
+    private void onChunkConsumed() {
+        int creditWindow = this.creditWindow;
+        if (creditWindow <= 0) {
+            return;
+        }
+        long creditLimit;
+        int[] ackChunkIds;
+        int ackCount;
+        synchronized (this) {
+            consumedChunkCount++;
+            if (this.creditLimit == 0) {
+                // the first window is send with the request
+                this.creditLimit = creditWindow;
+            }
+            boolean flushAck = creditAckCount > 0 && (pendingChunkCount.get() == 0 || creditAckCount >= creditWindow);
+            boolean flushCredit = consumedChunkCount + creditWindow - this.creditLimit >= Math.max(1, creditWindow / 2);
+            if (!flushAck && !flushCredit) {
+                return;
+            }
+            creditLimit = Math.max(this.creditLimit, consumedChunkCount + creditWindow);
+            ackChunkIds = creditAckChunkIds;
+            ackCount = creditAckCount;
+            this.creditLimit = creditLimit;
+            this.creditAckChunkIds = null;
+            this.creditAckCount = 0;
+        }
+        source.credit(creditLimit, ackChunkIds, ackCount);
+    }
+
+    private synchronized void addCreditAck(int chunkId) {
+        if (creditAckChunkIds == null) {
+            creditAckChunkIds = new int[Math.min(creditWindow, 16)];
+        } else if (creditAckCount == creditAckChunkIds.length) {
+            creditAckChunkIds = Arrays.copyOf(creditAckChunkIds, creditAckCount << 1);
+        }
+        creditAckChunkIds[creditAckCount++] = chunkId;
+    }
+
     public boolean existChunkCallback() {
         if (!getChunkConsumerList().isEmpty()) {
             return true;
@@ -508,6 +590,39 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
         void accept(T1 t1, T2 t2, T3 t3);
     }
 
+    /**
+     * the ack of no data is add to the next credit. the ack of data (or error) is send now
+     */
+    private class CreditChunkAck implements ChunkAck {
+        private final ChunkAck source;
+        private final int chunkId;
+        private volatile boolean ackFlag;
+
+        private CreditChunkAck(ChunkAck source, int chunkId) {
+            this.source = source;
+            this.chunkId = chunkId;
+        }
+
+        @Override
+        public Promise ack(Object ack) {
+            if (ack != null) {
+                return source.ack(ack);
+            }
+            if (!ackFlag) {
+                ackFlag = true;
+                addCreditAck(chunkId);
+            }
+            Promise promise = GlobalEventExecutor.INSTANCE.newPromise();
+            promise.setSuccess(null);
+            return promise;
+        }
+
+        @Override
+        public boolean isAck() {
+            return ackFlag || source.isAck();
+        }
+    }
+
     public static class SubscriberAdapter<RESULT, CHUNK> implements Subscriber<RESULT>, RpcDone.ChunkListener<CHUNK> {
         private final RpcClientChunkCompletableFuture<RESULT, CHUNK> completableFuture;
         private final AtomicInteger chunkIndex = new AtomicInteger();
@@ -528,6 +643,11 @@ public class RpcClientChunkCompletableFuture<COMPLETE_RESULT, CHUNK> extends Com
             completableFuture.callbackChunkConsumerList(chunk, chunkIndex.getAndIncrement(), chunkId, ack);
         }
 
+        @Override
+        public int getCreditWindow() {
+            return completableFuture.creditWindow;
+        }
+
         @Override
         public void onNext(RESULT o) {
             this.result = o;
@@ -50,6 +50,10 @@ public class RpcClientFuture implements Future<ResponseLastPacket>, RpcDone, Rec
         return rpcClientFuture;
     }
 
+    public RpcContext<RpcClient> getRpcContext() {
+        return rpcContext;
+    }
+
     @Override
     public ResponseLastPacket get() throws InterruptedException {
         TOTAL_COUNT.increment();
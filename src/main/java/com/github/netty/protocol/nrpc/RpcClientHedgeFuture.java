@@ -0,0 +1,133 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.core.util.RecyclableUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wait the first response of the hedged request. (the same request to many connections)
+ * the response of the loser is released. the response after {@link #close()} (all the legs timeout) is also released.
+ *
+ * @author wangzihao
+ * @see RpcClient.Sender#invokeHedged(Object, java.lang.reflect.Method, Object[], long, java.util.function.Supplier)
+ */
+public class RpcClientHedgeFuture {
+    private final AtomicReference<Leg> winner = new AtomicReference<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition done = lock.newCondition();
+    /**
+     * the winner after {@link #close()}. the late response can not win
+     */
+    private final Leg closedLeg = new Leg(null, null);
+
+    public Leg newLeg(RpcClient.Sender sender, RpcContext<RpcClient> rpcContext) {
+        return new Leg(sender, rpcContext);
+    }
+
+    /**
+     * @param timeout milliseconds. less than 0 then never timeout
+     * @return the first response leg. null if timeout
+     * @throws InterruptedException InterruptedException
+     */
+    public Leg await(long timeout) throws InterruptedException {
+        Leg leg = winner.get();
+        if (leg != null || timeout == 0) {
+            return leg;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while ((leg = winner.get()) == null) {
+                if (timeout < 0) {
+                    done.await();
+                } else {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        break;
+                    }
+                    done.awaitNanos(nanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return leg;
+    }
+
+    public Leg getWinner() {
+        Leg leg = winner.get();
+        return leg == closedLeg ? null : leg;
+    }
+
+    /**
+     * no wait the response. (all the legs timeout)
+     * release the response of the leg win after the await timeout, and the response after close.
+     */
+    public void close() {
+        Leg leg = winner.getAndSet(closedLeg);
+        if (leg != null && leg != closedLeg) {
+            RpcPacket.ResponseLastPacket response = leg.response;
+            leg.response = null;
+            RecyclableUtil.release(response);
+        }
+    }
+
+    /**
+     * one request of the hedged request
+     */
+    public class Leg implements RpcDone {
+        final RpcClient.Sender sender;
+        final RpcContext<RpcClient> rpcContext;
+        int requestId = -1;
+        private volatile RpcPacket.ResponseLastPacket response;
+
+        Leg(RpcClient.Sender sender, RpcContext<RpcClient> rpcContext) {
+            this.sender = sender;
+            this.rpcContext = rpcContext;
+        }
+
+        public RpcPacket.ResponseLastPacket getResponse() {
+            return response;
+        }
+
+        public RpcContext<RpcClient> getRpcContext() {
+            return rpcContext;
+        }
+
+        @Override
+        public void chunk(RpcPacket.ResponseChunkPacket response, ChunkAck ack) {
+            // the hedged method is the blocking method. no chunk
+            RecyclableUtil.release(response);
+            ack.ack();
+        }
+
+        @Override
+        public void done(RpcPacket.ResponseLastPacket response) {
+            if (response == null) {
+                return;
+            }
+            // set before win. the winner always has the response
+            this.response = response;
+            if (!winner.compareAndSet(null, this)) {
+                this.response = null;
+                RecyclableUtil.release(response);
+                return;
+            }
+            lock.lock();
+            try {
+                done.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void doneTimeout(int requestId, long createTimestamp, long expiryTimestamp) {
+            // the timeout is wait by the caller
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The connections of one remote address. (thread safe)
+ * 1. choose the connection by least in-flight (or round robin). the down connection is skipped if other is up.
+ * 2. grow a connection if the chosen connection has {@link #growInFlight} in-flight requests, until {@link #maxConnections}.
+ * 3. shrink the last connection if no connection is busy in {@link #shrinkIdleMs}, until {@link #minConnections}.
+ * 4. each connection reconnect by itself. the down connection is not removed, the other connections continue.
+ * the connections share the worker of the first connection.
+ * 5. the latency and failures of the address. {@link RpcClientStats}
+ *
+ * @author wangzihao
+ */
+public class RpcClientPool implements Closeable {
+    private static final LoggerX logger = LoggerFactoryX.getLogger(RpcClientPool.class);
+    private static final RpcClient[] EMPTY = new RpcClient[0];
+    private final InetSocketAddress remoteAddress;
+    private final Function<InetSocketAddress, RpcClient> clientFactory;
+    private final AtomicInteger roundRobinIndex = new AtomicInteger();
+    private final AtomicBoolean growIngFlag = new AtomicBoolean(false);
+    private final RpcClientStats stats = new RpcClientStats();
+    /**
+     * copy on write. index 0 is the owner of the shared worker, never shrink
+     */
+    private volatile RpcClient[] clients = EMPTY;
+    private volatile long lastBusyTimestamp = System.currentTimeMillis();
+    private volatile boolean closed = false;
+    private int minConnections = 1;
+    private int maxConnections = 1;
+    private int growInFlight = 64;
+    private long shrinkIdleMs = 60000;
+    private Select select = Select.LEAST_IN_FLIGHT;
+
+    public RpcClientPool(InetSocketAddress remoteAddress, Function<InetSocketAddress, RpcClient> clientFactory) {
+        this.remoteAddress = remoteAddress;
+        this.clientFactory = clientFactory;
+    }
+
+    /**
+     * Choose a connection
+     *
+     * @return RpcClient
+     */
+    public RpcClient choose() {
+        RpcClient[] clients = this.clients;
+        if (clients.length < minConnections) {
+            clients = init();
+        } else if (clients.length > minConnections && System.currentTimeMillis() - lastBusyTimestamp > shrinkIdleMs) {
+            clients = shrink();
+        }
+        RpcClient client;
+        if (clients.length == 1) {
+            client = clients[0];
+        } else if (select == Select.ROUND_ROBIN) {
+            client = chooseRoundRobin(clients);
+        } else {
+            client = chooseLeastInFlight(clients);
+        }
+        if (maxConnections > 1 && client.getRpcDoneTable().size() >= growInFlight) {
+            lastBusyTimestamp = System.currentTimeMillis();
+            if (clients.length < maxConnections) {
+                grow();
+            }
+        }
+        return client;
+    }
+
+    private RpcClient chooseLeastInFlight(RpcClient[] clients) {
+        RpcClient best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        RpcClient bestDown = null;
+        int bestDownInFlight = Integer.MAX_VALUE;
+        // start at the round robin index, the equal connections take turns
+        int offset = roundRobinIndex.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < clients.length; i++) {
+            RpcClient client = clients[(offset + i) % clients.length];
+            int inFlight = client.getRpcDoneTable().size();
+            if (client.getState() == RpcClient.State.UP) {
+                if (inFlight < bestInFlight) {
+                    best = client;
+                    bestInFlight = inFlight;
+                }
+            } else {
+                reconnectIfNeed(client);
+                if (inFlight < bestDownInFlight) {
+                    bestDown = client;
+                    bestDownInFlight = inFlight;
+                }
+            }
+        }
+        return best != null ? best : bestDown;
+    }
+
+    private RpcClient chooseRoundRobin(RpcClient[] clients) {
+        int offset = roundRobinIndex.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < clients.length; i++) {
+            RpcClient client = clients[(offset + i) % clients.length];
+            if (client.getState() == RpcClient.State.UP) {
+                return client;
+            }
+            reconnectIfNeed(client);
+        }
+        return clients[offset % clients.length];
+    }
+
+    /**
+     * the down connection (connected before) reconnect in background. the never connected connection connect when chosen.
+     */
+    private void reconnectIfNeed(RpcClient client) {
+        if (client.getWorker() != null && !client.isConnectIng() && !client.isScheduleReconnectTaskIng()) {
+            client.scheduleReconnectTask(client.getReconnectScheduledIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized RpcClient[] init() {
+        RpcClient[] clients = this.clients;
+        if (clients.length >= minConnections) {
+            return clients;
+        }
+        if (closed) {
+            throw new IllegalStateException("RpcClientPool is closed. remoteAddress = " + remoteAddress);
+        }
+        RpcClient[] newClients = Arrays.copyOf(clients, Math.max(1, minConnections));
+        for (int i = clients.length; i < newClients.length; i++) {
+            newClients[i] = newClient(i == 0 ? null : newClients[0]);
+            if (i == 0 && newClients.length > 1) {
+                // create the shared worker
+                newClients[0].connect();
+            }
+        }
+        this.clients = newClients;
+        return newClients;
+    }
+
+    private void grow() {
+        if (closed || !growIngFlag.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            RpcClient newClient;
+            synchronized (this) {
+                RpcClient[] clients = this.clients;
+                if (closed || clients.length >= maxConnections) {
+                    return;
+                }
+                newClient = newClient(clients[0]);
+                RpcClient[] newClients = Arrays.copyOf(clients, clients.length + 1);
+                newClients[clients.length] = newClient;
+                this.clients = newClients;
+            }
+            // connect in background. chosen after up
+            newClient.connect();
+            logger.info("RpcClientPool grow. remoteAddress = {}, connections = {}", remoteAddress, clients.length);
+        } catch (Exception e) {
+            logger.warn("RpcClientPool grow fail. remoteAddress = {}, cause = {}", remoteAddress, e.toString());
+        } finally {
+            growIngFlag.set(false);
+        }
+    }
+
+    private RpcClient[] shrink() {
+        RpcClient removeClient;
+        RpcClient[] newClients;
+        synchronized (this) {
+            RpcClient[] clients = this.clients;
+            long now = System.currentTimeMillis();
+            if (clients.length <= minConnections || now - lastBusyTimestamp <= shrinkIdleMs) {
+                return clients;
+            }
+            removeClient = clients[clients.length - 1];
+            newClients = Arrays.copyOf(clients, clients.length - 1);
+            this.clients = newClients;
+            // one connection per idle interval
+            lastBusyTimestamp = now;
+        }
+        logger.info("RpcClientPool shrink. remoteAddress = {}, connections = {}", remoteAddress, newClients.length);
+        closeAfterDone(removeClient, 0);
+        return newClients;
+    }
+
+    private RpcClient newClient(RpcClient owner) {
+        RpcClient client = clientFactory.apply(remoteAddress);
+        client.getAopList().add(stats);
+        if (owner != null) {
+            EventLoopGroup worker = owner.getWorker();
+            if (worker != null) {
+                client.setSharedWorker(worker);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Close the removed connection after the in-flight requests done. (no new request choose it)
+     * the first check is delay, the caller chosen before the remove can send the request.
+     */
+    private static void closeAfterDone(RpcClient client, int retry) {
+        SocketChannel channel = client.channel();
+        if (client.getWorker() == null || channel == null) {
+            client.close();
+            return;
+        }
+        if ((retry == 0 || client.getRpcDoneTable().size() > 0) && retry < 30 && channel.isActive()) {
+            channel.eventLoop().schedule(() -> closeAfterDone(client, retry + 1), 1, TimeUnit.SECONDS);
+        } else {
+            client.close();
+        }
+    }
+
+    public RpcClient[] getClients() {
+        return clients.clone();
+    }
+
+    /**
+     * @return the first connection. null if not init
+     */
+    public RpcClient getPrimaryClient() {
+        RpcClient[] clients = this.clients;
+        return clients.length == 0 ? null : clients[0];
+    }
+
+    public int size() {
+        return clients.length;
+    }
+
+    public int getInFlightCount() {
+        int count = 0;
+        for (RpcClient client : clients) {
+            count += client.getRpcDoneTable().size();
+        }
+        return count;
+    }
+
+    public RpcClientStats getStats() {
+        return stats;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    public void setMinConnections(int minConnections) {
+        this.minConnections = Math.max(1, minConnections);
+        if (this.maxConnections < this.minConnections) {
+            this.maxConnections = this.minConnections;
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(minConnections, maxConnections);
+    }
+
+    public int getGrowInFlight() {
+        return growInFlight;
+    }
+
+    public void setGrowInFlight(int growInFlight) {
+        this.growInFlight = Math.max(1, growInFlight);
+    }
+
+    public long getShrinkIdleMs() {
+        return shrinkIdleMs;
+    }
+
+    public void setShrinkIdleMs(long shrinkIdleMs) {
+        this.shrinkIdleMs = shrinkIdleMs;
+    }
+
+    public Select getSelect() {
+        return select;
+    }
+
+    public void setSelect(Select select) {
+        this.select = select == null ? Select.LEAST_IN_FLIGHT : select;
+    }
+
+    @Override
+    public void close() {
+        RpcClient[] clients;
+        synchronized (this) {
+            closed = true;
+            clients = this.clients;
+            this.clients = EMPTY;
+        }
+        // the owner of the shared worker is the last
+        for (int i = clients.length - 1; i >= 0; i--) {
+            clients[i].close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcClientPool{" +
+                "remoteAddress=" + remoteAddress +
+                ", connections=" + clients.length +
+                ", inFlight=" + getInFlightCount() +
+                ", stats=" + stats +
+                '}';
+    }
+
+    /**
+     * Connection select
+     */
+    public enum Select {
+        /**
+         * the connection with the least in-flight requests
+         */
+        LEAST_IN_FLIGHT,
+        ROUND_ROBIN
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.netty.protocol.nrpc;
 
+import com.github.netty.core.util.ChannelBatchWriter;
 import com.github.netty.core.util.RecyclableUtil;
 import com.github.netty.protocol.nrpc.codec.DataCodec;
 import com.github.netty.protocol.nrpc.exception.RpcException;
@@ -35,6 +36,7 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
     private volatile Subscriber<? super Object> subscriber;
     private int timeout;
     private ChunkListener chunkListener;
+    private int requestId = -1;
 
     RpcClientReactivePublisher(RpcContext<RpcClient> rpcContext, String requestMappingName, String version, int timeout) {
         this.rpcContext = rpcContext;
@@ -61,6 +63,8 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
             Object result;
             if (response.getEncode() == BINARY) {
                 result = response.getData();
+            } else if (response.getDataBuf() != null) {
+                result = dataCodec.decodeChunkResponseData(response.getDataBuf(), rpcContext.getRpcMethod());
             } else {
                 result = dataCodec.decodeChunkResponseData(response.getData(), rpcContext.getRpcMethod());
             }
@@ -90,6 +94,8 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
             Object result;
             if (rpcResponse.getEncode() == BINARY) {
                 result = rpcResponse.getData();
+            } else if (rpcResponse.getDataBuf() != null) {
+                result = dataCodec.decodeResponseData(rpcResponse.getDataBuf(), rpcContext.getRpcMethod());
             } else {
                 result = dataCodec.decodeResponseData(rpcResponse.getData(), rpcContext.getRpcMethod());
             }
@@ -154,6 +160,7 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
 
         CONTEXT_LOCAL.set(rpcContext);
         int requestId = rpcClient.newRequestId();
+        this.requestId = requestId;
         try {
             RpcMethod<RpcClient> rpcMethod = rpcContext.getRpcMethod();
 
@@ -167,18 +174,19 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
             rpcRequest.setRequestMappingName(requestMappingName);
             rpcRequest.setVersion(version);
             rpcRequest.setMethodName(rpcContext.getRpcMethod().getMethodName());
+            rpcRequest.setSymbolKey(rpcMethod);
             rpcRequest.setAck(rpcMethod.isReturnVoid() ? ACK_NO : ACK_YES);
             rpcRequest.setTimeout(timeout);
             rpcContext.setRequest(rpcRequest);
             rpcContext.setTimeout(timeout);
             rpcClient.onStateUpdate(rpcContext, INIT);
 
-            rpcRequest.setData(dataCodec.encodeRequestData(rpcContext.getArgs(), rpcContext.getRpcMethod()));
+            rpcRequest.setDataBuf(rpcClient.encodeRequestData(rpcContext));
             rpcClient.onStateUpdate(rpcContext, WRITE_ING);
 
             rpcRequest.setTimeout(timeout);
-            ChannelFuture writeAndFlushFuture = channel.writeAndFlush(rpcRequest);
-            rpcClient.rpcDoneMap.put(requestId, this, timeout);
+            rpcClient.rpcDoneTable.put(requestId, this, timeout, channel.eventLoop());
+            ChannelFuture writeAndFlushFuture = ChannelBatchWriter.writeAndFlush(channel, rpcRequest);
             writeAndFlushFuture.addListener((ChannelFutureListener) future -> {
                 CONTEXT_LOCAL.set(rpcContext);
                 try {
@@ -193,6 +201,12 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
                     CONTEXT_LOCAL.set(null);
                 }
             });
+            // the first window. write after the request, the server wait it in the early credit
+            ChunkListener chunkListener = this.chunkListener;
+            int creditWindow = chunkListener != null ? chunkListener.getCreditWindow() : 0;
+            if (creditWindow > 0) {
+                rpcClient.writeChunkCredit(requestId, creditWindow, null, 0);
+            }
         } catch (RpcException rpcException) {
             handlerRpcWriterException(rpcException, requestId);
         } finally {
@@ -202,7 +216,7 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
 
     private void handlerRpcWriterException(RpcException rpcException, int requestId) {
         rpcContext.setRpcEndTimestamp(System.currentTimeMillis());
-        rpcClient.rpcDoneMap.remove(requestId);
+        rpcClient.rpcDoneTable.remove(requestId);
         rpcContext.setThrowable(rpcException);
         subscriber.onError(rpcException);
     }
@@ -226,6 +240,27 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
         }
     }
 
+    /**
+     * the consumed chunks. the server can send more chunks
+     *
+     * @param creditLimit the chunks the server can send in total
+     * @param ackChunkIds the consumed chunk ids. nullable
+     * @param ackCount    the count of the ackChunkIds
+     * @see #isSupportCreditAck()
+     */
+    public void credit(long creditLimit, int[] ackChunkIds, int ackCount) {
+        if (requestId != -1) {
+            rpcClient.writeChunkCredit(requestId, creditLimit, ackChunkIds, ackCount);
+        }
+    }
+
+    /**
+     * @return true = the server accept the acks in the credit. (the ack of no data)
+     */
+    public boolean isSupportCreditAck() {
+        return rpcClient.isServerFeature(RpcPacket.FEATURE_CHUNK_CREDIT_ACK);
+    }
+
     public long getCurrentRequestCount() {
         return currentRequestCount;
     }
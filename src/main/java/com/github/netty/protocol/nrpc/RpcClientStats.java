@@ -0,0 +1,149 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.protocol.nrpc.exception.RpcConnectException;
+import com.github.netty.protocol.nrpc.exception.RpcTimeoutException;
+import com.github.netty.protocol.nrpc.exception.RpcWriteException;
+
+/**
+ * Latency and failures of the connections of one remote address. (added to the aop of each connection by {@link RpcClientPool})
+ * 1. peak EWMA latency. a slower response is taken at once, a faster response is mixed by the decay. no response decay to 0.
+ * 2. outlier ejection. {@link #consecutiveFailures} timeouts or transport errors eject the address for
+ * {@link #ejectionMs} * (ejected times, max 10). a success reset the failures.
+ * the business exception of the server is not a failure.
+ *
+ * @author wangzihao
+ */
+public class RpcClientStats implements RpcClientAop {
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+    /**
+     * latency decay time. (nanos)
+     */
+    private long decayNanos = 10_000_000_000L;
+    private int consecutiveFailures = 5;
+    private long ejectionMs = 30000;
+
+    private double ewmaMillis;
+    private long ewmaTimestampNanos = System.nanoTime();
+    private int failureCount;
+    private int ejectedCount;
+    private volatile long ejectedUntilMillis;
+    private volatile long totalFailureCount;
+    private volatile long totalEjectedCount;
+
+    @Override
+    public void onTimeout(RpcContext<RpcClient> rpcContext) {
+        onFailure();
+    }
+
+    @Override
+    public void onResponseAfter(RpcContext<RpcClient> rpcContext) {
+        Throwable throwable = rpcContext.getThrowable();
+        if (throwable instanceof RpcTimeoutException
+                || throwable instanceof RpcConnectException
+                || throwable instanceof RpcWriteException) {
+            onFailure();
+        } else if (rpcContext.getRpcEndTimestamp() >= rpcContext.getRpcBeginTimestamp() && rpcContext.getRpcBeginTimestamp() > 0) {
+            onSuccess(rpcContext.getRpcEndTimestamp() - rpcContext.getRpcBeginTimestamp());
+        }
+    }
+
+    @Override
+    public void onDisconnectAfter(RpcClient rpcClient) {
+        onFailure();
+    }
+
+    public synchronized void onSuccess(long latencyMillis) {
+        long now = System.nanoTime();
+        double ewma = decayedEwma(now);
+        if (latencyMillis > ewma) {
+            ewmaMillis = latencyMillis;
+        } else {
+            double weight = Math.exp(-(double) (now - ewmaTimestampNanos) / decayNanos);
+            ewmaMillis = ewmaMillis * weight + latencyMillis * (1D - weight);
+        }
+        ewmaTimestampNanos = now;
+        failureCount = 0;
+        if (ejectedCount > 0 && System.currentTimeMillis() - ejectedUntilMillis > ejectionMs) {
+            ejectedCount = 0;
+        }
+    }
+
+    public synchronized void onFailure() {
+        totalFailureCount++;
+        if (consecutiveFailures <= 0 || ++failureCount < consecutiveFailures) {
+            return;
+        }
+        failureCount = 0;
+        if (ejectedCount < MAX_EJECTION_MULTIPLIER) {
+            ejectedCount++;
+        }
+        totalEjectedCount++;
+        ejectedUntilMillis = System.currentTimeMillis() + ejectionMs * ejectedCount;
+    }
+
+    private double decayedEwma(long now) {
+        long elapsed = now - ewmaTimestampNanos;
+        return elapsed <= 0 ? ewmaMillis : ewmaMillis * Math.exp(-(double) elapsed / decayNanos);
+    }
+
+    /**
+     * @return peak EWMA latency (milliseconds). decay to 0 if no response
+     */
+    public synchronized double getLatencyMillis() {
+        return decayedEwma(System.nanoTime());
+    }
+
+    public boolean isEjected() {
+        long ejectedUntilMillis = this.ejectedUntilMillis;
+        return ejectedUntilMillis != 0 && System.currentTimeMillis() < ejectedUntilMillis;
+    }
+
+    public long getEjectedUntilMillis() {
+        return ejectedUntilMillis;
+    }
+
+    public long getTotalFailureCount() {
+        return totalFailureCount;
+    }
+
+    public long getTotalEjectedCount() {
+        return totalEjectedCount;
+    }
+
+    public long getDecayMs() {
+        return decayNanos / 1000000L;
+    }
+
+    public void setDecayMs(long decayMs) {
+        this.decayNanos = Math.max(1L, decayMs) * 1000000L;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @param consecutiveFailures less than or equal to 0 then never eject
+     */
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public long getEjectionMs() {
+        return ejectionMs;
+    }
+
+    public void setEjectionMs(long ejectionMs) {
+        this.ejectionMs = ejectionMs;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcClientStats{" +
+                "latencyMillis=" + getLatencyMillis() +
+                ", ejected=" + isEjected() +
+                ", totalFailureCount=" + totalFailureCount +
+                ", totalEjectedCount=" + totalEjectedCount +
+                '}';
+    }
+}
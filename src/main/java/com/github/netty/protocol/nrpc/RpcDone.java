@@ -53,6 +53,13 @@ public interface RpcDone {
     @FunctionalInterface
     interface ChunkListener<CHUNK> {
         void onChunk(CHUNK chunk, int chunkId, ChunkAck ack);
+
+        /**
+         * @return the chunks can be unconsumed. less than or equal to 0 is no limit. {@link RpcPacket#TYPE_CLIENT_CHUNK_CREDIT}
+         */
+        default int getCreditWindow() {
+            return 0;
+        }
     }
 
 }
@@ -0,0 +1,384 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.core.util.ExpiryLRUMap;
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.protocol.nrpc.codec.DataCodec;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-flight request table of the client. (keyed by int requestId, no boxing, no lock, no allocation per call)
+ * <p>
+ * 1. open-addressed ring. the requestId is increment, so the slot is (requestId + probe) & mask.
+ * if all probe slots are busy (a very slow request), the request is put into the overflow {@link ExpiryLRUMap}.
+ * 2. the timeouts are driven by a hashed timing wheel in the event loop of the connection.
+ * the wheel buckets are linked lists of slot index (int arrays), the new slots are pushed to the event loop by a lock-free stack.
+ *
+ * @author wangzihao
+ */
+public class RpcDoneTable {
+    private static final LoggerX logger = LoggerFactoryX.getLogger(RpcDoneTable.class);
+    private static final long STATE_BUSY = 1L << 32;
+    private static final long STATE_READY = 2L << 32;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int NIL = -1;
+    private final int mask;
+    private final int maxProbe;
+    /**
+     * 0 = empty, STATE_BUSY | requestId = writing or removing, STATE_READY | requestId = readable
+     */
+    private final AtomicLongArray keys;
+    private final AtomicReferenceArray<RpcDone> values;
+    private final AtomicLongArray createTimestamps;
+    private final AtomicLongArray deadlines;
+    private final ExpiryLRUMap<Integer, RpcDone> overflowMap;
+    /**
+     * the ready slots. (put increment, remove and timeout decrement)
+     */
+    private final AtomicInteger slotCount = new AtomicInteger();
+
+    /**
+     * the new slots with deadline. (push by any thread, pop all by the event loop)
+     */
+    private final AtomicInteger pendingHead = new AtomicInteger(NIL);
+    private final int[] pendingNext;
+    private final AtomicIntegerArray pendingFlags;
+
+    /**
+     * the timing wheel. (only access in the event loop)
+     */
+    private final long tickMillis;
+    private final int wheelMask;
+    private final int[] wheelHeads;
+    private final int[] wheelNext;
+    private final int[] wheelPrev;
+    private final int[] wheelBuckets;
+    private final AtomicReference<EventExecutor> timerExecutor = new AtomicReference<>();
+    private volatile ScheduledFuture<?> timerFuture;
+    private long startTimestamp;
+    private long lastTick;
+
+    public RpcDoneTable(ExpiryLRUMap<Integer, RpcDone> overflowMap) {
+        this(4096, 16, 10, 512, overflowMap);
+    }
+
+    /**
+     * @param capacity    table size. (round up to power of 2)
+     * @param maxProbe    max probe slots
+     * @param tickMillis  wheel tick
+     * @param wheelSize   wheel buckets. (round up to power of 2)
+     * @param overflowMap put the request if the probe slots are all busy
+     */
+    public RpcDoneTable(int capacity, int maxProbe, long tickMillis, int wheelSize, ExpiryLRUMap<Integer, RpcDone> overflowMap) {
+        capacity = roundUpPowerOf2(capacity);
+        wheelSize = roundUpPowerOf2(wheelSize);
+        this.mask = capacity - 1;
+        this.maxProbe = Math.min(Math.max(1, maxProbe), capacity);
+        this.keys = new AtomicLongArray(capacity);
+        this.values = new AtomicReferenceArray<>(capacity);
+        this.createTimestamps = new AtomicLongArray(capacity);
+        this.deadlines = new AtomicLongArray(capacity);
+        this.overflowMap = overflowMap;
+        this.pendingNext = new int[capacity];
+        this.pendingFlags = new AtomicIntegerArray(capacity);
+
+        this.tickMillis = Math.max(1, tickMillis);
+        this.wheelMask = wheelSize - 1;
+        this.wheelHeads = new int[wheelSize];
+        this.wheelNext = new int[capacity];
+        this.wheelPrev = new int[capacity];
+        this.wheelBuckets = new int[capacity];
+        Arrays.fill(wheelHeads, NIL);
+        Arrays.fill(wheelBuckets, NIL);
+    }
+
+    private static int roundUpPowerOf2(int value) {
+        int n = 1;
+        while (n < value) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static long readyKey(int requestId) {
+        return STATE_READY | (requestId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Put the in-flight request
+     *
+     * @param requestId requestId
+     * @param rpcDone   rpcDone
+     * @param timeout   timeout millis. if less than or equal to 0 then never timeout (the caller remove it)
+     * @param timer     the event loop that drive the timeout
+     */
+    public void put(int requestId, RpcDone rpcDone, long timeout, EventExecutor timer) {
+        long currentTimeMillis = System.currentTimeMillis();
+        long deadline = timeout > 0 ? currentTimeMillis + timeout : NO_DEADLINE;
+        long busyKey = STATE_BUSY | (requestId & 0xFFFFFFFFL);
+        for (int probe = 0; probe < maxProbe; probe++) {
+            int index = (requestId + probe) & mask;
+            if (keys.get(index) == 0 && keys.compareAndSet(index, 0, busyKey)) {
+                values.set(index, rpcDone);
+                createTimestamps.set(index, currentTimeMillis);
+                deadlines.set(index, deadline);
+                keys.set(index, readyKey(requestId));
+                slotCount.incrementAndGet();
+                if (deadline != NO_DEADLINE) {
+                    startTimerIfNeed(timer);
+                    pushPending(index);
+                }
+                return;
+            }
+        }
+        overflowMap.put(requestId, rpcDone, timeout > 0 ? timeout : Long.MAX_VALUE);
+    }
+
+    public RpcDone get(int requestId) {
+        long readyKey = readyKey(requestId);
+        for (int probe = 0; probe < maxProbe; probe++) {
+            int index = (requestId + probe) & mask;
+            if (keys.get(index) == readyKey) {
+                RpcDone rpcDone = values.get(index);
+                if (keys.get(index) == readyKey) {
+                    return rpcDone;
+                }
+            }
+        }
+        return overflowMap.isEmpty() ? null : overflowMap.get(requestId);
+    }
+
+    public RpcDone remove(int requestId) {
+        long readyKey = readyKey(requestId);
+        for (int probe = 0; probe < maxProbe; probe++) {
+            int index = (requestId + probe) & mask;
+            if (keys.get(index) == readyKey) {
+                RpcDone rpcDone = removeAt(index, readyKey);
+                if (rpcDone != null) {
+                    return rpcDone;
+                }
+            }
+        }
+        return overflowMap.isEmpty() ? null : overflowMap.remove(requestId);
+    }
+
+    private RpcDone removeAt(int index, long readyKey) {
+        long busyKey = STATE_BUSY | (readyKey & 0xFFFFFFFFL);
+        if (keys.compareAndSet(index, readyKey, busyKey)) {
+            RpcDone rpcDone = values.get(index);
+            values.set(index, null);
+            keys.set(index, 0);
+            slotCount.decrementAndGet();
+            return rpcDone;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of the in-flight requests. (for the connection select and monitor)
+     */
+    public int size() {
+        int size = slotCount.get();
+        return overflowMap.isEmpty() ? size : size + overflowMap.size();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    private void pushPending(int index) {
+        if (!pendingFlags.compareAndSet(index, 0, 1)) {
+            // the event loop will read the new deadline
+            return;
+        }
+        int head;
+        do {
+            head = pendingHead.get();
+            pendingNext[index] = head;
+        } while (!pendingHead.compareAndSet(head, index));
+    }
+
+    private void startTimerIfNeed(EventExecutor timer) {
+        EventExecutor current = timerExecutor.get();
+        if (timer == null || (current != null && !current.isShuttingDown()) || !timerExecutor.compareAndSet(current, timer)) {
+            return;
+        }
+        timer.execute(() -> {
+            startTimestamp = System.currentTimeMillis();
+            lastTick = 0;
+            ScheduledFuture<?> future = timer.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+            timerFuture = future;
+            if (timerExecutor.get() != timer) {
+                // closed before the timer start
+                future.cancel(false);
+            }
+        });
+    }
+
+    /**
+     * Cancel the timer, and done the in-flight requests with the {@link RpcPacket.ResponsePacket#SERVER_ERROR} response.
+     * (the client stop. the request can put again after close, the timer will restart)
+     *
+     * @param message the message of the error response
+     * @return number of the requests done
+     */
+    public int close(String message) {
+        timerExecutor.set(null);
+        ScheduledFuture<?> future = timerFuture;
+        if (future != null) {
+            timerFuture = null;
+            future.cancel(false);
+        }
+
+        int count = 0;
+        for (int index = 0; index <= mask; index++) {
+            long key = keys.get(index);
+            if ((key & STATE_READY) == 0) {
+                continue;
+            }
+            RpcDone rpcDone = removeAt(index, key);
+            if (rpcDone != null) {
+                doneClose((int) key, rpcDone, message);
+                count++;
+            }
+        }
+        if (!overflowMap.isEmpty()) {
+            for (Integer requestId : new ArrayList<>(overflowMap.keySet())) {
+                RpcDone rpcDone = overflowMap.remove(requestId);
+                if (rpcDone != null) {
+                    doneClose(requestId, rpcDone, message);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void doneClose(int requestId, RpcDone rpcDone, String message) {
+        RpcPacket.ResponseLastPacket response = RpcPacket.ResponsePacket.newLastPacket();
+        response.setRequestId(requestId);
+        response.setStatus(RpcPacket.ResponsePacket.SERVER_ERROR);
+        response.setMessage(message);
+        response.setEncode(DataCodec.Encode.BINARY);
+        try {
+            rpcDone.done(response);
+        } catch (Exception e) {
+            logger.warn("doneClose exception. requestId = {}, message = {}.", requestId, e.toString(), e);
+        }
+    }
+
+    /**
+     * @return the timer of the wheel. null if not start or closed
+     */
+    public ScheduledFuture<?> getTimerFuture() {
+        return timerFuture;
+    }
+
+    /**
+     * Advance the wheel. (in the event loop)
+     */
+    void tick() {
+        long currentTimeMillis = System.currentTimeMillis();
+        drainPending();
+        long currentTick = (currentTimeMillis - startTimestamp) / tickMillis;
+        long fromTick = Math.max(lastTick + 1, currentTick - wheelMask);
+        for (long tick = fromTick; tick <= currentTick; tick++) {
+            expireBucket((int) (tick & wheelMask), currentTimeMillis);
+        }
+        lastTick = currentTick;
+    }
+
+    private void drainPending() {
+        int index = pendingHead.getAndSet(NIL);
+        while (index != NIL) {
+            int next = pendingNext[index];
+            pendingFlags.set(index, 0);
+            long key = keys.get(index);
+            long deadline = deadlines.get(index);
+            if ((key & STATE_READY) != 0 && deadline != NO_DEADLINE && keys.get(index) == key) {
+                link(index, bucketOf(deadline));
+            } else {
+                unlink(index);
+            }
+            index = next;
+        }
+    }
+
+    private void expireBucket(int bucket, long currentTimeMillis) {
+        int index = wheelHeads[bucket];
+        while (index != NIL) {
+            int next = wheelNext[index];
+            long key = keys.get(index);
+            long deadline = deadlines.get(index);
+            if ((key & STATE_READY) == 0 || deadline == NO_DEADLINE || keys.get(index) != key) {
+                // removed. (or reused, then it is in the pending stack)
+                unlink(index);
+            } else if (deadline <= currentTimeMillis) {
+                unlink(index);
+                long createTimestamp = createTimestamps.get(index);
+                RpcDone rpcDone = removeAt(index, key);
+                if (rpcDone != null) {
+                    try {
+                        rpcDone.doneTimeout((int) key, createTimestamp, deadline);
+                    } catch (Exception e) {
+                        logger.warn("doneTimeout exception. requestId = {}, message = {}.", (int) key, e.toString(), e);
+                    }
+                }
+            }
+            index = next;
+        }
+    }
+
+    private int bucketOf(long deadline) {
+        long tick = (deadline - startTimestamp + tickMillis - 1) / tickMillis;
+        return (int) (Math.max(tick, lastTick + 1) & wheelMask);
+    }
+
+    private void link(int index, int bucket) {
+        if (wheelBuckets[index] == bucket) {
+            return;
+        }
+        unlink(index);
+        int head = wheelHeads[bucket];
+        wheelNext[index] = head;
+        wheelPrev[index] = NIL;
+        if (head != NIL) {
+            wheelPrev[head] = index;
+        }
+        wheelHeads[bucket] = index;
+        wheelBuckets[index] = bucket;
+    }
+
+    private void unlink(int index) {
+        int bucket = wheelBuckets[index];
+        if (bucket == NIL) {
+            return;
+        }
+        int prev = wheelPrev[index];
+        int next = wheelNext[index];
+        if (prev == NIL) {
+            wheelHeads[bucket] = next;
+        } else {
+            wheelNext[prev] = next;
+        }
+        if (next != NIL) {
+            wheelPrev[next] = prev;
+        }
+        wheelBuckets[index] = NIL;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcDoneTable{capacity=" + (mask + 1) + ", overflow=" + overflowMap.size() + "}";
+    }
+}
@@ -1,15 +1,37 @@
 package com.github.netty.protocol.nrpc;
 
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Chunk stream of the server.
+ * flow control: the client grant the chunk count ({@link RpcPacket#TYPE_CLIENT_CHUNK_CREDIT}).
+ * if no credit, the chunk wait in the emitter until the client consume. {@link #isWritable()}, {@link #whenWritable(Runnable)}
+ * the old client never grant, then no flow control.
+ */
 public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
     private final Queue<Object> earlyChunkList = new LinkedList<>();
     private final AtomicBoolean completeFlag = new AtomicBoolean();
     private final AtomicInteger sendCount = new AtomicInteger();
+    /**
+     * the chunks wait the credit. (guarded by this)
+     */
+    private final Queue<CreditWaitChunk> creditWaitList = new ArrayDeque<>();
+    private final Queue<Runnable> writableListenerList = new ConcurrentLinkedQueue<>();
+    /**
+     * the cumulative chunk count granted by the client. -1 = no flow control
+     */
+    private volatile long creditLimit = -1;
+    private final AtomicLong writeChunkCount = new AtomicLong();
+    private boolean creditWaitComplete;
+    private Object creditWaitCompleteResult;
+    private int requestId;
     protected RpcPacket.RequestPacket request;
     protected RpcPacket.ResponseLastPacket lastResponse;
     protected RpcContext<RpcServerInstance> rpcContext;
@@ -26,11 +48,11 @@ public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
         }
         int chunkIndex = sendCount.getAndIncrement();
         if (usable) {
-            writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, null, chunkIndex);
+            writeChunk(chunk, null, null, 0, chunkIndex);
         } else {
             synchronized (this) {
                 if (usable) {
-                    writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, null, chunkIndex);
+                    writeChunk(chunk, null, null, 0, chunkIndex);
                 } else {
                     earlyChunkList.add(chunk);
                 }
@@ -49,11 +71,11 @@ public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
 
         int chunkIndex = sendCount.getAndIncrement();
         if (usable) {
-            return writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, new RpcServerChannelHandler.ChunkAckCallback<>(), responseType, responseTimeout, chunkIndex);
+            return writeChunk(chunk, new RpcServerChannelHandler.ChunkAckCallback<>(), responseType, responseTimeout, chunkIndex);
         } else {
             synchronized (this) {
                 if (usable) {
-                    return writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, new RpcServerChannelHandler.ChunkAckCallback<>(), responseType, responseTimeout, chunkIndex);
+                    return writeChunk(chunk, new RpcServerChannelHandler.ChunkAckCallback<>(), responseType, responseTimeout, chunkIndex);
                 } else {
                     ChunkAckPacket<T> packet = new ChunkAckPacket<>(chunk, responseType, responseTimeout);
                     earlyChunkList.add(packet);
@@ -78,11 +100,11 @@ public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
             return false;
         }
         if (usable) {
-            writeAndFlush(completeResult, RpcContext.RpcState.WRITE_FINISH, null, -1);
+            writeComplete(completeResult);
         } else {
             synchronized (this) {
                 if (usable) {
-                    writeAndFlush(completeResult, RpcContext.RpcState.WRITE_FINISH, null, -1);
+                    writeComplete(completeResult);
                 } else {
                     this.earlyCompleteResult = completeResult;
                 }
@@ -101,6 +123,120 @@ public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
         return sendCount.get();
     }
 
+    /**
+     * @return false = the client not consume, the chunks wait in the emitter. (the producer should pause)
+     */
+    @Override
+    public boolean isWritable() {
+        long creditLimit = this.creditLimit;
+        return creditLimit < 0 || sendCount.get() < creditLimit;
+    }
+
+    /**
+     * call the listener once when writable. (in the event loop if wait the credit, must not block)
+     *
+     * @param listener listener
+     */
+    @Override
+    public void whenWritable(Runnable listener) {
+        if (isWritable()) {
+            listener.run();
+            return;
+        }
+        writableListenerList.add(listener);
+        // the credit arrive before add
+        if (isWritable()) {
+            notifyWritable();
+        }
+    }
+
+    private void notifyWritable() {
+        Runnable listener;
+        while (isWritable() && (listener = writableListenerList.poll()) != null) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                rpcMethod.getLog().warn(rpcMethod + " emitter.whenWritable() exception = {}", e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * the client grant the credit. (in the event loop)
+     *
+     * @param creditLimit the cumulative chunk count
+     */
+    void onCredit(long creditLimit) {
+        synchronized (this) {
+            if (creditLimit <= this.creditLimit) {
+                return;
+            }
+            this.creditLimit = creditLimit;
+            if (!usable) {
+                // write on usable
+                return;
+            }
+            CreditWaitChunk wait;
+            while (writeChunkCount.get() < creditLimit && (wait = creditWaitList.poll()) != null) {
+                writeChunk0(wait.data, wait.ackCallback, wait.type, wait.timeout, wait.chunkIndex);
+            }
+            if (creditWaitComplete && creditWaitList.isEmpty()) {
+                Object result = creditWaitCompleteResult;
+                creditWaitComplete = false;
+                creditWaitCompleteResult = null;
+                writeComplete0(result);
+            }
+        }
+        notifyWritable();
+    }
+
+    public long getCreditLimit() {
+        return creditLimit;
+    }
+
+    private <T> RpcServerChannelHandler.ChunkAckCallback<T> writeChunk(Object chunk, RpcServerChannelHandler.ChunkAckCallback<T> ackCallback, Class<T> type, int timeout, int chunkIndex) {
+        if (creditLimit < 0) {
+            writeChunk0(chunk, ackCallback, type, timeout, chunkIndex);
+        } else {
+            synchronized (this) {
+                if (creditWaitList.isEmpty() && writeChunkCount.get() < creditLimit) {
+                    writeChunk0(chunk, ackCallback, type, timeout, chunkIndex);
+                } else {
+                    creditWaitList.add(new CreditWaitChunk(chunk, ackCallback, type, timeout, chunkIndex));
+                }
+            }
+        }
+        return ackCallback;
+    }
+
+    private void writeChunk0(Object chunk, RpcServerChannelHandler.ChunkAckCallback ackCallback, Class type, int timeout, int chunkIndex) {
+        writeChunkCount.incrementAndGet();
+        if (ackCallback != null) {
+            writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, ackCallback, type, timeout, chunkIndex);
+        } else {
+            writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, null, chunkIndex);
+        }
+    }
+
+    private void writeComplete(Object completeResult) {
+        if (creditLimit >= 0) {
+            synchronized (this) {
+                if (!creditWaitList.isEmpty()) {
+                    // after the waiting chunks
+                    creditWaitComplete = true;
+                    creditWaitCompleteResult = completeResult;
+                    return;
+                }
+            }
+        }
+        writeComplete0(completeResult);
+    }
+
+    private void writeComplete0(Object completeResult) {
+        channelHandler.detachEmitter(requestId, this);
+        writeAndFlush(completeResult, RpcContext.RpcState.WRITE_FINISH, null, -1);
+    }
+
     void usable(RpcPacket.RequestPacket request,
                 RpcPacket.ResponseLastPacket lastResponse,
                 RpcContext<RpcServerInstance> rpcContext,
@@ -113,24 +249,28 @@ public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
         this.channelHandler = channelHandler;
         this.rpcMethod = rpcMethod;
         this.rpcRunnable = rpcRunnable;
+        this.requestId = request.getRequestId();
         synchronized (this) {
+            // the credit arrived before
+            channelHandler.attachEmitter(requestId, this);
             Object chunk;
             int chunkIndex = 0;
             while (null != (chunk = earlyChunkList.poll())) {
                 if (chunk instanceof ChunkAckPacket) {
                     ChunkAckPacket<Object> packet = (ChunkAckPacket) chunk;
-                    writeAndFlush(packet.data, RpcContext.RpcState.WRITE_CHUNK, packet.ackCallback, packet.type, packet.timeout, chunkIndex);
+                    writeChunk(packet.data, packet.ackCallback, packet.type, packet.timeout, chunkIndex);
                 } else {
-                    writeAndFlush(chunk, RpcContext.RpcState.WRITE_CHUNK, null, chunkIndex);
+                    writeChunk(chunk, null, null, 0, chunkIndex);
                 }
                 chunkIndex++;
             }
             if (earlyCompleteResult != null) {
-                writeAndFlush(earlyCompleteResult, RpcContext.RpcState.WRITE_FINISH, null, -1);
+                writeComplete(earlyCompleteResult);
                 this.earlyCompleteResult = null;
             }
             this.usable = true;
         }
+        notifyWritable();
     }
 
     protected void writeAndFlush(Object data, State state, RpcServerChannelHandler.ChunkAckCallback ackCallback, int chunkIndex) {
@@ -156,6 +296,22 @@ public class RpcEmitter<RESULT, CHUNK> implements Emitter<RESULT, CHUNK> {
         return ackCallback;
     }
 
+    private static class CreditWaitChunk {
+        final Object data;
+        final RpcServerChannelHandler.ChunkAckCallback ackCallback;
+        final Class type;
+        final int timeout;
+        final int chunkIndex;
+
+        CreditWaitChunk(Object data, RpcServerChannelHandler.ChunkAckCallback ackCallback, Class type, int timeout, int chunkIndex) {
+            this.data = data;
+            this.ackCallback = ackCallback;
+            this.type = type;
+            this.timeout = timeout;
+            this.chunkIndex = chunkIndex;
+        }
+    }
+
     static class ChunkAckPacket<T> {
         final RpcServerChannelHandler.ChunkAckCallback<T> ackCallback = new RpcServerChannelHandler.ChunkAckCallback<>();
         Object data;
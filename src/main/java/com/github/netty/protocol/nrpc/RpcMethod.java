@@ -1,6 +1,7 @@
 package com.github.netty.protocol.nrpc;
 
 import com.github.netty.annotation.NRpcMethod;
+import com.github.netty.annotation.NRpcService;
 import com.github.netty.core.util.ClassFileMethodToParameterNamesFunction;
 import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.LoggerX;
@@ -56,14 +57,23 @@ public class RpcMethod<INSTANCE> {
     private final boolean returnTypeJdk9PublisherFlag;
     private final boolean returnTypeReactivePublisherFlag;
     private final boolean innerMethodFlag;
+    private final boolean returnEmitterFlag;
+    /**
+     * invoke in the event loop of the channel. {@link NRpcMethod#eventLoop()}, {@link NRpcService#eventLoop()}
+     */
+    private final boolean eventLoopFlag;
     private final String methodDescriptorName;
     private final String parameterTypeDescriptorName;
     private final MethodHandle methodHandle;
+    /**
+     * (Object instance, Object[] args)Object. the exact type of {@link MethodHandle#invokeExact(Object...)}
+     */
+    private final MethodHandle invoker;
     private final int parameterCount;
     private String loggerName;
 
     private RpcMethod(INSTANCE instance, Method method, String[] parameterNames, String methodName,
-                      NRpcMethod methodAnnotation,
+                      NRpcMethod methodAnnotation, NRpcService serviceAnnotation,
                       boolean returnTypeJdk9PublisherFlag, boolean returnTypeReactivePublisherFlag,
                       boolean returnRxjava3ObservableFlag, boolean returnRxjava3FlowableFlag) {
         this.instance = instance;
@@ -78,6 +88,9 @@ public class RpcMethod<INSTANCE> {
         this.returnChunkCompletionFlag = RpcClientChunkCompletableFuture.class.isAssignableFrom(method.getReturnType());
         this.returnCompletionStageFlag = CompletionStage.class.isAssignableFrom(method.getReturnType());
         this.returnFutureFlag = Future.class.isAssignableFrom(method.getReturnType());
+        this.returnEmitterFlag = RpcEmitter.class.isAssignableFrom(method.getReturnType());
+        this.eventLoopFlag = (methodAnnotation != null && methodAnnotation.eventLoop())
+                || (serviceAnnotation != null && serviceAnnotation.eventLoop() && isReturnNonBlocking());
         this.parameterTypes = method.getParameterTypes();
         if (isReturnAsync()) {
             this.genericReturnType = getParameterizedType(method, 0);
@@ -105,6 +118,29 @@ public class RpcMethod<INSTANCE> {
             methodHandle = null;
         }
         this.methodHandle = methodHandle;
+        this.invoker = newInvoker(method, methodHandle, parameterCount);
+    }
+
+    /**
+     * spread the args, and adapt the type once. (invokeWithArguments adapt and copy the args on every call)
+     *
+     * @param method         method
+     * @param methodHandle   the public method handle. null = not public
+     * @param parameterCount parameterCount
+     * @return (Object instance, Object[] args)Object. null = use reflect
+     */
+    private static MethodHandle newInvoker(Method method, MethodHandle methodHandle, int parameterCount) {
+        try {
+            if (methodHandle == null) {
+                // the method of the not public class
+                method.setAccessible(true);
+                methodHandle = MethodHandles.lookup().unreflect(method);
+            }
+            return methodHandle.asSpreader(Object[].class, parameterCount)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     public static String getMethodDescriptorName(Method method) {
@@ -131,6 +167,7 @@ public class RpcMethod<INSTANCE> {
 
     private static <INSTANCE> void initMethodsMap(INSTANCE instance, Class source, Map<String, RpcMethod<INSTANCE>> methodMap, Function<Method, String[]> methodToParameterNamesFunction, Function<Method, String> methodToNameFunction, boolean overwriteCheck) throws UnsupportedOperationException {
         Method[] methods = source.isInterface() ? source.getDeclaredMethods() : source.getMethods();
+        NRpcService serviceAnnotation = ReflectUtil.findAnnotation(source, NRpcService.class);
         for (Method method : methods) {
             Class<?> declaringClass = method.getDeclaringClass();
             if (declaringClass == Object.class) {
@@ -154,7 +191,7 @@ public class RpcMethod<INSTANCE> {
             boolean isReturnRxjava3FlowableFlag = isReturnType(RXJAVA3_FLOWABLE_CLASS, method);
             NRpcMethod methodAnnotation = method.getDeclaredAnnotation(NRpcMethod.class);
             RpcMethod<INSTANCE> newMethod = new RpcMethod<>(instance, method, parameterNames, methodName,
-                    methodAnnotation, isReturnTypeJdk9Publisher, isReturnTypeReactivePublisher,
+                    methodAnnotation, serviceAnnotation, isReturnTypeJdk9Publisher, isReturnTypeReactivePublisher,
                     isReturnRxjava3ObservableFlag, isReturnRxjava3FlowableFlag);
             RpcMethod<INSTANCE> oldMethod = methodMap.put(newMethod.getMethodDescriptorName(), newMethod);
             boolean existOverwrite = oldMethod != null;
@@ -221,6 +258,34 @@ public class RpcMethod<INSTANCE> {
         return methodAnnotation != null && methodAnnotation.timeoutInterrupt();
     }
 
+    /**
+     * @return -1 is disable. {@link NRpcMethod#hedgeDelay()}
+     */
+    public int getHedgeDelay() {
+        return methodAnnotation != null ? methodAnnotation.hedgeDelay() : -1;
+    }
+
+    /**
+     * @return {@link NRpcMethod#retries()}
+     */
+    public int getRetries() {
+        return methodAnnotation != null ? methodAnnotation.retries() : 0;
+    }
+
+    /**
+     * @return true = collect the calls to the batch method. {@link NRpcMethod#batch()}
+     */
+    public boolean isBatch() {
+        return methodAnnotation != null && !methodAnnotation.batch().isEmpty();
+    }
+
+    /**
+     * @return true = cache the response in the client. {@link NRpcMethod#cacheExpiry()}
+     */
+    public boolean isCache() {
+        return methodAnnotation != null && methodAnnotation.cacheExpiry() > 0;
+    }
+
     public boolean isInnerMethodFlag() {
         return innerMethodFlag;
     }
@@ -255,6 +320,23 @@ public class RpcMethod<INSTANCE> {
                 || isReturnTypeJdk9PublisherFlag();
     }
 
+    public boolean isReturnEmitterFlag() {
+        return returnEmitterFlag;
+    }
+
+    /**
+     * the method return before the result done. (async or emitter)
+     *
+     * @return true = non-blocking
+     */
+    public boolean isReturnNonBlocking() {
+        return isReturnAsync() || returnEmitterFlag;
+    }
+
+    public boolean isEventLoop() {
+        return eventLoopFlag;
+    }
+
     public boolean isReturnTypeJdk9PublisherFlag() {
         return returnTypeJdk9PublisherFlag;
     }
@@ -309,11 +391,8 @@ public class RpcMethod<INSTANCE> {
     }
 
     public Object invoke(Object instance, Object[] args) throws Throwable {
-        if (methodHandle != null) {
-            Object[] methodHandleArgs = new Object[parameterCount + 1];
-            methodHandleArgs[0] = instance;
-            System.arraycopy(args, 0, methodHandleArgs, 1, args.length);
-            return methodHandle.invokeWithArguments(methodHandleArgs);
+        if (invoker != null) {
+            return invoker.invokeExact(instance, args);
         } else {
             return method.invoke(instance, args);
         }
@@ -3,6 +3,9 @@ package com.github.netty.protocol.nrpc;
 import com.github.netty.core.util.Recyclable;
 import com.github.netty.core.util.Recycler;
 import com.github.netty.protocol.nrpc.codec.DataCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.ReferenceCountUtil;
 
 import java.util.StringJoiner;
 import java.util.function.Consumer;
@@ -14,10 +17,18 @@ import java.util.function.Consumer;
  * ---------------------------------------------------------------|
  * | client                       |           server              |
  * |--------------------------------------------------------------|
+ * | TYPE_SYMBOL_HELLO -》        |                               |
+ * |                              |      《- TYPE_SYMBOL_HELLO    |
  * | TYPE_CLIENT_REQUEST -》      |                               |
+ * |  (or _SYMBOL_DEFINE/_SYMBOL) |                               |
+ * | TYPE_CLIENT_CHUNK_CREDIT -》 |  (window of the chunks)       |
  * |                              |      《- TYPE_RESPONSE_CHUNK  |
  * | TYPE_RESPONSE_CHUNK_ACK  -》 |                               |
+ * | TYPE_CLIENT_CHUNK_CREDIT -》 |  (consumed, batch the acks)   |
  * |                              |      《- TYPE_RESPONSE_LAST   |
+ * | TYPE_CLIENT_CANCEL -》       |  (the hedged request lose)    |
+ * |                              |      《- TYPE_SERVER_CACHE_   |
+ * |                              |         INVALIDATE (push)    |
  * ----------------------------------------------------------------
  * </pre>
  * 2019/3/17/017.
@@ -41,6 +52,46 @@ public class RpcPacket implements Recyclable {
      * rpc response data
      */
     public static final byte TYPE_RESPONSE_LAST = 2;
+    /**
+     * negotiate the interned ids. (the old peer ignore it)
+     *
+     * @see com.github.netty.protocol.nrpc.codec.RpcSymbolTable
+     */
+    public static final byte TYPE_SYMBOL_HELLO = 7;
+    /**
+     * rpc request args. full name and bind the id to the name
+     */
+    public static final byte TYPE_CLIENT_REQUEST_SYMBOL_DEFINE = 8;
+    /**
+     * rpc request args. only the id of the name
+     */
+    public static final byte TYPE_CLIENT_REQUEST_SYMBOL = 9;
+    /**
+     * the client no longer wait the response. data = request id (4 byte). (the old server ignore it)
+     *
+     * @see RpcClient#cancel(int)
+     */
+    public static final byte TYPE_CLIENT_CANCEL = 10;
+    /**
+     * flow control of the chunks. the client can receive the chunks until the count. (the old server ignore it)
+     * data = request id (4 byte) + cumulative chunk count (8 byte) + the acked chunk id without data (4 byte * n)
+     *
+     * @see RpcEmitter#isWritable()
+     * @see RpcClientChunkCompletableFuture#creditWindow(int)
+     */
+    public static final byte TYPE_CLIENT_CHUNK_CREDIT = 11;
+    /**
+     * the server push. remove the cached responses of the client. (the old client ignore it)
+     * data = hash of the args (4 byte) + 1 is by args, 0 is all the calls (1 byte) + "requestMappingName:version/methodName" (utf8)
+     *
+     * @see RpcClientCache
+     */
+    public static final byte TYPE_SERVER_CACHE_INVALIDATE = 12;
+    /**
+     * the feature bits of the server. (the second int of the {@link #TYPE_SYMBOL_HELLO} reply)
+     * the server accept the acks in the {@link #TYPE_CLIENT_CHUNK_CREDIT}
+     */
+    public static final int FEATURE_CHUNK_CREDIT_ACK = 1;
 
     public static final byte ACK_NO = 0;
     public static final byte ACK_YES = 1;
@@ -52,6 +103,11 @@ public class RpcPacket implements Recyclable {
      */
     private byte ack = ACK_NO;
     private byte[] data;
+    /**
+     * the data without copy. (outbound = encoded by the codec, inbound = the slice of the frame)
+     * take precedence over {@link #data}
+     */
+    private ByteBuf dataBuf;
     private long packetLength;
 
     public RpcPacket(int packetType) {
@@ -78,7 +134,18 @@ public class RpcPacket implements Recyclable {
         return packetType;
     }
 
+    /**
+     * Get the data. (if the data is a buffer, copy it to byte[])
+     *
+     * @return data
+     */
     public byte[] getData() {
+        byte[] data = this.data;
+        ByteBuf dataBuf = this.dataBuf;
+        if (data == null && dataBuf != null) {
+            data = ByteBufUtil.getBytes(dataBuf);
+            this.data = data;
+        }
         return data;
     }
 
@@ -86,6 +153,39 @@ public class RpcPacket implements Recyclable {
         this.data = data;
     }
 
+    public ByteBuf getDataBuf() {
+        return dataBuf;
+    }
+
+    /**
+     * Set the data buffer. the packet owns the buffer, and release it on {@link #releaseDataBuf()}
+     *
+     * @param dataBuf dataBuf
+     */
+    public void setDataBuf(ByteBuf dataBuf) {
+        this.dataBuf = dataBuf;
+    }
+
+    public int getDataLength() {
+        ByteBuf dataBuf = this.dataBuf;
+        if (dataBuf != null) {
+            return dataBuf.readableBytes();
+        }
+        byte[] data = this.data;
+        return data == null ? 0 : data.length;
+    }
+
+    /**
+     * Release the data buffer. (can call many times)
+     */
+    public void releaseDataBuf() {
+        ByteBuf dataBuf = this.dataBuf;
+        if (dataBuf != null) {
+            this.dataBuf = null;
+            ReferenceCountUtil.safeRelease(dataBuf);
+        }
+    }
+
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner(",", "{", "}")
@@ -102,7 +202,7 @@ public class RpcPacket implements Recyclable {
 
     @Override
     public void recycle() {
-
+        releaseDataBuf();
     }
 
     /**
@@ -115,6 +215,18 @@ public class RpcPacket implements Recyclable {
         private String version;
         private String methodName;
         private int timeout;
+        /**
+         * client side. the key of the interned id. (identity)
+         */
+        private Object symbolKey;
+        /**
+         * server side. the interned id. -1 = full name request
+         */
+        private int symbolId = -1;
+        /**
+         * server side. the request bind the symbolId
+         */
+        private boolean symbolDefine;
 
         private RequestPacket() {
             super(TYPE_CLIENT_REQUEST);
@@ -164,6 +276,33 @@ public class RpcPacket implements Recyclable {
             this.version = version;
         }
 
+        public Object getSymbolKey() {
+            return symbolKey;
+        }
+
+        public void setSymbolKey(Object symbolKey) {
+            this.symbolKey = symbolKey;
+        }
+
+        public int getSymbolId() {
+            return symbolId;
+        }
+
+        public void setSymbolId(int symbolId) {
+            this.symbolId = symbolId;
+        }
+
+        public boolean isSymbolDefine() {
+            return symbolDefine;
+        }
+
+        public void setSymbolDefine(boolean symbolDefine) {
+            this.symbolDefine = symbolDefine;
+        }
+
+        /**
+         * the server release the data buffer after decode the args. see {@link RpcServerInstance#invoke}
+         */
         @Override
         public void recycle() {
 //            RECYCLER.recycleInstance(this);
@@ -175,7 +314,7 @@ public class RpcPacket implements Recyclable {
             joiner.add("\"requestMappingName\":\"" + requestMappingName + "\"");
             joiner.add("\"version\":\"" + version + "\"");
             joiner.add("\"methodName\":\"" + methodName + "\"");
-            joiner.add("\"dataLength\":" + (getData() == null ? "null" : getData().length));
+            joiner.add("\"dataLength\":" + getDataLength());
         }
     }
 
@@ -191,6 +330,8 @@ public class RpcPacket implements Recyclable {
         public static final int NO_SUCH_METHOD = 404;
         //找不到服务
         public static final int NO_SUCH_SERVICE = 406;
+        //找不到服务名称的编号 (客户端用全名重发)
+        public static final int NO_SUCH_SYMBOL = 410;
         //服务器错误
         public static final int SERVER_ERROR = 500;
         private int requestId;
@@ -281,6 +422,7 @@ public class RpcPacket implements Recyclable {
 
         @Override
         public void recycle() {
+            releaseDataBuf();
 //            this.message = null;
 //            this.encode = null;
 //            this.setData(null);
@@ -297,7 +439,7 @@ public class RpcPacket implements Recyclable {
                 joiner.add("\"message\":\"" + message.replace("\"", "\\\\\"") + "\"");
             }
             joiner.add("\"encode\":\"" + encode + "\"");
-            joiner.add("\"dataLength\":" + (getData() == null ? "null" : getData().length));
+            joiner.add("\"dataLength\":" + getDataLength());
         }
     }
 
@@ -7,16 +7,22 @@ import com.github.netty.core.util.ClassFileMethodToParameterNamesFunction;
 import com.github.netty.protocol.nrpc.codec.RpcDecoder;
 import com.github.netty.protocol.nrpc.codec.RpcEncoder;
 import com.github.netty.protocol.nrpc.service.RpcCommandServiceImpl;
+import com.github.netty.protocol.nrpc.service.RpcDBReplicationServiceImpl;
 import com.github.netty.protocol.nrpc.service.RpcDBServiceImpl;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.github.netty.protocol.nrpc.RpcServerChannelHandler.getRequestMappingName;
 
@@ -28,12 +34,36 @@ import static com.github.netty.protocol.nrpc.RpcServerChannelHandler.getRequestM
  */
 public class RpcServer extends AbstractNettyServer {
     private final Map<Object, Instance> instanceMap = new LinkedHashMap<>();
+    /**
+     * the connections. push the {@link RpcPacket#TYPE_SERVER_CACHE_INVALIDATE}
+     */
+    private final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     private final AnnotationMethodToMethodNameFunction annotationMethodToMethodNameFunction = new AnnotationMethodToMethodNameFunction(NRpcMethod.class);
 
     /**
      * Maximum message length per pass
      */
     private int messageMaxLength = 10 * 1024 * 1024;
+    /**
+     * Allow the client to call by the interned (service, version, method) id
+     */
+    private boolean enableSymbolId = true;
+    /**
+     * The responses and chunks cost one flush per event loop task
+     */
+    private boolean enableWriteBatch = true;
+    private int writeBatchMaxPackets = 128;
+    private int writeBatchMaxBytes = 64 * 1024;
+    /**
+     * The thread pool of the methods. null = invoke in the event loop
+     */
+    private Supplier<Executor> executorSupplier;
+    /**
+     * Invoke all the non-blocking methods in the event loop, not the thread pool
+     */
+    private boolean eventLoopAsyncMethod = false;
+    private int eventLoopBlockedWarnMillis = 10;
+    private final RpcDBServiceImpl dbService = new RpcDBServiceImpl();
 
     public RpcServer(int port) {
         this("", port);
@@ -48,7 +78,15 @@ public class RpcServer extends AbstractNettyServer {
         //The RPC basic command service is enabled by default
         addInstance(new RpcCommandServiceImpl());
         //Enabled DB service by default
-        addInstance(new RpcDBServiceImpl());
+        addInstance(dbService);
+        addInstance(new RpcDBReplicationServiceImpl(dbService));
+    }
+
+    /**
+     * @return the DB service. {@link RpcDBServiceImpl#setReplicationLog(com.github.netty.protocol.nrpc.service.RpcDBReplicationLog)} enable the primary
+     */
+    public RpcDBServiceImpl getDbService() {
+        return dbService;
     }
 
     public AnnotationMethodToMethodNameFunction getAnnotationMethodToMethodNameFunction() {
@@ -76,7 +114,7 @@ public class RpcServer extends AbstractNettyServer {
      */
     public void addInstance(Object instance, String requestMappingName, String version, Function<Method, String[]> methodToParameterNamesFunction) {
         Integer timeout = RpcServerInstance.getTimeout(instance.getClass());
-        instanceMap.put(instance, new Instance(instance, requestMappingName, version, timeout, methodToParameterNamesFunction));
+        instanceMap.put(instance, new Instance(instance, requestMappingName, version, timeout, methodToParameterNamesFunction, annotationMethodToMethodNameFunction));
     }
 
     /**
@@ -89,13 +127,49 @@ public class RpcServer extends AbstractNettyServer {
      * @param methodToParameterNamesFunction methodToParameterNamesFunction
      */
     public void addInstance(Object instance, String requestMappingName, String version, Integer timeout, Function<Method, String[]> methodToParameterNamesFunction) {
-        instanceMap.put(instance, new Instance(instance, requestMappingName, version, timeout, methodToParameterNamesFunction));
+        instanceMap.put(instance, new Instance(instance, requestMappingName, version, timeout, methodToParameterNamesFunction, annotationMethodToMethodNameFunction));
     }
 
     public boolean existInstance(Object instance) {
         return instanceMap.containsKey(instance);
     }
 
+    /**
+     * @param instance The implementation class
+     * @return the instance of all the channels. (e.g. the metrics of {@link RpcServerInstance#getBatchers()})
+     */
+    public RpcServerInstance getRpcServerInstance(Object instance) {
+        Instance value = instanceMap.get(instance);
+        return value != null ? value.rpcServerInstance : null;
+    }
+
+    /**
+     * Tell the clients to remove the cached responses. {@link NRpcMethod#cacheExpiry()}
+     *
+     * @param instance   The implementation class
+     * @param methodName the rpc method name. null is all the methods of the instance
+     * @param args       the arguments of the cached call. null is all the calls of the method
+     * @return the count of the notified connections
+     */
+    public int invalidateClientCache(Object instance, String methodName, Object[] args) {
+        Instance value = instanceMap.get(instance);
+        if (value == null) {
+            throw new IllegalArgumentException("not found instance " + instance.getClass().getSimpleName());
+        }
+        String requestMappingName = value.requestMappingName;
+        if (requestMappingName == null || requestMappingName.isEmpty()) {
+            requestMappingName = RpcServerChannelHandler.generateRequestMappingName(instance.getClass());
+        }
+        int count = 0;
+        for (Channel channel : channelGroup) {
+            if (channel.isActive()) {
+                channel.writeAndFlush(RpcClientCache.newInvalidatePacket(requestMappingName, value.version, methodName, args));
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Initialize all processors
      *
@@ -106,9 +180,17 @@ public class RpcServer extends AbstractNettyServer {
         return new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel ch) throws Exception {
+                channelGroup.add(ch);
                 RpcServerChannelHandler rpcServerHandler = new RpcServerChannelHandler();
+                rpcServerHandler.setEnableSymbolId(enableSymbolId);
+                rpcServerHandler.setEnableWriteBatch(enableWriteBatch);
+                rpcServerHandler.setWriteBatchMaxPackets(writeBatchMaxPackets);
+                rpcServerHandler.setWriteBatchMaxBytes(writeBatchMaxBytes);
+                rpcServerHandler.setExecutorSupplier(executorSupplier);
+                rpcServerHandler.setEventLoopAsyncMethod(eventLoopAsyncMethod);
+                rpcServerHandler.setEventLoopBlockedWarnMillis(eventLoopBlockedWarnMillis);
                 for (Instance instance : instanceMap.values()) {
-                    rpcServerHandler.addInstance(instance.instance, instance.requestMappingName, instance.version, instance.methodToParameterNamesFunction, annotationMethodToMethodNameFunction, true);
+                    rpcServerHandler.addRpcServerInstance(instance.requestMappingName, instance.version, instance.rpcServerInstance);
                 }
 
                 ChannelPipeline pipeline = ch.pipeline();
@@ -130,19 +212,80 @@ public class RpcServer extends AbstractNettyServer {
         this.messageMaxLength = messageMaxLength;
     }
 
+    public boolean isEnableSymbolId() {
+        return enableSymbolId;
+    }
+
+    public void setEnableSymbolId(boolean enableSymbolId) {
+        this.enableSymbolId = enableSymbolId;
+    }
+
+    public boolean isEnableWriteBatch() {
+        return enableWriteBatch;
+    }
+
+    public void setEnableWriteBatch(boolean enableWriteBatch) {
+        this.enableWriteBatch = enableWriteBatch;
+    }
+
+    public int getWriteBatchMaxPackets() {
+        return writeBatchMaxPackets;
+    }
+
+    public void setWriteBatchMaxPackets(int writeBatchMaxPackets) {
+        this.writeBatchMaxPackets = writeBatchMaxPackets;
+    }
+
+    public int getWriteBatchMaxBytes() {
+        return writeBatchMaxBytes;
+    }
+
+    public void setWriteBatchMaxBytes(int writeBatchMaxBytes) {
+        this.writeBatchMaxBytes = writeBatchMaxBytes;
+    }
+
+    public Supplier<Executor> getExecutorSupplier() {
+        return executorSupplier;
+    }
+
+    public void setExecutorSupplier(Supplier<Executor> executorSupplier) {
+        this.executorSupplier = executorSupplier;
+    }
+
+    public boolean isEventLoopAsyncMethod() {
+        return eventLoopAsyncMethod;
+    }
+
+    public void setEventLoopAsyncMethod(boolean eventLoopAsyncMethod) {
+        this.eventLoopAsyncMethod = eventLoopAsyncMethod;
+    }
+
+    public int getEventLoopBlockedWarnMillis() {
+        return eventLoopBlockedWarnMillis;
+    }
+
+    public void setEventLoopBlockedWarnMillis(int eventLoopBlockedWarnMillis) {
+        this.eventLoopBlockedWarnMillis = eventLoopBlockedWarnMillis;
+    }
+
     static class Instance {
         Object instance;
         String requestMappingName;
         String version;
         Integer timeout;
         Function<Method, String[]> methodToParameterNamesFunction;
+        /**
+         * share by all the channels. (the batch of {@link NRpcMethod#batch()} collect the calls of all the channels)
+         */
+        RpcServerInstance rpcServerInstance;
 
-        Instance(Object instance, String requestMappingName, String version, Integer timeout, Function<Method, String[]> methodToParameterNamesFunction) {
+        Instance(Object instance, String requestMappingName, String version, Integer timeout, Function<Method, String[]> methodToParameterNamesFunction, Function<Method, String> methodToNameFunction) {
             this.instance = instance;
             this.requestMappingName = requestMappingName;
             this.version = version;
             this.timeout = timeout;
             this.methodToParameterNamesFunction = methodToParameterNamesFunction;
+            this.rpcServerInstance = new RpcServerInstance(instance, null, version, timeout, methodToParameterNamesFunction, methodToNameFunction, true);
         }
     }
 }
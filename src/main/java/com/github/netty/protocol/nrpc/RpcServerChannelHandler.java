@@ -6,13 +6,17 @@ import com.github.netty.core.AbstractChannelHandler;
 import com.github.netty.core.util.*;
 import com.github.netty.protocol.nrpc.codec.DataCodec;
 import com.github.netty.protocol.nrpc.codec.DataCodecUtil;
+import com.github.netty.protocol.nrpc.codec.RpcSymbolTable;
 import com.github.netty.protocol.nrpc.exception.RpcResponseException;
 import com.github.netty.protocol.nrpc.exception.RpcTimeoutException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -23,6 +27,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -39,9 +44,19 @@ import static com.github.netty.protocol.nrpc.codec.DataCodec.Encode.BINARY;
  */
 public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, Object> {
     private static final LoggerX logger = LoggerFactoryX.getLogger(RpcServerChannelHandler.class);
+    private static final int CANCEL_SLOTS_MASK = 1023;
+    private static final long EARLY_CREDIT_EXPIRY_MS = 60000;
 
     protected final ExpiryLRUMap<RpcRunnable, RpcRunnable> rpcServerMethodDoneMap = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
     protected final ExpiryLRUMap<Integer, ChunkAckCallback> rpcChunkAckCallbackMap = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    /**
+     * key = request id. the chunk streams of the connection, for the credit. {@link RpcPacket#TYPE_CLIENT_CHUNK_CREDIT}
+     */
+    private final Map<Integer, RpcEmitter> emitterMap = new ConcurrentHashMap<>(8);
+    /**
+     * the credit arrive before the method return the emitter. (expiry if the method not return emitter)
+     */
+    private final ExpiryLRUMap<Integer, Long> earlyCreditMap = new ExpiryLRUMap<>(16, Long.MAX_VALUE, EARLY_CREDIT_EXPIRY_MS, null);
     private final Map<String, RpcServerInstance> serviceInstanceMap = new ConcurrentHashMap<>(8);
     private final List<RpcServerAop> nettyRpcServerAopList = new CopyOnWriteArrayList<>();
     private final AtomicInteger chunkIdIncr = new AtomicInteger();
@@ -52,6 +67,38 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
     private ChannelHandlerContext context;
     private Supplier<Executor> executorSupplier;
     private Executor executor;
+    /**
+     * reply the {@link RpcPacket#TYPE_SYMBOL_HELLO}. the client can call by the interned id
+     */
+    private boolean enableSymbolId = true;
+    /**
+     * the responses and chunks cost one flush per event loop task. {@link ChannelBatchWriter}
+     */
+    private boolean enableWriteBatch = true;
+    private int writeBatchMaxPackets = 128;
+    private int writeBatchMaxBytes = 64 * 1024;
+    /**
+     * invoke all the non-blocking methods (return CompletableFuture, RpcEmitter, Publisher...) in the event loop.
+     * false = only the method of {@link com.github.netty.annotation.NRpcMethod#eventLoop()}, {@link NRpcService#eventLoop()}
+     */
+    private boolean eventLoopAsyncMethod = false;
+    /**
+     * warn if the method in the event loop cost more than this. (<= 0 is disable)
+     */
+    private int eventLoopBlockedWarnMillis = 10;
+    private long eventLoopBlockedCount;
+    private long eventLoopBlockedWarnTimestamp;
+    /**
+     * index = interned id of this connection. (only access in the event loop)
+     */
+    private RpcServerInstance[] symbolInstances = new RpcServerInstance[0];
+    private RpcMethod<RpcServerInstance>[] symbolMethods = new RpcMethod[0];
+    /**
+     * index = request id & {@link #CANCEL_SLOTS_MASK}. the runnable in the thread pool can cancel by {@link RpcPacket#TYPE_CLIENT_CANCEL}.
+     * create on the channel active, so the requests before the first cancel can also cancel.
+     */
+    private volatile AtomicReferenceArray<RpcRunnable> cancelSlots;
+    private long cancelCount;
 
     public RpcServerChannelHandler() {
         this(DataCodecUtil.newDataCodec());
@@ -183,11 +230,19 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                 response.setData((byte[]) result);
             } else {
                 response.setEncode(DataCodec.Encode.APP);
-                if (state == RpcContext.RpcState.WRITE_CHUNK) {
-                    response.setData(channelHandler.dataCodec.encodeChunkResponseData(result));
-                } else {
-                    response.setData(channelHandler.dataCodec.encodeResponseData(result, rpcMethod));
+                // encode into the buffer of the frame. (no copy)
+                ByteBuf dataBuf = ByteBufAllocator.DEFAULT.ioBuffer();
+                try {
+                    if (state == RpcContext.RpcState.WRITE_CHUNK) {
+                        channelHandler.dataCodec.encodeChunkResponseData(result, dataBuf);
+                    } else {
+                        channelHandler.dataCodec.encodeResponseData(result, rpcMethod, dataBuf);
+                    }
+                } catch (Throwable t) {
+                    dataBuf.release();
+                    throw t;
                 }
+                response.setDataBuf(dataBuf);
             }
             response.setStatus(OK);
             response.setMessage("ok");
@@ -216,9 +271,68 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         this.executorSupplier = executorSupplier;
     }
 
+    public boolean isEnableWriteBatch() {
+        return enableWriteBatch;
+    }
+
+    public void setEnableWriteBatch(boolean enableWriteBatch) {
+        this.enableWriteBatch = enableWriteBatch;
+    }
+
+    public int getWriteBatchMaxPackets() {
+        return writeBatchMaxPackets;
+    }
+
+    public void setWriteBatchMaxPackets(int writeBatchMaxPackets) {
+        this.writeBatchMaxPackets = writeBatchMaxPackets;
+    }
+
+    public int getWriteBatchMaxBytes() {
+        return writeBatchMaxBytes;
+    }
+
+    public void setWriteBatchMaxBytes(int writeBatchMaxBytes) {
+        this.writeBatchMaxBytes = writeBatchMaxBytes;
+    }
+
+    public boolean isEventLoopAsyncMethod() {
+        return eventLoopAsyncMethod;
+    }
+
+    public void setEventLoopAsyncMethod(boolean eventLoopAsyncMethod) {
+        this.eventLoopAsyncMethod = eventLoopAsyncMethod;
+    }
+
+    public int getEventLoopBlockedWarnMillis() {
+        return eventLoopBlockedWarnMillis;
+    }
+
+    public void setEventLoopBlockedWarnMillis(int eventLoopBlockedWarnMillis) {
+        this.eventLoopBlockedWarnMillis = eventLoopBlockedWarnMillis;
+    }
+
+    /**
+     * @return the count of the method in the event loop cost more than {@link #eventLoopBlockedWarnMillis}
+     */
+    public long getEventLoopBlockedCount() {
+        return eventLoopBlockedCount;
+    }
+
+    public boolean isEnableSymbolId() {
+        return enableSymbolId;
+    }
+
+    public void setEnableSymbolId(boolean enableSymbolId) {
+        this.enableSymbolId = enableSymbolId;
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         this.context = ctx;
+        this.cancelSlots = new AtomicReferenceArray<>(CANCEL_SLOTS_MASK + 1);
+        if (enableWriteBatch) {
+            ChannelBatchWriter.bind(ctx.channel(), writeBatchMaxPackets, writeBatchMaxBytes);
+        }
 
         RpcContext<RpcServerInstance> rpcContext = newRpcContext();
         rpcContext.setRemoteAddress((InetSocketAddress) ctx.channel().remoteAddress());
@@ -250,6 +364,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         } finally {
             CONTEXT_LOCAL.remove();
         }
+        emitterMap.clear();
         super.channelInactive(ctx);
     }
 
@@ -268,10 +383,31 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                 if (callback != null) {
                     callback.onAck(response);
                 }
+            } else if (packet.getPacketType() == TYPE_SYMBOL_HELLO) {
+                if (enableSymbolId) {
+                    // max symbol count + feature bits. (the old client read the first int)
+                    byte[] helloData = new byte[IOUtil.INT_LENGTH * 2];
+                    IOUtil.setInt(helloData, 0, RpcSymbolTable.getOrCreate(ctx.channel()).getMaxSymbolCount());
+                    IOUtil.setInt(helloData, IOUtil.INT_LENGTH, FEATURE_CHUNK_CREDIT_ACK);
+                    RpcPacket hello = new RpcPacket(TYPE_SYMBOL_HELLO);
+                    hello.setData(helloData);
+                    ctx.writeAndFlush(hello).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                }
+            } else if (packet.getPacketType() == TYPE_CLIENT_CHUNK_CREDIT) {
+                byte[] data = packet.getData();
+                if (data != null && data.length >= IOUtil.INT_LENGTH + IOUtil.LONG_LENGTH) {
+                    onChunkCredit(data);
+                }
+            } else if (packet.getPacketType() == TYPE_CLIENT_CANCEL) {
+                byte[] data = packet.getData();
+                if (data != null && data.length >= IOUtil.INT_LENGTH) {
+                    onCancel(IOUtil.getInt(data, 0));
+                }
             }
         } finally {
             // recycle
             if (!async) {
+                packet.releaseDataBuf();
                 packet.recycle();
                 if (rpcContext != null) {
                     rpcContext.recycle();
@@ -289,9 +425,30 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             rpcContext.setRequest(request);
             rpcContext.setRpcBeginTimestamp(System.currentTimeMillis());
 
+            RpcServerInstance rpcInstance;
+            RpcMethod<RpcServerInstance> rpcMethod;
+            int symbolId = request.getSymbolId();
+            if (symbolId != -1 && !request.isSymbolDefine() && symbolId < symbolMethods.length && symbolMethods[symbolId] != null) {
+                rpcInstance = symbolInstances[symbolId];
+                rpcMethod = symbolMethods[symbolId];
+            } else if (request.getRequestMappingName() == null) {
+                // not found symbol. the client resend by full name
+                rpcInstance = null;
+                rpcMethod = null;
+            } else {
+                rpcInstance = serviceInstanceMap.get(RpcServerInstance.getServerInstanceKey(request.getRequestMappingName(), request.getVersion()));
+                rpcMethod = rpcInstance != null ? rpcInstance.getRpcMethod(request.getMethodName()) : null;
+                if (symbolId != -1) {
+                    if (rpcMethod != null) {
+                        putSymbol(symbolId, rpcInstance, rpcMethod);
+                    } else {
+                        // the reused symbol id must not call the method bound before
+                        removeSymbol(symbolId);
+                    }
+                }
+            }
+
             // not found instance
-            String serverInstanceKey = RpcServerInstance.getServerInstanceKey(request.getRequestMappingName(), request.getVersion());
-            RpcServerInstance rpcInstance = serviceInstanceMap.get(serverInstanceKey);
             if (rpcInstance == null) {
                 if (request.getAck() == ACK_YES) {
                     ResponseLastPacket response = ResponsePacket.newLastPacket();
@@ -300,9 +457,14 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     try {
                         response.setRequestId(request.getRequestId());
                         response.setEncode(BINARY);
-                        response.setStatus(ResponsePacket.NO_SUCH_SERVICE);
-                        response.setMessage("not found service " + serverInstanceKey);
-                        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                        if (request.getRequestMappingName() == null) {
+                            response.setStatus(ResponsePacket.NO_SUCH_SYMBOL);
+                            response.setMessage("not found symbol " + symbolId);
+                        } else {
+                            response.setStatus(ResponsePacket.NO_SUCH_SERVICE);
+                            response.setMessage("not found service " + RpcServerInstance.getServerInstanceKey(request.getRequestMappingName(), request.getVersion()));
+                        }
+                        ChannelBatchWriter.writeAndFlush(ctx.channel(), response).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
                         release = false;
                     } finally {
                         if (release) {
@@ -311,7 +473,6 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     }
                 }
             } else {
-                RpcMethod<RpcServerInstance> rpcMethod = rpcInstance.getRpcMethod(request.getMethodName());
                 rpcContext.setRpcMethod(rpcMethod);
                 ResponseLastPacket response = ResponsePacket.newLastPacket();
                 rpcContext.setResponse(response);
@@ -323,7 +484,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     response.setMessage("not found method [" + request.getMethodName() + "]");
                     response.setData(null);
                     writeAndFlush(request.getAck(), response, rpcContext, RpcContext.RpcState.WRITE_FINISH);
-                } else if (threadPool != null) {
+                } else if (threadPool != null && !isInvokeInEventLoop(rpcMethod)) {
                     // invoke method by async and call event
                     int timeout = choseTimeout(rpcInstance.getTimeout(), rpcMethod.getTimeout(), request.getTimeout());
                     rpcContext.setTimeout(timeout);
@@ -331,19 +492,27 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     if (timeout > 0) {
                         rpcServerMethodDoneMap.put(runnable, runnable, timeout);
                     }
+                    AtomicReferenceArray<RpcRunnable> cancelSlots = this.cancelSlots;
+                    if (cancelSlots != null) {
+                        cancelSlots.set(runnable.requestId & CANCEL_SLOTS_MASK, runnable);
+                    }
                     // execute by rpc thread pool
                     threadPool.execute(runnable);
                     async = true;
                 } else {
-                    // invoke method by sync
+                    // invoke method by sync. (no thread pool, or the non-blocking method in the event loop)
                     CONTEXT_LOCAL.set(rpcContext);
                     Object result = null;
                     Throwable throwable = null;
+                    long beginNanos = threadPool != null ? System.nanoTime() : 0L;
                     try {
                         result = rpcInstance.invoke(rpcMethod, request, rpcContext, this);
                     } catch (Throwable t) {
                         throwable = t;
                     }
+                    if (threadPool != null) {
+                        checkEventLoopBlocked(rpcMethod, beginNanos);
+                    }
                     async = buildAndWriteAndFlush(request, response, rpcContext, this, rpcMethod, result, throwable, RpcContext.RpcState.WRITE_FINISH, null, null, -1, null);
                 }
             }
@@ -358,6 +527,120 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         return async;
     }
 
+    /**
+     * request id (4 byte) + cumulative chunk count (8 byte) + the acked chunk id without data (4 byte * n)
+     * (only access in the event loop)
+     */
+    private void onChunkCredit(byte[] data) {
+        int requestId = IOUtil.getInt(data, 0);
+        long creditLimit = IOUtil.getLong(data, IOUtil.INT_LENGTH);
+        RpcEmitter emitter;
+        synchronized (emitterMap) {
+            emitter = emitterMap.get(requestId);
+            if (emitter == null) {
+                Long early = earlyCreditMap.get(requestId);
+                if (early == null || early < creditLimit) {
+                    earlyCreditMap.put(requestId, creditLimit);
+                }
+            }
+        }
+        if (emitter != null) {
+            emitter.onCredit(creditLimit);
+        }
+        for (int i = IOUtil.INT_LENGTH + IOUtil.LONG_LENGTH; i + IOUtil.INT_LENGTH <= data.length; i += IOUtil.INT_LENGTH) {
+            ChunkAckCallback callback = rpcChunkAckCallbackMap.remove(IOUtil.getInt(data, i));
+            if (callback != null) {
+                callback.onAck(null);
+            }
+        }
+    }
+
+    void attachEmitter(int requestId, RpcEmitter emitter) {
+        Long early;
+        synchronized (emitterMap) {
+            emitterMap.put(requestId, emitter);
+            early = earlyCreditMap.remove(requestId);
+        }
+        if (early != null) {
+            emitter.onCredit(early);
+        }
+    }
+
+    void detachEmitter(int requestId, RpcEmitter emitter) {
+        emitterMap.remove(requestId, emitter);
+    }
+
+    /**
+     * the client no longer wait the response. (best effort)
+     * not start = skip the invoke. running = interrupt if {@link RpcMethod#isTimeoutInterrupt()}. done = skip the write.
+     * the method in the event loop is not cancelable. (only access in the event loop)
+     *
+     * @param requestId requestId
+     */
+    private void onCancel(int requestId) {
+        cancelCount++;
+        AtomicReferenceArray<RpcRunnable> cancelSlots = this.cancelSlots;
+        if (cancelSlots == null) {
+            return;
+        }
+        RpcRunnable runnable = cancelSlots.get(requestId & CANCEL_SLOTS_MASK);
+        if (runnable != null && runnable.requestId == requestId) {
+            runnable.cancel();
+        }
+    }
+
+    public long getCancelCount() {
+        return cancelCount;
+    }
+
+    private boolean isInvokeInEventLoop(RpcMethod<RpcServerInstance> rpcMethod) {
+        // the batch method only collect the call in the event loop. the batch is invoked in the thread pool
+        return rpcMethod.isEventLoop() || rpcMethod.isBatch() || (eventLoopAsyncMethod && rpcMethod.isReturnNonBlocking());
+    }
+
+    /**
+     * the method in the event loop must not block. the event loop serve all the channels of it.
+     * (only access in the event loop)
+     */
+    private void checkEventLoopBlocked(RpcMethod<RpcServerInstance> rpcMethod, long beginNanos) {
+        int warnMillis = this.eventLoopBlockedWarnMillis;
+        if (warnMillis <= 0) {
+            return;
+        }
+        long costMillis = (System.nanoTime() - beginNanos) / 1000000L;
+        if (costMillis < warnMillis) {
+            return;
+        }
+        eventLoopBlockedCount++;
+        // at most one warn per second of the channel
+        long now = System.currentTimeMillis();
+        if (now - eventLoopBlockedWarnTimestamp >= 1000L) {
+            eventLoopBlockedWarnTimestamp = now;
+            logger.warn("event loop blocked {}ms by method {}. thread = {}, blockedCount = {}, warnMillis = {}. the method in the event loop must not block, move the blocking work to other thread or disable the eventLoop of the method.",
+                    costMillis, rpcMethod, Thread.currentThread().getName(), eventLoopBlockedCount, warnMillis);
+        }
+    }
+
+    private void putSymbol(int symbolId, RpcServerInstance rpcInstance, RpcMethod<RpcServerInstance> rpcMethod) {
+        if (symbolId < 0 || symbolId >= RpcSymbolTable.DEFAULT_MAX_SYMBOL_COUNT) {
+            return;
+        }
+        if (symbolId >= symbolMethods.length) {
+            int newLength = Math.min(RpcSymbolTable.DEFAULT_MAX_SYMBOL_COUNT, Math.max(symbolId + 1, Math.max(16, symbolMethods.length << 1)));
+            symbolInstances = Arrays.copyOf(symbolInstances, newLength);
+            symbolMethods = Arrays.copyOf(symbolMethods, newLength);
+        }
+        symbolInstances[symbolId] = rpcInstance;
+        symbolMethods[symbolId] = rpcMethod;
+    }
+
+    private void removeSymbol(int symbolId) {
+        if (symbolId >= 0 && symbolId < symbolMethods.length) {
+            symbolInstances[symbolId] = null;
+            symbolMethods[symbolId] = null;
+        }
+    }
+
     private int newChunkId() {
         int id = chunkIdIncr.getAndIncrement();
         if (id == Integer.MAX_VALUE) {
@@ -408,7 +691,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         boolean release = true;
         try {
             if (ack == ACK_YES) {
-                context.writeAndFlush(response)
+                ChannelBatchWriter.writeAndFlush(context.channel(), response)
                         .addListener((ChannelFutureListener) future -> {
                             if (future.isSuccess()) {
                                 onStateUpdate(rpcContext, rpcState);
@@ -461,6 +744,12 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             rpcServerInstance.setDataCodec(dataCodec);
         }
         RpcServerInstance oldServerInstance = serviceInstanceMap.put(serverInstanceKey, rpcServerInstance);
+        if (oldServerInstance != null && context != null) {
+            context.executor().execute(() -> {
+                symbolInstances = new RpcServerInstance[0];
+                symbolMethods = new RpcMethod[0];
+            });
+        }
         if (oldServerInstance != null) {
             Object oldInstance = oldServerInstance.getInstance();
             logger.warn("override instance old={}, new={}",
@@ -552,14 +841,24 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     startTimestamp, expiryTimestamp));
         }
 
+        /**
+         * @param packet null = the ack without data. (batch in the {@link RpcPacket#TYPE_CLIENT_CHUNK_CREDIT})
+         */
         public void onAck(ResponseChunkAckPacket packet) {
             done = true;
+            if (packet == null) {
+                complete(null);
+                return;
+            }
             Integer status = packet.getStatus();
             if (status == null || status != OK) {
                 completeExceptionally(new RpcResponseException(status, "Failure rpc response. status=" + status + ",message=" + packet.getMessage() + ",response=" + packet, true));
             } else {
                 RpcServerInstance instance = (RpcServerInstance) emitter.rpcMethod.getInstance();
-                Object data = instance.getDataCodec().decodeChunkResponseData(packet.getData(), emitter.rpcMethod);
+                ByteBuf dataBuf = packet.getDataBuf();
+                Object data = dataBuf != null
+                        ? instance.getDataCodec().decodeChunkResponseData(dataBuf, emitter.rpcMethod)
+                        : instance.getDataCodec().decodeChunkResponseData(packet.getData(), emitter.rpcMethod);
                 complete(cast(data));
             }
         }
@@ -583,6 +882,8 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         boolean timeoutInterrupt;
         int timeout;
         Executor executor;
+        final int requestId;
+        volatile boolean cancelFlag;
 
         RpcRunnable(Executor executor, RpcMethod<RpcServerInstance> rpcMethod,
                     int timeout,
@@ -598,6 +899,16 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             this.dataCodec = dataCodec;
             this.request = request;
             this.rpcContext = rpcContext;
+            this.requestId = request.getRequestId();
+        }
+
+        void cancel() {
+            cancelFlag = true;
+            Thread taskThread = this.taskThread;
+            if (timeoutInterrupt && taskThread != null && !done) {
+                taskThread.interrupt();
+                interruptCount++;
+            }
         }
 
         public void onTimeout() {
@@ -626,17 +937,36 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             CONTEXT_LOCAL.set(rpcContext);
             Object result = null;
             Throwable throwable = null;
-            try {
-                result = rpcMethod.getInstance().invoke(rpcMethod, request, rpcContext, channelHandler);
-            } catch (Throwable t) {
-                throwable = t;
+            boolean cancel = cancelFlag;
+            if (!cancel) {
+                try {
+                    result = rpcMethod.getInstance().invoke(rpcMethod, request, rpcContext, channelHandler);
+                } catch (Throwable t) {
+                    throwable = t;
+                }
+                cancel = cancelFlag && !(result instanceof RpcEmitter) && !(result instanceof CompletableFuture);
             }
             done = true;
-            buildAndWriteAndFlush(request, response, rpcContext, channelHandler, rpcMethod, result, throwable, RpcContext.RpcState.WRITE_FINISH, null, this, -1, null);
+            if (cancel) {
+                // the client no longer wait. no write
+                if (timeoutInterrupt) {
+                    Thread.interrupted();
+                }
+                rpcContext.setResult(result);
+                rpcContext.setThrowable(throwable);
+                RecyclableUtil.release(response);
+            } else {
+                buildAndWriteAndFlush(request, response, rpcContext, channelHandler, rpcMethod, result, throwable, RpcContext.RpcState.WRITE_FINISH, null, this, -1, null);
+            }
             rpcContext.setRpcEndTimestamp(System.currentTimeMillis());
+            AtomicReferenceArray<RpcRunnable> cancelSlots = channelHandler.cancelSlots;
+            if (cancelSlots != null) {
+                cancelSlots.compareAndSet(requestId & CANCEL_SLOTS_MASK, this, null);
+            }
             try {
                 channelHandler.onResponseAfter(rpcContext);
             } finally {
+                request.releaseDataBuf();
                 request.recycle();
                 CONTEXT_LOCAL.remove();
             }
@@ -3,8 +3,11 @@ package com.github.netty.protocol.nrpc;
 import com.github.netty.annotation.NRpcService;
 import com.github.netty.core.util.ReflectUtil;
 import com.github.netty.protocol.nrpc.codec.DataCodec;
+import io.netty.buffer.ByteBuf;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -23,6 +26,10 @@ public class RpcServerInstance {
     private Function<Method, String[]> methodToParameterNamesFunction;
     private String version;
     private Integer timeout;
+    /**
+     * the method of {@link com.github.netty.annotation.NRpcMethod#batch()}. (read only after the constructor)
+     */
+    private final Map<RpcMethod<RpcServerInstance>, RpcServerMethodBatcher> batcherMap = new IdentityHashMap<>();
 
     /**
      * A constructor
@@ -46,6 +53,11 @@ public class RpcServerInstance {
         if (rpcMethodMap.isEmpty()) {
             throw new IllegalStateException("An RPC service must have at least one method, class=[" + instance.getClass().getSimpleName() + "]");
         }
+        for (RpcMethod<RpcServerInstance> rpcMethod : rpcMethodMap.values()) {
+            if (rpcMethod.isBatch() && !batcherMap.containsKey(rpcMethod)) {
+                batcherMap.put(rpcMethod, new RpcServerMethodBatcher(rpcMethod, instance));
+            }
+        }
     }
 
     public static boolean isRpcInnerClass(Class clazz) {
@@ -102,6 +114,19 @@ public class RpcServerInstance {
         return rpcMethodMap.get(methodName);
     }
 
+    /**
+     * @param methodName methodName
+     * @return null if the method is not the batch method
+     */
+    public RpcServerMethodBatcher getBatcher(String methodName) {
+        RpcMethod<RpcServerInstance> rpcMethod = rpcMethodMap.get(methodName);
+        return rpcMethod != null ? batcherMap.get(rpcMethod) : null;
+    }
+
+    public Collection<RpcServerMethodBatcher> getBatchers() {
+        return batcherMap.values();
+    }
+
     public Function<Method, String[]> getMethodToParameterNamesFunction() {
         return methodToParameterNamesFunction;
     }
@@ -110,11 +135,28 @@ public class RpcServerInstance {
                          RpcContext<RpcServerInstance> rpcContext, RpcServerChannelHandler server) throws Throwable {
         server.onStateUpdate(rpcContext, INIT);
         try {
-            Object[] args = dataCodec.decodeRequestData(rpcRequest.getData(), rpcMethod);
+            Object[] args;
+            ByteBuf dataBuf = rpcRequest.getDataBuf();
+            if (dataBuf != null) {
+                try {
+                    args = dataCodec.decodeRequestData(dataBuf, rpcMethod);
+                } finally {
+                    rpcRequest.releaseDataBuf();
+                }
+            } else {
+                args = dataCodec.decodeRequestData(rpcRequest.getData(), rpcMethod);
+            }
             rpcContext.setArgs(args);
             server.onStateUpdate(rpcContext, READ_ING);
 
-            Object result = rpcMethod.invoke(instance, args);
+            Object result;
+            RpcServerMethodBatcher batcher = batcherMap.isEmpty() ? null : batcherMap.get(rpcMethod);
+            if (batcher != null) {
+                // the response is write when the batch done
+                result = batcher.submit(args[0], server.getExecutor());
+            } else {
+                result = rpcMethod.invoke(instance, args);
+            }
             server.onStateUpdate(rpcContext, READ_FINISH);
             return result;
         } finally {
@@ -0,0 +1,272 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.annotation.NRpcMethod;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collect the concurrent calls of the method, and invoke the batch method once. {@link NRpcMethod#batch()}
+ * the batch is invoked when it has {@link NRpcMethod#batchMaxSize()} calls, or the first call wait {@link NRpcMethod#batchMaxDelayMicros()}.
+ * the same key in a batch is passed once. each call get the value of the key.
+ *
+ * @author wangzihao
+ */
+public class RpcServerMethodBatcher {
+    private static final ScheduledThreadPoolExecutor SCHEDULED = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("NRpc-Batch-" + thread.getId());
+        return thread;
+    });
+    /**
+     * batch size histogram. 1, 2, 3~4, 5~8 ... 2^14+
+     */
+    private static final int HISTOGRAM_LENGTH = 16;
+
+    static {
+        SCHEDULED.setRemoveOnCancelPolicy(true);
+    }
+
+    private final RpcMethod<RpcServerInstance> rpcMethod;
+    private final Object instance;
+    private final Method batchMethod;
+    /**
+     * true = the parameter of the batch method is the Set. false = the List
+     */
+    private final boolean setParameter;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong keyCount = new AtomicLong();
+    private final AtomicLong sizeFlushCount = new AtomicLong();
+    private final AtomicLong delayFlushCount = new AtomicLong();
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(HISTOGRAM_LENGTH);
+    private volatile int maxBatchSize;
+    /**
+     * the batch of collecting. guarded by this
+     */
+    private Batch batch;
+
+    public RpcServerMethodBatcher(RpcMethod<RpcServerInstance> rpcMethod, Object instance) throws IllegalStateException {
+        NRpcMethod annotation = rpcMethod.getMethodAnnotation();
+        if (rpcMethod.getParameterCount() != 1) {
+            throw new IllegalStateException("The batch method need one argument (the key), method=[" + rpcMethod + "]");
+        }
+        this.rpcMethod = rpcMethod;
+        this.instance = instance;
+        this.batchMethod = findBatchMethod(instance.getClass(), annotation.batch());
+        if (batchMethod == null) {
+            throw new IllegalStateException("Not found batch method [" + annotation.batch() + "(List or Set)Map], method=[" + rpcMethod + "]");
+        }
+        this.batchMethod.setAccessible(true);
+        this.setParameter = !batchMethod.getParameterTypes()[0].isAssignableFrom(ArrayList.class);
+        this.maxSize = Math.max(1, annotation.batchMaxSize());
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, annotation.batchMaxDelayMicros()));
+    }
+
+    private static Method findBatchMethod(Class<?> clazz, String name) {
+        for (Method method : clazz.getMethods()) {
+            if (!method.getName().equals(name) || method.getParameterCount() != 1
+                    || !Map.class.isAssignableFrom(method.getReturnType())) {
+                continue;
+            }
+            Class<?> parameterType = method.getParameterTypes()[0];
+            if (parameterType.isAssignableFrom(ArrayList.class) || parameterType.isAssignableFrom(LinkedHashSet.class)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key      the argument of the call
+     * @param executor invoke the batch method. null is invoke in the current thread (or the scheduled thread)
+     * @return the value of the key in the result of the batch method
+     */
+    public CompletableFuture<Object> submit(Object key, Executor executor) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = this.batch;
+            if (batch == null) {
+                batch = new Batch(executor);
+                this.batch = batch;
+                if (maxSize > 1) {
+                    Batch delayBatch = batch;
+                    batch.delayFuture = SCHEDULED.schedule(() -> onDelay(delayBatch), maxDelayNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            batch.keys.add(key);
+            batch.futures.add(future);
+            if (batch.keys.size() >= maxSize) {
+                this.batch = null;
+                full = batch;
+            }
+        }
+        if (full != null) {
+            if (full.delayFuture != null) {
+                full.delayFuture.cancel(false);
+            }
+            sizeFlushCount.incrementAndGet();
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private void onDelay(Batch batch) {
+        synchronized (this) {
+            if (this.batch != batch) {
+                // flush by size
+                return;
+            }
+            this.batch = null;
+        }
+        delayFlushCount.incrementAndGet();
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch batch) {
+        Executor executor = batch.executor;
+        if (executor == null) {
+            flush(batch);
+            return;
+        }
+        try {
+            executor.execute(() -> flush(batch));
+        } catch (RejectedExecutionException e) {
+            for (CompletableFuture<Object> future : batch.futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void flush(Batch batch) {
+        List<Object> keys = batch.keys;
+        List<CompletableFuture<Object>> futures = batch.futures;
+        Set<Object> keySet = new LinkedHashSet<>(keys);
+        recordBatch(keys.size(), keySet.size());
+
+        Map<?, ?> resultMap = null;
+        Throwable throwable = null;
+        try {
+            resultMap = (Map<?, ?>) batchMethod.invoke(instance, setParameter ? keySet : new ArrayList<>(keySet));
+        } catch (InvocationTargetException e) {
+            throwable = e.getCause() != null ? e.getCause() : e;
+        } catch (Throwable t) {
+            throwable = t;
+        }
+        for (int i = 0, size = futures.size(); i < size; i++) {
+            CompletableFuture<Object> future = futures.get(i);
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+            } else {
+                future.complete(resultMap != null ? resultMap.get(keys.get(i)) : null);
+            }
+        }
+    }
+
+    private void recordBatch(int size, int distinctSize) {
+        batchCount.incrementAndGet();
+        callCount.addAndGet(size);
+        keyCount.addAndGet(distinctSize);
+        batchSizeHistogram.incrementAndGet(Math.min(HISTOGRAM_LENGTH - 1, 32 - Integer.numberOfLeadingZeros(size - 1)));
+        if (size > maxBatchSize) {
+            maxBatchSize = size;
+        }
+    }
+
+    public RpcMethod<RpcServerInstance> getRpcMethod() {
+        return rpcMethod;
+    }
+
+    public Method getBatchMethod() {
+        return batchMethod;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxDelayMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxDelayNanos);
+    }
+
+    /**
+     * @return the invoke count of the batch method
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the calls in all the batches
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @return the distinct keys in all the batches. (callCount - keyCount = the calls of the same key)
+     */
+    public long getKeyCount() {
+        return keyCount.get();
+    }
+
+    public long getSizeFlushCount() {
+        return sizeFlushCount.get();
+    }
+
+    public long getDelayFlushCount() {
+        return delayFlushCount.get();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        long batchCount = this.batchCount.get();
+        return batchCount == 0 ? 0D : (double) callCount.get() / batchCount;
+    }
+
+    /**
+     * @return index 0 = size 1, index 1 = size 2, index 2 = size 3~4, index n = size (2^(n-1), 2^n]
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] histogram = new long[HISTOGRAM_LENGTH];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = batchSizeHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcServerMethodBatcher{" +
+                "method=" + rpcMethod.getMethodName() +
+                ", batchMethod=" + batchMethod.getName() +
+                ", batchCount=" + batchCount +
+                ", averageBatchSize=" + getAverageBatchSize() +
+                ", maxBatchSize=" + maxBatchSize +
+                ", sizeFlushCount=" + sizeFlushCount +
+                ", delayFlushCount=" + delayFlushCount +
+                '}';
+    }
+
+    private static class Batch {
+        private final List<Object> keys = new ArrayList<>();
+        private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+        private final Executor executor;
+        private ScheduledFuture<?> delayFuture;
+
+        private Batch(Executor executor) {
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcMethod;
+import com.github.netty.protocol.nrpc.RpcServerInstance;
+import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
+import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static com.github.netty.protocol.nrpc.codec.BinarySchema.*;
+
+/**
+ * Compact binary codec. the schema is derived from the parameter types and the return type of the method.
+ * <p>
+ * the arguments are positional. no parameter name, no field name, and decode straight into the typed arguments.
+ * the value format and the schema evolution rules, see {@link BinarySchema}.
+ * <pre>
+ * request  = varint count + value * count + varint named count + (STRING name + value) * named count
+ *            (the named values are put by the request consumer. empty request = 0 bytes)
+ * response = value. (null = 0 bytes)
+ * chunk    = value. (the runtime class of a bean is written as the TYPED tag)
+ * </pre>
+ * the client and the server must use the same codec.
+ * <p>
+ * the TYPED class in the Object (or Serializable) declared type must be the jdk class, or in the allow list. see {@link #addTypedAllowList(String)}
+ *
+ * @author wangzihao
+ */
+public class BinaryDataCodec implements DataCodec {
+    private static final byte[] EMPTY = {};
+    private final Map<Method, MethodSchema> methodSchemaMap = new ConcurrentHashMap<>(64);
+    private List<Consumer<Map<String, Object>>> encodeRequestConsumerList = new CopyOnWriteArrayList<>();
+    private List<Consumer<Map<String, Object>>> decodeRequestConsumerList = new CopyOnWriteArrayList<>();
+
+    /**
+     * Allow the class of the TYPED tag in the Object (or Serializable) declared type. (e.g. Object result, List&lt;Object&gt;, the chunk of Object)
+     * the declared class or the sub class is always allowed. the other class is rejected (the peer can not create any class on the classpath).
+     *
+     * @param classNameOrPackage the class name, or the package prefix end with '.' (e.g. "com.example.dto.")
+     */
+    public static void addTypedAllowList(String classNameOrPackage) {
+        addTypedAllow(classNameOrPackage);
+    }
+
+    @Override
+    public List<Consumer<Map<String, Object>>> getEncodeRequestConsumerList() {
+        return encodeRequestConsumerList;
+    }
+
+    @Override
+    public List<Consumer<Map<String, Object>>> getDecodeRequestConsumerList() {
+        return decodeRequestConsumerList;
+    }
+
+    private MethodSchema getMethodSchema(RpcMethod<?> rpcMethod) {
+        return methodSchemaMap.computeIfAbsent(rpcMethod.getMethod(), method -> new MethodSchema(rpcMethod));
+    }
+
+    @Override
+    public void encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod, ByteBuf out) {
+        String[] parameterNames = rpcMethod.getParameterNames();
+        Object[] values = data != null ? data : new Object[parameterNames.length];
+        Map<String, Object> namedValues = null;
+        if (!encodeRequestConsumerList.isEmpty()) {
+            ParameterMap parameterMap = new ParameterMap(parameterNames, values, data != null, null);
+            for (Consumer<Map<String, Object>> consumer : encodeRequestConsumerList) {
+                consumer.accept(parameterMap);
+            }
+            values = parameterMap.values;
+            namedValues = parameterMap.namedValues;
+        }
+        if (values.length == 0 && (namedValues == null || namedValues.isEmpty())) {
+            return;
+        }
+
+        BinarySchema[] parameterSchemas = getMethodSchema(rpcMethod).parameterSchemas;
+        try {
+            writeVarInt32(out, values.length);
+            for (int i = 0; i < values.length; i++) {
+                writeValue(out, values[i], parameterSchemas[i]);
+            }
+            if (namedValues == null) {
+                writeVarInt32(out, 0);
+            } else {
+                writeVarInt32(out, namedValues.size());
+                for (Map.Entry<String, Object> entry : namedValues.entrySet()) {
+                    writeUtf8(out, entry.getKey());
+                    writeValue(out, entry.getValue(), OBJECT);
+                }
+            }
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeRequestData " + rpcMethod + " binary error " + e, e);
+        }
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        String[] parameterNames = rpcMethod.getParameterNames();
+        Class<?>[] parameterTypes = rpcMethod.getParameterTypes();
+        Object[] values = new Object[parameterTypes.length];
+        Map<String, Object> namedValues = null;
+        if (data != null && data.isReadable()) {
+            BinarySchema[] parameterSchemas = getMethodSchema(rpcMethod).parameterSchemas;
+            try {
+                int count = readVarInt32(data);
+                for (int i = 0; i < count; i++) {
+                    if (i < values.length) {
+                        values[i] = readValue(data, parameterSchemas[i]);
+                    } else {
+                        // the new parameter of the client
+                        skipValue(data);
+                    }
+                }
+                int namedCount = readVarInt32(data);
+                for (int i = 0; i < namedCount; i++) {
+                    String name = readUtf8(data);
+                    int index = indexOf(parameterNames, name);
+                    if (index != -1 && values[index] == null) {
+                        values[index] = readValue(data, parameterSchemas[index]);
+                    } else {
+                        if (namedValues == null) {
+                            namedValues = new LinkedHashMap<>(4);
+                        }
+                        namedValues.put(name, readValue(data, OBJECT));
+                    }
+                }
+            } catch (Exception e) {
+                throw new RpcDecodeException("decodeRequestData " + rpcMethod + " binary error " + e, e);
+            }
+        }
+        if (!decodeRequestConsumerList.isEmpty()) {
+            ParameterMap parameterMap = new ParameterMap(parameterNames, values, false, namedValues);
+            for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
+                consumer.accept(parameterMap);
+            }
+            values = parameterMap.values;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null && parameterTypes[i].isPrimitive()) {
+                values[i] = defaultValue(parameterTypes[i]);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void encodeResponseData(Object data, RpcMethod<RpcServerInstance> rpcMethod, ByteBuf out) {
+        if (data == null) {
+            return;
+        }
+        try {
+            writeValue(out, data, getMethodSchema(rpcMethod).returnSchema);
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeResponseData " + rpcMethod + " binary error " + e, e);
+        }
+    }
+
+    @Override
+    public Object decodeResponseData(ByteBuf data, RpcMethod<RpcClient> rpcMethod) {
+        if (data == null || !data.isReadable()) {
+            return null;
+        }
+        try {
+            return readValue(data, getMethodSchema(rpcMethod).returnSchema);
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeResponseData " + rpcMethod + " binary error " + e, e);
+        }
+    }
+
+    @Override
+    public void encodeChunkResponseData(Object data, ByteBuf out) {
+        if (data == null) {
+            return;
+        }
+        try {
+            writeValue(out, data, OBJECT);
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeChunkResponseData " + data.getClass() + " binary error " + e, e);
+        }
+    }
+
+    @Override
+    public Object decodeChunkResponseData(ByteBuf data, Type type) {
+        if (data == null || !data.isReadable()) {
+            return null;
+        }
+        try {
+            return readValue(data, forType(type));
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeChunkResponseData " + type + " binary error " + e, e);
+        }
+    }
+
+    @Override
+    public byte[] encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod) {
+        ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            encodeRequestData(data, rpcMethod, out);
+            return toBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public Object[] decodeRequestData(byte[] data, RpcMethod<RpcServerInstance> rpcMethod) {
+        return decodeRequestData(data != null ? Unpooled.wrappedBuffer(data) : null, rpcMethod);
+    }
+
+    @Override
+    public byte[] encodeResponseData(Object data, RpcMethod<RpcServerInstance> rpcMethod) {
+        ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            encodeResponseData(data, rpcMethod, out);
+            return toBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public Object decodeResponseData(byte[] data, RpcMethod<RpcClient> rpcMethod) {
+        return decodeResponseData(data != null ? Unpooled.wrappedBuffer(data) : null, rpcMethod);
+    }
+
+    @Override
+    public byte[] encodeChunkResponseData(Object data) {
+        ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            encodeChunkResponseData(data, out);
+            return toBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public Object decodeChunkResponseData(byte[] data, Type type) {
+        return decodeChunkResponseData(data != null ? Unpooled.wrappedBuffer(data) : null, type);
+    }
+
+    private static byte[] toBytes(ByteBuf buf) {
+        return buf.isReadable() ? ByteBufUtil.getBytes(buf) : EMPTY;
+    }
+
+    private static int indexOf(String[] names, Object name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null && names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class MethodSchema {
+        private final BinarySchema[] parameterSchemas;
+        private final BinarySchema returnSchema;
+
+        MethodSchema(RpcMethod<?> rpcMethod) {
+            Type[] parameterTypes = rpcMethod.getMethod().getGenericParameterTypes();
+            this.parameterSchemas = new BinarySchema[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterSchemas[i] = forType(parameterTypes[i]);
+            }
+            this.returnSchema = forType(rpcMethod.getGenericReturnType());
+        }
+    }
+
+    /**
+     * The parameter map view of the positional values. (for the request consumer)
+     * the name that is not a parameter is a named value.
+     */
+    private static class ParameterMap extends AbstractMap<String, Object> {
+        private final String[] names;
+        private Object[] values;
+        private boolean copyOnWrite;
+        private Map<String, Object> namedValues;
+
+        ParameterMap(String[] names, Object[] values, boolean copyOnWrite, Map<String, Object> namedValues) {
+            this.names = names;
+            this.values = values;
+            this.copyOnWrite = copyOnWrite;
+            this.namedValues = namedValues;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = indexOf(names, key);
+            if (index != -1) {
+                return values[index];
+            }
+            return namedValues != null ? namedValues.get(key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(names, key) != -1 || (namedValues != null && namedValues.containsKey(key));
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            int index = indexOf(names, key);
+            if (index != -1) {
+                if (copyOnWrite) {
+                    // the args of the caller
+                    values = values.clone();
+                    copyOnWrite = false;
+                }
+                Object old = values[index];
+                values[index] = value;
+                return old;
+            }
+            if (namedValues == null) {
+                namedValues = new LinkedHashMap<>(4);
+            }
+            return namedValues.put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            int index = indexOf(names, key);
+            if (index != -1) {
+                return put(names[index], null);
+            }
+            return namedValues != null ? namedValues.remove(key) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] != null) {
+                    snapshot.put(names[i], values[i]);
+                }
+            }
+            if (namedValues != null) {
+                snapshot.putAll(namedValues);
+            }
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    Iterator<Entry<String, Object>> iterator = snapshot.entrySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        private Entry<String, Object> current;
+
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            Entry<String, Object> entry = iterator.next();
+                            current = entry;
+                            return new SimpleEntry<String, Object>(entry) {
+                                @Override
+                                public Object setValue(Object value) {
+                                    super.setValue(value);
+                                    return put(entry.getKey(), value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            iterator.remove();
+                            ParameterMap.this.remove(current.getKey());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return snapshot.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,1262 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import com.github.netty.core.util.TypeUtil;
+import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
+import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+
+import java.io.Serializable;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Binary schema of a java type. (derived from the declared type, cached by type)
+ * <p>
+ * every value = 1 byte tag + payload. the tag makes every value skippable.
+ * <pre>
+ * NULL, TRUE, FALSE    no payload
+ * INT, LONG            zigzag varint
+ * FLOAT, DOUBLE        4, 8 bytes
+ * STRING, BYTES        varint length + bytes
+ * LIST                 varint size + values
+ * MAP                  varint size + (key, value) pairs
+ * BEAN                 varint field count + field values. (positional, in the declared order of the fields)
+ * TYPED                class name (varint length + bytes) + value. (the runtime class is not the declared class)
+ *                      the reader only creates the declared class or the sub class. in the Object (or Serializable) declared type,
+ *                      only the jdk class or the class in the allow list. see {@link BinaryDataCodec#addTypedAllowList(String)}
+ * JDK                  int length + java serialization
+ * </pre>
+ * Schema evolution. (positional, append only)
+ * 1. add the new fields (or parameters) at the end. the old reader skips them, the new reader reads null or zero from the old writer.
+ * 2. do not remove, reorder, or change the kind of a field. keep it as a deprecated field.
+ * 3. the number kind can be widened. (int to long, float to double)
+ * 4. the unknown enum constant reads as null.
+ *
+ * @author wangzihao
+ */
+abstract class BinarySchema {
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int FLOAT = 5;
+    static final int DOUBLE = 6;
+    static final int STRING = 7;
+    static final int BYTES = 8;
+    static final int LIST = 9;
+    static final int MAP = 10;
+    static final int BEAN = 11;
+    static final int TYPED = 12;
+    static final int JDK = 13;
+
+    static final BinarySchema OBJECT = new ObjectSchema();
+    private static final Map<Type, BinarySchema> SCHEMA_MAP = new ConcurrentHashMap<>(64);
+    private static final Map<String, Class<?>> CLASS_MAP = new ConcurrentHashMap<>(64);
+    /**
+     * the class names, or the package prefixes (end with '.'), of the TYPED tag in the Object declared type
+     */
+    private static final Set<String> TYPED_ALLOW_SET = new CopyOnWriteArraySet<>();
+    private static final byte[] EMPTY = {};
+
+    final Class<?> type;
+    private final Class<?> boxType;
+
+    BinarySchema(Class<?> type) {
+        this.type = type;
+        this.boxType = box(type);
+    }
+
+    /**
+     * the value of the tag reads back as the class of the value. (no need the TYPED tag in the Object field)
+     *
+     * @return true = self describing
+     */
+    boolean selfDescribing() {
+        return false;
+    }
+
+    boolean accepts(Object value) {
+        return value.getClass() == boxType;
+    }
+
+    /**
+     * the class name of the TYPED tag
+     *
+     * @return the class that the reader can create
+     */
+    String typedName() {
+        return type.getName();
+    }
+
+    /**
+     * write tag + payload
+     *
+     * @param out   out
+     * @param value not null, and {@link #accepts(Object)}
+     */
+    abstract void write(ByteBuf out, Object value);
+
+    /**
+     * read the payload of the tag
+     *
+     * @param in  in
+     * @param tag not NULL, not TYPED
+     * @return value
+     */
+    abstract Object read(ByteBuf in, int tag);
+
+    Object readOther(ByteBuf in, int tag) {
+        return cast(readDynamic(in, tag));
+    }
+
+    Object cast(Object value) {
+        if (value == null || boxType.isInstance(value)) {
+            return value;
+        }
+        try {
+            return TypeUtil.cast(value, boxType);
+        } catch (Exception e) {
+            return value;
+        }
+    }
+
+    static BinarySchema forType(Type type) {
+        if (type == null) {
+            return OBJECT;
+        }
+        BinarySchema schema = SCHEMA_MAP.get(type);
+        if (schema != null) {
+            return schema;
+        }
+        if (type instanceof Class) {
+            schema = newSchema((Class<?>) type);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            if (isJdkClass(rawType) && Collection.class.isAssignableFrom(rawType) && arguments.length == 1) {
+                schema = new CollectionSchema(rawType, forType(arguments[0]));
+            } else if (isJdkClass(rawType) && Map.class.isAssignableFrom(rawType) && arguments.length == 2) {
+                schema = new MapSchema(rawType, forType(arguments[0]), forType(arguments[1]));
+            } else {
+                schema = forType(rawType);
+            }
+        } else if (type instanceof GenericArrayType) {
+            BinarySchema componentSchema = forType(((GenericArrayType) type).getGenericComponentType());
+            schema = new ArraySchema(Array.newInstance(componentSchema.type, 0).getClass(), componentSchema);
+        } else if (type instanceof WildcardType) {
+            schema = forType(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            schema = forType(((TypeVariable<?>) type).getBounds()[0]);
+        } else {
+            schema = OBJECT;
+        }
+        BinarySchema old = SCHEMA_MAP.putIfAbsent(type, schema);
+        return old != null ? old : schema;
+    }
+
+    private static BinarySchema newSchema(Class<?> type) {
+        if (type == Object.class) {
+            return OBJECT;
+        } else if (type == int.class || type == Integer.class) {
+            return new IntSchema(type);
+        } else if (type == long.class || type == Long.class) {
+            return new LongSchema(type);
+        } else if (type == boolean.class || type == Boolean.class) {
+            return new BooleanSchema(type);
+        } else if (type == double.class || type == Double.class) {
+            return new DoubleSchema(type);
+        } else if (type == float.class || type == Float.class) {
+            return new FloatSchema(type);
+        } else if (type == short.class || type == Short.class
+                || type == byte.class || type == Byte.class
+                || type == char.class || type == Character.class) {
+            return new SmallIntSchema(type);
+        } else if (type == String.class) {
+            return new StringSchema();
+        } else if (type == byte[].class) {
+            return new BytesSchema();
+        } else if (type.isArray()) {
+            return new ArraySchema(type, forType(type.getComponentType()));
+        } else if (type.isEnum()) {
+            return new EnumSchema(type);
+        } else if (type.getSuperclass() != null && type.getSuperclass().isEnum()) {
+            return forType(type.getSuperclass());
+        } else if (type == Date.class) {
+            return new DateSchema();
+        } else if (type == BigDecimal.class || type == BigInteger.class) {
+            return new BigNumberSchema(type);
+        } else if (Collection.class.isAssignableFrom(type)) {
+            return new CollectionSchema(type, OBJECT);
+        } else if (Map.class.isAssignableFrom(type)) {
+            return new MapSchema(type, OBJECT, OBJECT);
+        } else if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return new ObjectSchema(type);
+        } else if (isJdkClass(type)) {
+            return Serializable.class.isAssignableFrom(type) ? new JdkSchema(type) : OBJECT;
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (Exception e) {
+            constructor = null;
+        }
+        if (constructor == null && Serializable.class.isAssignableFrom(type)) {
+            return new JdkSchema(type);
+        }
+        return new BeanSchema(type, constructor);
+    }
+
+    private static boolean isJdkClass(Class<?> type) {
+        return isJdkClass(type.getName());
+    }
+
+    private static boolean isJdkClass(String name) {
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+                || name.startsWith("com.sun.") || name.startsWith("jdk.");
+    }
+
+    private static boolean hasPublicConstructor(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return false;
+        }
+        try {
+            type.getConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        } else {
+            return Void.class;
+        }
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == double.class) {
+            return 0D;
+        } else if (type == float.class) {
+            return 0F;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else {
+            return null;
+        }
+    }
+
+    private static Class<?> loadClass(String name) {
+        Class<?> type = CLASS_MAP.get(name);
+        if (type == null) {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                type = Class.forName(name, false, classLoader != null ? classLoader : BinarySchema.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+            CLASS_MAP.put(name, type);
+        }
+        return type;
+    }
+
+    static void addTypedAllow(String classNameOrPackage) {
+        TYPED_ALLOW_SET.add(classNameOrPackage);
+    }
+
+    /**
+     * the declared type that any class is assignable to. (the class of the TYPED tag need the allow list)
+     */
+    private static boolean isOpenType(Class<?> type) {
+        return type == Object.class || type == Serializable.class || type == Cloneable.class || type == Comparable.class;
+    }
+
+    private static boolean isTypedAllowed(String name) {
+        // the array class. [Lcom.example.User; [[I
+        int index = 0;
+        while (index < name.length() && name.charAt(index) == '[') {
+            index++;
+        }
+        if (index > 0) {
+            if (index == name.length() - 1) {
+                return true;
+            }
+            if (name.charAt(index) != 'L' || !name.endsWith(";")) {
+                return false;
+            }
+            name = name.substring(index + 1, name.length() - 1);
+        }
+        if (isJdkClass(name) || TYPED_ALLOW_SET.contains(name)) {
+            return true;
+        }
+        for (String allow : TYPED_ALLOW_SET) {
+            if (allow.endsWith(".") && name.startsWith(allow)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the class name of the TYPED tag, then load it. (not initialize)
+     * the peer can not make the reader create any class on the classpath.
+     *
+     * @param name   the class name of the TYPED tag
+     * @param schema the declared schema
+     * @return the class. null if the class is not exist in the reader
+     * @throws RpcDecodeException the class is not allowed
+     */
+    private static Class<?> loadTypedClass(String name, BinarySchema schema) {
+        Class<?> declaredType = schema.boxType;
+        if (isOpenType(declaredType) && !isTypedAllowed(name)) {
+            throw new RpcDecodeException("binary decode error. TYPED class " + name + " is not allowed in " + declaredType.getName()
+                    + ". see BinaryDataCodec.addTypedAllowList");
+        }
+        Class<?> runtimeType = loadClass(name);
+        if (runtimeType != null && !declaredType.isAssignableFrom(runtimeType)) {
+            throw new RpcDecodeException("binary decode error. TYPED class " + name + " is not a " + declaredType.getName());
+        }
+        return runtimeType;
+    }
+
+    static void writeValue(ByteBuf out, Object value, BinarySchema schema) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (schema.accepts(value)) {
+            schema.write(out, value);
+        } else {
+            BinarySchema runtimeSchema = forType(value.getClass());
+            if (!runtimeSchema.selfDescribing()) {
+                out.writeByte(TYPED);
+                writeUtf8(out, runtimeSchema.typedName());
+            }
+            runtimeSchema.write(out, value);
+        }
+    }
+
+    static Object readValue(ByteBuf in, BinarySchema schema) {
+        return readValue(in, in.readByte(), schema);
+    }
+
+    static Object readValue(ByteBuf in, int tag, BinarySchema schema) {
+        if (tag == NULL) {
+            return null;
+        } else if (tag == TYPED) {
+            Class<?> runtimeType = loadTypedClass(readUtf8(in), schema);
+            // the class is not exist in the reader. read it as the declared type
+            BinarySchema runtimeSchema = runtimeType != null ? forType(runtimeType) : schema;
+            return schema.cast(readValue(in, runtimeSchema));
+        } else {
+            return schema.read(in, tag);
+        }
+    }
+
+    static Object readDynamic(ByteBuf in, int tag) {
+        switch (tag) {
+            case NULL: {
+                return null;
+            }
+            case TRUE: {
+                return Boolean.TRUE;
+            }
+            case FALSE: {
+                return Boolean.FALSE;
+            }
+            case INT: {
+                return readZigZag32(in);
+            }
+            case LONG: {
+                return readZigZag64(in);
+            }
+            case FLOAT: {
+                return in.readFloat();
+            }
+            case DOUBLE: {
+                return in.readDouble();
+            }
+            case STRING: {
+                return readUtf8(in);
+            }
+            case BYTES: {
+                return readBytes(in);
+            }
+            case LIST:
+            case BEAN: {
+                // the bean without the schema reads as the list of the field values
+                int size = readVarInt32(in);
+                List<Object> list = new ArrayList<>(Math.min(size, in.readableBytes()));
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, OBJECT));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = readVarInt32(in);
+                Map<Object, Object> map = new LinkedHashMap<>(Math.min(size, in.readableBytes()) * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in, OBJECT), readValue(in, OBJECT));
+                }
+                return map;
+            }
+            case TYPED: {
+                return readValue(in, tag, OBJECT);
+            }
+            case JDK: {
+                return JdkSchema.readJdk(in, Object.class);
+            }
+            default: {
+                throw new RpcDecodeException("binary decode error. unknown tag " + tag);
+            }
+        }
+    }
+
+    static void skipValue(ByteBuf in) {
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+            case TRUE:
+            case FALSE: {
+                break;
+            }
+            case INT: {
+                readVarInt32(in);
+                break;
+            }
+            case LONG: {
+                readVarInt64(in);
+                break;
+            }
+            case FLOAT: {
+                in.skipBytes(4);
+                break;
+            }
+            case DOUBLE: {
+                in.skipBytes(8);
+                break;
+            }
+            case STRING:
+            case BYTES: {
+                in.skipBytes(readVarInt32(in));
+                break;
+            }
+            case LIST:
+            case BEAN: {
+                int size = readVarInt32(in);
+                for (int i = 0; i < size; i++) {
+                    skipValue(in);
+                }
+                break;
+            }
+            case MAP: {
+                int size = readVarInt32(in);
+                for (int i = 0; i < size; i++) {
+                    skipValue(in);
+                    skipValue(in);
+                }
+                break;
+            }
+            case TYPED: {
+                in.skipBytes(readVarInt32(in));
+                skipValue(in);
+                break;
+            }
+            case JDK: {
+                in.skipBytes(in.readInt());
+                break;
+            }
+            default: {
+                throw new RpcDecodeException("binary decode error. unknown tag " + tag);
+            }
+        }
+    }
+
+    static void writeVarInt32(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt32(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RpcDecodeException("binary decode error. malformed varint32");
+    }
+
+    static void writeVarInt64(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarInt64(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RpcDecodeException("binary decode error. malformed varint64");
+    }
+
+    static void writeZigZag32(ByteBuf out, int value) {
+        writeVarInt32(out, (value << 1) ^ (value >> 31));
+    }
+
+    static int readZigZag32(ByteBuf in) {
+        int value = readVarInt32(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeZigZag64(ByteBuf out, long value) {
+        writeVarInt64(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readZigZag64(ByteBuf in) {
+        long value = readVarInt64(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeUtf8(ByteBuf out, CharSequence value) {
+        writeVarInt32(out, ByteBufUtil.utf8Bytes(value));
+        out.writeCharSequence(value, DataCodec.CHARSET_UTF8);
+    }
+
+    static String readUtf8(ByteBuf in) {
+        int length = readVarInt32(in);
+        if (length == 0) {
+            return "";
+        }
+        String value = in.toString(in.readerIndex(), length, DataCodec.CHARSET_UTF8);
+        in.skipBytes(length);
+        return value;
+    }
+
+    static byte[] readBytes(ByteBuf in) {
+        int length = readVarInt32(in);
+        if (length == 0) {
+            return EMPTY;
+        }
+        byte[] bytes = new byte[length];
+        in.readBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Object, interface, abstract class. (always write the runtime schema)
+     */
+    static class ObjectSchema extends BinarySchema {
+        ObjectSchema() {
+            super(Object.class);
+        }
+
+        ObjectSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return false;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            throw new RpcEncodeException("binary encode error. unsupported type " + value.getClass());
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return readDynamic(in, tag);
+        }
+    }
+
+    static class IntSchema extends BinarySchema {
+        IntSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(INT);
+            writeZigZag32(out, (Integer) value);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return tag == INT ? readZigZag32(in) : readOther(in, tag);
+        }
+    }
+
+    static class LongSchema extends BinarySchema {
+        LongSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(LONG);
+            writeZigZag64(out, (Long) value);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag == LONG) {
+                return readZigZag64(in);
+            } else if (tag == INT) {
+                return (long) readZigZag32(in);
+            } else {
+                return readOther(in, tag);
+            }
+        }
+    }
+
+    static class BooleanSchema extends BinarySchema {
+        BooleanSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag == TRUE) {
+                return Boolean.TRUE;
+            } else if (tag == FALSE) {
+                return Boolean.FALSE;
+            } else {
+                return readOther(in, tag);
+            }
+        }
+    }
+
+    static class DoubleSchema extends BinarySchema {
+        DoubleSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag == DOUBLE) {
+                return in.readDouble();
+            } else if (tag == FLOAT) {
+                return (double) in.readFloat();
+            } else {
+                return readOther(in, tag);
+            }
+        }
+    }
+
+    static class FloatSchema extends BinarySchema {
+        FloatSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return tag == FLOAT ? in.readFloat() : readOther(in, tag);
+        }
+    }
+
+    /**
+     * short, byte, char. (INT tag)
+     */
+    static class SmallIntSchema extends BinarySchema {
+        SmallIntSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(INT);
+            writeZigZag32(out, value instanceof Character ? (Character) value : ((Number) value).intValue());
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != INT) {
+                return readOther(in, tag);
+            }
+            int value = readZigZag32(in);
+            if (type == short.class || type == Short.class) {
+                return (short) value;
+            } else if (type == byte.class || type == Byte.class) {
+                return (byte) value;
+            } else {
+                return (char) value;
+            }
+        }
+    }
+
+    static class StringSchema extends BinarySchema {
+        StringSchema() {
+            super(String.class);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(STRING);
+            writeUtf8(out, (String) value);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return tag == STRING ? readUtf8(in) : readOther(in, tag);
+        }
+    }
+
+    static class BytesSchema extends BinarySchema {
+        BytesSchema() {
+            super(byte[].class);
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return true;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            writeVarInt32(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return tag == BYTES ? readBytes(in) : readOther(in, tag);
+        }
+    }
+
+    static class EnumSchema extends BinarySchema {
+        EnumSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Enum && ((Enum<?>) value).getDeclaringClass() == type;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(STRING);
+            writeUtf8(out, ((Enum<?>) value).name());
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != STRING) {
+                return readOther(in, tag);
+            }
+            String name = readUtf8(in);
+            for (Object constant : type.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equals(name)) {
+                    return constant;
+                }
+            }
+            return null;
+        }
+    }
+
+    static class DateSchema extends BinarySchema {
+        DateSchema() {
+            super(Date.class);
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(LONG);
+            writeZigZag64(out, ((Date) value).getTime());
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return tag == LONG ? new Date(readZigZag64(in)) : readOther(in, tag);
+        }
+    }
+
+    /**
+     * BigDecimal, BigInteger. (STRING tag)
+     */
+    static class BigNumberSchema extends BinarySchema {
+        BigNumberSchema(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(STRING);
+            writeUtf8(out, value.toString());
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != STRING) {
+                return readOther(in, tag);
+            }
+            String value = readUtf8(in);
+            return type == BigDecimal.class ? new BigDecimal(value) : new BigInteger(value);
+        }
+    }
+
+    static class ArraySchema extends BinarySchema {
+        private final BinarySchema componentSchema;
+        private final Class<?> componentType;
+
+        ArraySchema(Class<?> type, BinarySchema componentSchema) {
+            super(type);
+            this.componentSchema = componentSchema;
+            this.componentType = type.getComponentType();
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            int length = Array.getLength(value);
+            out.writeByte(LIST);
+            writeVarInt32(out, length);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i), componentSchema);
+            }
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != LIST) {
+                return readOther(in, tag);
+            }
+            int length = readVarInt32(in);
+            Object array = Array.newInstance(componentType, length);
+            for (int i = 0; i < length; i++) {
+                Object value = readValue(in, componentSchema);
+                if (value != null) {
+                    Array.set(array, i, value);
+                }
+            }
+            return array;
+        }
+    }
+
+    static class CollectionSchema extends BinarySchema {
+        private final BinarySchema elementSchema;
+        private final boolean abstractType;
+        private final Class<?> instanceType;
+
+        CollectionSchema(Class<?> type, BinarySchema elementSchema) {
+            super(type);
+            this.elementSchema = elementSchema;
+            this.abstractType = type.isInterface() || Modifier.isAbstract(type.getModifiers());
+            if (!abstractType && hasPublicConstructor(type)) {
+                this.instanceType = type;
+            } else if (SortedSet.class.isAssignableFrom(type)) {
+                this.instanceType = TreeSet.class;
+            } else if (Set.class.isAssignableFrom(type)) {
+                this.instanceType = LinkedHashSet.class;
+            } else if (Queue.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type)) {
+                this.instanceType = ArrayDeque.class;
+            } else {
+                // Arrays.asList, Collections.unmodifiableList ...
+                this.instanceType = ArrayList.class;
+            }
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return instanceType == ArrayList.class;
+        }
+
+        @Override
+        String typedName() {
+            return instanceType.getName();
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return abstractType ? type.isInstance(value) : value.getClass() == type;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(LIST);
+            writeVarInt32(out, collection.size());
+            for (Object element : collection) {
+                writeValue(out, element, elementSchema);
+            }
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != LIST) {
+                return readOther(in, tag);
+            }
+            int size = readVarInt32(in);
+            Collection<Object> collection = newCollection(Math.min(size, in.readableBytes()));
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(in, elementSchema));
+            }
+            return collection;
+        }
+
+        private Collection<Object> newCollection(int size) {
+            if (instanceType == ArrayList.class) {
+                return new ArrayList<>(size);
+            } else if (instanceType == LinkedHashSet.class) {
+                return new LinkedHashSet<>(size * 4 / 3 + 1);
+            } else if (instanceType == TreeSet.class) {
+                return new TreeSet<>();
+            } else if (instanceType == ArrayDeque.class) {
+                return new ArrayDeque<>(size);
+            }
+            try {
+                return (Collection<Object>) instanceType.getConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RpcDecodeException("binary decode error. new instance " + instanceType + " error " + e, e);
+            }
+        }
+    }
+
+    static class MapSchema extends BinarySchema {
+        private final BinarySchema keySchema;
+        private final BinarySchema valueSchema;
+        private final boolean abstractType;
+        private final Class<?> instanceType;
+
+        MapSchema(Class<?> type, BinarySchema keySchema, BinarySchema valueSchema) {
+            super(type);
+            this.keySchema = keySchema;
+            this.valueSchema = valueSchema;
+            this.abstractType = type.isInterface() || Modifier.isAbstract(type.getModifiers());
+            if (!abstractType && hasPublicConstructor(type)) {
+                this.instanceType = type;
+            } else if (SortedMap.class.isAssignableFrom(type)) {
+                this.instanceType = TreeMap.class;
+            } else if (ConcurrentMap.class.isAssignableFrom(type)) {
+                this.instanceType = ConcurrentHashMap.class;
+            } else {
+                // Collections.unmodifiableMap, Collections.emptyMap ...
+                this.instanceType = LinkedHashMap.class;
+            }
+        }
+
+        @Override
+        boolean selfDescribing() {
+            return instanceType == LinkedHashMap.class || instanceType == HashMap.class;
+        }
+
+        @Override
+        String typedName() {
+            return instanceType.getName();
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return abstractType ? type.isInstance(value) : value.getClass() == type;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            writeVarInt32(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey(), keySchema);
+                writeValue(out, entry.getValue(), valueSchema);
+            }
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != MAP) {
+                return readOther(in, tag);
+            }
+            int size = readVarInt32(in);
+            Map<Object, Object> map = newMap(Math.min(size, in.readableBytes()));
+            for (int i = 0; i < size; i++) {
+                map.put(readValue(in, keySchema), readValue(in, valueSchema));
+            }
+            return map;
+        }
+
+        private Map<Object, Object> newMap(int size) {
+            if (instanceType == LinkedHashMap.class || instanceType == HashMap.class) {
+                return new LinkedHashMap<>(size * 4 / 3 + 1);
+            } else if (instanceType == TreeMap.class) {
+                return new TreeMap<>();
+            } else if (instanceType == ConcurrentHashMap.class) {
+                return new ConcurrentHashMap<>(size * 4 / 3 + 1);
+            }
+            try {
+                return (Map<Object, Object>) instanceType.getConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RpcDecodeException("binary decode error. new instance " + instanceType + " error " + e, e);
+            }
+        }
+    }
+
+    /**
+     * the serializable class without the bean schema. (java.time, no default constructor)
+     */
+    static class JdkSchema extends BinarySchema {
+        private static final JdkDataCodec JDK_DATA_CODEC = new JdkDataCodec();
+
+        JdkSchema(Class<?> type) {
+            super(type);
+        }
+
+        static Object readJdk(ByteBuf in, Type type) {
+            ByteBuf slice = in.readSlice(in.readInt());
+            try {
+                return JDK_DATA_CODEC.decode(new ByteBufInputStream(slice), type);
+            } catch (Exception e) {
+                throw new RpcDecodeException("binary decode error. jdk " + type + " error " + e, e);
+            }
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            out.writeByte(JDK);
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0);
+            try {
+                JDK_DATA_CODEC.encode(value, new ByteBufOutputStream(out));
+            } catch (Exception e) {
+                throw new RpcEncodeException("binary encode error. jdk " + type + " error " + e, e);
+            }
+            out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            return tag == JDK ? readJdk(in, type) : readOther(in, tag);
+        }
+    }
+
+    /**
+     * the fields of the class. (not static, not transient, super class first)
+     */
+    static class BeanSchema extends BinarySchema {
+        private final Constructor<?> constructor;
+        private volatile FieldSchema[] fields;
+
+        BeanSchema(Class<?> type, Constructor<?> constructor) {
+            super(type);
+            this.constructor = constructor;
+        }
+
+        private FieldSchema[] fields() {
+            FieldSchema[] fields = this.fields;
+            if (fields == null) {
+                // resolve after the schema is cached. (the self reference field)
+                List<Class<?>> classList = new ArrayList<>();
+                for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                    classList.add(0, clazz);
+                }
+                List<FieldSchema> list = new ArrayList<>();
+                for (Class<?> clazz : classList) {
+                    for (Field field : clazz.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        list.add(new FieldSchema(field, forType(field.getGenericType())));
+                    }
+                }
+                this.fields = fields = list.toArray(new FieldSchema[0]);
+            }
+            return fields;
+        }
+
+        @Override
+        void write(ByteBuf out, Object value) {
+            FieldSchema[] fields = fields();
+            out.writeByte(BEAN);
+            writeVarInt32(out, fields.length);
+            try {
+                for (FieldSchema field : fields) {
+                    field.write(out, value);
+                }
+            } catch (IllegalAccessException e) {
+                throw new RpcEncodeException("binary encode error. " + type + " error " + e, e);
+            }
+        }
+
+        @Override
+        Object read(ByteBuf in, int tag) {
+            if (tag != BEAN) {
+                return readOther(in, tag);
+            }
+            if (constructor == null) {
+                throw new RpcDecodeException("binary decode error. " + type + " need default constructor");
+            }
+            FieldSchema[] fields = fields();
+            try {
+                Object bean = constructor.newInstance();
+                int count = readVarInt32(in);
+                for (int i = 0; i < count; i++) {
+                    if (i < fields.length) {
+                        fields[i].read(in, bean);
+                    } else {
+                        // the new field of the writer
+                        skipValue(in);
+                    }
+                }
+                return bean;
+            } catch (ReflectiveOperationException e) {
+                throw new RpcDecodeException("binary decode error. " + type + " error " + e, e);
+            }
+        }
+    }
+
+    /**
+     * the primitive field read and write without box.
+     */
+    static class FieldSchema {
+        private final Field field;
+        private final BinarySchema schema;
+        private final Class<?> type;
+
+        FieldSchema(Field field, BinarySchema schema) {
+            this.field = field;
+            this.schema = schema;
+            this.type = field.getType();
+        }
+
+        void write(ByteBuf out, Object bean) throws IllegalAccessException {
+            if (type == int.class) {
+                out.writeByte(INT);
+                writeZigZag32(out, field.getInt(bean));
+            } else if (type == long.class) {
+                out.writeByte(LONG);
+                writeZigZag64(out, field.getLong(bean));
+            } else if (type == boolean.class) {
+                out.writeByte(field.getBoolean(bean) ? TRUE : FALSE);
+            } else if (type == double.class) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(field.getDouble(bean));
+            } else if (type == float.class) {
+                out.writeByte(FLOAT);
+                out.writeFloat(field.getFloat(bean));
+            } else {
+                writeValue(out, field.get(bean), schema);
+            }
+        }
+
+        void read(ByteBuf in, Object bean) throws IllegalAccessException {
+            int tag = in.readByte();
+            if (type == int.class && tag == INT) {
+                field.setInt(bean, readZigZag32(in));
+            } else if (type == long.class && tag == LONG) {
+                field.setLong(bean, readZigZag64(in));
+            } else if (type == boolean.class && (tag == TRUE || tag == FALSE)) {
+                field.setBoolean(bean, tag == TRUE);
+            } else if (type == double.class && tag == DOUBLE) {
+                field.setDouble(bean, in.readDouble());
+            } else if (type == float.class && tag == FLOAT) {
+                field.setFloat(bean, in.readFloat());
+            } else {
+                Object value = readValue(in, tag, schema);
+                if (value != null || !type.isPrimitive()) {
+                    field.set(bean, value);
+                }
+            }
+        }
+    }
+}
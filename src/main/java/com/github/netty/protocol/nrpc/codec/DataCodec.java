@@ -3,6 +3,8 @@ package com.github.netty.protocol.nrpc.codec;
 import com.github.netty.protocol.nrpc.RpcClient;
 import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
@@ -12,6 +14,10 @@ import java.util.function.Consumer;
 
 /**
  * Data encoder decoder. (Serialization or Deserialization)
+ * <p>
+ * the ByteBuf methods write straight into the outbound buffer, and read from the slice of the inbound frame.
+ * the default ByteBuf methods copy to byte[], so the byte[] only codec keep working.
+ * the input ByteBuf is valid only during the call, and the codec can move the reader index of it.
  *
  * @author wangzihao
  */
@@ -79,6 +85,75 @@ public interface DataCodec {
      */
     Object[] decodeRequestData(byte[] data, RpcMethod<RpcServerInstance> rpcMethod);
 
+    /**
+     * Request data - encoding
+     *
+     * @param data      data
+     * @param rpcMethod rpcMethod
+     * @param out       write the data to
+     */
+    default void encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod, ByteBuf out) {
+        out.writeBytes(encodeRequestData(data, rpcMethod));
+    }
+
+    /**
+     * Response last data - decoding
+     *
+     * @param data      data
+     * @param rpcMethod rpcMethod
+     * @return Object
+     */
+    default Object decodeResponseData(ByteBuf data, RpcMethod<RpcClient> rpcMethod) {
+        return decodeResponseData(ByteBufUtil.getBytes(data), rpcMethod);
+    }
+
+    /**
+     * Response chunk data - decoding
+     *
+     * @param data      data
+     * @param rpcMethod rpcMethod
+     * @return Object
+     */
+    default Object decodeChunkResponseData(ByteBuf data, RpcMethod<RpcClient> rpcMethod) {
+        return decodeChunkResponseData(data, rpcMethod.getChunkGenericReturnType());
+    }
+
+    default Object decodeChunkResponseData(ByteBuf data, Type type) {
+        return decodeChunkResponseData(ByteBufUtil.getBytes(data), type);
+    }
+
+    /**
+     * Response chunk data - encoding
+     *
+     * @param data data
+     * @param out  write the data to
+     */
+    default void encodeChunkResponseData(Object data, ByteBuf out) {
+        out.writeBytes(encodeChunkResponseData(data));
+    }
+
+    /**
+     * Response data - encoding
+     *
+     * @param data      data
+     * @param rpcMethod rpcMethod
+     * @param out       write the data to
+     */
+    default void encodeResponseData(Object data, RpcMethod<RpcServerInstance> rpcMethod, ByteBuf out) {
+        out.writeBytes(encodeResponseData(data, rpcMethod));
+    }
+
+    /**
+     * Request data - decoding
+     *
+     * @param data      data
+     * @param rpcMethod rpcMethod
+     * @return Object[]
+     */
+    default Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        return decodeRequestData(ByteBufUtil.getBytes(data), rpcMethod);
+    }
+
     /**
      * The client parses
      *
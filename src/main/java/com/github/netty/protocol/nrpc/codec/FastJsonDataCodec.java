@@ -13,6 +13,8 @@ import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.util.concurrent.FastThreadLocal;
 
 import java.lang.reflect.Type;
@@ -42,6 +44,16 @@ public class FastJsonDataCodec implements DataCodec {
             return CHARSET_UTF8.newDecoder();
         }
     };
+    /**
+     * copy the direct buffer to the bytes. (fastjson only parse the array)
+     */
+    private static final int MAX_CACHE_BYTES_LENGTH = 128 * 1024;
+    private static final FastThreadLocal<byte[]> BYTES_LOCAL = new FastThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() throws Exception {
+            return new byte[8192];
+        }
+    };
     private static SerializerFeature[] SERIALIZER_FEATURES = {
 //            SerializerFeature.WriteClassName
     };
@@ -121,6 +133,39 @@ public class FastJsonDataCodec implements DataCodec {
 
     @Override
     public byte[] encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod) {
+        Map<String, Object> parameterMap = toParameterMap(data, rpcMethod);
+        try {
+            if (parameterMap.isEmpty()) {
+                return EMPTY;
+            } else {
+                try {
+                    return JSON.toJSONBytes(parameterMap, SERIALIZER_FEATURES);
+                } catch (Exception e) {
+                    throw new RpcEncodeException("encodeRequestData " + rpcMethod + " fastjson error " + e, e);
+                }
+            }
+        } finally {
+            parameterMap.clear();
+        }
+    }
+
+    @Override
+    public void encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod, ByteBuf out) {
+        Map<String, Object> parameterMap = toParameterMap(data, rpcMethod);
+        try {
+            if (!parameterMap.isEmpty()) {
+                try {
+                    JSON.writeJSONString(new ByteBufOutputStream(out), parameterMap, SERIALIZER_FEATURES);
+                } catch (Exception e) {
+                    throw new RpcEncodeException("encodeRequestData " + rpcMethod + " fastjson error " + e, e);
+                }
+            }
+        } finally {
+            parameterMap.clear();
+        }
+    }
+
+    private Map<String, Object> toParameterMap(Object[] data, RpcMethod<RpcClient> rpcMethod) {
         String[] parameterNames = rpcMethod.getParameterNames();
         Map<String, Object> parameterMap = PARAMETER_MAP_LOCAL.get();
         if (data != null && data.length != 0) {
@@ -133,23 +178,15 @@ public class FastJsonDataCodec implements DataCodec {
                 parameterMap.put(name, value);
             }
         }
-
         try {
             for (Consumer<Map<String, Object>> consumer : encodeRequestConsumerList) {
                 consumer.accept(parameterMap);
             }
-            if (parameterMap.isEmpty()) {
-                return EMPTY;
-            } else {
-                try {
-                    return JSON.toJSONBytes(parameterMap, SERIALIZER_FEATURES);
-                } catch (Exception e) {
-                    throw new RpcEncodeException("encodeRequestData " + rpcMethod + " fastjson error " + e, e);
-                }
-            }
-        } finally {
+        } catch (RuntimeException e) {
             parameterMap.clear();
+            throw e;
         }
+        return parameterMap;
     }
 
     @Override
@@ -164,6 +201,30 @@ public class FastJsonDataCodec implements DataCodec {
         } else {
             parameterMap = PARAMETER_MAP_LOCAL.get();
         }
+        return toParameterValues(parameterMap, rpcMethod);
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        Map parameterMap;
+        if (data != null && data.isReadable()) {
+            int length = data.readableBytes();
+            try {
+                if (data.hasArray()) {
+                    parameterMap = (Map) JSON.parse(data.array(), data.arrayOffset() + data.readerIndex(), length, CHARSET_DECODER_LOCAL.get(), FEATURE_MASK);
+                } else {
+                    parameterMap = (Map) JSON.parse(toBytes(data, length), 0, length, CHARSET_DECODER_LOCAL.get(), FEATURE_MASK);
+                }
+            } catch (Exception e) {
+                throw new RpcDecodeException("decodeRequestData " + rpcMethod + " fastjson error " + e, e);
+            }
+        } else {
+            parameterMap = PARAMETER_MAP_LOCAL.get();
+        }
+        return toParameterValues(parameterMap, rpcMethod);
+    }
+
+    private Object[] toParameterValues(Map parameterMap, RpcMethod<RpcServerInstance> rpcMethod) {
         try {
             for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
                 consumer.accept(parameterMap);
@@ -212,6 +273,24 @@ public class FastJsonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public void encodeResponseData(Object data, RpcMethod<RpcServerInstance> rpcMethod, ByteBuf out) {
+        if (data == null) {
+            return;
+        }
+
+        SerializeWriter writer = new SerializeWriter();
+        try {
+            JSONSerializer serializer = new JSONSerializer(writer, serializeConfig);
+            serializer.write(data);
+            writer.writeToEx(new ByteBufOutputStream(out), CHARSET_UTF8);
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeResponseData " + rpcMethod + " fastjson error " + e, e);
+        } finally {
+            close(writer);
+        }
+    }
+
     @Override
     public Object decodeResponseData(byte[] data, RpcMethod<RpcClient> rpcMethod) {
         if (data == null || data.length == 0) {
@@ -225,6 +304,19 @@ public class FastJsonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public Object decodeResponseData(ByteBuf data, RpcMethod<RpcClient> rpcMethod) {
+        if (data == null || !data.isReadable()) {
+            return null;
+        }
+        Type returnType = rpcMethod.getGenericReturnType();
+        try {
+            return parseObject(data, returnType);
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeResponseData " + rpcMethod + " fastjson error " + e, e);
+        }
+    }
+
     @Override
     public Object decodeChunkResponseData(byte[] data, Type type) {
         if (data == null || data.length == 0) {
@@ -254,6 +346,59 @@ public class FastJsonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public Object decodeChunkResponseData(ByteBuf data, Type type) {
+        if (data == null || !data.isReadable()) {
+            return null;
+        }
+        try {
+            return parseObject(data, type);
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeChunkResponseData " + type + " fastjson error " + e, e);
+        }
+    }
+
+    @Override
+    public void encodeChunkResponseData(Object data, ByteBuf out) {
+        if (data == null) {
+            return;
+        }
+        SerializeWriter writer = new SerializeWriter();
+        try {
+            JSONSerializer serializer = new JSONSerializer(writer, serializeConfig);
+            serializer.write(data);
+            writer.writeToEx(new ByteBufOutputStream(out), CHARSET_UTF8);
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeChunkResponseData " + data.getClass() + " fastjson error " + e, e);
+        } finally {
+            close(writer);
+        }
+    }
+
+    private Object parseObject(ByteBuf data, Type type) {
+        int length = data.readableBytes();
+        if (data.hasArray()) {
+            return JSON.parseObject(data.array(), data.arrayOffset() + data.readerIndex(), length, CHARSET_DECODER_LOCAL.get(), type, FEATURES);
+        } else {
+            return JSON.parseObject(toBytes(data, length), 0, length, CHARSET_DECODER_LOCAL.get(), type, FEATURES);
+        }
+    }
+
+    private static byte[] toBytes(ByteBuf data, int length) {
+        byte[] bytes;
+        if (length > MAX_CACHE_BYTES_LENGTH) {
+            bytes = new byte[length];
+        } else {
+            bytes = BYTES_LOCAL.get();
+            if (bytes.length < length) {
+                bytes = new byte[Math.min(MAX_CACHE_BYTES_LENGTH, Math.max(length, bytes.length << 1))];
+                BYTES_LOCAL.set(bytes);
+            }
+        }
+        data.getBytes(data.readerIndex(), bytes, 0, length);
+        return bytes;
+    }
+
     protected boolean isNeedCast(Object value, Class<?> type) {
         if (value == null) {
             return false;
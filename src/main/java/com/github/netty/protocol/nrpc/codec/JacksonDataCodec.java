@@ -8,8 +8,14 @@ import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.util.concurrent.FastThreadLocal;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -63,6 +69,39 @@ public class JacksonDataCodec implements DataCodec {
 
     @Override
     public byte[] encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod) {
+        Map<String, Object> parameterMap = toParameterMap(data, rpcMethod);
+        try {
+            if (parameterMap.isEmpty()) {
+                return EMPTY;
+            } else {
+                try {
+                    return objectMapper.writeValueAsBytes(parameterMap);
+                } catch (Exception e) {
+                    throw new RpcEncodeException("encodeRequestData " + rpcMethod + " jackson error " + e, e);
+                }
+            }
+        } finally {
+            parameterMap.clear();
+        }
+    }
+
+    @Override
+    public void encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod, ByteBuf out) {
+        Map<String, Object> parameterMap = toParameterMap(data, rpcMethod);
+        try {
+            if (!parameterMap.isEmpty()) {
+                try {
+                    objectMapper.writeValue((OutputStream) new ByteBufOutputStream(out), parameterMap);
+                } catch (Exception e) {
+                    throw new RpcEncodeException("encodeRequestData " + rpcMethod + " jackson error " + e, e);
+                }
+            }
+        } finally {
+            parameterMap.clear();
+        }
+    }
+
+    private Map<String, Object> toParameterMap(Object[] data, RpcMethod<RpcClient> rpcMethod) {
         String[] parameterNames = rpcMethod.getParameterNames();
         Map<String, Object> parameterMap = PARAMETER_MAP_LOCAL.get();
         if (data != null && data.length != 0) {
@@ -75,23 +114,15 @@ public class JacksonDataCodec implements DataCodec {
                 parameterMap.put(name, value);
             }
         }
-
         try {
             for (Consumer<Map<String, Object>> consumer : encodeRequestConsumerList) {
                 consumer.accept(parameterMap);
             }
-            if (parameterMap.isEmpty()) {
-                return EMPTY;
-            } else {
-                try {
-                    return objectMapper.writeValueAsBytes(parameterMap);
-                } catch (Exception e) {
-                    throw new RpcEncodeException("encodeRequestData " + rpcMethod + " jackson error " + e, e);
-                }
-            }
-        } finally {
+        } catch (RuntimeException e) {
             parameterMap.clear();
+            throw e;
         }
+        return parameterMap;
     }
 
     @Override
@@ -106,6 +137,25 @@ public class JacksonDataCodec implements DataCodec {
         } else {
             parameterMap = PARAMETER_MAP_LOCAL.get();
         }
+        return toParameterValues(parameterMap, rpcMethod);
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        Map parameterMap;
+        if (data != null && data.isReadable()) {
+            try {
+                parameterMap = read(data, LinkedHashMap.class);
+            } catch (Exception e) {
+                throw new RpcDecodeException("decodeRequestData " + rpcMethod + " jackson error " + e, e);
+            }
+        } else {
+            parameterMap = PARAMETER_MAP_LOCAL.get();
+        }
+        return toParameterValues(parameterMap, rpcMethod);
+    }
+
+    private Object[] toParameterValues(Map parameterMap, RpcMethod<RpcServerInstance> rpcMethod) {
         try {
             for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
                 consumer.accept(parameterMap);
@@ -148,6 +198,18 @@ public class JacksonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public void encodeResponseData(Object data, RpcMethod<RpcServerInstance> rpcMethod, ByteBuf out) {
+        if (data == null) {
+            return;
+        }
+        try {
+            objectMapper.writeValue((OutputStream) new ByteBufOutputStream(out), data);
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeResponseData " + rpcMethod + " jackson error " + e, e);
+        }
+    }
+
     @Override
     public Object decodeResponseData(byte[] data, RpcMethod<RpcClient> rpcMethod) {
         if (data == null || data.length == 0) {
@@ -162,6 +224,20 @@ public class JacksonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public Object decodeResponseData(ByteBuf data, RpcMethod<RpcClient> rpcMethod) {
+        if (data == null || !data.isReadable()) {
+            return null;
+        }
+
+        Type returnType = rpcMethod.getGenericReturnType();
+        try {
+            return read(data, returnType);
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeResponseData " + rpcMethod + " jackson error " + e, e);
+        }
+    }
+
     @Override
     public Object decodeChunkResponseData(byte[] data, Type type) {
         if (data == null || data.length == 0) {
@@ -175,6 +251,19 @@ public class JacksonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public Object decodeChunkResponseData(ByteBuf data, Type type) {
+        if (data == null || !data.isReadable()) {
+            return null;
+        }
+
+        try {
+            return read(data, type);
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeChunkResponseData " + type + " jackson error " + e, e);
+        }
+    }
+
     @Override
     public byte[] encodeChunkResponseData(Object data) {
         if (data == null) {
@@ -187,6 +276,30 @@ public class JacksonDataCodec implements DataCodec {
         }
     }
 
+    @Override
+    public void encodeChunkResponseData(Object data, ByteBuf out) {
+        if (data == null) {
+            return;
+        }
+        try {
+            objectMapper.writeValue((OutputStream) new ByteBufOutputStream(out), data);
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeChunkResponseData " + data.getClass() + " jackson error " + e, e);
+        }
+    }
+
+    /**
+     * Read the buffer. heap buffer read the array, direct buffer read by stream. (no copy)
+     */
+    private <T> T read(ByteBuf data, Type type) throws IOException {
+        if (data.hasArray()) {
+            return objectMapper.readValue(data.array(), data.arrayOffset() + data.readerIndex(), data.readableBytes(),
+                    TypeFactory.defaultInstance().constructType(type));
+        } else {
+            return objectMapper.readValue((InputStream) new ByteBufInputStream(data), TypeFactory.defaultInstance().constructType(type));
+        }
+    }
+
     protected boolean isNeedCast(Object value, Class<?> type) {
         if (value == null) {
             return false;
@@ -29,12 +29,22 @@ import static com.github.netty.protocol.nrpc.codec.RpcEncoder.RPC_CHARSET;
  * | header/version | type | ACK   | total length | Request ID | status | message length | message  | encode | data length |         data             |
  * |   NRPC/010     |  2   | 0    |     35       |     1      |  200   |       2        |  ok      | 1      |     24      | {"age":10,"name":"wang"} |
  * -+----------------+------+------+--------------+------------+--------+----------------+----------+--------+-------------+--------------------------+
+ * <p>
+ * Symbol Request Packet (note:  8 = define type, 9 = symbol type)
+ * see {@link RpcEncoder}
+ * <p>
+ * The not small data of the request and response is a retained slice of the frame ({@link RpcPacket#getDataBuf()}),
+ * the codec read it without copy, then the packet release it.
  *
  * @author wangzihao
  */
 public class RpcDecoder extends LengthFieldBasedFrameDecoder {
     private static final byte[] EMPTY = {};
     private static final int LENGTH_FIELD_OFFSET = PROTOCOL_HEADER.length + BYTE_LENGTH + BYTE_LENGTH;
+    /**
+     * the data less than this is copied to byte[]. (a small slice hold the whole frame buffer)
+     */
+    private static final int SLICE_DATA_MIN_LENGTH = 1024;
 
     public RpcDecoder() {
         this(10 * 1024 * 1024);
@@ -58,6 +68,10 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         }
 
         try {
+            byte rpcType = msg.getByte(msg.readerIndex() + PROTOCOL_HEADER.length);
+            if (rpcType == RpcPacket.TYPE_CLIENT_REQUEST_SYMBOL_DEFINE || rpcType == RpcPacket.TYPE_CLIENT_REQUEST_SYMBOL) {
+                return decodeSymbolToPojo(msg, RpcSymbolTable.getOrCreate(ctx.channel()));
+            }
             return decodeToPojo(msg);
         } finally {
             if (msg.refCnt() > 0) {
@@ -66,6 +80,59 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         }
     }
 
+    /**
+     * Resolve the symbol request to the request packet
+     *
+     * @param msg         msg
+     * @param symbolTable the interned ids of the channel
+     * @return RequestPacket. if the symbol id is unknown then the names is null
+     */
+    protected Object decodeSymbolToPojo(ByteBuf msg, RpcSymbolTable symbolTable) {
+        //Skip protocol header
+        msg.skipBytes(PROTOCOL_HEADER.length);
+
+        byte rpcType = msg.readByte();
+        byte ack = msg.readByte();
+
+        //read total length
+        long totalLength = msg.readUnsignedInt();
+
+        RequestPacket packet = RequestPacket.newInstance();
+        packet.setPacketLength(totalLength + LENGTH_FIELD_OFFSET);
+        //Ack
+        packet.setAck(ack);
+
+        //Request ID
+        packet.setRequestId(msg.readInt());
+
+        //Request Timeout
+        packet.setTimeout(msg.readInt());
+
+        //Symbol id
+        int symbolId = msg.readInt();
+        packet.setSymbolId(symbolId);
+        if (rpcType == RpcPacket.TYPE_CLIENT_REQUEST_SYMBOL_DEFINE) {
+            String requestMappingName = msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString();
+            String version = msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString();
+            String methodName = msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString();
+            packet.setRequestMappingName(requestMappingName);
+            packet.setVersion(version);
+            packet.setMethodName(methodName);
+            packet.setSymbolDefine(symbolTable.define(symbolId, requestMappingName, version, methodName));
+        } else {
+            RpcSymbolTable.Symbol symbol = symbolTable.getSymbol(symbolId);
+            if (symbol != null) {
+                packet.setRequestMappingName(symbol.getRequestMappingName());
+                packet.setVersion(symbol.getVersion());
+                packet.setMethodName(symbol.getMethodName());
+            }
+        }
+
+        //Request data
+        readData(msg, packet, EMPTY);
+        return packet;
+    }
+
     /**
      * Resolve to the entity class
      *
@@ -106,13 +173,7 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
                 packet.setMethodName(msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString());
 
                 //Request data
-                long dataLength = msg.readUnsignedInt();
-                if (dataLength > 0) {
-                    packet.setData(new byte[(int) dataLength]);
-                    msg.readBytes(packet.getData());
-                } else {
-                    packet.setData(EMPTY);
-                }
+                readData(msg, packet, EMPTY);
                 return packet;
             }
             case RpcPacket.TYPE_RESPONSE_CHUNK_ACK:
@@ -136,13 +197,7 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
                 packet.setMessage(msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString());
 
                 //Request data
-                long dataLength = msg.readUnsignedInt();
-                if (dataLength > 0) {
-                    packet.setData(new byte[(int) dataLength]);
-                    msg.readBytes(packet.getData());
-                } else {
-                    packet.setData(null);
-                }
+                readData(msg, packet, null);
 
                 //Chunk id
                 if (packet instanceof RpcPacket.ResponseChunkPacket) {
@@ -170,4 +225,23 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         }
     }
 
+    /**
+     * Read the data length and the data
+     *
+     * @param msg       msg
+     * @param packet    packet
+     * @param emptyData if no data
+     */
+    protected void readData(ByteBuf msg, RpcPacket packet, byte[] emptyData) {
+        long dataLength = msg.readUnsignedInt();
+        if (dataLength >= SLICE_DATA_MIN_LENGTH) {
+            packet.setDataBuf(msg.readRetainedSlice((int) dataLength));
+        } else if (dataLength > 0) {
+            packet.setData(new byte[(int) dataLength]);
+            msg.readBytes(packet.getData());
+        } else {
+            packet.setData(emptyData);
+        }
+    }
+
 }
@@ -3,8 +3,11 @@ package com.github.netty.protocol.nrpc.codec;
 import com.github.netty.protocol.nrpc.RpcPacket;
 import com.github.netty.protocol.nrpc.RpcVersion;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 import java.nio.charset.Charset;
@@ -28,8 +31,27 @@ import static com.github.netty.protocol.nrpc.RpcPacket.*;
  * | header/version | type | ACK   | total length | Request ID | status | message length | message  | encode | data length |         data             |
  * |   NRPC/010     |  2   | 0    |     35       |     1      |  200   |       2        |  ok      | 1      |     24      | {"age":10,"name":"wang"} |
  * -+----------------+------+------+--------------+------------+--------+----------------+----------+--------+-------------+--------------------------+
+ * <p>
+ * <p>
+ * Symbol Define Request Packet (note:  8 = define type. the request packet + symbol id)
+ * -+------8B--------+--1B--+--1B--+------4B------+-----4B-----+-----4B-----+-----4B-----+------1B--------+-----length-----+------1B-------+---length----+-----4B------+-------length-------------+
+ * | header/version | type | ACK   | total length | Request ID| timeout/ms | symbol id  | service length | service name   | method length | method name | data length |         data             |
+ * |   NRPC/010     |  8   | 1    |     59       |     1      |     1000   |     0      |       8        | "/sys/user"    |      7        |  getUser    |     24      | {"age":10,"name":"wang"} |
+ * -+----------------+------+------+--------------+-----------+------------+------------+----------------+----------------+---------------+-------------+-------------+--------------------------+
+ * <p>
+ * <p>
+ * Symbol Request Packet (note:  9 = symbol type)
+ * -+------8B--------+--1B--+--1B--+------4B------+-----4B-----+-----4B-----+-----4B-----+-----4B------+-------length-------------+
+ * | header/version | type | ACK   | total length | Request ID| timeout/ms | symbol id  | data length |         data             |
+ * |   NRPC/010     |  9   | 1    |     40       |     1      |     1000   |     0      |     24      | {"age":10,"name":"wang"} |
+ * -+----------------+------+------+--------------+-----------+------------+------------+-------------+--------------------------+
+ * <p>
+ * <p>
+ * If the data of the packet is a buffer ({@link RpcPacket#getDataBuf()}) and not small,
+ * the frame is a composite buffer of the header, the data buffer and the tail. (no copy)
  *
  * @author wangzihao
+ * @see RpcSymbolTable
  */
 @ChannelHandler.Sharable
 public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
@@ -44,22 +66,69 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
      * (Request ID)4B + (timeout/ms)4B + (service name length)1B + (service version length)1B + (method length)1B + (data length)4B
      */
     private static final int FIXED_REQUEST_LENGTH = INT_LENGTH + INT_LENGTH + BYTE_LENGTH + BYTE_LENGTH + BYTE_LENGTH + INT_LENGTH;
+    /**
+     * Fixed symbol request length (note : Not including the total length.)
+     * (Request ID)4B + (timeout/ms)4B + (symbol id)4B + (data length)4B
+     */
+    private static final int FIXED_SYMBOL_REQUEST_LENGTH = INT_LENGTH + INT_LENGTH + INT_LENGTH + INT_LENGTH;
     /**
      * Fixed response length (note : Not including the total length.)
      * (Request ID)4B + (status)2B + (message length)1B + (encode)1B + (data length)4B
      */
     private static final int FIXED_RESPONSE_LENGTH = INT_LENGTH + SHORT_LENGTH + BYTE_LENGTH + BYTE_LENGTH + INT_LENGTH;
+    /**
+     * the data buffer less than this is copied to the frame. (a composite buffer cost more than a small copy)
+     */
+    private static final int COMPOSITE_DATA_MIN_LENGTH = 1024;
+    /**
+     * the capacity after the data buffer. (e.g. chunk id)
+     */
+    private static final int COMPOSITE_TAIL_CAPACITY = 16;
+    /**
+     * the message length is 1 byte Unsigned. (the longer message is truncated)
+     */
+    private static final int MAX_MESSAGE_LENGTH = 255;
 
     public RpcEncoder() {
     }
 
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        ByteBuf dataBuf;
+        if (!(msg instanceof RpcPacket)
+                || (dataBuf = ((RpcPacket) msg).getDataBuf()) == null
+                || dataBuf.readableBytes() < COMPOSITE_DATA_MIN_LENGTH) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+        CompositeByteBuf frame = ctx.alloc().compositeDirectBuffer();
+        try {
+            encode(ctx, (RpcPacket) msg, frame);
+        } catch (EncoderException e) {
+            frame.release();
+            throw e;
+        } catch (Throwable e) {
+            frame.release();
+            throw new EncoderException(e);
+        }
+        ctx.write(frame, promise);
+    }
+
     @Override
     public void encode(ChannelHandlerContext ctx, RpcPacket packet, ByteBuf out) throws Exception {
         int packetType = packet.getPacketType();
         try {
             switch (packetType) {
                 case TYPE_CLIENT_REQUEST: {
-                    encodePacket((RequestPacket) packet, out);
+                    RequestPacket request = (RequestPacket) packet;
+                    RpcSymbolTable symbolTable;
+                    if (request.getSymbolKey() != null
+                            && (symbolTable = RpcSymbolTable.get(ctx.channel())) != null
+                            && symbolTable.isEnabled()) {
+                        encodeSymbolPacket(request, symbolTable, out);
+                    } else {
+                        encodePacket(request, out);
+                    }
                     break;
                 }
                 case TYPE_RESPONSE_CHUNK_ACK:
@@ -90,11 +159,62 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
                 }
             }
         } finally {
+            packet.releaseDataBuf();
             packet.recycle();
         }
     }
 
+    protected void encodeSymbolPacket(RequestPacket packet, RpcSymbolTable symbolTable, ByteBuf out) {
+        Object symbolKey = packet.getSymbolKey();
+        String requestMappingName = packet.getRequestMappingName();
+        String version = packet.getVersion();
+        String methodName = packet.getMethodName();
+        int symbolId = symbolTable.getSymbolId(symbolKey, requestMappingName, version, methodName);
+        if (symbolId != -1) {
+            encodeSymbolPacket(packet, symbolId, out);
+            return;
+        }
+        symbolId = symbolTable.newSymbolId(symbolKey, requestMappingName, version, methodName);
+        if (symbolId != -1) {
+            encodePacket(packet, TYPE_CLIENT_REQUEST_SYMBOL_DEFINE, symbolId, out);
+        } else {
+            // the ids are used up
+            encodePacket(packet, out);
+        }
+    }
+
+    protected void encodeSymbolPacket(RequestPacket packet, int symbolId, ByteBuf out) {
+        //(8 byte) protocol head
+        out.writeBytes(PROTOCOL_HEADER);
+
+        //(1 byte Unsigned) RPC packet type
+        out.writeByte(RpcPacket.TYPE_CLIENT_REQUEST_SYMBOL);
+
+        //(1 byte Unsigned) RPC packet ack
+        out.writeByte(packet.getAck());
+
+        //(4 byte Unsigned) total length
+        out.writeInt(FIXED_SYMBOL_REQUEST_LENGTH + packet.getDataLength());
+
+        //(4 byte) Request ID
+        out.writeInt(packet.getRequestId());
+
+        //(4 byte) Request Timeout
+        out.writeInt(packet.getTimeout());
+
+        //(4 byte) symbol id
+        out.writeInt(symbolId);
+
+        //(4 byte Unsigned) data length
+        //(length byte)  data
+        writeData(packet, out);
+    }
+
     protected void encodePacket(RequestPacket packet, ByteBuf out) {
+        encodePacket(packet, RpcPacket.TYPE_CLIENT_REQUEST, -1, out);
+    }
+
+    protected void encodePacket(RequestPacket packet, byte packetType, int symbolId, ByteBuf out) {
         int writeCurrentLength;
         int writeTotalLength = FIXED_REQUEST_LENGTH;
 
@@ -102,7 +222,7 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         out.writeBytes(PROTOCOL_HEADER);
 
         //(1 byte Unsigned) RPC packet type
-        out.writeByte(RpcPacket.TYPE_CLIENT_REQUEST);
+        out.writeByte(packetType);
 
         //(1 byte Unsigned) RPC packet ack
         out.writeByte(packet.getAck());
@@ -117,6 +237,12 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         //(4 byte) Request Timeout
         out.writeInt(packet.getTimeout());
 
+        if (packetType == TYPE_CLIENT_REQUEST_SYMBOL_DEFINE) {
+            //(4 byte) symbol id
+            out.writeInt(symbolId);
+            writeTotalLength += INT_LENGTH;
+        }
+
         //(length byte) service name
         out.writerIndex(out.writerIndex() + BYTE_LENGTH);
         writeCurrentLength = out.writeCharSequence(packet.getRequestMappingName(), RPC_CHARSET);
@@ -142,13 +268,8 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         writeTotalLength += writeCurrentLength;
 
         //(4 byte Unsigned) data length
-        byte[] data = packet.getData();
-        out.writeInt(data.length);
-        if (data.length > 0) {
-            //(length byte)  data
-            out.writeBytes(data);
-            writeTotalLength += data.length;
-        }
+        //(length byte)  data
+        writeTotalLength += writeData(packet, out);
 
         //set total length Unsigned
         out.setInt(writerTotalLengthIndex, writeTotalLength);
@@ -183,20 +304,24 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         //(length byte) Response information
         out.writerIndex(out.writerIndex() + BYTE_LENGTH);
         writeCurrentLength = out.writeCharSequence(packet.getMessage(), RPC_CHARSET);
+        if (writeCurrentLength > MAX_MESSAGE_LENGTH) {
+            int messageIndex = out.writerIndex() - writeCurrentLength;
+            int truncateLength = MAX_MESSAGE_LENGTH;
+            // not split the utf-8 char. (10xxxxxx is the continuation byte)
+            while (truncateLength > 0 && (out.getByte(messageIndex + truncateLength) & 0xC0) == 0x80) {
+                truncateLength--;
+            }
+            out.writerIndex(messageIndex + truncateLength);
+            writeCurrentLength = truncateLength;
+        }
 
         //(1 byte Unsigned) Response information length
         out.setByte(out.writerIndex() - writeCurrentLength - BYTE_LENGTH, writeCurrentLength);
         writeTotalLength += writeCurrentLength;
 
         //(4 byte Unsigned) data length
-        byte[] data = packet.getData();
-        writeCurrentLength = data == null ? 0 : data.length;
-        out.writeInt(writeCurrentLength);
-        if (writeCurrentLength > 0) {
-            out.writeBytes(data);
-            //(length byte)  data
-            writeTotalLength += writeCurrentLength;
-        }
+        //(length byte)  data
+        writeTotalLength += writeData(packet, out);
 
         if (packet instanceof ResponseChunkPacket) {
             // (2 byte Unsigned)  chunk id
@@ -212,4 +337,38 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         out.setInt(writerTotalLengthIndex, writeTotalLength);
     }
 
+    /**
+     * Write the data length and the data.
+     * if the out is a composite frame, the data buffer is added as a component. (no copy)
+     *
+     * @param packet packet
+     * @param out    out
+     * @return data length
+     */
+    protected int writeData(RpcPacket packet, ByteBuf out) {
+        ByteBuf dataBuf = packet.getDataBuf();
+        if (dataBuf == null) {
+            byte[] data = packet.getData();
+            int length = data == null ? 0 : data.length;
+            out.writeInt(length);
+            if (length > 0) {
+                out.writeBytes(data);
+            }
+            return length;
+        }
+        int length = dataBuf.readableBytes();
+        out.writeInt(length);
+        if (out instanceof CompositeByteBuf) {
+            CompositeByteBuf frame = (CompositeByteBuf) out;
+            // the data buffer is owned by the frame
+            packet.setDataBuf(null);
+            frame.capacity(frame.writerIndex());
+            frame.addComponent(true, dataBuf);
+            frame.capacity(frame.capacity() + COMPOSITE_TAIL_CAPACITY);
+        } else {
+            out.writeBytes(dataBuf, dataBuf.readerIndex(), length);
+        }
+        return length;
+    }
+
 }
@@ -0,0 +1,209 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Interned (service, version, method) ids of a connection. (only access in the event loop of the channel)
+ * <p>
+ * 1. the client send {@link com.github.netty.protocol.nrpc.RpcPacket#TYPE_SYMBOL_HELLO} after connected.
+ * the old server ignore the unknown packet type, so the client always send the full name request.
+ * 2. if the server reply the hello, the encoder of the client send the first call of a method by
+ * {@link com.github.netty.protocol.nrpc.RpcPacket#TYPE_CLIENT_REQUEST_SYMBOL_DEFINE} (full name + id),
+ * the next calls by {@link com.github.netty.protocol.nrpc.RpcPacket#TYPE_CLIENT_REQUEST_SYMBOL} (only id).
+ * 3. the decoder of the server bind the id to the names when it read the define packet.
+ * if the id is unknown, the server response {@link com.github.netty.protocol.nrpc.RpcPacket.ResponsePacket#NO_SUCH_SYMBOL},
+ * then the client clear the ids and resend the request by full name.
+ *
+ * @author wangzihao
+ */
+public class RpcSymbolTable {
+    public static final AttributeKey<RpcSymbolTable> CHANNEL_ATTR_KEY = AttributeKey.valueOf(RpcSymbolTable.class + "#symbolTable");
+    public static final int DEFAULT_MAX_SYMBOL_COUNT = 4096;
+    /**
+     * client side. key = {@link com.github.netty.protocol.nrpc.RpcPacket.RequestPacket#getSymbolKey()}
+     */
+    private final Map<Object, Symbol> symbolKeyMap = new IdentityHashMap<>();
+    /**
+     * server side. index = symbol id
+     */
+    private Symbol[] symbols = new Symbol[16];
+    private int definedCount;
+    private int maxSymbolCount;
+    private boolean enabled;
+
+    public RpcSymbolTable(int maxSymbolCount) {
+        this.maxSymbolCount = maxSymbolCount;
+    }
+
+    public static RpcSymbolTable get(Channel channel) {
+        return channel.hasAttr(CHANNEL_ATTR_KEY) ? channel.attr(CHANNEL_ATTR_KEY).get() : null;
+    }
+
+    public static RpcSymbolTable getOrCreate(Channel channel) {
+        Attribute<RpcSymbolTable> attr = channel.attr(CHANNEL_ATTR_KEY);
+        RpcSymbolTable symbolTable = attr.get();
+        if (symbolTable == null) {
+            symbolTable = new RpcSymbolTable(DEFAULT_MAX_SYMBOL_COUNT);
+            attr.set(symbolTable);
+        }
+        return symbolTable;
+    }
+
+    /**
+     * The peer support the symbol packets. (client side)
+     *
+     * @return true = send the symbol packets
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * On the peer reply hello. (client side)
+     *
+     * @param peerMaxSymbolCount the max symbol count of the peer
+     */
+    public void enable(int peerMaxSymbolCount) {
+        if (peerMaxSymbolCount > 0) {
+            this.maxSymbolCount = Math.min(maxSymbolCount, peerMaxSymbolCount);
+        }
+        this.enabled = true;
+    }
+
+    public int getMaxSymbolCount() {
+        return maxSymbolCount;
+    }
+
+    /**
+     * @param symbolKey          symbolKey
+     * @param requestMappingName requestMappingName
+     * @param version            version
+     * @param methodName         methodName
+     * @return the defined id. -1 = not defined
+     */
+    public int getSymbolId(Object symbolKey, String requestMappingName, String version, String methodName) {
+        Symbol symbol = symbolKeyMap.get(symbolKey);
+        if (symbol == null || !symbol.equals(requestMappingName, version, methodName)) {
+            return -1;
+        }
+        return symbol.id;
+    }
+
+    /**
+     * Assign a new id (client side)
+     *
+     * @param symbolKey          symbolKey
+     * @param requestMappingName requestMappingName
+     * @param version            version
+     * @param methodName         methodName
+     * @return the new id. -1 = the ids are used up
+     */
+    public int newSymbolId(Object symbolKey, String requestMappingName, String version, String methodName) {
+        Symbol old = symbolKeyMap.get(symbolKey);
+        int id;
+        if (old != null) {
+            id = old.id;
+        } else if (symbolKeyMap.size() < maxSymbolCount) {
+            id = symbolKeyMap.size();
+        } else {
+            return -1;
+        }
+        symbolKeyMap.put(symbolKey, new Symbol(id, requestMappingName, version, methodName));
+        return id;
+    }
+
+    /**
+     * Bind the id to the names (server side)
+     *
+     * @param id                 id
+     * @param requestMappingName requestMappingName
+     * @param version            version
+     * @param methodName         methodName
+     * @return false = the id is out of range
+     */
+    public boolean define(int id, String requestMappingName, String version, String methodName) {
+        if (id < 0 || id >= maxSymbolCount) {
+            return false;
+        }
+        if (id >= symbols.length) {
+            Symbol[] newSymbols = new Symbol[Math.min(maxSymbolCount, Math.max(id + 1, symbols.length << 1))];
+            System.arraycopy(symbols, 0, newSymbols, 0, symbols.length);
+            symbols = newSymbols;
+        }
+        if (symbols[id] == null) {
+            definedCount++;
+        }
+        symbols[id] = new Symbol(id, requestMappingName, version, methodName);
+        return true;
+    }
+
+    /**
+     * Get the names of the id (server side)
+     *
+     * @param id id
+     * @return null = unknown id
+     */
+    public Symbol getSymbol(int id) {
+        return id >= 0 && id < symbols.length ? symbols[id] : null;
+    }
+
+    /**
+     * Forget all ids. the next calls will define again
+     */
+    public void clear() {
+        symbolKeyMap.clear();
+        symbols = new Symbol[16];
+        definedCount = 0;
+    }
+
+    public int size() {
+        return symbolKeyMap.size() + definedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcSymbolTable{enabled=" + enabled + ", size=" + size() + ", maxSymbolCount=" + maxSymbolCount + "}";
+    }
+
+    public static class Symbol {
+        private final int id;
+        private final String requestMappingName;
+        private final String version;
+        private final String methodName;
+
+        Symbol(int id, String requestMappingName, String version, String methodName) {
+            this.id = id;
+            this.requestMappingName = requestMappingName;
+            this.version = version;
+            this.methodName = methodName;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getRequestMappingName() {
+            return requestMappingName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        boolean equals(String requestMappingName, String version, String methodName) {
+            return Objects.equals(this.requestMappingName, requestMappingName)
+                    && Objects.equals(this.version, version)
+                    && Objects.equals(this.methodName, methodName);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package com.github.netty.protocol.nrpc.service;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log and snapshot of one group of the {@link RpcDBServiceImpl}.
+ * the files in the directory of the group:
+ * <p>
+ * wal-{seq}.log       the records after the snapshot of the seq
+ * snapshot-{seq}.dat  the keys at the snapshot. the wal-{seq} is replayed on it
+ * <p>
+ * the snapshot is taken when writing (fuzzy). so all the records are idempotent (put has the expiry timestamp, the change key has the data).
+ * record = length(4) + crc32(4) + body(length). the broken tail record (crash when writing) is truncated on the load.
+ * <p>
+ * the FileChannel is closed by the interrupt of the thread in the io. (e.g. the timeout interrupt of the rpc thread)
+ * the write and the fsync clear the interrupt (restore after), and reopen the wal then retry if the channel is closed by the interrupt.
+ *
+ * @author wangzihao
+ */
+public class RpcDBLog implements Closeable {
+    /**
+     * key, expiryTimestamp(8), data
+     */
+    public static final byte TYPE_PUT = 1;
+    /**
+     * key
+     */
+    public static final byte TYPE_REMOVE = 2;
+    /**
+     * oldKey, newKey, expiryTimestamp(8), data
+     */
+    public static final byte TYPE_CHANGE_KEY = 3;
+    /**
+     * maxSize(8)
+     */
+    public static final byte TYPE_MAX_SIZE = 4;
+    private static final String WAL_PREFIX = "wal-";
+    private static final String WAL_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(RpcDBLog.class);
+    private static final int MAX_REOPEN_RETRY = 3;
+    private final File dir;
+    private final FsyncPolicy fsyncPolicy;
+    /**
+     * lock order: snapshotLock -> syncLock -> writeLock
+     */
+    private final Object snapshotLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object writeLock = new Object();
+    private FileChannel channel;
+    private long seq;
+    /**
+     * the bytes written to all the wal files. guarded by writeLock
+     */
+    private long writePosition;
+    /**
+     * the bytes of the current wal file. guarded by writeLock
+     */
+    private long walBytes;
+    private volatile long syncPosition;
+    private volatile boolean closed;
+
+    public RpcDBLog(File dir, FsyncPolicy fsyncPolicy) {
+        this.dir = dir;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * replay the snapshot and the wal files, and open the wal for append.
+     *
+     * @param handler the replayed records
+     * @throws IOException IOException
+     */
+    public void load(RecordHandler handler) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create directory " + dir);
+        }
+        long snapshotSeq = -1;
+        for (long seq : listSeq(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            snapshotSeq = Math.max(snapshotSeq, seq);
+        }
+        long recordCount = 0;
+        if (snapshotSeq >= 0) {
+            File snapshot = file(SNAPSHOT_PREFIX, snapshotSeq, SNAPSHOT_SUFFIX);
+            long[] result = read(snapshot, handler);
+            if (result[0] != snapshot.length()) {
+                throw new IOException("Broken snapshot " + snapshot);
+            }
+            recordCount += result[1];
+        }
+        List<Long> walSeqList = new ArrayList<>();
+        for (long seq : listSeq(WAL_PREFIX, WAL_SUFFIX)) {
+            if (seq >= snapshotSeq) {
+                walSeqList.add(seq);
+            }
+        }
+        walSeqList.sort(Long::compare);
+        long lastSeq = Math.max(snapshotSeq, 0);
+        long lastValidLength = 0;
+        for (int i = 0; i < walSeqList.size(); i++) {
+            File wal = file(WAL_PREFIX, walSeqList.get(i), WAL_SUFFIX);
+            long[] result = read(wal, handler);
+            recordCount += result[1];
+            if (result[0] != wal.length()) {
+                LOGGER.warn("RpcDBLog truncate broken record. file={}, validLength={}, length={}", wal, result[0], wal.length());
+            }
+            lastSeq = walSeqList.get(i);
+            lastValidLength = result[0];
+        }
+
+        synchronized (writeLock) {
+            this.seq = lastSeq;
+            this.walBytes = lastValidLength;
+            this.channel = FileChannel.open(file(WAL_PREFIX, lastSeq, WAL_SUFFIX).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            boolean interrupted = Thread.interrupted();
+            try {
+                channel.truncate(lastValidLength);
+                channel.position(lastValidLength);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        LOGGER.info("RpcDBLog load {} records. dir={}, snapshotSeq={}, walFiles={}", recordCount, dir, snapshotSeq, walSeqList.size());
+    }
+
+    /**
+     * @return [valid length, record count]
+     */
+    private static long[] read(File file, RecordHandler handler) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            return read(in, file.length(), handler);
+        }
+    }
+
+    /**
+     * @param in        the records
+     * @param maxLength the max length of the records
+     * @param handler   handler
+     * @return [valid length, record count]
+     * @throws IOException IOException
+     */
+    static long[] read(InputStream in, long maxLength, RecordHandler handler) throws IOException {
+        long validLength = 0;
+        long count = 0;
+        CRC32 crc32 = new CRC32();
+        DataInputStream dataIn = new DataInputStream(in);
+        while (true) {
+            int length;
+            int crc;
+            byte[] body;
+            try {
+                length = dataIn.readInt();
+                crc = dataIn.readInt();
+                if (length <= 0 || length > maxLength) {
+                    break;
+                }
+                body = new byte[length];
+                dataIn.readFully(body);
+            } catch (EOFException e) {
+                break;
+            }
+            crc32.reset();
+            crc32.update(body, 0, body.length);
+            if ((int) crc32.getValue() != crc) {
+                break;
+            }
+            decode(body, handler);
+            validLength += 8 + length;
+            count++;
+        }
+        return new long[]{validLength, count};
+    }
+
+    private static void decode(byte[] body, RecordHandler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_PUT: {
+                String key = readString(in);
+                long expiryTimestamp = in.readLong();
+                handler.put(key, expiryTimestamp, readBytes(in));
+                break;
+            }
+            case TYPE_REMOVE: {
+                handler.remove(readString(in));
+                break;
+            }
+            case TYPE_CHANGE_KEY: {
+                String oldKey = readString(in);
+                String newKey = readString(in);
+                long expiryTimestamp = in.readLong();
+                handler.changeKey(oldKey, newKey, expiryTimestamp, readBytes(in));
+                break;
+            }
+            case TYPE_MAX_SIZE: {
+                handler.maxSize(in.readLong());
+                break;
+            }
+            default: {
+                throw new IOException("Unknown record type " + type);
+            }
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(byte type, String key, String newKey, long value, byte[] data) {
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        byte[] newKeyBytes = newKey == null ? null : newKey.getBytes(StandardCharsets.UTF_8);
+        int length = 1;
+        if (keyBytes != null) {
+            length += 4 + keyBytes.length;
+        }
+        if (newKeyBytes != null) {
+            length += 4 + newKeyBytes.length;
+        }
+        if (type != TYPE_REMOVE) {
+            length += 8;
+        }
+        if (type == TYPE_PUT || type == TYPE_CHANGE_KEY) {
+            length += 4 + (data == null ? 0 : data.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8 + length);
+        buffer.putInt(length);
+        buffer.putInt(0);
+        buffer.put(type);
+        if (keyBytes != null) {
+            buffer.putInt(keyBytes.length).put(keyBytes);
+        }
+        if (newKeyBytes != null) {
+            buffer.putInt(newKeyBytes.length).put(newKeyBytes);
+        }
+        if (type != TYPE_REMOVE) {
+            buffer.putLong(value);
+        }
+        if (type == TYPE_PUT || type == TYPE_CHANGE_KEY) {
+            if (data == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(data.length).put(data);
+            }
+        }
+        byte[] record = buffer.array();
+        CRC32 crc32 = new CRC32();
+        crc32.update(record, 8, length);
+        buffer.putInt(4, (int) crc32.getValue());
+        return record;
+    }
+
+    static byte[] encodePut(String key, long expiryTimestamp, byte[] data) {
+        return encode(TYPE_PUT, key, null, expiryTimestamp, data);
+    }
+
+    static byte[] encodeRemove(String key) {
+        return encode(TYPE_REMOVE, key, null, 0, null);
+    }
+
+    static byte[] encodeChangeKey(String oldKey, String newKey, long expiryTimestamp, byte[] data) {
+        return encode(TYPE_CHANGE_KEY, oldKey, newKey, expiryTimestamp, data);
+    }
+
+    static byte[] encodeMaxSize(long maxSize) {
+        return encode(TYPE_MAX_SIZE, null, null, maxSize, null);
+    }
+
+    /**
+     * @param out the records
+     * @return write the records to the out
+     */
+    static RecordHandler newWriter(OutputStream out) {
+        return new SnapshotWriter(out);
+    }
+
+    public long put(String key, long expiryTimestamp, byte[] data) throws IOException {
+        return append(encodePut(key, expiryTimestamp, data));
+    }
+
+    public long remove(String key) throws IOException {
+        return append(encodeRemove(key));
+    }
+
+    public long changeKey(String oldKey, String newKey, long expiryTimestamp, byte[] data) throws IOException {
+        return append(encodeChangeKey(oldKey, newKey, expiryTimestamp, data));
+    }
+
+    public long maxSize(long maxSize) throws IOException {
+        return append(encodeMaxSize(maxSize));
+    }
+
+    /**
+     * @param record the encoded record. (encodePut, encodeRemove...)
+     * @return the position after the record. {@link #commit(long)}
+     * @throws IOException IOException
+     */
+    long append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IOException("RpcDBLog is closed. dir=" + dir);
+            }
+            for (int retry = 0; ; retry++) {
+                boolean interrupted = Thread.interrupted();
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    break;
+                } catch (ClosedChannelException e) {
+                    if (closed || retry >= MAX_REOPEN_RETRY) {
+                        throw e;
+                    }
+                    // drop the part of the record
+                    reopen();
+                    buffer.rewind();
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            walBytes += record.length;
+            writePosition += record.length;
+            return writePosition;
+        }
+    }
+
+    /**
+     * wait the record is durable by the {@link FsyncPolicy}.
+     * call without the lock of the caller. the concurrent commits share one fsync. (group commit)
+     *
+     * @param position the return of the append
+     * @throws IOException IOException
+     */
+    public void commit(long position) throws IOException {
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync(position);
+        }
+    }
+
+    /**
+     * fsync all the written records. {@link FsyncPolicy#BATCH}
+     *
+     * @throws IOException IOException
+     */
+    public void flush() throws IOException {
+        long position;
+        synchronized (writeLock) {
+            position = writePosition;
+        }
+        sync(position);
+    }
+
+    private void sync(long position) throws IOException {
+        if (syncPosition >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncPosition >= position || closed) {
+                return;
+            }
+            long written;
+            synchronized (writeLock) {
+                written = writePosition;
+            }
+            force();
+            syncPosition = written;
+        }
+    }
+
+    /**
+     * fsync the wal. guarded by syncLock (the rotate hold the syncLock. the channel is not rotated here)
+     *
+     * @throws IOException IOException
+     */
+    private void force() throws IOException {
+        FileChannel channel;
+        synchronized (writeLock) {
+            channel = this.channel;
+        }
+        for (int retry = 0; ; retry++) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                channel.force(false);
+                return;
+            } catch (ClosedChannelException e) {
+                if (closed || retry >= MAX_REOPEN_RETRY) {
+                    throw e;
+                }
+                synchronized (writeLock) {
+                    if (this.channel == channel) {
+                        reopen();
+                    }
+                    channel = this.channel;
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * reopen the wal closed by the interrupt. the part of the record after the walBytes is truncated.
+     * guarded by writeLock
+     *
+     * @throws IOException IOException
+     */
+    private void reopen() throws IOException {
+        LOGGER.warn("RpcDBLog reopen the wal closed by the interrupt. dir={}, seq={}, walBytes={}", dir, seq, walBytes);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //skip
+        }
+        boolean interrupted = Thread.interrupted();
+        try {
+            FileChannel channel = FileChannel.open(file(WAL_PREFIX, seq, WAL_SUFFIX).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(walBytes);
+            channel.position(walBytes);
+            this.channel = channel;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * write the snapshot, and delete the old wal files.
+     *
+     * @param state the keys of the group
+     * @throws IOException IOException
+     */
+    public void snapshot(State state) throws IOException {
+        synchronized (snapshotLock) {
+            long snapshotSeq;
+            synchronized (syncLock) {
+                synchronized (writeLock) {
+                    if (closed) {
+                        return;
+                    }
+                    force();
+                    channel.close();
+                    snapshotSeq = ++seq;
+                    channel = FileChannel.open(file(WAL_PREFIX, snapshotSeq, WAL_SUFFIX).toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    walBytes = 0;
+                    syncPosition = writePosition;
+                }
+            }
+
+            File tmp = new File(dir, SNAPSHOT_PREFIX + snapshotSeq + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmp);
+                 SnapshotWriter writer = new SnapshotWriter(new BufferedOutputStream(fileOut, 64 * 1024))) {
+                state.writeTo(writer);
+                writer.flush();
+                fileOut.getFD().sync();
+            }
+            Files.move(tmp.toPath(), file(SNAPSHOT_PREFIX, snapshotSeq, SNAPSHOT_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            for (long seq : listSeq(WAL_PREFIX, WAL_SUFFIX)) {
+                if (seq < snapshotSeq) {
+                    Files.deleteIfExists(file(WAL_PREFIX, seq, WAL_SUFFIX).toPath());
+                }
+            }
+            for (long seq : listSeq(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (seq < snapshotSeq) {
+                    Files.deleteIfExists(file(SNAPSHOT_PREFIX, seq, SNAPSHOT_SUFFIX).toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the bytes of the records after the last snapshot
+     */
+    public long getWalBytes() {
+        synchronized (writeLock) {
+            return walBytes;
+        }
+    }
+
+    /**
+     * @return the position after the last appended record. (of all the wal files)
+     */
+    public long getWritePosition() {
+        synchronized (writeLock) {
+            return writePosition;
+        }
+    }
+
+    /**
+     * @return the records before the position are durable. (fsync)
+     */
+    public long getSyncPosition() {
+        return syncPosition;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    if (channel != null) {
+                        force();
+                        channel.close();
+                    }
+                } finally {
+                    closed = true;
+                }
+            }
+        }
+    }
+
+    private File file(String prefix, long seq, String suffix) {
+        return new File(dir, prefix + seq + suffix);
+    }
+
+    private List<Long> listSeq(String prefix, String suffix) {
+        List<Long> list = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return list;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                try {
+                    list.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    //skip
+                }
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcDBLog{" +
+                "dir=" + dir +
+                ", fsyncPolicy=" + fsyncPolicy +
+                ", seq=" + seq +
+                ", walBytes=" + getWalBytes() +
+                '}';
+    }
+
+    public enum FsyncPolicy {
+        /**
+         * fsync before the write return. (the concurrent writes share one fsync)
+         */
+        ALWAYS,
+        /**
+         * fsync every interval. lose the writes of the last interval when the machine crash
+         */
+        BATCH,
+        /**
+         * never fsync, the OS flush the page cache. survive the process crash, not the machine crash
+         */
+        OS
+    }
+
+    /**
+     * the records of the replay, or the snapshot
+     */
+    public interface RecordHandler {
+        /**
+         * @param key             key
+         * @param expiryTimestamp Long.MAX_VALUE is never expiry
+         * @param data            data
+         * @throws IOException IOException
+         */
+        void put(String key, long expiryTimestamp, byte[] data) throws IOException;
+
+        void remove(String key) throws IOException;
+
+        void changeKey(String oldKey, String newKey, long expiryTimestamp, byte[] data) throws IOException;
+
+        void maxSize(long maxSize) throws IOException;
+    }
+
+    /**
+     * the keys of the group at the snapshot
+     */
+    @FunctionalInterface
+    public interface State {
+        /**
+         * @param handler put all the keys to the handler
+         * @throws IOException IOException
+         */
+        void writeTo(RecordHandler handler) throws IOException;
+    }
+
+    private static class SnapshotWriter implements RecordHandler, Closeable {
+        private final OutputStream out;
+
+        SnapshotWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void put(String key, long expiryTimestamp, byte[] data) throws IOException {
+            out.write(encodePut(key, expiryTimestamp, data));
+        }
+
+        @Override
+        public void remove(String key) throws IOException {
+            out.write(encodeRemove(key));
+        }
+
+        @Override
+        public void changeKey(String oldKey, String newKey, long expiryTimestamp, byte[] data) throws IOException {
+            out.write(encodeChangeKey(oldKey, newKey, expiryTimestamp, data));
+        }
+
+        @Override
+        public void maxSize(long maxSize) throws IOException {
+            out.write(encodeMaxSize(maxSize));
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
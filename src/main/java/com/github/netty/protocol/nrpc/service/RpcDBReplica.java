@@ -0,0 +1,263 @@
+package com.github.netty.protocol.nrpc.service;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.protocol.nrpc.RpcClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The replica of the primary {@link RpcDBServiceImpl}. asynchronous, pull the mutations of the primary {@link RpcDBReplicationService}.
+ * 1. the first pull (or the offset is not in the backlog of the primary) is the full sync: clear, copy the shards, then pull after the offset of the begin.
+ * 2. pull the mutations after the offset. the primary wait the new mutation {@link #getPullWaitMillis()}. (long polling)
+ * 3. disconnect then retry, catch up from the offset.
+ * <p>
+ * the replica is read only. {@link #getStalenessMillis()} is the time since the replica has all the mutations of the primary.
+ * the replica reject the read when the full sync (-1 staleness), the cleared data is not the lost data.
+ * the replica is not durable (the offset is in memory), restart is the full sync.
+ *
+ * @author wangzihao
+ */
+public class RpcDBReplica implements Closeable {
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(RpcDBReplica.class);
+    private final RpcDBServiceImpl dbService;
+    private final InetSocketAddress primaryAddress;
+    private final RpcClient rpcClient;
+    private final RpcDBReplicationService primary;
+    private final AtomicLong pullCount = new AtomicLong();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong fullSyncCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private int pullMaxBytes = 1024 * 1024;
+    private int pullWaitMillis = 500;
+    private long retryIntervalMillis = 1000;
+    /**
+     * null is need the full sync
+     */
+    private volatile String replicationId;
+    private volatile long offset;
+    private volatile long primaryOffset;
+    /**
+     * the time of the replica has all the mutations of the primary. -1 is not synced
+     */
+    private volatile long syncTimestamp = -1;
+    private volatile boolean running;
+    private Thread thread;
+
+    public RpcDBReplica(RpcDBServiceImpl dbService, InetSocketAddress primaryAddress) {
+        this.dbService = dbService;
+        this.primaryAddress = primaryAddress;
+        this.rpcClient = new RpcClient("DBReplica", primaryAddress);
+        this.primary = rpcClient.newInstance(RpcDBReplicationService.class);
+    }
+
+    /**
+     * the db is read only, and start pull the primary
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        dbService.setReplica(this);
+        Thread thread = new Thread(this::run);
+        thread.setDaemon(true);
+        thread.setName("NRpc-DB-Replica-" + thread.getId());
+        thread.start();
+        this.thread = thread;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (replicationId == null) {
+                    fullSync();
+                }
+                pull();
+            } catch (Throwable t) {
+                if (!running) {
+                    break;
+                }
+                errorCount.incrementAndGet();
+                LOGGER.warn("RpcDBReplica pull {} error={}, offset={}", primaryAddress, t.toString(), offset);
+                try {
+                    Thread.sleep(retryIntervalMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void fullSync() throws IOException {
+        syncTimestamp = -1;
+        long beginTimestamp = System.currentTimeMillis();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(primary.fullSyncBegin()));
+        String replicationId = in.readUTF();
+        long offset = in.readLong();
+        int shards = in.readInt();
+        int groupCount = in.readInt();
+        String[] groups = new String[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            groups[i] = in.readUTF();
+        }
+
+        dbService.clearAll();
+        for (String group : groups) {
+            for (int shard = 0; shard < shards; shard++) {
+                byte[] records = primary.fullSyncShard(group, shard);
+                // the codec decode the empty bytes to null
+                if (records != null) {
+                    dbService.applyRecords(group, records);
+                }
+            }
+        }
+        this.offset = offset;
+        this.primaryOffset = offset;
+        this.replicationId = replicationId;
+        // has all the mutations before the begin. (readable, the staleness is since the begin)
+        syncTimestamp = beginTimestamp;
+        fullSyncCount.incrementAndGet();
+        LOGGER.info("RpcDBReplica full sync {} done. replicationId={}, offset={}, groups={}", primaryAddress, replicationId, offset, groupCount);
+    }
+
+    private void pull() throws IOException {
+        byte[] bytes = primary.pull(replicationId, offset, pullMaxBytes, pullWaitMillis);
+        pullCount.incrementAndGet();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte status = in.readByte();
+        in.readUTF();
+        long primaryOffset = in.readLong();
+        if (status == RpcDBReplicationLog.STATUS_FULL_SYNC) {
+            LOGGER.info("RpcDBReplica need full sync {}. offset={}, primaryOffset={}", primaryAddress, offset, primaryOffset);
+            replicationId = null;
+            return;
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long offset = in.readLong();
+            String group = in.readUTF();
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            dbService.applyRecords(group, record);
+            this.offset = offset;
+        }
+        recordCount.addAndGet(count);
+        this.primaryOffset = primaryOffset;
+        if (offset >= primaryOffset) {
+            // the primary has no new mutation until the response. (ignore the network latency)
+            syncTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the milliseconds since the replica has all the mutations of the primary. -1 is not synced (full syncing)
+     */
+    public long getStalenessMillis() {
+        long syncTimestamp = this.syncTimestamp;
+        return syncTimestamp < 0 ? -1 : Math.max(0, System.currentTimeMillis() - syncTimestamp);
+    }
+
+    public InetSocketAddress getPrimaryAddress() {
+        return primaryAddress;
+    }
+
+    public String getReplicationId() {
+        return replicationId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the offset of the primary at the last pull
+     */
+    public long getPrimaryOffset() {
+        return primaryOffset;
+    }
+
+    public long getPullCount() {
+        return pullCount.get();
+    }
+
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    public long getFullSyncCount() {
+        return fullSyncCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public int getPullMaxBytes() {
+        return pullMaxBytes;
+    }
+
+    public void setPullMaxBytes(int pullMaxBytes) {
+        this.pullMaxBytes = pullMaxBytes;
+    }
+
+    public int getPullWaitMillis() {
+        return pullWaitMillis;
+    }
+
+    /**
+     * @param pullWaitMillis the primary wait the new mutation. the staleness of the idle replica is up to it
+     */
+    public void setPullWaitMillis(int pullWaitMillis) {
+        this.pullWaitMillis = pullWaitMillis;
+    }
+
+    public long getRetryIntervalMillis() {
+        return retryIntervalMillis;
+    }
+
+    public void setRetryIntervalMillis(long retryIntervalMillis) {
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    public RpcClient getRpcClient() {
+        return rpcClient;
+    }
+
+    /**
+     * stop pull. the db is writable. (promote to the primary when the failover)
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        dbService.setReplica(null);
+        try {
+            rpcClient.stop();
+        } catch (Exception e) {
+            LOGGER.warn("RpcDBReplica close rpcClient error={}", e.toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcDBReplica{" +
+                "primaryAddress=" + primaryAddress +
+                ", replicationId='" + replicationId + '\'' +
+                ", offset=" + offset +
+                ", primaryOffset=" + primaryOffset +
+                ", stalenessMillis=" + getStalenessMillis() +
+                ", fullSyncCount=" + fullSyncCount +
+                '}';
+    }
+}
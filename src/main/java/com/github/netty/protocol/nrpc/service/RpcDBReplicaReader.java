@@ -0,0 +1,198 @@
+package com.github.netty.protocol.nrpc.service;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.protocol.nrpc.RpcClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Read the {@link RpcDBService} from the replicas with bounded staleness. write to the primary.
+ * the replica of the staleness less than {@link #getMaxStalenessMillis()} can read. (round robin)
+ * no replica can read, read the primary.
+ * <p>
+ * staleness = the staleness of the replica {@link RpcDBReplicationService#status()} + the age of the status.
+ * the status is refreshed every {@link #getStatusIntervalMillis()} by the caller thread.
+ * the replica in the full sync reject the read (the status may be older), then read the primary and the replica is unavailable until the next status.
+ *
+ * @author wangzihao
+ */
+public class RpcDBReplicaReader {
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(RpcDBReplicaReader.class);
+    private final RpcClient primary;
+    private final List<Replica> replicas;
+    private final long maxStalenessMillis;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private long statusIntervalMillis = 200;
+
+    /**
+     * @param primary            primary
+     * @param replicas           replicas
+     * @param maxStalenessMillis the max staleness of the read. greater than the {@link RpcDBReplica#getPullWaitMillis()}, else the idle replica is stale
+     */
+    public RpcDBReplicaReader(RpcClient primary, List<RpcClient> replicas, long maxStalenessMillis) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas.size());
+        for (RpcClient replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * @return the service of the replica of the staleness less than the max. or the primary
+     */
+    public RpcDBService getReadService() {
+        Replica replica = chooseReplica();
+        return replica != null ? replica.client.getRpcDBService() : primary.getRpcDBService();
+    }
+
+    private Replica chooseReplica() {
+        int size = replicas.size();
+        if (size > 0) {
+            int start = roundRobin.getAndIncrement() & Integer.MAX_VALUE;
+            long currentTimeMillis = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                Replica replica = replicas.get((start + i) % size);
+                long staleness = replica.getStalenessMillis(currentTimeMillis);
+                if (staleness >= 0 && staleness <= maxStalenessMillis) {
+                    replica.readCount.incrementAndGet();
+                    return replica;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * read the replica. the replica error (e.g. full sync) read the primary
+     */
+    private <T> T read(Function<RpcDBService, T> read) {
+        Replica replica = chooseReplica();
+        if (replica != null) {
+            try {
+                return read.apply(replica.client.getRpcDBService());
+            } catch (RuntimeException e) {
+                LOGGER.warn("RpcDBReplicaReader read {} error={}, read the primary", replica.client.getRemoteAddress(), e.toString());
+                replica.unavailable();
+            }
+        }
+        return read.apply(primary.getRpcDBService());
+    }
+
+    public RpcDBService getWriteService() {
+        return primary.getRpcDBService();
+    }
+
+    public byte[] get(String key, String group) {
+        return read(service -> service.get2(key, group));
+    }
+
+    public boolean exist(String key, String group) {
+        return read(service -> service.exist2(key, group));
+    }
+
+    public List<byte[]> getBatch(List<String> keys, String group) {
+        return read(service -> service.getBatch2(keys, group));
+    }
+
+    /**
+     * @param replica replica
+     * @return the staleness of the replica. -1 is not synced or unavailable
+     */
+    public long getStalenessMillis(RpcClient replica) {
+        for (Replica each : replicas) {
+            if (each.client == replica) {
+                return each.getStalenessMillis(System.currentTimeMillis());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param replica replica
+     * @return the reads of the replica
+     */
+    public int getReadCount(RpcClient replica) {
+        for (Replica each : replicas) {
+            if (each.client == replica) {
+                return each.readCount.get();
+            }
+        }
+        return 0;
+    }
+
+    public RpcClient getPrimary() {
+        return primary;
+    }
+
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    public long getStatusIntervalMillis() {
+        return statusIntervalMillis;
+    }
+
+    public void setStatusIntervalMillis(long statusIntervalMillis) {
+        this.statusIntervalMillis = statusIntervalMillis;
+    }
+
+    private class Replica {
+        private final RpcClient client;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final AtomicInteger readCount = new AtomicInteger();
+        private RpcDBReplicationService replicationService;
+        /**
+         * the staleness of the status. -1 is not synced or unavailable
+         */
+        private volatile long staleness = -1;
+        private volatile long statusTimestamp;
+
+        private Replica(RpcClient client) {
+            this.client = client;
+        }
+
+        long getStalenessMillis(long currentTimeMillis) {
+            if (currentTimeMillis - statusTimestamp >= statusIntervalMillis
+                    && refreshing.compareAndSet(false, true)) {
+                try {
+                    refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+            long staleness = this.staleness;
+            return staleness < 0 ? -1 : staleness + Math.max(0, currentTimeMillis - statusTimestamp);
+        }
+
+        /**
+         * until the next status
+         */
+        void unavailable() {
+            this.statusTimestamp = System.currentTimeMillis();
+            this.staleness = -1;
+        }
+
+        private void refresh() {
+            long staleness;
+            long begin = System.currentTimeMillis();
+            try {
+                if (replicationService == null) {
+                    replicationService = client.newInstance(RpcDBReplicationService.class);
+                }
+                staleness = replicationService.status()[1];
+            } catch (Exception e) {
+                LOGGER.warn("RpcDBReplicaReader status {} error={}", client.getRemoteAddress(), e.toString());
+                staleness = -1;
+            }
+            // the status is at least as old as the request
+            this.statusTimestamp = begin;
+            this.staleness = staleness;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.netty.protocol.nrpc.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Replication backlog of the primary {@link RpcDBServiceImpl#setReplicationLog(RpcDBReplicationLog)}.
+ * each mutation has an offset (1, 2, 3...). the replica pull the mutations after its offset {@link RpcDBReplica}.
+ * the backlog keep the last {@link #getMaxBytes()} bytes. the replica of the older offset (or the other replication id) need the full sync.
+ * <p>
+ * the replication id is new per process. (the offset is not durable)
+ *
+ * @author wangzihao
+ */
+public class RpcDBReplicationLog {
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_FULL_SYNC = 1;
+    /**
+     * the bytes of the entry except the group and the record
+     */
+    private static final int ENTRY_OVERHEAD = 48;
+    private final String replicationId = UUID.randomUUID().toString();
+    private final long maxBytes;
+    /**
+     * guarded by this. entries.get(head) is the first entry
+     */
+    private final List<Entry> entries = new ArrayList<>();
+    private int head;
+    private long bytes;
+    private long offset;
+    private int waiters;
+
+    /**
+     * @param maxBytes the bytes of the backlog
+     */
+    public RpcDBReplicationLog(long maxBytes) {
+        this.maxBytes = Math.max(1024, maxBytes);
+    }
+
+    /**
+     * called in the lock of the shard. so the mutations of a key are ordered
+     *
+     * @param group  group
+     * @param record {@link RpcDBLog} record
+     * @return the offset of the mutation
+     */
+    public synchronized long append(String group, byte[] record) {
+        Entry entry = new Entry(++offset, group, record);
+        entries.add(entry);
+        bytes += entry.bytes;
+        while (bytes > maxBytes && entries.size() - head > 1) {
+            Entry first = entries.set(head++, null);
+            bytes -= first.bytes;
+        }
+        if (head > 1024 && head > entries.size() / 2) {
+            entries.subList(0, head).clear();
+            head = 0;
+        }
+        if (waiters > 0) {
+            notifyAll();
+        }
+        return offset;
+    }
+
+    /**
+     * status(1) + replicationId(UTF) + primary offset(8) + count(4) + [offset(8) + group(UTF) + recordLength(4) + record]...
+     *
+     * @param replicationId the replication id of the replica. null is the first pull
+     * @param afterOffset   the offset of the replica
+     * @param maxBytes      the max bytes of the records
+     * @param waitMillis    wait the new mutation if the replica has all the mutations. (long polling)
+     * @return the mutations after the offset. or {@link #STATUS_FULL_SYNC}
+     * @throws InterruptedException InterruptedException
+     */
+    public byte[] read(String replicationId, long afterOffset, int maxBytes, long waitMillis) throws InterruptedException {
+        List<Entry> list = new ArrayList<>();
+        long primaryOffset;
+        byte status;
+        synchronized (this) {
+            if (!this.replicationId.equals(replicationId) || afterOffset > offset || afterOffset < firstOffset() - 1) {
+                status = STATUS_FULL_SYNC;
+            } else {
+                status = STATUS_OK;
+                long deadline = System.currentTimeMillis() + waitMillis;
+                while (afterOffset == offset) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    waiters++;
+                    try {
+                        wait(wait);
+                    } finally {
+                        waiters--;
+                    }
+                }
+                if (afterOffset < firstOffset() - 1) {
+                    // trimmed when waiting
+                    status = STATUS_FULL_SYNC;
+                } else {
+                    int bytes = 0;
+                    for (int i = head + (int) (afterOffset + 1 - firstOffset()); i < entries.size() && (list.isEmpty() || bytes < maxBytes); i++) {
+                        Entry entry = entries.get(i);
+                        list.add(entry);
+                        bytes += entry.bytes;
+                    }
+                }
+            }
+            primaryOffset = offset;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + list.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(status);
+            out.writeUTF(this.replicationId);
+            out.writeLong(primaryOffset);
+            out.writeInt(list.size());
+            for (Entry entry : list) {
+                out.writeLong(entry.offset);
+                out.writeUTF(entry.group);
+                out.writeInt(entry.record.length);
+                out.write(entry.record);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * guarded by this
+     */
+    private long firstOffset() {
+        return head < entries.size() ? entries.get(head).offset : offset + 1;
+    }
+
+    public String getReplicationId() {
+        return replicationId;
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the first offset in the backlog. the replica of the offset before it need the full sync
+     */
+    public synchronized long getFirstOffset() {
+        return firstOffset();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcDBReplicationLog{" +
+                "replicationId='" + replicationId + '\'' +
+                ", offset=" + getOffset() +
+                ", firstOffset=" + getFirstOffset() +
+                ", bytes=" + getBytes() +
+                '}';
+    }
+
+    private static class Entry {
+        private final long offset;
+        private final String group;
+        private final byte[] record;
+        private final int bytes;
+
+        private Entry(long offset, String group, byte[] record) {
+            this.offset = offset;
+            this.group = group;
+            this.record = record;
+            this.bytes = ENTRY_OVERHEAD + group.length() * 2 + record.length;
+        }
+    }
+}
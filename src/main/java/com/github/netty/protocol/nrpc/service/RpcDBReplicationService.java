@@ -0,0 +1,40 @@
+package com.github.netty.protocol.nrpc.service;
+
+import com.github.netty.annotation.NRpcMethod;
+import com.github.netty.annotation.NRpcParam;
+import com.github.netty.annotation.NRpcService;
+
+/**
+ * Replication of the {@link RpcDBService}. the replica pull the primary {@link RpcDBReplica}
+ *
+ * @author wangzihao
+ */
+@NRpcService(value = "/_nrpc/dbReplication", timeout = 10000)
+public interface RpcDBReplicationService {
+
+    /**
+     * the short timeout. the pending request is not failed on the disconnect, the replica retry after the timeout
+     *
+     * @return {@link RpcDBReplicationLog#read(String, long, int, long)}
+     */
+    @NRpcMethod(timeout = 3000)
+    byte[] pull(@NRpcParam("replicationId") String replicationId, @NRpcParam("offset") long offset, @NRpcParam("maxBytes") int maxBytes, @NRpcParam("waitMillis") int waitMillis);
+
+    /**
+     * begin the full sync. then pull the shards {@link #fullSyncShard(String, int)}, then pull the mutations after the offset
+     *
+     * @return replicationId(UTF) + offset(8) + shards(4) + groupCount(4) + [group(UTF)]...
+     */
+    byte[] fullSyncBegin();
+
+    /**
+     * @return the {@link RpcDBLog} records of the shard
+     */
+    byte[] fullSyncShard(@NRpcParam("group") String group, @NRpcParam("shard") int shard);
+
+    /**
+     * @return [offset, staleness milliseconds]. the primary staleness is 0. -1 is the replica is not synced
+     */
+    long[] status();
+
+}
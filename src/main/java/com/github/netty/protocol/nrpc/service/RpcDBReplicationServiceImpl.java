@@ -0,0 +1,79 @@
+package com.github.netty.protocol.nrpc.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * RpcDBReplicationServiceImpl
+ *
+ * @author wangzihao
+ */
+public class RpcDBReplicationServiceImpl implements RpcDBReplicationService {
+    /**
+     * the max wait of the pull. less than the timeout of the service
+     */
+    private static final int MAX_WAIT_MILLIS = 2000;
+    private final RpcDBServiceImpl dbService;
+
+    public RpcDBReplicationServiceImpl(RpcDBServiceImpl dbService) {
+        this.dbService = dbService;
+    }
+
+    @Override
+    public byte[] pull(String replicationId, long offset, int maxBytes, int waitMillis) {
+        RpcDBReplicationLog replicationLog = getReplicationLog();
+        try {
+            return replicationLog.read(replicationId, offset, maxBytes, Math.min(waitMillis, MAX_WAIT_MILLIS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("pull interrupted", e);
+        }
+    }
+
+    @Override
+    public byte[] fullSyncBegin() {
+        RpcDBReplicationLog replicationLog = getReplicationLog();
+        // the offset before the shards. the mutations after it are pulled again (idempotent)
+        long offset = replicationLog.getOffset();
+        List<String> groupNames = dbService.getGroupNames();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(replicationLog.getReplicationId());
+            out.writeLong(offset);
+            out.writeInt(dbService.getShards());
+            out.writeInt(groupNames.size());
+            for (String groupName : groupNames) {
+                out.writeUTF(groupName);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public byte[] fullSyncShard(String group, int shard) {
+        getReplicationLog();
+        return dbService.getShardRecords(group, shard);
+    }
+
+    @Override
+    public long[] status() {
+        RpcDBReplica replica = dbService.getReplica();
+        if (replica != null) {
+            return new long[]{replica.getOffset(), replica.getStalenessMillis()};
+        }
+        RpcDBReplicationLog replicationLog = dbService.getReplicationLog();
+        return new long[]{replicationLog == null ? 0 : replicationLog.getOffset(), 0};
+    }
+
+    private RpcDBReplicationLog getReplicationLog() {
+        RpcDBReplicationLog replicationLog = dbService.getReplicationLog();
+        if (replicationLog == null) {
+            throw new IllegalStateException("RpcDBService replication is not enabled. (the replication log is null)");
+        }
+        return replicationLog;
+    }
+}
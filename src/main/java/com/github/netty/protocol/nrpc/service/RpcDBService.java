@@ -33,11 +33,11 @@ public interface RpcDBService {
      * @param expireSecond expireSecond
      * @param group        group
      */
-    void put4(@NRpcParam("group") String key, @NRpcParam("data") byte[] data, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group);
+    void put4(@NRpcParam("key") String key, @NRpcParam("data") byte[] data, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group);
 
-    void put3(@NRpcParam("group") String key, @NRpcParam("data") byte[] data, @NRpcParam("expireSecond") int expireSecond);
+    void put3(@NRpcParam("key") String key, @NRpcParam("data") byte[] data, @NRpcParam("expireSecond") int expireSecond);
 
-    void put(@NRpcParam("group") String key, @NRpcParam("data") byte[] data);
+    void put(@NRpcParam("key") String key, @NRpcParam("data") byte[] data);
 
     /**
      * Gets the number of groups
@@ -99,5 +99,38 @@ public interface RpcDBService {
 
     void setMaxSize(@NRpcParam("maxSize") Integer maxSize);
 
+    /**
+     * @return the data of the keys. same order as the keys, null if not exist
+     */
+    List<byte[]> getBatch2(@NRpcParam("keys") List<String> keys, @NRpcParam("group") String group);
+
+    List<byte[]> getBatch(@NRpcParam("keys") List<String> keys);
+
+    /**
+     * @param expireSeconds the expiry of each key. null is never expiry
+     */
+    void putBatch4(@NRpcParam("keys") List<String> keys, @NRpcParam("datas") List<byte[]> datas, @NRpcParam("expireSeconds") List<Integer> expireSeconds, @NRpcParam("group") String group);
+
+    void putBatch3(@NRpcParam("keys") List<String> keys, @NRpcParam("datas") List<byte[]> datas, @NRpcParam("expireSeconds") List<Integer> expireSeconds);
+
+    /**
+     * @param expect null is the key not exist
+     * @param update null is remove the key
+     * @return true if the data of the key equals the expect, and set to the update
+     */
+    boolean compareAndSet5(@NRpcParam("key") String key, @NRpcParam("expect") byte[] expect, @NRpcParam("update") byte[] update, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group);
+
+    boolean compareAndSet4(@NRpcParam("key") String key, @NRpcParam("expect") byte[] expect, @NRpcParam("update") byte[] update, @NRpcParam("expireSecond") int expireSecond);
+
+    /**
+     * the data is the decimal string (UTF-8). the expiry of the exist key is not changed
+     *
+     * @param expireSecond the expiry if the key not exist
+     * @return the data after add the delta
+     */
+    long increment4(@NRpcParam("key") String key, @NRpcParam("delta") long delta, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group);
+
+    long increment3(@NRpcParam("key") String key, @NRpcParam("delta") long delta, @NRpcParam("expireSecond") int expireSecond);
+
 
 }
@@ -1,24 +1,168 @@
 package com.github.netty.protocol.nrpc.service;
 
 import com.github.netty.core.util.ExpiryLRUMap;
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.RandomAccess;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RpcDBServiceImpl
+ * <p>
+ * each group is split into the shards by the hash of the key. the writes of the different shards do not contend.
+ * the LRU is per shard: {@link #setMaxSize2(Integer, String)} limit each shard to ceil(maxSize / shards) keys,
+ * so the group keep at most about maxSize keys, but not exactly the maxSize most recent keys of the group.
+ * durable mode {@link #RpcDBServiceImpl(File, int, RpcDBLog.FsyncPolicy, long, long)}:
+ * each group has a write-ahead log and the snapshot {@link RpcDBLog}, the data is loaded on the startup.
+ * (the LRU eviction is not logged, the load evict by the max size again)
+ * replication {@link #setReplicationLog(RpcDBReplicationLog)}, {@link RpcDBReplica}: the primary keep the backlog of the mutations, the replicas pull it.
+ * off-heap {@link RpcDBSlabStore}: the values are copied into the off-heap chunks, the map keep the handles only.
+ * (the read copy the value in the lock of the shard)
  *
  * @author wangzihao
  */
-public class RpcDBServiceImpl implements RpcDBService {
+public class RpcDBServiceImpl implements RpcDBService, Closeable {
     private static final String SHARING_GROUP = "/sharing";
-    private final Map<String, RpcDBExpiryLRUMap<String, byte[]>> memExpiryGroupMap = new ConcurrentHashMap<>(64);
+    private static final String GROUP_DIR_PREFIX = "group-";
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(RpcDBServiceImpl.class);
+    private final Map<String, Group> memExpiryGroupMap = new ConcurrentHashMap<>(64);
+    private final int shards;
+    /**
+     * null is the memory mode
+     */
+    private final File dataDir;
+    private final RpcDBLog.FsyncPolicy fsyncPolicy;
+    private final ScheduledThreadPoolExecutor scheduled;
+    /**
+     * null is the heap
+     */
+    private final RpcDBSlabStore slabStore;
+    /**
+     * the primary. null is no replication
+     */
+    private volatile RpcDBReplicationLog replicationLog;
+    /**
+     * the replica. read only
+     */
+    private volatile RpcDBReplica replica;
+    private volatile boolean closed;
+
+    public RpcDBServiceImpl() {
+        this(16);
+    }
+
+    /**
+     * memory mode
+     *
+     * @param shards the shards of each group
+     */
+    public RpcDBServiceImpl(int shards) {
+        this(shards, null);
+    }
+
+    /**
+     * memory mode
+     *
+     * @param shards    the shards of each group
+     * @param slabStore the off-heap values, closed by the {@link #close()}. null is the heap
+     */
+    public RpcDBServiceImpl(int shards, RpcDBSlabStore slabStore) {
+        this.shards = Math.max(1, shards);
+        this.dataDir = null;
+        this.fsyncPolicy = null;
+        this.scheduled = null;
+        this.slabStore = slabStore;
+    }
+
+    /**
+     * durable mode. load the groups in the data directory
+     *
+     * @param dataDir            the directory of the groups
+     * @param shards             the shards of each group
+     * @param fsyncPolicy        fsyncPolicy
+     * @param fsyncIntervalMs    the fsync interval of the {@link RpcDBLog.FsyncPolicy#BATCH}
+     * @param snapshotIntervalMs the snapshot interval, the old wal is deleted after the snapshot. (less than or equal to 0 is snapshot on close only)
+     * @throws IllegalStateException load error
+     */
+    public RpcDBServiceImpl(File dataDir, int shards, RpcDBLog.FsyncPolicy fsyncPolicy, long fsyncIntervalMs, long snapshotIntervalMs) throws IllegalStateException {
+        this(dataDir, shards, fsyncPolicy, fsyncIntervalMs, snapshotIntervalMs, null);
+    }
+
+    /**
+     * durable mode. load the groups in the data directory
+     *
+     * @param dataDir            the directory of the groups
+     * @param shards             the shards of each group
+     * @param fsyncPolicy        fsyncPolicy
+     * @param fsyncIntervalMs    the fsync interval of the {@link RpcDBLog.FsyncPolicy#BATCH}
+     * @param snapshotIntervalMs the snapshot interval, the old wal is deleted after the snapshot. (less than or equal to 0 is snapshot on close only)
+     * @param slabStore          the off-heap values, closed by the {@link #close()}. null is the heap
+     * @throws IllegalStateException load error
+     */
+    public RpcDBServiceImpl(File dataDir, int shards, RpcDBLog.FsyncPolicy fsyncPolicy, long fsyncIntervalMs, long snapshotIntervalMs, RpcDBSlabStore slabStore) throws IllegalStateException {
+        this.shards = Math.max(1, shards);
+        this.dataDir = dataDir;
+        this.fsyncPolicy = fsyncPolicy;
+        this.slabStore = slabStore;
+        this.scheduled = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("NRpc-DB-" + thread.getId());
+            return thread;
+        });
+        String[] names = dataDir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(GROUP_DIR_PREFIX) && new File(dataDir, name).isDirectory()) {
+                    getMemExpiryMap(decodeGroup(name.substring(GROUP_DIR_PREFIX.length())));
+                }
+            }
+        }
+        if (fsyncPolicy == RpcDBLog.FsyncPolicy.BATCH && fsyncIntervalMs > 0) {
+            scheduled.scheduleWithFixedDelay(this::flush, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotIntervalMs > 0) {
+            scheduled.scheduleWithFixedDelay(this::snapshot, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String encodeGroup(String group) {
+        try {
+            return URLEncoder.encode(group, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decodeGroup(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
     @Override
     public boolean exist2(String key, String group) {
-        return getMemExpiryMap(group).containsKey(key);
+        checkReadable();
+        return getMemExpiryMap(group).shard(key).map.containsKey(key);
     }
 
     @Override
@@ -33,16 +177,24 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void put4(String key, byte[] data, int expireSecond, String group) {
-        getMemExpiryMap(group).put(key, data, expireSecond);
+        checkWritable();
+        Group memExpiryMap = getMemExpiryMap(group);
+        Shard shard = memExpiryMap.shard(key);
+        long position;
+        synchronized (shard) {
+            position = memExpiryMap.putLocked(shard, key, data, toTimeout(expireSecond));
+        }
+        memExpiryMap.commit(position);
     }
 
     @Override
     public int count(String group) {
-        Map map = memExpiryGroupMap.get(group);
-        if (map == null) {
+        checkReadable();
+        Group memExpiryMap = memExpiryGroupMap.get(group);
+        if (memExpiryMap == null) {
             return 0;
         }
-        return map.size();
+        return memExpiryMap.size();
     }
 
     @Override
@@ -57,7 +209,8 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public byte[] get2(String key, String group) {
-        return getMemExpiryMap(group).get(key);
+        checkReadable();
+        return getMemExpiryMap(group).shard(key).get(key);
     }
 
     @Override
@@ -67,8 +220,25 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void changeKey3(String oldKey, String newKey, String group) {
-        RpcDBExpiryLRUMap<String, byte[]> memExpiryMap = getMemExpiryMap(group);
-        memExpiryMap.put(newKey, memExpiryMap.remove(oldKey));
+        checkWritable();
+        Group memExpiryMap = getMemExpiryMap(group);
+        Shard oldShard = memExpiryMap.shard(oldKey);
+        Shard newShard = memExpiryMap.shard(newKey);
+        // lock by the shard index order
+        Shard first = oldShard.index <= newShard.index ? oldShard : newShard;
+        Shard second = first == oldShard ? newShard : oldShard;
+        long position = -1;
+        synchronized (first) {
+            synchronized (second) {
+                byte[] data = oldShard.get(oldKey);
+                if (memExpiryMap.isWrite()) {
+                    position = memExpiryMap.write(RpcDBLog.encodeChangeKey(oldKey, newKey, Long.MAX_VALUE, data));
+                }
+                oldShard.remove(oldKey);
+                newShard.put(newKey, data, -1);
+            }
+        }
+        memExpiryMap.commit(position);
     }
 
     @Override
@@ -78,7 +248,9 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void remove2(String key, String group) {
-        getMemExpiryMap(group).remove(key);
+        checkWritable();
+        Group memExpiryMap = getMemExpiryMap(group);
+        memExpiryMap.commit(memExpiryMap.removeKey(key));
     }
 
     @Override
@@ -88,7 +260,16 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void setMaxSize2(Integer maxSize, String group) {
-        getMemExpiryMap(group).setMaxCacheSize(maxSize);
+        checkWritable();
+        Group memExpiryMap = getMemExpiryMap(group);
+        long position = -1;
+        synchronized (memExpiryMap) {
+            if (memExpiryMap.isWrite()) {
+                position = memExpiryMap.write(RpcDBLog.encodeMaxSize(maxSize));
+            }
+            memExpiryMap.setMaxSize(maxSize);
+        }
+        memExpiryMap.commit(position);
     }
 
     @Override
@@ -98,31 +279,359 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void removeBatch2(List<String> keys, String group) {
+        checkWritable();
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        if (!(keys instanceof RandomAccess)) {
+            keys = new ArrayList<>(keys);
+        }
+
+        Group map = getMemExpiryMap(group);
+        int[][] shardIndexes = map.groupByShard(keys);
+        long position = -1;
+        for (int s = 0; s < shardIndexes.length; s++) {
+            int[] indexes = shardIndexes[s];
+            if (indexes.length == 0) {
+                continue;
+            }
+            Shard shard = map.shards[s];
+            synchronized (shard) {
+                for (int i : indexes) {
+                    position = Math.max(position, map.removeLocked(shard, keys.get(i)));
+                }
+            }
+        }
+        // one fsync of the batch
+        map.commit(position);
+    }
+
+    @Override
+    public List<byte[]> getBatch(List<String> keys) {
+        return getBatch2(keys, SHARING_GROUP);
+    }
+
+    @Override
+    public List<byte[]> getBatch2(List<String> keys, String group) {
+        checkReadable();
+        if (keys == null || keys.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        Group map = getMemExpiryMap(group);
+        List<byte[]> list = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            list.add(map.shard(key).get(key));
+        }
+        return list;
+    }
+
+    @Override
+    public void putBatch3(List<String> keys, List<byte[]> datas, List<Integer> expireSeconds) {
+        putBatch4(keys, datas, expireSeconds, SHARING_GROUP);
+    }
+
+    @Override
+    public void putBatch4(List<String> keys, List<byte[]> datas, List<Integer> expireSeconds, String group) {
+        checkWritable();
         if (keys == null || keys.isEmpty()) {
             return;
         }
+        if (datas == null || datas.size() != keys.size()
+                || (expireSeconds != null && expireSeconds.size() != keys.size())) {
+            throw new IllegalArgumentException("putBatch the size of the keys, datas, expireSeconds is not same");
+        }
+        if (!(keys instanceof RandomAccess)) {
+            keys = new ArrayList<>(keys);
+        }
+        // the elements may be decoded as the other type. (e.g. json codec: byte[] is base64 string, int is long)
+        List<?> dataList = datas instanceof RandomAccess ? datas : new ArrayList<>(datas);
+        List<?> expireSecondList = expireSeconds == null || expireSeconds instanceof RandomAccess ? expireSeconds : new ArrayList<>(expireSeconds);
 
-        RpcDBExpiryLRUMap<String, byte[]> map = getMemExpiryMap(group);
-        if (keys instanceof RandomAccess) {
-            int size = keys.size();
-            for (int i = 0; i < size; i++) {
-                String key = keys.get(i);
-                map.remove(key);
+        Group map = getMemExpiryMap(group);
+        int[][] shardIndexes = map.groupByShard(keys);
+        long position = -1;
+        for (int s = 0; s < shardIndexes.length; s++) {
+            int[] indexes = shardIndexes[s];
+            if (indexes.length == 0) {
+                continue;
+            }
+            Shard shard = map.shards[s];
+            synchronized (shard) {
+                for (int i : indexes) {
+                    Object expireSecond = expireSecondList == null ? null : expireSecondList.get(i);
+                    long timeout = toTimeout(expireSecond == null ? -1 : ((Number) expireSecond).intValue());
+                    position = Math.max(position, map.putLocked(shard, keys.get(i), toBytes(dataList.get(i)), timeout));
+                }
+            }
+        }
+        // one fsync of the batch
+        map.commit(position);
+    }
+
+    @Override
+    public boolean compareAndSet4(String key, byte[] expect, byte[] update, int expireSecond) {
+        return compareAndSet5(key, expect, update, expireSecond, SHARING_GROUP);
+    }
+
+    @Override
+    public boolean compareAndSet5(String key, byte[] expect, byte[] update, int expireSecond, String group) {
+        checkWritable();
+        Group map = getMemExpiryMap(group);
+        Shard shard = map.shard(key);
+        long position;
+        synchronized (shard) {
+            if (!Arrays.equals(shard.get(key), expect)) {
+                return false;
+            }
+            if (update == null) {
+                position = map.removeLocked(shard, key);
+            } else {
+                position = map.putLocked(shard, key, update, toTimeout(expireSecond));
+            }
+        }
+        map.commit(position);
+        return true;
+    }
+
+    @Override
+    public long increment3(String key, long delta, int expireSecond) {
+        return increment4(key, delta, expireSecond, SHARING_GROUP);
+    }
+
+    @Override
+    public long increment4(String key, long delta, int expireSecond, String group) {
+        checkWritable();
+        Group map = getMemExpiryMap(group);
+        Shard shard = map.shard(key);
+        long value;
+        long position;
+        synchronized (shard) {
+            ExpiryLRUMap.Node<String, Object> node = shard.map.getNode(key);
+            byte[] data = node == null || node.isExpiry() ? null : shard.toBytes(node.getData());
+            long timeout;
+            if (data == null) {
+                value = delta;
+                timeout = toTimeout(expireSecond);
+            } else {
+                value = Long.parseLong(new String(data, StandardCharsets.UTF_8)) + delta;
+                long expiryTimestamp = node.getExpiryTimestamp();
+                timeout = expiryTimestamp == Long.MAX_VALUE ? -1 : Math.max(1, expiryTimestamp - System.currentTimeMillis());
+            }
+            position = map.putLocked(shard, key, Long.toString(value).getBytes(StandardCharsets.UTF_8), timeout);
+        }
+        map.commit(position);
+        return value;
+    }
+
+    private void checkWritable() {
+        RpcDBReplica replica = this.replica;
+        if (replica != null) {
+            throw new IllegalStateException("RpcDBService is the read only replica of " + replica.getPrimaryAddress());
+        }
+    }
+
+    /**
+     * the replica not read when the full sync. (the data is cleared, the read of the empty is the lost data)
+     */
+    private void checkReadable() {
+        RpcDBReplica replica = this.replica;
+        if (replica != null && replica.getStalenessMillis() < 0) {
+            throw new IllegalStateException("RpcDBService is the replica of " + replica.getPrimaryAddress() + ", not synced (full sync)");
+        }
+    }
+
+    private static long toTimeout(int expireSecond) {
+        return expireSecond < 0 ? -1 : expireSecond * 1000L;
+    }
+
+    private static byte[] toBytes(Object data) {
+        if (data == null || data instanceof byte[]) {
+            return (byte[]) data;
+        }
+        if (data instanceof CharSequence) {
+            return Base64.getDecoder().decode(data.toString());
+        }
+        throw new IllegalArgumentException("putBatch data is not byte[]. type=" + data.getClass());
+    }
+
+    /**
+     * fsync the wal of all the groups
+     */
+    public void flush() {
+        for (Group group : memExpiryGroupMap.values()) {
+            if (group.log == null) {
+                continue;
+            }
+            try {
+                group.log.flush();
+            } catch (IOException e) {
+                LOGGER.warn("RpcDBService flush error. group={}, error={}", group.name, e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * snapshot the groups of the new writes. the old wal is deleted
+     */
+    public void snapshot() {
+        for (Group group : memExpiryGroupMap.values()) {
+            if (group.log == null || group.log.getWalBytes() == 0) {
+                continue;
+            }
+            try {
+                group.log.snapshot(group::writeTo);
+            } catch (IOException e) {
+                LOGGER.warn("RpcDBService snapshot error. group={}, error={}", group.name, e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * the primary. the mutations are appended to the replication log, the replicas pull them {@link RpcDBReplicationService}
+     *
+     * @param replicationLog null is no replication
+     */
+    public void setReplicationLog(RpcDBReplicationLog replicationLog) {
+        this.replicationLog = replicationLog;
+    }
+
+    public RpcDBReplicationLog getReplicationLog() {
+        return replicationLog;
+    }
+
+    /**
+     * the replica is read only. the data is changed by the replica only
+     *
+     * @param replica null is not the replica
+     */
+    void setReplica(RpcDBReplica replica) {
+        this.replica = replica;
+    }
+
+    public RpcDBReplica getReplica() {
+        return replica;
+    }
+
+    public List<String> getGroupNames() {
+        return new ArrayList<>(memExpiryGroupMap.keySet());
+    }
+
+    /**
+     * the records of one shard for the full sync. (fuzzy, the replica pull the mutations after the full sync begin)
+     *
+     * @param group group
+     * @param shard shard index
+     * @return {@link RpcDBLog} records
+     */
+    byte[] getShardRecords(String group, int shard) {
+        Group memExpiryMap = memExpiryGroupMap.get(group);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (memExpiryMap == null || shard < 0 || shard >= memExpiryMap.shards.length) {
+            return out.toByteArray();
+        }
+        RpcDBLog.RecordHandler writer = RpcDBLog.newWriter(out);
+        try {
+            Integer maxSize = memExpiryMap.maxSize;
+            if (shard == 0 && maxSize != null) {
+                writer.maxSize(maxSize);
+            }
+            memExpiryMap.writeTo(memExpiryMap.shards[shard], writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * apply the records of the primary. (no wal, no replication log)
+     *
+     * @param group   group
+     * @param records {@link RpcDBLog} records
+     * @throws IOException broken record
+     */
+    void applyRecords(String group, byte[] records) throws IOException {
+        Group memExpiryMap = getMemExpiryMap(group);
+        long[] result = RpcDBLog.read(new ByteArrayInputStream(records), records.length, memExpiryMap);
+        if (result[0] != records.length) {
+            throw new IOException("Broken records. group=" + group + ", validLength=" + result[0] + ", length=" + records.length);
+        }
+    }
+
+    /**
+     * remove all the keys before the full sync. (no wal, no replication log)
+     */
+    void clearAll() {
+        for (Group group : memExpiryGroupMap.values()) {
+            for (Shard shard : group.shards) {
+                shard.clear();
             }
-        } else {
-            for (String key : keys) {
-                map.remove(key);
+        }
+    }
+
+    public boolean isDurable() {
+        return dataDir != null;
+    }
+
+    public File getDataDir() {
+        return dataDir;
+    }
+
+    public RpcDBLog.FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * @return the off-heap values. null is the heap
+     */
+    public RpcDBSlabStore getSlabStore() {
+        return slabStore;
+    }
+
+    /**
+     * snapshot and close the wal. (the next startup load the snapshot only)
+     * close the off-heap store.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (dataDir != null) {
+            // not interrupt. the interrupt close the FileChannel of the running snapshot or fsync
+            scheduled.shutdown();
+            try {
+                if (!scheduled.awaitTermination(60, TimeUnit.SECONDS)) {
+                    LOGGER.warn("RpcDBService close wait the snapshot timeout. dataDir={}", dataDir);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshot();
+            for (Group group : memExpiryGroupMap.values()) {
+                try {
+                    group.log.close();
+                } catch (IOException e) {
+                    LOGGER.warn("RpcDBService close error. group={}, error={}", group.name, e.toString(), e);
+                }
             }
         }
+        if (slabStore != null) {
+            slabStore.close();
+        }
     }
 
-    private RpcDBExpiryLRUMap<String, byte[]> getMemExpiryMap(String group) {
-        RpcDBExpiryLRUMap<String, byte[]> memExpiryMap = memExpiryGroupMap.get(group);
+    private Group getMemExpiryMap(String group) {
+        Group memExpiryMap = memExpiryGroupMap.get(group);
         if (memExpiryMap == null) {
             synchronized (memExpiryGroupMap) {
                 memExpiryMap = memExpiryGroupMap.get(group);
                 if (memExpiryMap == null) {
-                    memExpiryMap = new RpcDBExpiryLRUMap<>(-1);
+                    memExpiryMap = new Group(group);
                     memExpiryGroupMap.put(group, memExpiryMap);
                 }
             }
@@ -130,9 +639,301 @@ public class RpcDBServiceImpl implements RpcDBService {
         return memExpiryMap;
     }
 
-    private static class RpcDBExpiryLRUMap<K, V> extends ExpiryLRUMap<K, V> {
-        RpcDBExpiryLRUMap(long defaultExpiryTime) {
+    private static class RpcDBExpiryLRUMap extends ExpiryLRUMap<String, Object> {
+        private final Shard shard;
+
+        RpcDBExpiryLRUMap(long defaultExpiryTime, Shard shard) {
             super(defaultExpiryTime);
+            this.shard = shard;
+        }
+
+        @Override
+        public void onExpiry(Node<String, Object> node) {
+            shard.free(node.getData());
+        }
+
+        @Override
+        public void onEviction(Node<String, Object> node) {
+            shard.free(node.getData());
+        }
+    }
+
+    /**
+     * the value of the map is byte[], or {@link RpcDBSlabStore.Handle} (off-heap)
+     */
+    private static class Shard {
+        private final int index;
+        private final RpcDBSlabStore slabStore;
+        private final RpcDBExpiryLRUMap map = new RpcDBExpiryLRUMap(-1, this);
+
+        private Shard(int index, RpcDBSlabStore slabStore) {
+            this.index = index;
+            this.slabStore = slabStore;
+        }
+
+        byte[] get(String key) {
+            if (slabStore == null) {
+                return (byte[]) map.get(key);
+            }
+            // the chunk is not freed in the lock
+            synchronized (this) {
+                return toBytes(map.get(key));
+            }
+        }
+
+        synchronized void put(String key, byte[] data, long timeout) {
+            Object value = slabStore == null || data == null ? data : slabStore.allocate(data);
+            free(map.put(key, value, timeout));
+        }
+
+        synchronized void remove(String key) {
+            free(map.remove(key));
+        }
+
+        synchronized void clear() {
+            if (slabStore != null) {
+                for (Object value : map.values()) {
+                    free(value);
+                }
+            }
+            map.clear();
+        }
+
+        /**
+         * guarded by the lock of the shard if off-heap
+         */
+        byte[] toBytes(Object value) {
+            if (value instanceof RpcDBSlabStore.Handle) {
+                return slabStore.read((RpcDBSlabStore.Handle) value);
+            }
+            return (byte[]) value;
+        }
+
+        /**
+         * the old value of the put, remove, expiry, eviction. (idempotent)
+         */
+        void free(Object value) {
+            if (value instanceof RpcDBSlabStore.Handle) {
+                synchronized (this) {
+                    slabStore.free((RpcDBSlabStore.Handle) value);
+                }
+            }
+        }
+    }
+
+    private class Group implements RpcDBLog.RecordHandler {
+        private final String name;
+        private final Shard[] shards;
+        private final RpcDBLog log;
+        private volatile Integer maxSize;
+
+        private Group(String name) {
+            this.name = name;
+            this.shards = new Shard[RpcDBServiceImpl.this.shards];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard(i, slabStore);
+            }
+            if (dataDir != null) {
+                this.log = new RpcDBLog(new File(dataDir, GROUP_DIR_PREFIX + encodeGroup(name)), fsyncPolicy);
+                try {
+                    log.load(this);
+                } catch (IOException e) {
+                    throw new IllegalStateException("RpcDBService load error. group=" + name + ", error=" + e, e);
+                }
+            } else {
+                this.log = null;
+            }
+        }
+
+        Shard shard(String key) {
+            int hash = key == null ? 0 : key.hashCode();
+            hash ^= hash >>> 16;
+            return shards[(hash & Integer.MAX_VALUE) % shards.length];
+        }
+
+        int size() {
+            int size = 0;
+            for (Shard shard : shards) {
+                size += shard.map.size();
+            }
+            return size;
+        }
+
+        void setMaxSize(Integer maxSize) {
+            this.maxSize = maxSize;
+            // the LRU is per shard. (not the global most recent keys)
+            long shardMaxSize = maxSize > 0 ? ((long) maxSize + shards.length - 1) / shards.length : maxSize;
+            for (Shard shard : shards) {
+                shard.map.setMaxCacheSize(shardMaxSize);
+            }
+        }
+
+        /**
+         * @return the position of the log. -1 is no log
+         */
+        long removeKey(String key) {
+            Shard shard = shard(key);
+            synchronized (shard) {
+                return removeLocked(shard, key);
+            }
+        }
+
+        /**
+         * guarded by the lock of the shard
+         *
+         * @return the position of the log. -1 is no log
+         */
+        long removeLocked(Shard shard, String key) {
+            long position = -1;
+            if (isWrite()) {
+                position = write(RpcDBLog.encodeRemove(key));
+            }
+            shard.remove(key);
+            return position;
+        }
+
+        /**
+         * guarded by the lock of the shard
+         *
+         * @return the position of the log. -1 is no log
+         */
+        long putLocked(Shard shard, String key, byte[] data, long timeout) {
+            long position = -1;
+            if (isWrite()) {
+                position = write(RpcDBLog.encodePut(key, timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout, data));
+            }
+            shard.put(key, data, timeout);
+            return position;
+        }
+
+        /**
+         * @param keys keys (RandomAccess)
+         * @return the indexes of the keys of each shard. [shard index][key index]
+         */
+        int[][] groupByShard(List<String> keys) {
+            int size = keys.size();
+            int[] keyShards = new int[size];
+            int[] counts = new int[shards.length];
+            for (int i = 0; i < size; i++) {
+                int index = shard(keys.get(i)).index;
+                keyShards[i] = index;
+                counts[index]++;
+            }
+            int[][] shardIndexes = new int[shards.length][];
+            for (int s = 0; s < shards.length; s++) {
+                shardIndexes[s] = new int[counts[s]];
+                counts[s] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                int index = keyShards[i];
+                shardIndexes[index][counts[index]++] = i;
+            }
+            return shardIndexes;
+        }
+
+        /**
+         * @return true if the mutation need the record. (the wal or the replication)
+         */
+        boolean isWrite() {
+            return log != null || replicationLog != null;
+        }
+
+        /**
+         * append the record to the wal, then the replication log. guarded by the lock of the shard
+         *
+         * @param record {@link RpcDBLog} record
+         * @return the position of the log. -1 is no log
+         */
+        long write(byte[] record) {
+            long position = -1;
+            if (log != null) {
+                try {
+                    position = log.append(record);
+                } catch (IOException e) {
+                    throw new IllegalStateException("RpcDBService write error. group=" + name + ", error=" + e, e);
+                }
+            }
+            RpcDBReplicationLog replicationLog = RpcDBServiceImpl.this.replicationLog;
+            if (replicationLog != null) {
+                replicationLog.append(name, record);
+            }
+            return position;
+        }
+
+        void commit(long position) {
+            if (position < 0 || log == null) {
+                return;
+            }
+            try {
+                log.commit(position);
+            } catch (IOException e) {
+                throw new IllegalStateException("RpcDBService fsync error. group=" + name + ", error=" + e, e);
+            }
+        }
+
+        /**
+         * the snapshot. lock one shard at a time
+         */
+        void writeTo(RpcDBLog.RecordHandler handler) throws IOException {
+            Integer maxSize = this.maxSize;
+            if (maxSize != null) {
+                handler.maxSize(maxSize);
+            }
+            for (Shard shard : shards) {
+                writeTo(shard, handler);
+            }
+        }
+
+        void writeTo(Shard shard, RpcDBLog.RecordHandler handler) throws IOException {
+            List<ExpiryLRUMap.Node<String, Object>> nodeList = new ArrayList<>();
+            List<byte[]> dataList = new ArrayList<>();
+            synchronized (shard) {
+                for (String key : shard.map.keySet()) {
+                    ExpiryLRUMap.Node<String, Object> node = shard.map.getNode(key);
+                    if (node != null && !node.isExpiry()) {
+                        nodeList.add(node);
+                        // copy the off-heap value in the lock
+                        dataList.add(shard.toBytes(node.getData()));
+                    }
+                }
+            }
+            for (int i = 0, size = nodeList.size(); i < size; i++) {
+                ExpiryLRUMap.Node<String, Object> node = nodeList.get(i);
+                handler.put(node.getKey(), node.getExpiryTimestamp(), dataList.get(i));
+            }
+        }
+
+        // replay. (no log)
+
+        @Override
+        public void put(String key, long expiryTimestamp, byte[] data) {
+            Shard shard = shard(key);
+            if (expiryTimestamp == Long.MAX_VALUE) {
+                shard.put(key, data, -1);
+                return;
+            }
+            long timeout = expiryTimestamp - System.currentTimeMillis();
+            if (timeout > 0) {
+                shard.put(key, data, timeout);
+            } else {
+                shard.remove(key);
+            }
+        }
+
+        @Override
+        public void remove(String key) {
+            shard(key).remove(key);
+        }
+
+        @Override
+        public void changeKey(String oldKey, String newKey, long expiryTimestamp, byte[] data) {
+            shard(oldKey).remove(oldKey);
+            put(newKey, expiryTimestamp, data);
+        }
+
+        @Override
+        public void maxSize(long maxSize) {
+            setMaxSize((int) maxSize);
         }
     }
 }
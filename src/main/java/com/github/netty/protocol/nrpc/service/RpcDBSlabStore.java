@@ -0,0 +1,384 @@
+package com.github.netty.protocol.nrpc.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap value store of the {@link RpcDBServiceImpl}. (like the memcached slab allocator)
+ * the memory is split into the pages (direct memory, or mapped file {@link #RpcDBSlabStore(long, int, File)}).
+ * each page belong to one size class, and is split into the chunks of the size. the value is copied into the smallest chunk of enough size.
+ * the map keep the {@link Handle} only, so the heap scale with the key count, not the value bytes.
+ * <p>
+ * the page is not returned to the other size class. the free chunk is reused by the same size class.
+ * the value larger than the page, or no page can be allocated (max bytes), is kept in the heap. {@link #getHeapFallbackCount()}
+ * <p>
+ * the caller must guarantee the chunk is not read after the {@link #free(Handle)}. ({@link RpcDBServiceImpl} read and free in the lock of the shard)
+ *
+ * @author wangzihao
+ */
+public class RpcDBSlabStore implements Closeable {
+    public static final int DEFAULT_PAGE_SIZE = 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25D;
+    private final long maxBytes;
+    private final int pageSize;
+    /**
+     * null is the direct memory
+     */
+    private final File mappedFile;
+    private final FileChannel mappedChannel;
+    private final SizeClass[] sizeClasses;
+    /**
+     * guarded by this
+     */
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private final LongAdder heapFallbackCount = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * direct memory
+     *
+     * @param maxBytes the max bytes of the pages
+     */
+    public RpcDBSlabStore(long maxBytes) {
+        this(maxBytes, DEFAULT_PAGE_SIZE, null);
+    }
+
+    /**
+     * @param maxBytes  the max bytes of the pages
+     * @param pageSize  the bytes of the page. the max value size
+     * @param mappedDir the directory of the mapped file. null is the direct memory
+     * @throws IllegalStateException create the mapped file error
+     */
+    public RpcDBSlabStore(long maxBytes, int pageSize, File mappedDir) throws IllegalStateException {
+        this.maxBytes = maxBytes;
+        this.pageSize = Math.max(MIN_CHUNK_SIZE, pageSize);
+        List<SizeClass> sizeClassList = new ArrayList<>();
+        int chunkSize = MIN_CHUNK_SIZE;
+        while (true) {
+            sizeClassList.add(new SizeClass(sizeClassList.size(), chunkSize));
+            if (chunkSize >= this.pageSize) {
+                break;
+            }
+            // 8 bytes align
+            int next = ((int) (chunkSize * GROWTH_FACTOR) + 7) & ~7;
+            chunkSize = Math.min(this.pageSize, next);
+        }
+        this.sizeClasses = sizeClassList.toArray(new SizeClass[0]);
+        if (mappedDir != null) {
+            mappedDir.mkdirs();
+            this.mappedFile = new File(mappedDir, "slab-" + UUID.randomUUID() + ".mem");
+            try {
+                this.mappedChannel = new RandomAccessFile(mappedFile, "rw").getChannel();
+            } catch (IOException e) {
+                throw new IllegalStateException("RpcDBSlabStore create mapped file error. file=" + mappedFile + ", error=" + e, e);
+            }
+        } else {
+            this.mappedFile = null;
+            this.mappedChannel = null;
+        }
+    }
+
+    /**
+     * @param data data
+     * @return the {@link Handle} of the off-heap chunk. or the data itself (kept in the heap)
+     */
+    public Object allocate(byte[] data) {
+        SizeClass sizeClass = sizeClassOf(data.length);
+        if (sizeClass == null) {
+            heapFallbackCount.increment();
+            return data;
+        }
+        Handle handle = sizeClass.allocate(data.length);
+        if (handle == null) {
+            heapFallbackCount.increment();
+            return data;
+        }
+        ByteBuffer buffer = handle.page.duplicate();
+        buffer.position(handle.offset);
+        buffer.put(data);
+        return handle;
+    }
+
+    /**
+     * @param handle handle
+     * @return the copy of the value
+     * @throws IllegalStateException the handle is freed
+     */
+    public byte[] read(Handle handle) throws IllegalStateException {
+        if (handle.freed) {
+            throw new IllegalStateException("RpcDBSlabStore read the freed handle " + handle);
+        }
+        byte[] data = new byte[handle.length];
+        ByteBuffer buffer = handle.page.duplicate();
+        buffer.position(handle.offset);
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * idempotent
+     *
+     * @param handle handle
+     */
+    public void free(Handle handle) {
+        sizeClasses[handle.sizeClass].free(handle);
+    }
+
+    private SizeClass sizeClassOf(int length) {
+        if (length > pageSize) {
+            return null;
+        }
+        // binary search the smallest chunk of enough size
+        int low = 0;
+        int high = sizeClasses.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sizeClasses[mid].chunkSize < length) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return sizeClasses[low];
+    }
+
+    /**
+     * @return the new page. null is the max bytes
+     */
+    private synchronized ByteBuffer newPage() {
+        if (closed || (long) (pages.size() + 1) * pageSize > maxBytes) {
+            return null;
+        }
+        ByteBuffer page;
+        if (mappedChannel != null) {
+            try {
+                page = mappedChannel.map(FileChannel.MapMode.READ_WRITE, (long) pages.size() * pageSize, pageSize);
+            } catch (IOException e) {
+                return null;
+            }
+        } else {
+            page = ByteBuffer.allocateDirect(pageSize);
+        }
+        pages.add(page);
+        return page;
+    }
+
+    /**
+     * @return the bytes of the allocated pages
+     */
+    public synchronized long getCapacityBytes() {
+        return (long) pages.size() * pageSize;
+    }
+
+    /**
+     * @return the bytes of the chunks in use. (include the unused tail of the chunk)
+     */
+    public long getChunkBytes() {
+        long bytes = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            bytes += sizeClass.usedChunks * (long) sizeClass.chunkSize;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the bytes of the values
+     */
+    public long getUsedBytes() {
+        long bytes = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            bytes += sizeClass.usedBytes;
+        }
+        return bytes;
+    }
+
+    public long getValueCount() {
+        long count = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            count += sizeClass.usedChunks;
+        }
+        return count;
+    }
+
+    /**
+     * @return the values kept in the heap. (larger than the page, or the max bytes)
+     */
+    public long getHeapFallbackCount() {
+        return heapFallbackCount.sum();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public File getMappedFile() {
+        return mappedFile;
+    }
+
+    /**
+     * @return [chunkSize, pages, usedChunks, usedBytes] of each size class that has the page
+     */
+    public List<long[]> getSizeClassStats() {
+        List<long[]> list = new ArrayList<>();
+        for (SizeClass sizeClass : sizeClasses) {
+            synchronized (sizeClass) {
+                if (sizeClass.pages > 0) {
+                    list.add(new long[]{sizeClass.chunkSize, sizeClass.pages, sizeClass.usedChunks, sizeClass.usedBytes});
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * no new page. the mapped file is deleted.
+     * the pages are not freed explicitly (a concurrent read of the freed memory crash the jvm), the gc release them after the handles are unreachable
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pages.clear();
+        if (mappedChannel != null) {
+            try {
+                mappedChannel.close();
+            } catch (IOException e) {
+                //skip
+            }
+            mappedFile.delete();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcDBSlabStore{" +
+                "capacityBytes=" + getCapacityBytes() +
+                ", maxBytes=" + maxBytes +
+                ", chunkBytes=" + getChunkBytes() +
+                ", usedBytes=" + getUsedBytes() +
+                ", valueCount=" + getValueCount() +
+                ", heapFallbackCount=" + heapFallbackCount +
+                ", mapped=" + (mappedFile != null) +
+                '}';
+    }
+
+    /**
+     * the off-heap chunk of a value
+     */
+    public static class Handle {
+        private final ByteBuffer page;
+        private final int offset;
+        private final int length;
+        private final int sizeClass;
+        /**
+         * guarded by the size class
+         */
+        private boolean freed;
+
+        private Handle(ByteBuffer page, int offset, int length, int sizeClass) {
+            this.page = page;
+            this.offset = offset;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return "Handle{" +
+                    "offset=" + offset +
+                    ", length=" + length +
+                    ", sizeClass=" + sizeClass +
+                    ", freed=" + freed +
+                    '}';
+        }
+    }
+
+    private class SizeClass {
+        private final int index;
+        private final int chunkSize;
+        private final int chunksPerPage;
+        /**
+         * the free chunks. (page, offset)
+         */
+        private ByteBuffer[] freePages = new ByteBuffer[16];
+        private int[] freeOffsets = new int[16];
+        private int freeCount;
+        /**
+         * the page of the chunks not used yet
+         */
+        private ByteBuffer currentPage;
+        private int currentOffset;
+        private volatile int pages;
+        private volatile long usedChunks;
+        private volatile long usedBytes;
+
+        SizeClass(int index, int chunkSize) {
+            this.index = index;
+            this.chunkSize = chunkSize;
+            this.chunksPerPage = pageSize / chunkSize;
+        }
+
+        synchronized Handle allocate(int length) {
+            ByteBuffer page;
+            int offset;
+            if (freeCount > 0) {
+                freeCount--;
+                page = freePages[freeCount];
+                offset = freeOffsets[freeCount];
+                freePages[freeCount] = null;
+            } else {
+                if (currentPage == null || currentOffset + chunkSize > chunksPerPage * chunkSize) {
+                    ByteBuffer newPage = newPage();
+                    if (newPage == null) {
+                        return null;
+                    }
+                    currentPage = newPage;
+                    currentOffset = 0;
+                    pages++;
+                }
+                page = currentPage;
+                offset = currentOffset;
+                currentOffset += chunkSize;
+            }
+            usedChunks++;
+            usedBytes += length;
+            return new Handle(page, offset, length, index);
+        }
+
+        synchronized void free(Handle handle) {
+            if (handle.freed) {
+                return;
+            }
+            handle.freed = true;
+            if (freeCount == freeOffsets.length) {
+                freePages = Arrays.copyOf(freePages, freeCount << 1);
+                freeOffsets = Arrays.copyOf(freeOffsets, freeCount << 1);
+            }
+            freePages[freeCount] = handle.page;
+            freeOffsets[freeCount] = handle.offset;
+            freeCount++;
+            usedChunks--;
+            usedBytes -= handle.length;
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package com.github.netty.protocol.servlet;
 
 import com.github.netty.core.util.CaseInsensitiveKeyMap;
+import com.github.netty.core.util.ConcurrentLinkedHashMap;
 import com.github.netty.core.util.RecyclableUtil;
 import com.github.netty.protocol.servlet.util.HttpHeaderUtil;
 import com.github.netty.protocol.servlet.util.MimeMappingsX;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.DateFormatter;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.IllegalReferenceCountException;
 
 import javax.servlet.ServletResponse;
 import javax.servlet.ServletResponseWrapper;
@@ -20,7 +23,9 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -42,6 +47,10 @@ import java.util.*;
  *      }
  *  }
  * </pre>
+ * <p>
+ * 1. conditional GET. If-None-Match, If-Modified-Since → 304 Not Modified
+ * 2. memory cache. small files are cached as ready-to-send ByteBuf. (limited by total bytes and count)
+ * 3. precompressed. send xxx.js.br or xxx.js.gz directly if the client accepts. (not compress on the fly)
  *
  * @author wangzihao
  * 2018/7/15/015
@@ -53,6 +62,11 @@ public class DefaultServlet extends HttpServlet {
     private static final String BOUNDARY = "CATALINA_MIME_BOUNDARY";
     private static final byte[] MIME_BOUNDARY_BEGIN = ("\r\n--" + BOUNDARY).getBytes(ISO_8859_1);
     private static final byte[] MIME_BOUNDARY_END = ("\r\n--" + BOUNDARY + "--").getBytes(ISO_8859_1);
+    /**
+     * precompressed content encoding, in order of preference. xxx.js.br, xxx.js.gz
+     */
+    private static final String[] PRECOMPRESSED_ENCODINGS = {"br", "gzip"};
+    private static final String[] PRECOMPRESSED_SUFFIXES = {".br", ".gz"};
 
     static {
         try (InputStream is = DefaultServlet.class.getResourceAsStream
@@ -67,9 +81,109 @@ public class DefaultServlet extends HttpServlet {
     private String characterEncoding = "utf-8";
     private final Map<String, String> mimeTypeMappings = new CaseInsensitiveKeyMap<>();
     private final HttpHeaders responseHeaders = new DefaultHttpHeaders();
+    /**
+     * send xxx.br or xxx.gz if exist and the client accepts
+     */
+    private boolean enablePrecompressed = true;
+    /**
+     * files larger than this are not cached in memory. 0 = disable memory cache
+     */
+    private int cacheMaxFileSize = 64 * 1024;
+    private long cacheMaxSize = 32 * 1024 * 1024;
+    private int cacheMaxCount = 1024;
+    /**
+     * the interval of checking whether the cached file has been changed
+     */
+    private long cacheRevalidateMillis = 1000;
+    private volatile ConcurrentLinkedHashMap<String, StaticResource> cacheMap;
 
     public DefaultServlet() {
         DEFAULT_MIME_TYPE_MAPPINGS.forEach((k, v) -> mimeTypeMappings.put(k.toString(), v.toString()));
+        rebuildCacheMap();
+    }
+
+    /**
+     * If-None-Match or If-Modified-Since
+     *
+     * @param request  request
+     * @param resource resource
+     * @return true = not modified. need send 304
+     */
+    protected static boolean isNotModified(HttpServletRequest request, WebResource resource) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            return matchETag(ifNoneMatch, resource.getETag());
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        long lastModified = resource.getLastModified();
+        return ifModifiedSince != -1 && lastModified > 0
+                && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * weak comparison. W/"1-2" equals "1-2"
+     *
+     * @param ifNoneMatch header value. e.g. W/"1-2", "3-4"
+     * @param eTag        eTag
+     * @return true = match
+     */
+    protected static boolean matchETag(String ifNoneMatch, String eTag) {
+        if (eTag == null) {
+            return false;
+        }
+        String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        StringTokenizer tokenizer = new StringTokenizer(ifNoneMatch, ",");
+        while (tokenizer.hasMoreTokens()) {
+            String tag = tokenizer.nextToken().trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accept-Encoding: gzip, deflate, br;q=0.9
+     *
+     * @param acceptEncoding header value
+     * @param encoding       content encoding
+     * @return true = acceptable
+     */
+    protected static boolean isAcceptEncoding(String acceptEncoding, String encoding) {
+        StringTokenizer tokenizer = new StringTokenizer(acceptEncoding, ",");
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken();
+            int paramIndex = token.indexOf(';');
+            String name = (paramIndex == -1 ? token : token.substring(0, paramIndex)).trim();
+            if (!name.equalsIgnoreCase(encoding) && !"*".equals(name)) {
+                continue;
+            }
+            if (paramIndex == -1) {
+                return true;
+            }
+            String param = token.substring(paramIndex + 1).trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim()) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
     }
 
     protected static List<Range> parseRange(HttpServletRequest request,
@@ -255,22 +369,41 @@ public class DefaultServlet extends HttpServlet {
     }
 
     protected void sendRange(HttpServletRequest request, HttpServletResponse response, File file, String contentType) throws IOException {
-        WebResource resource = new WebResource(file);
+        StaticResource staticResource = getStaticResource(file);
+        WebResource resource = staticResource.getResource();
 
         List<Range> ranges = parseRange(request, response, resource);
         if (ranges == null) {
             return;
         }
 
+        // precompressed. the range of the compressed content makes no sense
+        StaticResource sendResource = staticResource;
+        if (staticResource.hasPrecompressed()) {
+            response.addHeader("Vary", "Accept-Encoding");
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (ranges.isEmpty() && acceptEncoding != null) {
+                sendResource = staticResource.selectPrecompressed(acceptEncoding);
+            }
+        }
+        WebResource sendWebResource = sendResource.getResource();
+
         response.setHeader("Accept-Ranges", "bytes");
-        String eTag = resource.getETag();
+        String eTag = sendWebResource.getETag();
         if (eTag != null) {
             response.setHeader("ETag", eTag);
         }
-        String lastModifiedHttp = resource.getLastModifiedHttp();
+        String lastModifiedHttp = sendWebResource.getLastModifiedHttp();
         if (lastModifiedHttp != null) {
             response.setHeader("Last-Modified", lastModifiedHttp);
         }
+        if (isNotModified(request, sendWebResource)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (sendResource.getContentEncoding() != null) {
+            response.setHeader("Content-Encoding", sendResource.getContentEncoding());
+        }
 
         ServletResponse r = response;
         while (r instanceof ServletResponseWrapper) {
@@ -279,7 +412,17 @@ public class DefaultServlet extends HttpServlet {
 
         NettyOutputStream ostream = (NettyOutputStream) r.getOutputStream();
         if (ranges.isEmpty()) {
-            ostream.write(file);
+            ByteBuf content = sendResource.retainedContent();
+            if (content != null) {
+                if (r instanceof ServletHttpServletResponse) {
+                    // same as sendfile. the cached file is not compressed on the fly
+                    ((ServletHttpServletResponse) r).getNettyResponse().setWriteSendFile(true);
+                }
+                response.setContentLengthLong(content.readableBytes());
+                ostream.write(content);
+            } else {
+                ostream.write(sendResource.getFile());
+            }
         } else {
             response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
             if (ranges.size() == 1) {
@@ -295,6 +438,126 @@ public class DefaultServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Get from memory cache, or read the file
+     *
+     * @param file file
+     * @return StaticResource
+     * @throws IOException read fail
+     */
+    protected StaticResource getStaticResource(File file) throws IOException {
+        ConcurrentLinkedHashMap<String, StaticResource> cacheMap = this.cacheMap;
+        if (cacheMap == null) {
+            return newStaticResource(file, 0);
+        }
+        String key = file.getPath();
+        StaticResource cache = cacheMap.get(key);
+        if (cache != null) {
+            long now = System.currentTimeMillis();
+            if (now - cache.checkTimestamp < cacheRevalidateMillis) {
+                return cache;
+            }
+            if (!cache.isModified()) {
+                cache.checkTimestamp = now;
+                return cache;
+            }
+            if (cacheMap.remove(key, cache)) {
+                cache.release();
+            }
+        }
+
+        StaticResource resource = newStaticResource(file, cacheMaxFileSize);
+        if (resource.getContent() != null) {
+            StaticResource old = cacheMap.put(key, resource);
+            if (old != null) {
+                old.release();
+            }
+        }
+        return resource;
+    }
+
+    protected StaticResource newStaticResource(File file, int maxContentSize) throws IOException {
+        ByteBuf content = readContent(file, maxContentSize);
+        // the resource without the content is not cached (nobody release it). so the precompressed content is not read too
+        int precompressedMaxContentSize = content != null ? maxContentSize : 0;
+        StaticResource[] precompressed = null;
+        if (enablePrecompressed) {
+            long lastModified = file.lastModified();
+            try {
+                for (int i = 0; i < PRECOMPRESSED_SUFFIXES.length; i++) {
+                    File compressedFile = new File(file.getPath() + PRECOMPRESSED_SUFFIXES[i]);
+                    // ignore the outdated compressed file
+                    if (compressedFile.isFile() && compressedFile.lastModified() >= lastModified) {
+                        if (precompressed == null) {
+                            precompressed = new StaticResource[PRECOMPRESSED_SUFFIXES.length];
+                        }
+                        precompressed[i] = new StaticResource(compressedFile, PRECOMPRESSED_ENCODINGS[i],
+                                readContent(compressedFile, precompressedMaxContentSize), null);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                new StaticResource(file, null, content, precompressed).release();
+                throw e;
+            }
+        }
+        return new StaticResource(file, null, content, precompressed);
+    }
+
+    /**
+     * read the small file into memory
+     *
+     * @param file           file
+     * @param maxContentSize max file size
+     * @return read-only direct buffer. null if too large or file changed
+     * @throws IOException read fail
+     */
+    protected ByteBuf readContent(File file, int maxContentSize) throws IOException {
+        long length = file.length();
+        if (length <= 0 || length > maxContentSize) {
+            return null;
+        }
+        ByteBuf content = Unpooled.directBuffer((int) length, (int) length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (content.isWritable()) {
+                if (content.writeBytes(channel, content.writerIndex(), content.writableBytes()) < 0) {
+                    break;
+                }
+            }
+            // the file is being modified
+            if (content.isWritable() || channel.size() != length) {
+                content.release();
+                return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            content.release();
+            throw e;
+        }
+        return content.asReadOnly();
+    }
+
+    protected void rebuildCacheMap() {
+        ConcurrentLinkedHashMap<String, StaticResource> oldCacheMap = this.cacheMap;
+        if (cacheMaxFileSize > 0 && cacheMaxSize > 0 && cacheMaxCount > 0) {
+            // weight >= size and weight >= maxSize / maxCount. so both the total size and the count are limited
+            int minWeight = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheMaxSize / cacheMaxCount));
+            this.cacheMap = new ConcurrentLinkedHashMap.Builder<String, StaticResource>()
+                    .maximumWeightedCapacity(cacheMaxSize)
+                    .weigher((ConcurrentLinkedHashMap.Weigher<StaticResource>) value -> Math.max(minWeight, value.getContentSize()))
+                    .listener((key, value) -> value.release())
+                    .build();
+        } else {
+            this.cacheMap = null;
+        }
+        if (oldCacheMap != null) {
+            for (String key : new ArrayList<>(oldCacheMap.keySet())) {
+                StaticResource value = oldCacheMap.remove(key);
+                if (value != null) {
+                    value.release();
+                }
+            }
+        }
+    }
+
     protected void sendMultipartByteRanges(File file, NettyOutputStream ostream, List<Range> ranges, String contentType) throws IOException {
         ByteBuf contentTypeByteBuf = null;
         if (contentType != null && contentType.length() > 0) {
@@ -369,6 +632,131 @@ public class DefaultServlet extends HttpServlet {
         }
     }
 
+    /**
+     * A file and it's precompressed files. the content of small file is cached in memory
+     */
+    public static class StaticResource {
+        private final File file;
+        private final WebResource resource;
+        private final String contentEncoding;
+        private final ByteBuf content;
+        private final StaticResource[] precompressed;
+        private volatile long checkTimestamp = System.currentTimeMillis();
+
+        public StaticResource(File file, String contentEncoding, ByteBuf content, StaticResource[] precompressed) {
+            this.file = file;
+            this.resource = new WebResource(file);
+            this.contentEncoding = contentEncoding;
+            this.content = content;
+            this.precompressed = precompressed;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public WebResource getResource() {
+            return resource;
+        }
+
+        /**
+         * @return null = identity. otherwise gzip or br
+         */
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        public ByteBuf getContent() {
+            return content;
+        }
+
+        public boolean hasPrecompressed() {
+            return precompressed != null;
+        }
+
+        /**
+         * @return memory bytes of this and precompressed content
+         */
+        public int getContentSize() {
+            int size = content != null ? content.capacity() : 0;
+            if (precompressed != null) {
+                for (StaticResource resource : precompressed) {
+                    if (resource != null) {
+                        size += resource.getContentSize();
+                    }
+                }
+            }
+            return size;
+        }
+
+        /**
+         * @param acceptEncoding Accept-Encoding header value
+         * @return precompressed resource. or this if the client not accept
+         */
+        public StaticResource selectPrecompressed(String acceptEncoding) {
+            if (precompressed != null) {
+                for (int i = 0; i < precompressed.length; i++) {
+                    StaticResource resource = precompressed[i];
+                    if (resource != null && isAcceptEncoding(acceptEncoding, PRECOMPRESSED_ENCODINGS[i])) {
+                        return resource;
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return retained duplicate content. null if not in memory (or just evicted)
+         */
+        public ByteBuf retainedContent() {
+            ByteBuf content = this.content;
+            if (content == null) {
+                return null;
+            }
+            try {
+                return content.retainedDuplicate();
+            } catch (IllegalReferenceCountException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return true if the file or the precompressed files changed
+         */
+        public boolean isModified() {
+            if (file.lastModified() != resource.getLastModified() || file.length() != resource.getContentLength()) {
+                return true;
+            }
+            for (int i = 0; i < PRECOMPRESSED_SUFFIXES.length; i++) {
+                StaticResource resource = precompressed != null ? precompressed[i] : null;
+                if (resource != null) {
+                    if (resource.isModified()) {
+                        return true;
+                    }
+                } else if (new File(file.getPath() + PRECOMPRESSED_SUFFIXES[i]).isFile()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void release() {
+            RecyclableUtil.release(content);
+            if (precompressed != null) {
+                for (StaticResource resource : precompressed) {
+                    if (resource != null) {
+                        resource.release();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file + (contentEncoding != null ? "(" + contentEncoding + ")" : "");
+        }
+    }
+
     public static class WebResource {
         private final long lastModified;
         private final long length;
@@ -422,6 +810,62 @@ public class DefaultServlet extends HttpServlet {
         }
     }
 
+    public boolean isEnablePrecompressed() {
+        return enablePrecompressed;
+    }
+
+    public void setEnablePrecompressed(boolean enablePrecompressed) {
+        this.enablePrecompressed = enablePrecompressed;
+        rebuildCacheMap();
+    }
+
+    public int getCacheMaxFileSize() {
+        return cacheMaxFileSize;
+    }
+
+    public void setCacheMaxFileSize(int cacheMaxFileSize) {
+        this.cacheMaxFileSize = cacheMaxFileSize;
+        rebuildCacheMap();
+    }
+
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(long cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+        rebuildCacheMap();
+    }
+
+    public int getCacheMaxCount() {
+        return cacheMaxCount;
+    }
+
+    public void setCacheMaxCount(int cacheMaxCount) {
+        this.cacheMaxCount = cacheMaxCount;
+        rebuildCacheMap();
+    }
+
+    public long getCacheRevalidateMillis() {
+        return cacheRevalidateMillis;
+    }
+
+    public void setCacheRevalidateMillis(long cacheRevalidateMillis) {
+        this.cacheRevalidateMillis = cacheRevalidateMillis;
+    }
+
+    @Override
+    public void destroy() {
+        ConcurrentLinkedHashMap<String, StaticResource> cacheMap = this.cacheMap;
+        this.cacheMap = null;
+        if (cacheMap != null) {
+            for (StaticResource resource : cacheMap.values()) {
+                resource.release();
+            }
+            cacheMap.clear();
+        }
+    }
+
     public void responseHeaderNoCache() {
         responseHeaders.set("Cache-Control", "no-cache");
     }
@@ -1,6 +1,7 @@
 package com.github.netty.protocol.servlet;
 
 import com.github.netty.Version;
+import com.github.netty.core.util.ConcurrentLinkedHashMap;
 import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.LoggerX;
 import com.github.netty.core.util.ResourceManager;
@@ -104,6 +105,14 @@ public class ServletContext implements javax.servlet.ServletContext {
     long abortAfterMessageTimeoutMs = 500;
     private Supplier<Executor> asyncExecutorSupplier;
     private SessionService sessionService;
+    /**
+     * When the session is saved. default save on every request
+     */
+    private SessionSaveMode sessionSaveMode = SessionSaveMode.IMMEDIATE;
+    /**
+     * Flush interval of the session write-behind queue
+     */
+    private long sessionWriteBehindIntervalMillis = 1000;
     private Set<SessionTrackingMode> sessionTrackingModeSet;
     private Servlet defaultServlet = new DefaultServlet();
     boolean enableLookupFlag = false;
@@ -120,6 +129,14 @@ public class ServletContext implements javax.servlet.ServletContext {
      * Each buffer accumulate the maximum number of bytes (default 1M)
      */
     private int maxBufferBytes = 1024 * 1024;
+    /**
+     * max cached dispatch routes per DispatcherType. (0 is disable cache)
+     */
+    private int dispatchCacheSize = 1024;
+    /**
+     * resolved (path, DispatcherType) → servlet + ordered filter list. index = DispatcherType.ordinal()
+     */
+    private volatile Map<String, DispatchRoute>[] dispatchRouteCaches = newDispatchRouteCaches(dispatchCacheSize);
 
     public ServletContext() {
         this(null);
@@ -223,6 +240,34 @@ public class ServletContext implements javax.servlet.ServletContext {
         this.defaultServlet = defaultServlet;
     }
 
+    public int getDispatchCacheSize() {
+        return dispatchCacheSize;
+    }
+
+    public void setDispatchCacheSize(int dispatchCacheSize) {
+        this.dispatchCacheSize = dispatchCacheSize;
+        this.dispatchRouteCaches = newDispatchRouteCaches(dispatchCacheSize);
+    }
+
+    private static Map<String, DispatchRoute>[] newDispatchRouteCaches(int dispatchCacheSize) {
+        if (dispatchCacheSize <= 0) {
+            return null;
+        }
+        Map<String, DispatchRoute>[] caches = new Map[DispatcherType.values().length];
+        for (int i = 0; i < caches.length; i++) {
+            caches[i] = new ConcurrentLinkedHashMap<>(Math.min(dispatchCacheSize, 64), dispatchCacheSize);
+        }
+        return caches;
+    }
+
+    /**
+     * Build the servlet and filter routing index. (call on server startup)
+     */
+    public void compileMapping() {
+        servletUrlMapper.compile();
+        filterUrlMapper.compile();
+    }
+
     public int getMaxBufferBytes() {
         return maxBufferBytes;
     }
@@ -397,15 +442,75 @@ public class ServletContext implements javax.servlet.ServletContext {
         if (sessionService == null) {
             synchronized (this) {
                 if (sessionService == null) {
-                    sessionService = new SessionLocalMemoryServiceImpl(this);
+                    sessionService = newSessionService(new SessionLocalMemoryServiceImpl(this));
                 }
             }
         }
         return sessionService;
     }
 
+    /**
+     * Set session service. if the save mode is not {@link SessionSaveMode#IMMEDIATE}, decorate with write-behind.
+     * (except the {@link SessionLocalMemoryServiceImpl}, the local map write is not deferred)
+     *
+     * @param sessionService sessionService
+     */
     public void setSessionService(SessionService sessionService) {
-        this.sessionService = sessionService;
+        SessionService oldSessionService = this.sessionService;
+        this.sessionService = newSessionService(sessionService);
+        if (oldSessionService instanceof SessionWriteBehindServiceImpl && oldSessionService != this.sessionService) {
+            ((SessionWriteBehindServiceImpl) oldSessionService).close();
+        }
+    }
+
+    private SessionService newSessionService(SessionService sessionService) {
+        if (sessionService instanceof SessionWriteBehindServiceImpl) {
+            SessionWriteBehindServiceImpl writeBehindService = (SessionWriteBehindServiceImpl) sessionService;
+            if (sessionSaveMode != SessionSaveMode.IMMEDIATE) {
+                return writeBehindService;
+            }
+            writeBehindService.close();
+            sessionService = writeBehindService.getSessionService();
+        }
+        if (sessionService == null || sessionSaveMode == SessionSaveMode.IMMEDIATE
+                || sessionService instanceof SessionLocalMemoryServiceImpl) {
+            return sessionService;
+        }
+        return new SessionWriteBehindServiceImpl(sessionService, sessionWriteBehindIntervalMillis);
+    }
+
+    /**
+     * Save all sessions in the write-behind queue now
+     */
+    public void flushSessionService() {
+        SessionService sessionService = this.sessionService;
+        if (sessionService instanceof SessionWriteBehindServiceImpl) {
+            ((SessionWriteBehindServiceImpl) sessionService).flush();
+            sessionService = ((SessionWriteBehindServiceImpl) sessionService).getSessionService();
+        }
+        if (sessionService instanceof SessionLocalLogFileServiceImpl) {
+            ((SessionLocalLogFileServiceImpl) sessionService).flush();
+        }
+    }
+
+    public SessionSaveMode getSessionSaveMode() {
+        return sessionSaveMode;
+    }
+
+    public void setSessionSaveMode(SessionSaveMode sessionSaveMode) {
+        this.sessionSaveMode = Objects.requireNonNull(sessionSaveMode);
+        SessionService sessionService = this.sessionService;
+        if (sessionService != null) {
+            setSessionService(sessionService);
+        }
+    }
+
+    public long getSessionWriteBehindIntervalMillis() {
+        return sessionWriteBehindIntervalMillis;
+    }
+
+    public void setSessionWriteBehindIntervalMillis(long sessionWriteBehindIntervalMillis) {
+        this.sessionWriteBehindIntervalMillis = sessionWriteBehindIntervalMillis;
     }
 
     public int getSessionTimeout() {
@@ -508,7 +613,8 @@ public class ServletContext implements javax.servlet.ServletContext {
         }
         int queryIndex = pathNormalize.indexOf('?');
         String relativePathNoQueryString = queryIndex != -1 ? pathNormalize.substring(0, queryIndex) : pathNormalize;
-        UrlMapper.Element<ServletRegistration> element = servletUrlMapper.getMappingObjectByServletPath(relativePathNoQueryString);
+        DispatchRoute route = getDispatchRoute(relativePathNoQueryString, dispatcherType);
+        UrlMapper.Element<ServletRegistration> element = route.element;
         if (element == null) {
             return null;
         }
@@ -517,10 +623,30 @@ public class ServletContext implements javax.servlet.ServletContext {
             return null;
         }
         ServletFilterChain filterChain = ServletFilterChain.newInstance(this, servletRegistration);
-        filterUrlMapper.addMappingObjects(relativePathNoQueryString, dispatcherType, filterChain.filterRegistrationList);
+        Collections.addAll(filterChain.filterRegistrationList, route.filters);
         return ServletRequestDispatcher.newInstancePath(filterChain, pathNormalize, contextPath, relativePathNoQueryString, element, queryIndex);
     }
 
+    private DispatchRoute getDispatchRoute(String relativePathNoQueryString, DispatcherType dispatcherType) {
+        int servletModCount = servletUrlMapper.getModCount();
+        int filterModCount = filterUrlMapper.getModCount();
+        Map<String, DispatchRoute>[] caches = this.dispatchRouteCaches;
+        Map<String, DispatchRoute> cache = caches != null ? caches[dispatcherType.ordinal()] : null;
+        DispatchRoute route = cache != null ? cache.get(relativePathNoQueryString) : null;
+        if (route == null || route.servletModCount != servletModCount || route.filterModCount != filterModCount) {
+            UrlMapper.Element<ServletRegistration> element = servletUrlMapper.getMappingObjectByServletPath(relativePathNoQueryString);
+            List<FilterMapper.Element<ServletFilterRegistration>> filterList = new ArrayList<>();
+            if (element != null) {
+                filterUrlMapper.addMappingObjects(relativePathNoQueryString, dispatcherType, filterList);
+            }
+            route = new DispatchRoute(element, filterList.toArray(new FilterMapper.Element[0]), servletModCount, filterModCount);
+            if (cache != null) {
+                cache.put(relativePathNoQueryString, route);
+            }
+        }
+        return route;
+    }
+
     @Override
     public ServletRequestDispatcher getNamedDispatcher(String name) {
         ServletRegistration servletRegistration = null == name ? null : getServletRegistration(name);
@@ -921,4 +1047,23 @@ public class ServletContext implements javax.servlet.ServletContext {
     public javax.servlet.ServletRegistration.Dynamic addJspFile(String jspName, String jspFile) {
         throw new UnsupportedOperationException("addJspFile");
     }
+
+    /**
+     * resolved servlet and ordered filters of a path.
+     * modCount is used to find out the mapping has changed.
+     */
+    static class DispatchRoute {
+        final UrlMapper.Element<ServletRegistration> element;
+        final FilterMapper.Element<ServletFilterRegistration>[] filters;
+        final int servletModCount;
+        final int filterModCount;
+
+        DispatchRoute(UrlMapper.Element<ServletRegistration> element, FilterMapper.Element<ServletFilterRegistration>[] filters,
+                      int servletModCount, int filterModCount) {
+            this.element = element;
+            this.filters = filters;
+            this.servletModCount = servletModCount;
+            this.filterModCount = filterModCount;
+        }
+    }
 }
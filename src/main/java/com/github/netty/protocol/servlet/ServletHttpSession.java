@@ -10,6 +10,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The servlet session
+ * <p>
+ * track the changes of attributes and metadata. {@link #save()} by {@link SessionSaveMode}
  *
  * @author wangzihao
  * 2018/7/15/015
@@ -17,6 +19,18 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     private static final LoggerX logger = LoggerFactoryX.getLogger(ServletHttpSession.class);
     private static Object sessionContext = null;
+    /**
+     * last accessed time changed
+     */
+    public static final int DIRTY_ACCESS = 1;
+    /**
+     * set or remove attribute
+     */
+    public static final int DIRTY_ATTRIBUTE = 1 << 1;
+    /**
+     * new session, id or maxInactiveInterval changed
+     */
+    public static final int DIRTY_METADATA = 1 << 2;
     private final List<HttpSessionBindingListener> httpSessionBindingListenerList = new ArrayList<>(2);
     private final ServletContext servletContext;
     String id;
@@ -28,6 +42,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     private int maxInactiveInterval;
     private int accessCount;
     private Session source;
+    private int dirtyFlags;
 
     ServletHttpSession(Session session, ServletContext servletContext) {
         this.servletContext = servletContext;
@@ -42,7 +57,36 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     }
 
     public void save() {
-        getServletContext().getSessionService().saveSession(unwrap());
+        ServletContext servletContext = getServletContext();
+        SessionSaveMode saveMode = servletContext.getSessionSaveMode();
+        int dirtyFlags = this.dirtyFlags;
+        if (saveMode != SessionSaveMode.IMMEDIATE && dirtyFlags == 0) {
+            return;
+        }
+        this.dirtyFlags = 0;
+
+        SessionService sessionService = servletContext.getSessionService();
+        if (saveMode != SessionSaveMode.IMMEDIATE
+                && (saveMode == SessionSaveMode.WRITE_BEHIND || dirtyFlags == DIRTY_ACCESS)
+                && sessionService instanceof SessionWriteBehindServiceImpl) {
+            ((SessionWriteBehindServiceImpl) sessionService).saveSessionLater(unwrap());
+        } else {
+            sessionService.saveSession(unwrap());
+        }
+    }
+
+    /**
+     * @return true if changed after the last save
+     */
+    public boolean isDirty() {
+        return dirtyFlags != 0;
+    }
+
+    /**
+     * @return {@link #DIRTY_ACCESS}, {@link #DIRTY_ATTRIBUTE}, {@link #DIRTY_METADATA}
+     */
+    public int getDirtyFlags() {
+        return dirtyFlags;
     }
 
     @Override
@@ -56,6 +100,9 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     }
 
     public void setId(String id) {
+        if (!Objects.equals(this.id, id)) {
+            dirtyFlags |= DIRTY_METADATA;
+        }
         this.id = id;
     }
 
@@ -76,6 +123,9 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
 
     @Override
     public void setMaxInactiveInterval(int interval) {
+        if (maxInactiveInterval != interval) {
+            dirtyFlags |= DIRTY_METADATA;
+        }
         maxInactiveInterval = interval;
     }
 
@@ -140,6 +190,8 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         }
 
         Object oldValue = getAttributeMap().put(name, value);
+        // even if the same value. the value object may be modified in place
+        dirtyFlags |= DIRTY_ATTRIBUTE;
 
         if (value instanceof HttpSessionBindingListener) {
             httpSessionBindingListenerList.add((HttpSessionBindingListener) value);
@@ -185,6 +237,9 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
             return;
         }
         Object oldValue = getAttributeMap().remove(name);
+        if (oldValue != null) {
+            dirtyFlags |= DIRTY_ATTRIBUTE;
+        }
 
         if (oldValue instanceof HttpSessionBindingListener) {
             httpSessionBindingListenerList.remove(oldValue);
@@ -214,6 +269,8 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     @Override
     public void invalidate() {
         invalidate0();
+        // removed. no need to save
+        dirtyFlags = 0;
         servletContext.getSessionService().removeSession(id);
     }
 
@@ -266,6 +323,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         accessCount++;
 
         if (isNew()) {
+            dirtyFlags |= DIRTY_METADATA;
             currAccessedTime = System.currentTimeMillis();
             lastAccessedTime = currAccessedTime;
             ServletEventListenerManager listenerManager = servletContext.servletEventListenerManager;
@@ -275,8 +333,11 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         } else {
             lastAccessedTime = currAccessedTime;
             currAccessedTime = System.currentTimeMillis();
+            dirtyFlags |= DIRTY_ACCESS;
+        }
+        if (servletContext.getSessionSaveMode() == SessionSaveMode.IMMEDIATE) {
+            save();
         }
-        save();
     }
 
     @Override
@@ -291,6 +352,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         //Unit seconds
         this.maxInactiveInterval = source.getMaxInactiveInterval();
         this.accessCount = source.getAccessCount();
+        this.dirtyFlags = 0;
 
         if (attributeMap != null) {
             httpSessionBindingListenerList.clear();
@@ -31,6 +31,7 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
     public static final ServletResetBufferIOException RESET_BUFFER_EXCEPTION = new ServletResetBufferIOException();
     private static final Recycler<ServletOutputStream> RECYCLER = new Recycler<>(ServletOutputStream::new);
     public static int h2ChunkSize = 81920;
+    private static final int MIN_BUFFER_CAPACITY = 1024;
     protected final AtomicLong writeBytes = new AtomicLong();
     protected final AtomicBoolean isClosed = new AtomicBoolean(false);
     protected final AtomicBoolean isSendResponse = new AtomicBoolean(false);
@@ -39,6 +40,11 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
     protected WriteListener writeListener;
     protected ChannelProgressivePromise lastContentPromise;
     private ChannelProgressivePromise blockPromise;
+    /**
+     * response buffer. merges small writes, emit when full, on flush() or on close().
+     * capacity = {@link ServletHttpServletResponse#getBufferSize()}
+     */
+    private ByteBuf buffer;
 
     protected ServletOutputStream() {
     }
@@ -46,6 +52,7 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
     public static ServletOutputStream newInstance(ServletHttpExchange servletHttpExchange) {
         ServletOutputStream instance = RECYCLER.getInstance();
         instance.blockPromise = null;
+        instance.buffer = null;
         instance.setServletHttpExchange(servletHttpExchange);
         instance.writeBytes.set(0);
         instance.isSendResponse.set(false);
@@ -54,7 +61,18 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
     }
 
     public long getWriteBytes() {
-        return writeBytes.get();
+        ByteBuf buffer = this.buffer;
+        return buffer != null ? writeBytes.get() + buffer.readableBytes() : writeBytes.get();
+    }
+
+    /**
+     * Get the buffered (not yet emitted) bytes
+     *
+     * @return buffered bytes
+     */
+    public int getBufferedBytes() {
+        ByteBuf buffer = this.buffer;
+        return buffer != null ? buffer.readableBytes() : 0;
     }
 
     @Override
@@ -103,6 +121,8 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
         }
         try {
             checkClosed();
+            // keep the order. the buffered bytes before this body
+            emitBuffer();
             writeResponseHeaderIfNeed();
             ServletHttpExchange servletHttpExchange = this.servletHttpExchange;
             ChannelHandlerContext context = servletHttpExchange.channelHandlerContext;
@@ -201,12 +221,105 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
             return;
         }
 
+        ByteBuf buffer = this.buffer;
+        int bufferSize = servletHttpExchange.response.getBufferSize();
+        if (buffer != null && len > buffer.maxWritableBytes()) {
+            emitBuffer();
+            buffer = null;
+        }
+        if (len >= bufferSize) {
+            // big write, no need merge
+            ChannelHandlerContext context = servletHttpExchange.channelHandlerContext;
+            ByteBuf ioByteBuf = context.alloc().ioBuffer(len);
+            ioByteBuf.writeBytes(b, off, len);
+            IOUtil.writerModeToReadMode(ioByteBuf);
+
+            writeHttpBody(ioByteBuf, ioByteBuf.readableBytes());
+        } else {
+            if (buffer == null) {
+                buffer = allocateBuffer(bufferSize, len);
+            }
+            buffer.writeBytes(b, off, len);
+            emitBufferIfNeed(buffer);
+        }
+    }
+
+    private ByteBuf allocateBuffer(int bufferSize, int minCapacity) {
         ChannelHandlerContext context = servletHttpExchange.channelHandlerContext;
-        ByteBuf ioByteBuf = context.alloc().ioBuffer(len);
-        ioByteBuf.writeBytes(b, off, len);
-        IOUtil.writerModeToReadMode(ioByteBuf);
+        ByteBuf buffer = context.alloc().ioBuffer(Math.min(Math.max(minCapacity, MIN_BUFFER_CAPACITY), bufferSize), bufferSize);
+        this.buffer = buffer;
+        return buffer;
+    }
 
-        writeHttpBody(ioByteBuf, ioByteBuf.readableBytes());
+    /**
+     * Get the response buffer for write directly. (e.g. encode chars)
+     * must call {@link #onBufferWritten(ByteBuf)} after write.
+     *
+     * @param minWritableBytes min writable bytes
+     * @return the buffer. null if minWritableBytes over the buffer size
+     * @throws IOException IOException
+     */
+    ByteBuf getWritableBuffer(int minWritableBytes) throws IOException {
+        checkClosed();
+        int bufferSize = servletHttpExchange.response.getBufferSize();
+        if (minWritableBytes > bufferSize) {
+            return null;
+        }
+        ByteBuf buffer = this.buffer;
+        if (buffer != null && buffer.maxWritableBytes() < minWritableBytes) {
+            emitBuffer();
+            buffer = null;
+        }
+        if (buffer == null) {
+            buffer = allocateBuffer(bufferSize, minWritableBytes);
+        }
+        buffer.ensureWritable(minWritableBytes);
+        return buffer;
+    }
+
+    /**
+     * After write the buffer of {@link #getWritableBuffer(int)}
+     *
+     * @param buffer buffer
+     * @throws IOException IOException
+     */
+    void onBufferWritten(ByteBuf buffer) throws IOException {
+        emitBufferIfNeed(buffer);
+    }
+
+    /**
+     * emit if the buffer is full, or the content-length has been reached
+     *
+     * @param buffer current buffer
+     * @throws IOException IOException
+     */
+    private void emitBufferIfNeed(ByteBuf buffer) throws IOException {
+        if (buffer.maxWritableBytes() == 0) {
+            emitBuffer();
+            return;
+        }
+        long contentLength = servletHttpExchange.response.getContentLength();
+        if (contentLength >= 0 && writeBytes.get() + buffer.readableBytes() >= contentLength) {
+            emitBuffer();
+        }
+    }
+
+    /**
+     * Send the buffered bytes to the channel.
+     *
+     * @throws IOException IOException
+     */
+    protected void emitBuffer() throws IOException {
+        ByteBuf buffer = this.buffer;
+        if (buffer == null) {
+            return;
+        }
+        this.buffer = null;
+        if (buffer.isReadable()) {
+            writeHttpBody(buffer, buffer.readableBytes());
+        } else {
+            buffer.release();
+        }
     }
 
     @Override
@@ -252,13 +365,23 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
     @Override
     public void write(int b) throws IOException {
         checkClosed();
-        byte[] bytes = new byte[]{(byte) b};
-        write(bytes, 0, bytes.length);
+        ByteBuf buffer = this.buffer;
+        if (buffer == null) {
+            int bufferSize = servletHttpExchange.response.getBufferSize();
+            if (bufferSize <= 1) {
+                write(new byte[]{(byte) b}, 0, 1);
+                return;
+            }
+            buffer = allocateBuffer(bufferSize, 1);
+        }
+        buffer.writeByte(b);
+        emitBufferIfNeed(buffer);
     }
 
     @Override
     public void flush() throws IOException {
         checkClosed();
+        emitBuffer();
         writeResponseHeaderIfNeed();
         ServletHttpExchange exchange = this.servletHttpExchange;
         if (exchange != null && !exchange.servletContext.autoFlush) {
@@ -280,15 +403,36 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
     public void close() {
         if (isClosed.compareAndSet(false, true)) {
             ChannelFuture closeFuture = lastContentPromise;
+            ByteBuf buffer = this.buffer;
+            this.buffer = null;
+            if (closeFuture != null && buffer != null) {
+                // over the content-length. discard
+                buffer.release();
+            }
             if (closeFuture == null) {
                 ServletHttpExchange exchange = getServletHttpExchange();
                 ChannelHandlerContext context = exchange.channelHandlerContext;
+                LastHttpContent lastHttpContent;
+                if (buffer != null && buffer.isReadable()) {
+                    ServletHttpServletResponse response = exchange.response;
+                    if (!isSendResponse.get() && response.getContentLength() < 0) {
+                        // the whole body fits in the buffer. use content-length instead of chunked
+                        response.setContentLengthLong(buffer.readableBytes());
+                    }
+                    writeBytes.addAndGet(buffer.readableBytes());
+                    lastHttpContent = new DefaultLastHttpContent(buffer);
+                } else {
+                    if (buffer != null) {
+                        buffer.release();
+                    }
+                    lastHttpContent = LastHttpContent.EMPTY_LAST_CONTENT;
+                }
                 writeResponseHeaderIfNeed();
 
                 if (exchange.servletContext.autoFlush) {
-                    closeFuture = context.write(LastHttpContent.EMPTY_LAST_CONTENT);
+                    closeFuture = context.write(lastHttpContent);
                 } else {
-                    closeFuture = context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+                    closeFuture = context.writeAndFlush(lastHttpContent);
                 }
                 closeFuture.addListener(closeListenerWrapper);
             } else if (closeFuture.isDone()) {
@@ -329,6 +473,11 @@ public class ServletOutputStream extends javax.servlet.ServletOutputStream imple
         if (isClosed.get()) {
             return;
         }
+        ByteBuf buffer = this.buffer;
+        if (buffer != null) {
+            this.buffer = null;
+            buffer.release();
+        }
         ServletHttpExchange exchange = getServletHttpExchange();
         ChannelHandlerContext channelHandlerContext = exchange.channelHandlerContext;
         ChannelHandlerContext context = channelHandlerContext.pipeline().context(ChunkedWriteHandler.class);
@@ -114,6 +114,27 @@ public class ServletOutputStreamWrapper extends javax.servlet.ServletOutputStrea
         source.flush();
     }
 
+    /**
+     * Get the response buffer for write directly
+     *
+     * @param minWritableBytes min writable bytes
+     * @return the buffer. null if not support
+     * @throws IOException IOException
+     */
+    ByteBuf getWritableBuffer(int minWritableBytes) throws IOException {
+        if (isSuspendFlag() || source == null) {
+            return null;
+        }
+        return source.getWritableBuffer(minWritableBytes);
+    }
+
+    void onBufferWritten(ByteBuf buffer) throws IOException {
+        ServletOutputStream source = this.source;
+        if (source != null) {
+            source.onBufferWritten(buffer);
+        }
+    }
+
     public void resetBuffer() {
         if (isSuspendFlag() || source == null) {
             return;
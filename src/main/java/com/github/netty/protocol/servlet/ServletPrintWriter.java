@@ -1,5 +1,8 @@
 package com.github.netty.protocol.servlet;
 
+import com.github.netty.protocol.servlet.util.ByteBufCharsetEncoder;
+import io.netty.buffer.ByteBuf;
+
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.Formatter;
@@ -7,20 +10,24 @@ import java.util.Locale;
 
 /**
  * Printing flow
+ * chars are encoded directly into the response buffer of {@link ServletOutputStream}. (no String, no byte[])
  *
  * @author wangzihao
  */
 public class ServletPrintWriter extends PrintWriter {
     private static final Writer EMPTY_WRITER = new StringWriter(0);
-    private final OutputStream out;
+    private final ServletOutputStreamWrapper out;
     private final Charset charset;
+    private final ByteBufCharsetEncoder encoder;
     private final String lineSeparator = System.lineSeparator();
+    private final char[] singleChar = new char[1];
     private boolean error = false;
 
-    ServletPrintWriter(OutputStream out, Charset charset) {
+    ServletPrintWriter(ServletOutputStreamWrapper out, Charset charset) {
         super(EMPTY_WRITER, false);
         this.out = out;
         this.charset = charset;
+        this.encoder = new ByteBufCharsetEncoder(charset);
     }
 
     @Override
@@ -34,11 +41,7 @@ public class ServletPrintWriter extends PrintWriter {
 
     @Override
     public void close() {
-        try {
-            out.close();
-        } catch (IOException e) {
-            error = true;
-        }
+        out.close();
     }
 
     @Override
@@ -61,31 +64,67 @@ public class ServletPrintWriter extends PrintWriter {
 
     @Override
     public void write(int c) {
-        write(String.valueOf((char) c));
+        char[] singleChar = this.singleChar;
+        singleChar[0] = (char) c;
+        write(singleChar, 0, 1);
     }
 
     @Override
     public void write(char[] buf, int off, int len) {
-        write(String.valueOf(buf, off, len));
+        ServletOutputStreamWrapper out = this.out;
+        if (out.isSuspendFlag()) {
+            return;
+        }
+        ByteBufCharsetEncoder encoder = this.encoder;
+        int end = off + len;
+        try {
+            while (off < end) {
+                int chunkEnd = ByteBufCharsetEncoder.chunkEnd(buf, off, end);
+                ByteBuf buffer = out.getWritableBuffer(encoder.maxBytes(chunkEnd - off));
+                if (buffer == null) {
+                    // the response buffer size is too small
+                    out.write(new String(buf, off, chunkEnd - off).getBytes(charset));
+                } else {
+                    encoder.encode(buf, off, chunkEnd, buffer);
+                    out.onBufferWritten(buffer);
+                }
+                off = chunkEnd;
+            }
+        } catch (IOException e) {
+            setError();
+        }
     }
 
     @Override
     public void write(char[] buf) {
-        write(String.valueOf(buf));
+        write(buf, 0, buf.length);
     }
 
     @Override
     public void write(String s, int off, int len) {
-        String writeStr;
-        if (off == 0 && s.length() == len) {
-            writeStr = s;
-        } else {
-            writeStr = s.substring(off, off + len);
-        }
-        byte[] bytes = writeStr.getBytes(charset);
+        write((CharSequence) s, off, len);
+    }
 
+    private void write(CharSequence s, int off, int len) {
+        ServletOutputStreamWrapper out = this.out;
+        if (out.isSuspendFlag()) {
+            return;
+        }
+        ByteBufCharsetEncoder encoder = this.encoder;
+        int end = off + len;
         try {
-            out.write(bytes);
+            while (off < end) {
+                int chunkEnd = ByteBufCharsetEncoder.chunkEnd(s, off, end);
+                ByteBuf buffer = out.getWritableBuffer(encoder.maxBytes(chunkEnd - off));
+                if (buffer == null) {
+                    // the response buffer size is too small
+                    out.write(s.subSequence(off, chunkEnd).toString().getBytes(charset));
+                } else {
+                    encoder.encode(s, off, chunkEnd, buffer);
+                    out.onBufferWritten(buffer);
+                }
+                off = chunkEnd;
+            }
         } catch (IOException e) {
             setError();
         }
@@ -103,7 +142,7 @@ public class ServletPrintWriter extends PrintWriter {
 
     @Override
     public void print(char c) {
-        write(String.valueOf(c));
+        write(c);
     }
 
     @Override
@@ -133,7 +172,7 @@ public class ServletPrintWriter extends PrintWriter {
 
     @Override
     public void print(String s) {
-        write(s);
+        write(String.valueOf(s));
     }
 
     @Override
@@ -148,47 +187,56 @@ public class ServletPrintWriter extends PrintWriter {
 
     @Override
     public void println(boolean b) {
-        write((b ? "true" : "false") + lineSeparator);
+        print(b);
+        println();
     }
 
     @Override
     public void println(char x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(int x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(long x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(float x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(double x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(char[] x) {
-        write(String.valueOf(x) + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(String x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
     public void println(Object x) {
-        write(x + lineSeparator);
+        print(x);
+        println();
     }
 
     @Override
@@ -214,7 +262,7 @@ public class ServletPrintWriter extends PrintWriter {
         StringBuilder sb = new StringBuilder();
         Formatter formatter = new Formatter(sb, l);
         formatter.format(l, format, args);
-        write(sb.toString());
+        write(sb, 0, sb.length());
         return this;
     }
 
@@ -223,7 +271,7 @@ public class ServletPrintWriter extends PrintWriter {
         if (csq == null) {
             write("null");
         } else {
-            write(csq.toString());
+            write(csq, 0, csq.length());
         }
         return this;
     }
@@ -231,7 +279,10 @@ public class ServletPrintWriter extends PrintWriter {
     @Override
     public PrintWriter append(CharSequence csq, int start, int end) {
         CharSequence cs = (csq == null ? "null" : csq);
-        write(cs.subSequence(start, end).toString());
+        if (start < 0 || end > cs.length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + cs.length());
+        }
+        write(cs, start, end - start);
         return this;
     }
 
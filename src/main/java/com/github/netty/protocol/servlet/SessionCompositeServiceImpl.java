@@ -42,11 +42,26 @@ public class SessionCompositeServiceImpl implements SessionService {
                 enableRpcHeartLog, rpcClientHeartIntervalMillSecond, reconnectIntervalMillSeconds);
     }
 
+    public void enableRemoteRpcSession(InetSocketAddress address, int rpcClientIoRatio, int rpcClientIoThreads,
+                                       boolean enableRpcHeartLog, int rpcClientHeartIntervalMillSecond, int reconnectIntervalMillSeconds,
+                                       int rpcClientPoolSize) {
+        removeSessionService();
+        this.sessionService = new SessionRemoteRpcServiceImpl(address,
+                rpcClientIoRatio, rpcClientIoThreads,
+                enableRpcHeartLog, rpcClientHeartIntervalMillSecond, reconnectIntervalMillSeconds,
+                rpcClientPoolSize);
+    }
+
     public void enableLocalFileSession(ResourceManager resourceManager) {
         removeSessionService();
         this.sessionService = new SessionLocalFileServiceImpl(resourceManager, servletContext);
     }
 
+    public void enableLocalLogFileSession(ResourceManager resourceManager) {
+        removeSessionService();
+        this.sessionService = new SessionLocalLogFileServiceImpl(resourceManager, servletContext);
+    }
+
     public void removeSessionService() {
         if (sessionService == null) {
             return;
@@ -54,6 +69,10 @@ public class SessionCompositeServiceImpl implements SessionService {
         try {
             if (sessionService instanceof SessionLocalFileServiceImpl) {
                 ((SessionLocalFileServiceImpl) sessionService).getSessionInvalidThread().interrupt();
+            } else if (sessionService instanceof SessionLocalLogFileServiceImpl) {
+                ((SessionLocalLogFileServiceImpl) sessionService).close();
+            } else if (sessionService instanceof SessionRemoteRpcServiceImpl) {
+                ((SessionRemoteRpcServiceImpl) sessionService).close();
             }
         } catch (Exception e) {
             //
@@ -70,6 +89,15 @@ public class SessionCompositeServiceImpl implements SessionService {
         }
     }
 
+    @Override
+    public void saveSessionBatch(List<Session> sessionList) {
+        try {
+            getSessionServiceImpl().saveSessionBatch(sessionList);
+        } catch (Throwable t) {
+            logger.warn("saveSessionBatch error={}", t.toString(), t);
+        }
+    }
+
     @Override
     public void removeSession(String sessionId) {
         getSessionServiceImpl().removeSession(sessionId);
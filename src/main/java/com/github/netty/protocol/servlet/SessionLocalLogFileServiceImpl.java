@@ -0,0 +1,698 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.core.util.NamespaceUtil;
+import com.github.netty.core.util.ResourceManager;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Local log-structured file session service
+ * <p>
+ * 1. sessions are appended to segment files (rootPath/00000000000000000001.seg). (not a file per session)
+ * 2. an in-memory index (id → segment, offset, expireTimestamp) serves get, count, and the expiry check. (no directory scans)
+ * 3. the segments with many garbage records are compacted in background. live records are copied to the active segment, then the old file is deleted.
+ * 4. on restart the segments are replayed in order to rebuild the index.
+ * the sealed segments only read the record headers, the last segment checks the crc and truncates the torn tail.
+ * <p>
+ * record = [int bodyLength][int crc32(body)] body=[byte type][long expireTimestamp][short idLength][id utf8][session data]
+ *
+ * @author wangzihao
+ */
+public class SessionLocalLogFileServiceImpl implements SessionService {
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    /**
+     * bodyLength + crc
+     */
+    private static final int RECORD_HEAD_LENGTH = 8;
+    /**
+     * type + expireTimestamp + idLength
+     */
+    private static final int BODY_HEAD_LENGTH = 1 + 8 + 2;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private final String name = NamespaceUtil.newIdName(getClass());
+    private final LoggerX logger = LoggerFactoryX.getLogger(getClass());
+    private final String rootPath = "/session-log";
+    private final File dir;
+    private final ServletContext servletContext;
+    private final Map<String, IndexEntry> indexMap = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Segment> segmentMap = new ConcurrentSkipListMap<>();
+    /**
+     * the log order and the index order must be the same
+     */
+    private final Object writeLock = new Object();
+    private final SessionInvalidThread sessionInvalidThread;
+    private volatile Segment activeSegment;
+    private long segmentMaxBytes = 64 * 1024 * 1024;
+    /**
+     * compact the segment if garbage bytes / segment bytes >= compactGarbageRatio
+     */
+    private double compactGarbageRatio = 0.5D;
+
+    public SessionLocalLogFileServiceImpl(ResourceManager resourceManager, ServletContext servletContext) {
+        this.servletContext = servletContext;
+        this.dir = Objects.requireNonNull(resourceManager).mkdirs(rootPath).toFile();
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new IllegalStateException("recover session log error. dir=" + dir + ", case:" + e, e);
+        }
+        //The expired session is checked every 20 seconds
+        this.sessionInvalidThread = new SessionInvalidThread(20 * 1000);
+        this.sessionInvalidThread.start();
+    }
+
+    @Override
+    public void saveSession(Session session) {
+        String id = session.getId();
+        long expireTimestamp = session.getCreationTime() + (session.getMaxInactiveInterval() * 1000L);
+        ByteBuffer record = newRecord(TYPE_PUT, id, expireTimestamp, encode(session));
+        try {
+            synchronized (writeLock) {
+                IndexEntry entry = append(record, expireTimestamp);
+                addGarbage(indexMap.put(id, entry));
+            }
+        } catch (IOException e) {
+            logger.warn("saveSession error {}. case:{}", session, e.toString());
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        try {
+            synchronized (writeLock) {
+                IndexEntry old = indexMap.remove(sessionId);
+                if (old != null) {
+                    appendRemove(sessionId, old);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("removeSession error {}. case:{}", sessionId, e.toString());
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void removeSessionBatch(List<String> sessionIdList) {
+        if (sessionIdList == null || sessionIdList.isEmpty()) {
+            return;
+        }
+        for (String sessionId : sessionIdList) {
+            removeSession(sessionId);
+        }
+    }
+
+    @Override
+    public Session getSession(String sessionId) {
+        IndexEntry entry = indexMap.get(sessionId);
+        for (int retry = 0; entry != null; retry++) {
+            try {
+                return decode(read(entry));
+            } catch (ClosedChannelException e) {
+                // the segment is compacted, or the channel is closed by other interrupted thread. read again
+                if (retry >= 2) {
+                    logger.warn("getSession error {}. case:{}", sessionId, e.toString());
+                    throw new RuntimeException(e);
+                }
+                entry = indexMap.get(sessionId);
+            } catch (IOException e) {
+                logger.warn("getSession error {}. case:{}", sessionId, e.toString());
+                throw new RuntimeException(e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void changeSessionId(String oldSessionId, String newSessionId) {
+        try {
+            synchronized (writeLock) {
+                IndexEntry old = indexMap.get(oldSessionId);
+                if (old == null) {
+                    return;
+                }
+                Session session = decode(read(old));
+                session.setId(newSessionId);
+                IndexEntry entry = append(newRecord(TYPE_PUT, newSessionId, old.expireTimestamp, encode(session)), old.expireTimestamp);
+                addGarbage(indexMap.put(newSessionId, entry));
+                indexMap.remove(oldSessionId);
+                appendRemove(oldSessionId, old);
+            }
+        } catch (IOException e) {
+            logger.warn("changeSessionId error oldId={},newId={}. case:{}", oldSessionId, newSessionId, e.toString());
+        }
+    }
+
+    @Override
+    public int count() {
+        return indexMap.size();
+    }
+
+    /**
+     * Force the segments to the disk
+     */
+    public void flush() {
+        Segment segment = activeSegment;
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.force();
+        } catch (IOException e) {
+            logger.warn("flush session log error {}. case:{}", segment, e.toString());
+        }
+    }
+
+    /**
+     * Stop the background thread, and close the segments
+     */
+    public void close() {
+        sessionInvalidThread.interrupt();
+        synchronized (writeLock) {
+            flush();
+            for (Segment segment : segmentMap.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Remove the expired sessions by the index, and call the session listeners
+     */
+    public void removeExpiredSessions() {
+        long currentTime = System.currentTimeMillis();
+        for (Map.Entry<String, IndexEntry> e : indexMap.entrySet()) {
+            IndexEntry entry = e.getValue();
+            if (entry.expireTimestamp > currentTime) {
+                continue;
+            }
+            String id = e.getKey();
+            try {
+                Session session = getSession(id);
+                boolean remove;
+                synchronized (writeLock) {
+                    remove = indexMap.remove(id, entry);
+                    if (remove) {
+                        appendRemove(id, entry);
+                    }
+                }
+                if (!remove || session == null) {
+                    continue;
+                }
+                logger.info("NettyX - Session(ID=" + id + ") is invalidated by Session Manager");
+
+                // call event
+                ServletHttpSession httpSession = new ServletHttpSession(session, servletContext);
+                if (httpSession.hasListener()) {
+                    servletContext.getDefaultExecutorSupplier().get().execute(httpSession::invalidate0);
+                } else {
+                    httpSession.invalidate0();
+                }
+            } catch (Exception ex) {
+                logger.warn("SessionInvalidCheck removeSession error case:{0}", ex);
+            }
+        }
+    }
+
+    /**
+     * Compact the sealed segments that have many garbage records
+     */
+    public void compact() {
+        for (Segment segment : segmentMap.values()) {
+            if (segment == activeSegment) {
+                continue;
+            }
+            long size = segment.size;
+            if (size == 0 || segment.garbageBytes.get() >= size * compactGarbageRatio) {
+                try {
+                    compact(segment);
+                } catch (IOException e) {
+                    logger.warn("compact session log error {}. case:{}", segment, e.toString());
+                }
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        int copyCount = 0;
+        long currentTime = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 65536))) {
+            long offset = 0;
+            long size = segment.size;
+            while (offset < size) {
+                int bodyLength = in.readInt();
+                in.readInt();
+                byte[] body = new byte[bodyLength];
+                in.readFully(body);
+                ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+                byte type = bodyBuffer.get();
+                long expireTimestamp = bodyBuffer.getLong();
+                String id = readId(bodyBuffer);
+                int recordLength = RECORD_HEAD_LENGTH + bodyLength;
+
+                if (type == TYPE_PUT) {
+                    IndexEntry entry = indexMap.get(id);
+                    if (entry != null && entry.segment == segment && entry.offset == offset) {
+                        synchronized (writeLock) {
+                            if (indexMap.get(id) == entry) {
+                                indexMap.put(id, append(newRecord(body), expireTimestamp));
+                                copyCount++;
+                            }
+                        }
+                    }
+                } else if (type == TYPE_REMOVE && expireTimestamp > currentTime) {
+                    // keep the remove record, if the older segment maybe have the put record
+                    synchronized (writeLock) {
+                        if (!indexMap.containsKey(id) && segmentMap.firstKey() < segment.id) {
+                            IndexEntry entry = append(newRecord(body), expireTimestamp);
+                            entry.segment.garbageBytes.addAndGet(entry.length);
+                            copyCount++;
+                        }
+                    }
+                }
+                offset += recordLength;
+            }
+        }
+        if (copyCount > 0) {
+            activeSegment.force();
+        }
+        synchronized (writeLock) {
+            segmentMap.remove(segment.id);
+            segment.delete();
+        }
+        logger.debug("compact session log {}. copy {} records", segment, copyCount);
+    }
+
+    private void recover() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<Segment> segmentList = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                try {
+                    long id = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+                    segmentList.add(new Segment(id, file));
+                } catch (NumberFormatException e) {
+                    logger.warn("skip unknown session log file {}", file);
+                }
+            }
+        }
+        segmentList.sort(Comparator.comparingLong(o -> o.id));
+
+        long currentTime = System.currentTimeMillis();
+        for (int i = 0; i < segmentList.size(); i++) {
+            Segment segment = segmentList.get(i);
+            segmentMap.put(segment.id, segment);
+            replay(segment, i == segmentList.size() - 1, currentTime);
+        }
+
+        Segment last = segmentMap.isEmpty() ? null : segmentMap.lastEntry().getValue();
+        if (last != null && last.size < segmentMaxBytes) {
+            activeSegment = last;
+        } else {
+            activeSegment = newSegment(last == null ? 1 : last.id + 1);
+        }
+        if (!indexMap.isEmpty()) {
+            logger.info("recover session log {} sessions, {} segments. dir={}", indexMap.size(), segmentMap.size(), dir);
+        }
+    }
+
+    private void replay(Segment segment, boolean verify, long currentTime) throws IOException {
+        long fileSize = segment.file.length();
+        long offset = 0;
+        CRC32 crc32 = verify ? new CRC32() : null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 65536))) {
+            while (offset + RECORD_HEAD_LENGTH + BODY_HEAD_LENGTH <= fileSize) {
+                int bodyLength = in.readInt();
+                int crc = in.readInt();
+                if (bodyLength < BODY_HEAD_LENGTH || offset + RECORD_HEAD_LENGTH + bodyLength > fileSize) {
+                    break;
+                }
+                byte type;
+                long expireTimestamp;
+                String id;
+                if (verify) {
+                    byte[] body = new byte[bodyLength];
+                    in.readFully(body);
+                    crc32.reset();
+                    crc32.update(body, 0, bodyLength);
+                    if ((int) crc32.getValue() != crc) {
+                        break;
+                    }
+                    ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+                    type = bodyBuffer.get();
+                    expireTimestamp = bodyBuffer.getLong();
+                    id = readId(bodyBuffer);
+                } else {
+                    type = in.readByte();
+                    expireTimestamp = in.readLong();
+                    byte[] idBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(idBytes);
+                    id = new String(idBytes, StandardCharsets.UTF_8);
+                    skipFully(in, bodyLength - BODY_HEAD_LENGTH - idBytes.length);
+                }
+
+                int recordLength = RECORD_HEAD_LENGTH + bodyLength;
+                if (type == TYPE_PUT && expireTimestamp > currentTime) {
+                    addGarbage(indexMap.put(id, new IndexEntry(segment, offset, recordLength, expireTimestamp)));
+                } else {
+                    if (type == TYPE_REMOVE) {
+                        addGarbage(indexMap.remove(id));
+                    }
+                    segment.garbageBytes.addAndGet(recordLength);
+                }
+                offset += recordLength;
+            }
+        } catch (EOFException e) {
+            // torn tail
+        }
+        if (offset < fileSize) {
+            logger.warn("session log {} has a torn tail. truncate {} to {}", segment, fileSize, offset);
+            segment.channel().truncate(offset);
+        }
+        segment.size = offset;
+    }
+
+    private IndexEntry append(ByteBuffer record, long expireTimestamp) throws IOException {
+        Segment segment = activeSegment;
+        int length = record.remaining();
+        if (segment.size > 0 && segment.size + length > segmentMaxBytes) {
+            segment.force();
+            segment = activeSegment = newSegment(segment.id + 1);
+        }
+        long offset = segment.size;
+        long position = offset;
+        FileChannel channel = segment.channel();
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        segment.size = position;
+        return new IndexEntry(segment, offset, length, expireTimestamp);
+    }
+
+    private void appendRemove(String id, IndexEntry old) throws IOException {
+        IndexEntry entry = append(newRecord(TYPE_REMOVE, id, old.expireTimestamp, null), old.expireTimestamp);
+        addGarbage(old);
+        entry.segment.garbageBytes.addAndGet(entry.length);
+    }
+
+    private Segment newSegment(long id) throws IOException {
+        Segment segment = new Segment(id, new File(dir, String.format("%020d%s", id, SEGMENT_SUFFIX)));
+        segment.channel();
+        segmentMap.put(id, segment);
+        return segment;
+    }
+
+    private byte[] read(IndexEntry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        FileChannel channel = entry.segment.channel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                throw new EOFException("session log " + entry.segment + ", offset=" + entry.offset);
+            }
+        }
+        buffer.flip();
+        buffer.position(RECORD_HEAD_LENGTH + BODY_HEAD_LENGTH - 2);
+        int idLength = buffer.getShort() & 0xFFFF;
+        int dataOffset = RECORD_HEAD_LENGTH + BODY_HEAD_LENGTH + idLength;
+        return Arrays.copyOfRange(buffer.array(), dataOffset, entry.length);
+    }
+
+    private static void addGarbage(IndexEntry old) {
+        if (old != null) {
+            old.segment.garbageBytes.addAndGet(old.length);
+        }
+    }
+
+    private static String readId(ByteBuffer bodyBuffer) {
+        int idLength = bodyBuffer.getShort() & 0xFFFF;
+        String id = new String(bodyBuffer.array(), bodyBuffer.position(), idLength, StandardCharsets.UTF_8);
+        bodyBuffer.position(bodyBuffer.position() + idLength);
+        return id;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skip = in.skipBytes(length);
+            if (skip <= 0) {
+                throw new EOFException();
+            }
+            length -= skip;
+        }
+    }
+
+    private static ByteBuffer newRecord(byte type, String id, long expireTimestamp, byte[] data) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("session id is too long. length=" + idBytes.length);
+        }
+        int dataLength = data == null ? 0 : data.length;
+        ByteBuffer body = ByteBuffer.allocate(BODY_HEAD_LENGTH + idBytes.length + dataLength);
+        body.put(type);
+        body.putLong(expireTimestamp);
+        body.putShort((short) idBytes.length);
+        body.put(idBytes);
+        if (data != null) {
+            body.put(data);
+        }
+        return newRecord(body.array());
+    }
+
+    private static ByteBuffer newRecord(byte[] body) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(body, 0, body.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEAD_LENGTH + body.length);
+        record.putInt(body.length);
+        record.putInt((int) crc32.getValue());
+        record.put(body);
+        record.flip();
+        return record;
+    }
+
+    protected byte[] encode(Session session) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(64);
+        try (ObjectOutputStream oout = new ObjectOutputStream(bout)) {
+            oout.writeUTF(session.getId());
+            oout.writeLong(session.getCreationTime());
+            oout.writeLong(session.getLastAccessedTime());
+            oout.writeInt(session.getMaxInactiveInterval());
+            oout.writeInt(session.getAccessCount());
+
+            Map<String, Object> attributeMap = session.getAttributeMap();
+            int attributeSize = 0;
+            if (attributeMap != null) {
+                for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
+                    if (entry.getValue() instanceof Serializable) {
+                        attributeSize++;
+                    }
+                }
+            }
+
+            oout.writeInt(attributeSize);
+            if (attributeSize > 0) {
+                for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
+                    Object value = entry.getValue();
+                    if (value instanceof Serializable) {
+                        oout.writeUTF(entry.getKey());
+                        oout.writeObject(value);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("saveSession encode error {}. case:{}", session, e.toString());
+            throw new RuntimeException(e);
+        }
+        return bout.toByteArray();
+    }
+
+    protected Session decode(byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            Session session = new Session();
+            session.setId(ois.readUTF());
+            session.setCreationTime(ois.readLong());
+            session.setLastAccessedTime(ois.readLong());
+            session.setMaxInactiveInterval(ois.readInt());
+            session.setAccessCount(ois.readInt());
+
+            int attributeSize = ois.readInt();
+            if (attributeSize > 0) {
+                Map<String, Object> attributeMap = new ConcurrentHashMap<>(6);
+                for (int i = 0; i < attributeSize; i++) {
+                    String key = ois.readUTF();
+                    Object value = null;
+                    try {
+                        value = ois.readObject();
+                    } catch (ClassNotFoundException e) {
+                        logger.warn("getSession readObject error {}. case:{}", session, e.toString());
+                    }
+                    attributeMap.put(key, value);
+                }
+                session.setAttributeMap(attributeMap);
+            }
+            return session;
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public int getSegmentCount() {
+        return segmentMap.size();
+    }
+
+    public long getSegmentMaxBytes() {
+        return segmentMaxBytes;
+    }
+
+    public void setSegmentMaxBytes(long segmentMaxBytes) {
+        this.segmentMaxBytes = segmentMaxBytes;
+    }
+
+    public double getCompactGarbageRatio() {
+        return compactGarbageRatio;
+    }
+
+    public void setCompactGarbageRatio(double compactGarbageRatio) {
+        this.compactGarbageRatio = compactGarbageRatio;
+    }
+
+    /**
+     * Session expiration detects threads
+     *
+     * @return SessionInvalidThread
+     */
+    public SessionInvalidThread getSessionInvalidThread() {
+        return sessionInvalidThread;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static class IndexEntry {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final long expireTimestamp;
+
+        private IndexEntry(Segment segment, long offset, int length, long expireTimestamp) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expireTimestamp = expireTimestamp;
+        }
+    }
+
+    private static class Segment {
+        private final long id;
+        private final File file;
+        private final AtomicLong garbageBytes = new AtomicLong();
+        /**
+         * append position. (write in writeLock)
+         */
+        private volatile long size;
+        private volatile FileChannel channel;
+        private volatile boolean deleted;
+
+        private Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        /**
+         * FileChannel is closed if the reading thread is interrupted, so reopen it
+         */
+        private FileChannel channel() throws IOException {
+            FileChannel channel = this.channel;
+            if (channel == null || !channel.isOpen()) {
+                synchronized (this) {
+                    if (deleted) {
+                        throw new ClosedChannelException();
+                    }
+                    channel = this.channel;
+                    if (channel == null || !channel.isOpen()) {
+                        channel = this.channel = FileChannel.open(file.toPath(),
+                                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    }
+                }
+            }
+            return channel;
+        }
+
+        private void force() throws IOException {
+            FileChannel channel = this.channel;
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+            }
+        }
+
+        private synchronized void close() {
+            FileChannel channel = this.channel;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    //skip
+                }
+            }
+        }
+
+        private synchronized void delete() {
+            deleted = true;
+            close();
+            file.delete();
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + "{size=" + size + ", garbage=" + garbageBytes + "}";
+        }
+    }
+
+    /**
+     * Sessions with a timeout are invalidated, and the segments are compacted. executed periodically
+     */
+    class SessionInvalidThread extends Thread {
+        private final long sessionLifeCheckInter;
+
+        private SessionInvalidThread(long sessionLifeCheckInter) {
+            super("NettyX-" + NamespaceUtil.newIdName(SessionInvalidThread.class));
+            this.sessionLifeCheckInter = sessionLifeCheckInter;
+            setDaemon(true);
+            setPriority(MIN_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            logger.info("LocalLogFileSession CheckInvalidSessionThread has been started...");
+            while (true) {
+                try {
+                    Thread.sleep(sessionLifeCheckInter);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    removeExpiredSessions();
+                    compact();
+                } catch (Exception e) {
+                    logger.warn("SessionInvalidCheck run error case:{0}", e);
+                }
+            }
+        }
+    }
+}
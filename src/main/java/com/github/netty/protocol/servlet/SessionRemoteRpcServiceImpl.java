@@ -4,19 +4,30 @@ import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.LoggerX;
 import com.github.netty.core.util.NamespaceUtil;
 import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcPacket;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import com.github.netty.protocol.nrpc.exception.RpcResponseException;
 import com.github.netty.protocol.nrpc.service.RpcDBService;
-import io.netty.util.concurrent.FastThreadLocal;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
 /**
  * Remote session service
+ * <p>
+ * A small shared pool of multiplexed connections. (not a connection per thread)
+ * each connection pipelines the requests of many threads.
+ * 1. the requests of a session id always use the same connection, so the fire-and-forget writes are ordered before the later reads.
+ * 2. the requests without a session id use the connection with the least in-flight requests.
  *
  * @author wangzihao
  * 2018/8/19/019
@@ -32,19 +43,8 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
     private final boolean enableRpcHeartLog;
     private final int rpcClientHeartIntervalMillSecond;
     private final int reconnectIntervalMillSeconds;
-    private final FastThreadLocal<RpcClient> rpcClientThreadLocal = new FastThreadLocal<RpcClient>() {
-        @Override
-        protected RpcClient initialValue() throws Exception {
-            RpcClient rpcClient = new RpcClient("Session", address);
-            rpcClient.setIoRatio(ioRatio);
-            rpcClient.setIoThreadCount(ioThreadCount);
-//            rpcClient.setSocketChannelCount(clientChannels);
-            rpcClient.setIdleTimeMs(rpcClientHeartIntervalMillSecond);
-            rpcClient.setReconnectScheduledIntervalMs(reconnectIntervalMillSeconds);
-            rpcClient.setEnableRpcHeartLog(enableRpcHeartLog);
-            return rpcClient;
-        }
-    };
+    private final AtomicReferenceArray<PooledRpcClient> rpcClients;
+    private final AtomicInteger roundRobin = new AtomicInteger();
 
     public SessionRemoteRpcServiceImpl(InetSocketAddress address) {
         this(address, 100, 0, false, 20, 20);
@@ -53,49 +53,294 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
     public SessionRemoteRpcServiceImpl(InetSocketAddress address,
                                        int rpcClientIoRatio, int rpcClientIoThreads,
                                        boolean enableRpcHeartLog, int rpcClientHeartIntervalMillSecond, int reconnectIntervalMillSeconds) {
+        this(address, rpcClientIoRatio, rpcClientIoThreads, enableRpcHeartLog, rpcClientHeartIntervalMillSecond, reconnectIntervalMillSeconds, 2);
+    }
+
+    public SessionRemoteRpcServiceImpl(InetSocketAddress address,
+                                       int rpcClientIoRatio, int rpcClientIoThreads,
+                                       boolean enableRpcHeartLog, int rpcClientHeartIntervalMillSecond, int reconnectIntervalMillSeconds,
+                                       int poolSize) {
         this.address = address;
         this.ioRatio = rpcClientIoRatio;
-        this.ioThreadCount = rpcClientIoThreads;
+        // one connection per client. one event loop is enough
+        this.ioThreadCount = rpcClientIoThreads <= 0 ? 1 : rpcClientIoThreads;
         this.enableRpcHeartLog = enableRpcHeartLog;
         this.rpcClientHeartIntervalMillSecond = rpcClientHeartIntervalMillSecond;
         this.reconnectIntervalMillSeconds = reconnectIntervalMillSeconds;
+        this.rpcClients = new AtomicReferenceArray<>(Math.max(1, poolSize));
     }
 
     @Override
     public void saveSession(Session session) {
+        PooledRpcClient client = choseRpcClient(session.getId());
+        client.inFlight.incrementAndGet();
+        try {
+            save(client.getRpcDBService(), session);
+        } finally {
+            client.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Save sessions grouped by connection. one putBatch (and one removeBatch of the expired) per connection.
+     * the session server before the putBatch (rolling upgrade) is saved by put per session
+     *
+     * @param sessionList sessionList
+     */
+    @Override
+    public void saveSessionBatch(List<Session> sessionList) {
+        if (sessionList == null || sessionList.isEmpty()) {
+            return;
+        }
+        List<Session>[] groups = groupByConnection(sessionList, Session::getId);
+        for (int i = 0; i < groups.length; i++) {
+            List<Session> group = groups[i];
+            if (group == null) {
+                continue;
+            }
+            PooledRpcClient client = getRpcClient(i);
+            if (!client.isBatchSupported()) {
+                client.inFlight.addAndGet(group.size());
+                try {
+                    RpcDBService rpcDBService = client.getRpcDBService();
+                    for (Session session : group) {
+                        save(rpcDBService, session);
+                    }
+                } finally {
+                    client.inFlight.addAndGet(-group.size());
+                }
+                continue;
+            }
+            int size = group.size();
+            List<String> keys = new ArrayList<>(size);
+            List<byte[]> datas = new ArrayList<>(size);
+            List<Integer> expireSeconds = new ArrayList<>(size);
+            List<String> removeKeys = null;
+            long currentTimeMillis = System.currentTimeMillis();
+            for (Session session : group) {
+                long expireSecond = (session.getMaxInactiveInterval() * 1000L + session.getCreationTime() - currentTimeMillis) / 1000;
+                if (expireSecond > 0) {
+                    keys.add(session.getId());
+                    datas.add(encode(session));
+                    expireSeconds.add((int) expireSecond);
+                } else {
+                    if (removeKeys == null) {
+                        removeKeys = new ArrayList<>();
+                    }
+                    removeKeys.add(session.getId());
+                }
+            }
+            client.inFlight.incrementAndGet();
+            try {
+                RpcDBService rpcDBService = client.getRpcDBService();
+                if (!keys.isEmpty()) {
+                    rpcDBService.putBatch4(keys, datas, expireSeconds, SESSION_GROUP);
+                }
+                if (removeKeys != null) {
+                    rpcDBService.removeBatch2(removeKeys, SESSION_GROUP);
+                }
+            } finally {
+                client.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @param list        the elements of the session id
+     * @param getSessionId getSessionId
+     * @param <T>         element type
+     * @return the elements of each connection. [connection index] (null if the connection has no element)
+     */
+    private <T> List<T>[] groupByConnection(List<T> list, Function<T, String> getSessionId) {
+        int length = rpcClients.length();
+        List<T>[] groups = new List[length];
+        for (T element : list) {
+            int index = indexOf(getSessionId.apply(element), length);
+            List<T> group = groups[index];
+            if (group == null) {
+                group = groups[index] = new ArrayList<>();
+            }
+            group.add(element);
+        }
+        return groups;
+    }
+
+    private void save(RpcDBService rpcDBService, Session session) {
         byte[] bytes = encode(session);
         long expireSecond = (session.getMaxInactiveInterval() * 1000L + session.getCreationTime() - System.currentTimeMillis()) / 1000;
         if (expireSecond > 0) {
-            getRpcDBService().put4(session.getId(), bytes, (int) expireSecond, SESSION_GROUP);
+            rpcDBService.put4(session.getId(), bytes, (int) expireSecond, SESSION_GROUP);
         } else {
-            getRpcDBService().remove2(session.getId(), SESSION_GROUP);
+            rpcDBService.remove2(session.getId(), SESSION_GROUP);
         }
     }
 
     @Override
     public void removeSession(String sessionId) {
-        getRpcDBService().remove2(sessionId, SESSION_GROUP);
+        PooledRpcClient client = choseRpcClient(sessionId);
+        client.inFlight.incrementAndGet();
+        try {
+            client.getRpcDBService().remove2(sessionId, SESSION_GROUP);
+        } finally {
+            client.inFlight.decrementAndGet();
+        }
     }
 
+    /**
+     * Remove sessions grouped by connection. (ordered after the saves of the session id)
+     *
+     * @param sessionIdList sessionIdList
+     */
     @Override
     public void removeSessionBatch(List<String> sessionIdList) {
-        getRpcDBService().removeBatch2(sessionIdList, SESSION_GROUP);
+        if (sessionIdList == null || sessionIdList.isEmpty()) {
+            return;
+        }
+        List<String>[] groups = groupByConnection(sessionIdList, Function.identity());
+        for (int i = 0; i < groups.length; i++) {
+            List<String> group = groups[i];
+            if (group == null) {
+                continue;
+            }
+            PooledRpcClient client = getRpcClient(i);
+            client.inFlight.incrementAndGet();
+            try {
+                client.getRpcDBService().removeBatch2(group, SESSION_GROUP);
+            } finally {
+                client.inFlight.decrementAndGet();
+            }
+        }
     }
 
     @Override
     public Session getSession(String sessionId) {
-        byte[] bytes = getRpcDBService().get2(sessionId, SESSION_GROUP);
+        PooledRpcClient client = choseRpcClient(sessionId);
+        client.inFlight.incrementAndGet();
+        byte[] bytes;
+        try {
+            bytes = client.getRpcDBService().get2(sessionId, SESSION_GROUP);
+        } finally {
+            client.inFlight.decrementAndGet();
+        }
         return decode(bytes);
     }
 
     @Override
     public void changeSessionId(String oldSessionId, String newSessionId) {
-        getRpcDBService().changeKey3(oldSessionId, newSessionId, SESSION_GROUP);
+        PooledRpcClient client = choseRpcClient(oldSessionId);
+        client.inFlight.incrementAndGet();
+        try {
+            RpcDBService rpcDBService = client.getRpcDBService();
+            rpcDBService.changeKey3(oldSessionId, newSessionId, SESSION_GROUP);
+            if (client != choseRpcClient(newSessionId)) {
+                // the new id use other connection. wait the change done, (the response is after the change in the same connection)
+                rpcDBService.exist2(newSessionId, SESSION_GROUP);
+            }
+        } finally {
+            client.inFlight.decrementAndGet();
+        }
     }
 
     @Override
     public int count() {
-        return getRpcDBService().count(SESSION_GROUP);
+        PooledRpcClient client = choseRpcClient();
+        client.inFlight.incrementAndGet();
+        try {
+            return client.getRpcDBService().count(SESSION_GROUP);
+        } finally {
+            client.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Chose the connection of the session id
+     *
+     * @param sessionId sessionId
+     * @return PooledRpcClient
+     */
+    protected PooledRpcClient choseRpcClient(String sessionId) {
+        return getRpcClient(indexOf(sessionId, rpcClients.length()));
+    }
+
+    private static int indexOf(String sessionId, int length) {
+        if (length == 1 || sessionId == null) {
+            return 0;
+        }
+        int h = sessionId.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % length;
+    }
+
+    private PooledRpcClient getRpcClient(int index) {
+        PooledRpcClient client = rpcClients.get(index);
+        if (client == null) {
+            client = getOrNewRpcClient(index);
+        }
+        return client;
+    }
+
+    /**
+     * Chose the connection with the least in-flight requests. (start from round robin, so that the idle connections are used evenly)
+     *
+     * @return PooledRpcClient
+     */
+    protected PooledRpcClient choseRpcClient() {
+        int length = rpcClients.length();
+        int start = (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % length;
+        PooledRpcClient chose = null;
+        int choseInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            PooledRpcClient client = getRpcClient(index);
+            int inFlight = client.inFlight.get();
+            if (inFlight < choseInFlight) {
+                chose = client;
+                choseInFlight = inFlight;
+                if (inFlight == 0) {
+                    break;
+                }
+            }
+        }
+        return chose;
+    }
+
+    private PooledRpcClient getOrNewRpcClient(int index) {
+        synchronized (rpcClients) {
+            PooledRpcClient client = rpcClients.get(index);
+            if (client == null) {
+                RpcClient rpcClient = new RpcClient("Session", address);
+                rpcClient.setIoRatio(ioRatio);
+                rpcClient.setIoThreadCount(ioThreadCount);
+                rpcClient.setIdleTimeMs(rpcClientHeartIntervalMillSecond);
+                rpcClient.setReconnectScheduledIntervalMs(reconnectIntervalMillSeconds);
+                rpcClient.setEnableRpcHeartLog(enableRpcHeartLog);
+                client = new PooledRpcClient(rpcClient);
+                rpcClients.set(index, client);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Close all connections
+     */
+    public void close() {
+        synchronized (rpcClients) {
+            for (int i = 0; i < rpcClients.length(); i++) {
+                PooledRpcClient client = rpcClients.getAndSet(i, null);
+                if (client != null) {
+                    try {
+                        client.rpcClient.stop();
+                    } catch (Exception e) {
+                        logger.warn("close rpcClient error={}, client={}", e.toString(), client.rpcClient);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getPoolSize() {
+        return rpcClients.length();
     }
 
     /**
@@ -155,7 +400,7 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
     }
 
     public RpcClient getRpcClient() {
-        return rpcClientThreadLocal.get();
+        return choseRpcClient().rpcClient;
     }
 
     public RpcDBService getRpcDBService() {
@@ -234,4 +479,57 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
         return name;
     }
 
+    protected static class PooledRpcClient {
+        private final RpcClient rpcClient;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        /**
+         * the session server has the batch methods. null is unknown
+         */
+        private volatile Boolean batchSupported;
+
+        PooledRpcClient(RpcClient rpcClient) {
+            this.rpcClient = rpcClient;
+        }
+
+        /**
+         * the putBatch is void (no response), so the not found method is probed by the getBatch of the same version.
+         *
+         * @return true if the session server has the batch methods
+         */
+        boolean isBatchSupported() {
+            Boolean batchSupported = this.batchSupported;
+            if (batchSupported == null) {
+                try {
+                    getRpcDBService().getBatch2(Collections.emptyList(), SESSION_GROUP);
+                    batchSupported = Boolean.TRUE;
+                } catch (RpcResponseException e) {
+                    if (!Integer.valueOf(RpcPacket.ResponsePacket.NO_SUCH_METHOD).equals(e.getStatus())) {
+                        throw e;
+                    }
+                    logger.info("session server {} has no batch methods, save by put per session. (upgrade the session server)", rpcClient.getRemoteAddress());
+                    batchSupported = Boolean.FALSE;
+                }
+                this.batchSupported = batchSupported;
+            }
+            return batchSupported;
+        }
+
+        public RpcClient getRpcClient() {
+            return rpcClient;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        RpcDBService getRpcDBService() {
+            return rpcClient.getRpcDBService();
+        }
+
+        @Override
+        public String toString() {
+            return rpcClient + "{inFlight=" + inFlight + "}";
+        }
+    }
+
 }
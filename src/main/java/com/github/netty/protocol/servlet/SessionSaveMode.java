@@ -0,0 +1,24 @@
+package com.github.netty.protocol.servlet;
+
+/**
+ * When {@link ServletHttpSession} is saved to the {@link SessionService}
+ *
+ * @author wangzihao
+ */
+public enum SessionSaveMode {
+    /**
+     * Save on every request that touched the session, synchronously. (strict, the default)
+     */
+    IMMEDIATE,
+    /**
+     * Save synchronously only if the attributes or the metadata changed.
+     * last-access-only changes are batched by the write-behind queue. unchanged sessions are never saved.
+     * Note: modify an attribute object in place, you need to call setAttribute again.
+     * opt-in. the in-memory session service is not deferred.
+     */
+    ON_CHANGE,
+    /**
+     * All changes are saved asynchronously by the write-behind queue. multiple saves of the same session id are coalesced.
+     */
+    WRITE_BEHIND
+}
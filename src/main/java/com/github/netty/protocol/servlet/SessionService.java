@@ -29,6 +29,17 @@ public interface SessionService {
      */
     void saveSession(@NRpcParam("session") Session session);
 
+    /**
+     * Save the sessions (batch)
+     *
+     * @param sessionList sessionList
+     */
+    default void saveSessionBatch(@NRpcParam("sessionList") List<Session> sessionList) {
+        for (Session session : sessionList) {
+            saveSession(session);
+        }
+    }
+
     /**
      * Delete session
      *
@@ -0,0 +1,319 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.core.util.NamespaceUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind session service (decorate other session service)
+ * <p>
+ * 1. {@link #saveSessionLater(Session)} put the copy of the session to the pending queue. multiple saves of the same session id are coalesced.
+ * 2. the flush thread saves the pending sessions to the source session service every flushIntervalMillis.
+ * the failed sessions are kept in the queue, and saved by the next flush.
+ * 3. read the pending session first, so that the change is visible before flushed.
+ * 4. the synchronous save, remove or change id of a session wait the flushing save of the same id, and drop the pending save of the same id.
+ * so the flush never write back a removed session, or overwrite a newer synchronous save.
+ *
+ * @author wangzihao
+ */
+public class SessionWriteBehindServiceImpl implements SessionService {
+    private final LoggerX logger = LoggerFactoryX.getLogger(getClass());
+    private final String name = NamespaceUtil.newIdName(getClass());
+    private final SessionService sessionService;
+    private final Map<String, Pending> pendingMap = new ConcurrentHashMap<>();
+    private final SessionFlushThread sessionFlushThread;
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    /**
+     * if pending sessions more than this, save synchronously
+     */
+    private int maxPendingSize = 100000;
+
+    public SessionWriteBehindServiceImpl(SessionService sessionService, long flushIntervalMillis) {
+        this.sessionService = sessionService;
+        this.sessionFlushThread = new SessionFlushThread(Math.max(1, flushIntervalMillis));
+        this.sessionFlushThread.start();
+    }
+
+    /**
+     * Save the session asynchronously
+     *
+     * @param session session
+     */
+    public void saveSessionLater(Session session) {
+        if (session == null) {
+            return;
+        }
+        if (pendingMap.size() >= maxPendingSize) {
+            saveSession(session);
+            return;
+        }
+        Pending old = pendingMap.put(session.getId(), new Pending(copySession(session)));
+        if (old != null && !old.flushing) {
+            coalescedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Save all pending sessions now. the failed sessions are kept in the queue
+     */
+    public synchronized void flush() {
+        if (pendingMap.isEmpty()) {
+            return;
+        }
+        List<Pending> pendingList = new ArrayList<>();
+        for (String sessionId : pendingMap.keySet()) {
+            pendingMap.computeIfPresent(sessionId, (k, pending) -> {
+                if (!pending.flushing) {
+                    pending.flushing = true;
+                    pendingList.add(pending);
+                }
+                return pending;
+            });
+        }
+        if (pendingList.isEmpty()) {
+            return;
+        }
+        List<Session> sessionList = new ArrayList<>(pendingList.size());
+        for (Pending pending : pendingList) {
+            sessionList.add(pending.session);
+        }
+        boolean success = false;
+        try {
+            sessionService.saveSessionBatch(sessionList);
+            flushedCount.addAndGet(sessionList.size());
+            success = true;
+        } catch (Throwable t) {
+            logger.warn("flush saveSessionBatch error={}, size={}, retry next flush", t.toString(), sessionList.size(), t);
+        } finally {
+            boolean retry = !success;
+            for (Pending pending : pendingList) {
+                pendingMap.computeIfPresent(pending.session.getId(), (k, current) -> {
+                    if (current != pending) {
+                        // keep the newer one
+                        return current;
+                    }
+                    if (retry) {
+                        current.flushing = false;
+                        return current;
+                    }
+                    return null;
+                });
+                pending.flushed.countDown();
+            }
+        }
+    }
+
+    /**
+     * drop the pending save of the session id, and wait the flushing save of the session id.
+     * called before the synchronous save, remove or change id, so the flush not overwrite them
+     *
+     * @param sessionId sessionId
+     * @return the dropped pending session. null is no pending
+     */
+    private Session takePending(String sessionId) {
+        while (true) {
+            Pending[] flushingOrTake = new Pending[1];
+            pendingMap.computeIfPresent(sessionId, (k, pending) -> {
+                flushingOrTake[0] = pending;
+                return pending.flushing ? pending : null;
+            });
+            Pending pending = flushingOrTake[0];
+            if (pending == null) {
+                return null;
+            }
+            if (!pending.flushing) {
+                return pending.session;
+            }
+            pending.awaitFlushed();
+        }
+    }
+
+    /**
+     * Stop the flush thread and save all pending sessions
+     */
+    public void close() {
+        sessionFlushThread.interrupt();
+        flush();
+    }
+
+    @Override
+    public Session getSession(String sessionId) {
+        Pending pending = pendingMap.get(sessionId);
+        if (pending != null) {
+            return copySession(pending.session);
+        }
+        return sessionService.getSession(sessionId);
+    }
+
+    @Override
+    public void saveSession(Session session) {
+        if (session == null) {
+            return;
+        }
+        takePending(session.getId());
+        sessionService.saveSession(session);
+    }
+
+    @Override
+    public void saveSessionBatch(List<Session> sessionList) {
+        if (sessionList == null || sessionList.isEmpty()) {
+            return;
+        }
+        for (Session session : sessionList) {
+            takePending(session.getId());
+        }
+        sessionService.saveSessionBatch(sessionList);
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        takePending(sessionId);
+        sessionService.removeSession(sessionId);
+    }
+
+    @Override
+    public void removeSessionBatch(List<String> sessionIdList) {
+        if (sessionIdList == null || sessionIdList.isEmpty()) {
+            return;
+        }
+        for (String sessionId : sessionIdList) {
+            takePending(sessionId);
+        }
+        sessionService.removeSessionBatch(sessionIdList);
+    }
+
+    @Override
+    public void changeSessionId(String oldSessionId, String newSessionId) {
+        Session pendingSession = takePending(oldSessionId);
+        if (pendingSession != null) {
+            sessionService.saveSession(pendingSession);
+        }
+        sessionService.changeSessionId(oldSessionId, newSessionId);
+    }
+
+    @Override
+    public int count() {
+        return sessionService.count();
+    }
+
+    public SessionService getSessionService() {
+        return sessionService;
+    }
+
+    public int getPendingCount() {
+        return pendingMap.size();
+    }
+
+    /**
+     * @return the number of saves that are merged into a pending save
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    public int getMaxPendingSize() {
+        return maxPendingSize;
+    }
+
+    public void setMaxPendingSize(int maxPendingSize) {
+        this.maxPendingSize = maxPendingSize;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{" + sessionService + "}";
+    }
+
+    /**
+     * @param session session
+     * @return the copy of the session and the attribute map. (the request thread still modify the session after the save)
+     */
+    static Session copySession(Session session) {
+        Session copy = new Session();
+        copy.setId(session.getId());
+        copy.setCreationTime(session.getCreationTime());
+        copy.setLastAccessedTime(session.getLastAccessedTime());
+        copy.setMaxInactiveInterval(session.getMaxInactiveInterval());
+        copy.setAccessCount(session.getAccessCount());
+        Map<String, Object> attributeMap = session.getAttributeMap();
+        if (attributeMap != null) {
+            Map<String, Object> copyAttributeMap = new ConcurrentHashMap<>(Math.max(6, attributeMap.size()));
+            for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    copyAttributeMap.put(entry.getKey(), entry.getValue());
+                }
+            }
+            copy.setAttributeMap(copyAttributeMap);
+        }
+        return copy;
+    }
+
+    private static class Pending {
+        private final Session session;
+        private final CountDownLatch flushed = new CountDownLatch(1);
+        /**
+         * the flush thread is saving it. changed in the compute of the pending map
+         */
+        private volatile boolean flushing;
+
+        private Pending(Session session) {
+            this.session = session;
+        }
+
+        void awaitFlushed() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    flushed.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Save the pending sessions periodically
+     */
+    class SessionFlushThread extends Thread {
+        private final long flushIntervalMillis;
+
+        private SessionFlushThread(long flushIntervalMillis) {
+            super("NettyX-" + NamespaceUtil.newIdName(SessionFlushThread.class));
+            this.flushIntervalMillis = flushIntervalMillis;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    flush();
+                } catch (Exception e) {
+                    logger.warn("SessionFlushThread run error case:{0}", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.github.netty.protocol.servlet.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+
+/**
+ * Encode chars directly into a ByteBuf. (no String, no byte[])
+ * <p>
+ * 1. UTF-8      : {@link ByteBufUtil#reserveAndWriteUtf8(ByteBuf, CharSequence, int, int, int)}
+ * 2. ISO-8859-1 : {@link ByteBufUtil#writeAscii(ByteBuf, CharSequence)}
+ * 3. other      : reusable {@link CharsetEncoder} and a reusable char buffer.
+ * <p>
+ * Not thread safe. one instance per writer.
+ *
+ * @author wangzihao
+ */
+public class ByteBufCharsetEncoder {
+    /**
+     * max chars of each encode call
+     */
+    public static final int MAX_CHUNK_CHARS = 512;
+    private static final int TYPE_UTF8 = 1;
+    private static final int TYPE_LATIN1 = 2;
+    private static final int TYPE_OTHER = 3;
+    private final Charset charset;
+    private final int type;
+    private final CharsView charsView = new CharsView();
+    private final CharsetEncoder encoder;
+    private final CharBuffer charBuffer;
+    private final float maxBytesPerChar;
+
+    public ByteBufCharsetEncoder(Charset charset) {
+        this.charset = charset;
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            this.type = TYPE_UTF8;
+            this.encoder = null;
+            this.charBuffer = null;
+            this.maxBytesPerChar = 3;
+        } else if (StandardCharsets.ISO_8859_1.equals(charset)) {
+            this.type = TYPE_LATIN1;
+            this.encoder = null;
+            this.charBuffer = null;
+            this.maxBytesPerChar = 1;
+        } else {
+            this.type = TYPE_OTHER;
+            // same as String#getBytes(Charset)
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.charBuffer = CharBuffer.allocate(MAX_CHUNK_CHARS + 1);
+            this.maxBytesPerChar = encoder.maxBytesPerChar();
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * The worst case bytes of encode chars
+     *
+     * @param chars chars length
+     * @return bytes
+     */
+    public int maxBytes(int chars) {
+        if (type == TYPE_OTHER) {
+            // + flush bytes (e.g. shift sequence of stateful charset)
+            return (int) Math.ceil(maxBytesPerChar * chars) + 16;
+        } else {
+            return (int) maxBytesPerChar * chars;
+        }
+    }
+
+    /**
+     * The end of the chunk to encode. a chunk never split the surrogate pair.
+     *
+     * @param s     chars
+     * @param start start index
+     * @param end   end index
+     * @return chunk end index
+     */
+    public static int chunkEnd(CharSequence s, int start, int end) {
+        int chunkEnd = Math.min(end, start + MAX_CHUNK_CHARS);
+        if (chunkEnd < end && Character.isHighSurrogate(s.charAt(chunkEnd - 1))) {
+            chunkEnd++;
+        }
+        return chunkEnd;
+    }
+
+    /**
+     * The end of the chunk to encode. a chunk never split the surrogate pair.
+     *
+     * @param s     chars
+     * @param start start index
+     * @param end   end index
+     * @return chunk end index
+     */
+    public static int chunkEnd(char[] s, int start, int end) {
+        int chunkEnd = Math.min(end, start + MAX_CHUNK_CHARS);
+        if (chunkEnd < end && Character.isHighSurrogate(s[chunkEnd - 1])) {
+            chunkEnd++;
+        }
+        return chunkEnd;
+    }
+
+    /**
+     * Encode chars into out
+     *
+     * @param s     chars
+     * @param start start index
+     * @param end   end index. (end - start) &lt;= MAX_CHUNK_CHARS + 1
+     * @param out   must has {@link #maxBytes(int)} writable bytes
+     */
+    public void encode(char[] s, int start, int end, ByteBuf out) {
+        CharsView view = charsView.wrap(s, start, end - start);
+        try {
+            encode(view, 0, end - start, out);
+        } finally {
+            view.clear();
+        }
+    }
+
+    /**
+     * Encode chars into out
+     *
+     * @param s     chars
+     * @param start start index
+     * @param end   end index. (end - start) &lt;= MAX_CHUNK_CHARS + 1
+     * @param out   must has {@link #maxBytes(int)} writable bytes
+     */
+    public void encode(CharSequence s, int start, int end, ByteBuf out) {
+        int len = end - start;
+        if (len <= 0) {
+            return;
+        }
+        switch (type) {
+            case TYPE_UTF8: {
+                ByteBufUtil.reserveAndWriteUtf8(out, s, start, end, len * 3);
+                break;
+            }
+            case TYPE_LATIN1: {
+                if (start == 0 && end == s.length()) {
+                    ByteBufUtil.writeAscii(out, s);
+                } else {
+                    CharsView view = charsView.wrap(s, start, len);
+                    try {
+                        ByteBufUtil.writeAscii(out, view);
+                    } finally {
+                        view.clear();
+                    }
+                }
+                break;
+            }
+            default: {
+                encodeOther(s, start, end, out);
+                break;
+            }
+        }
+    }
+
+    private void encodeOther(CharSequence s, int start, int end, ByteBuf out) {
+        CharBuffer in = this.charBuffer;
+        in.clear();
+        if (s instanceof String) {
+            ((String) s).getChars(start, end, in.array(), 0);
+            in.position(end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                in.put(s.charAt(i));
+            }
+        }
+        in.flip();
+
+        CharsetEncoder encoder = this.encoder;
+        encoder.reset();
+        int writerIndex = out.writerIndex();
+        int writableBytes = out.writableBytes();
+        ByteBuffer nioBuffer = out.nioBufferCount() == 1 ?
+                out.internalNioBuffer(writerIndex, writableBytes) : out.nioBuffer(writerIndex, writableBytes);
+        int position = nioBuffer.position();
+        try {
+            CoderResult result = encoder.encode(in, nioBuffer, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = encoder.flush(nioBuffer);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException(e);
+        }
+        out.writerIndex(writerIndex + nioBuffer.position() - position);
+    }
+
+    @Override
+    public String toString() {
+        return "ByteBufCharsetEncoder{" + charset + '}';
+    }
+
+    /**
+     * Reusable CharSequence view of char[] or a range of CharSequence. avoid CharBuffer.wrap / substring
+     */
+    static class CharsView implements CharSequence {
+        private char[] array;
+        private CharSequence sequence;
+        private int offset;
+        private int length;
+
+        CharsView wrap(char[] array, int offset, int length) {
+            this.array = array;
+            this.sequence = null;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        CharsView wrap(CharSequence sequence, int offset, int length) {
+            this.array = null;
+            this.sequence = sequence;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        void clear() {
+            array = null;
+            sequence = null;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return array != null ? array[offset + index] : sequence.charAt(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return array != null ? new String(array, offset, length) : sequence.subSequence(offset, offset + length).toString();
+        }
+    }
+}
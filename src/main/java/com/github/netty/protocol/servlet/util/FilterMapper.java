@@ -37,6 +37,11 @@ public class FilterMapper<T> {
      * knowing where the last 'before' mapping was added.
      */
     private int insertPoint = 0;
+    /**
+     * compiled routing index of {@link #array}. null if need rebuild
+     */
+    private volatile Compiled<T> compiled;
+    private volatile int modCount;
 
     public FilterMapper() {
     }
@@ -44,6 +49,7 @@ public class FilterMapper<T> {
     public void clear() {
         synchronized (lock) {
             array = new Element[0];
+            onChange();
         }
     }
 
@@ -54,6 +60,44 @@ public class FilterMapper<T> {
         } else {
             antPathMatcher = null;
         }
+        synchronized (lock) {
+            onChange();
+        }
+    }
+
+    /**
+     * Incremented on every mapping change. use for invalidate the cache of the caller.
+     *
+     * @return modCount
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    private void onChange() {
+        compiled = null;
+        modCount++;
+    }
+
+    /**
+     * Build the routing index now. (otherwise build lazily on first lookup)
+     */
+    public void compile() {
+        getCompiled();
+    }
+
+    private Compiled<T> getCompiled() {
+        Compiled<T> compiled = this.compiled;
+        if (compiled == null) {
+            synchronized (lock) {
+                compiled = this.compiled;
+                if (compiled == null) {
+                    compiled = new Compiled<>(array);
+                    this.compiled = compiled;
+                }
+            }
+        }
+        return compiled;
     }
 
     public boolean isEnableAntPathMatcher() {
@@ -71,6 +115,7 @@ public class FilterMapper<T> {
             Element[] results = Arrays.copyOf(array, array.length + 1);
             results[array.length] = filterMap;
             array = results;
+            onChange();
         }
     }
 
@@ -89,6 +134,7 @@ public class FilterMapper<T> {
             results[insertPoint] = filterMap;
             array = results;
             insertPoint++;
+            onChange();
         }
     }
 
@@ -120,6 +166,7 @@ public class FilterMapper<T> {
             if (n < insertPoint) {
                 insertPoint--;
             }
+            onChange();
         }
     }
 
@@ -134,6 +181,7 @@ public class FilterMapper<T> {
             }
             this.rootPath = rootPath;
             this.array = newElements;
+            onChange();
         }
     }
 
@@ -172,18 +220,31 @@ public class FilterMapper<T> {
      * @param relativePathNoQueryString relativePathNoQueryString
      */
     public void addMappingObjects(String relativePathNoQueryString, DispatcherType dispatcherType, List<Element<T>> list) {
-        AntPathMatcher antPathMatcher = this.antPathMatcher;
-        for (Element<T> element : this.array) {
+        Compiled<T> compiled = getCompiled();
+        for (int position : compiled.index.all(relativePathNoQueryString, antPathMatcher)) {
+            Element<T> element = compiled.elements[position];
             if (element.dispatcherTypes != null && !element.dispatcherTypes.contains(dispatcherType)) {
                 continue;
             }
-            if (ServletUtil.matchFiltersURL(element.normOriginalPattern, relativePathNoQueryString)) {
-                list.add(element);
-            } else if (antPathMatcher != null && antPathMatcher.match(element.normOriginalPattern, relativePathNoQueryString, "*")) {
-                list.add(element);
-            }
+            list.add(element);
         }
+    }
+
+    /**
+     * Elements in definition order, and the index of them.
+     */
+    private static class Compiled<T> {
+        final Element<T>[] elements;
+        final UrlPatternIndex index;
 
+        Compiled(Element<T>[] elements) {
+            this.elements = elements;
+            String[] patterns = new String[elements.length];
+            for (int i = 0; i < elements.length; i++) {
+                patterns[i] = elements[i].normOriginalPattern;
+            }
+            this.index = new UrlPatternIndex(patterns);
+        }
     }
 
     public static class Element<T> {
@@ -50,6 +50,11 @@ public class UrlMapper<T> {
     private int sort = 0;
     private String rootPath = "";
     private final Collection<Element<T>> elementList = new TreeSet<>();
+    /**
+     * compiled routing index. null if need rebuild
+     */
+    private volatile Compiled<T> compiled;
+    private volatile int modCount;
 
     public UrlMapper() {
     }
@@ -78,6 +83,7 @@ public class UrlMapper<T> {
 
     public void clear() {
         elementList.clear();
+        onChange();
     }
 
     public void setEnableAntPathMatcher(boolean enableAntPathMatcher) {
@@ -87,6 +93,42 @@ public class UrlMapper<T> {
         } else {
             antPathMatcher = null;
         }
+        onChange();
+    }
+
+    /**
+     * Incremented on every mapping change. use for invalidate the cache of the caller.
+     *
+     * @return modCount
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    private void onChange() {
+        compiled = null;
+        modCount++;
+    }
+
+    /**
+     * Build the routing index now. (otherwise build lazily on first lookup)
+     */
+    public void compile() {
+        getCompiled();
+    }
+
+    private Compiled<T> getCompiled() {
+        Compiled<T> compiled = this.compiled;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = this.compiled;
+                if (compiled == null) {
+                    compiled = new Compiled<>(elementList);
+                    this.compiled = compiled;
+                }
+            }
+        }
+        return compiled;
     }
 
     public boolean isEnableAntPathMatcher() {
@@ -100,6 +142,7 @@ public class UrlMapper<T> {
         for (Element<T> element : elements) {
             elementList.add(new Element<>(rootPath, element.originalPattern, element.object, element.objectName, sort++));
         }
+        onChange();
     }
 
     /**
@@ -120,6 +163,7 @@ public class UrlMapper<T> {
             }
         }
         elementList.add(new Element<>(rootPath, urlPattern, object, objectName, sort++));
+        onChange();
     }
 
     /**
@@ -129,16 +173,27 @@ public class UrlMapper<T> {
      * @return T object
      */
     public Element<T> getMappingObjectByServletPath(String relativePathNoQueryString) {
-        Collection<Element<T>> elementList = this.elementList;
-        AntPathMatcher antPathMatcher = this.antPathMatcher;
-        for (Element<T> element : elementList) {
-            if (ServletUtil.matchFiltersURL(element.normOriginalPattern, relativePathNoQueryString)) {
-                return element;
-            } else if (antPathMatcher != null && antPathMatcher.match(element.normOriginalPattern, relativePathNoQueryString, "*")) {
-                return element;
+        Compiled<T> compiled = getCompiled();
+        int position = compiled.index.first(relativePathNoQueryString, antPathMatcher);
+        return position == -1 ? null : compiled.elements[position];
+    }
+
+    /**
+     * Elements in sort order, and the index of them.
+     * The smallest matching position is the element with the highest priority.
+     */
+    private static class Compiled<T> {
+        final Element<T>[] elements;
+        final UrlPatternIndex index;
+
+        Compiled(Collection<Element<T>> elementList) {
+            this.elements = elementList.toArray(new Element[0]);
+            String[] patterns = new String[elements.length];
+            for (int i = 0; i < elements.length; i++) {
+                patterns[i] = elements[i].normOriginalPattern;
             }
+            this.index = new UrlPatternIndex(patterns);
         }
-        return null;
     }
 
     public static class Element<T> implements Comparable<Element<T>> {
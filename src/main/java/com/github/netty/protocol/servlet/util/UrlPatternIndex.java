@@ -0,0 +1,193 @@
+package com.github.netty.protocol.servlet.util;
+
+import com.github.netty.core.util.AntPathMatcher;
+
+import java.util.*;
+
+/**
+ * Compiled url pattern index. (build once, lookup many)
+ * <p>
+ * Follows the same rules as {@link ServletUtil#matchFiltersURL(String, String)}
+ * 1. exact match         : hash table.
+ * 2. path match  /a/b/*  : prefix table, probed at each '/' of the request path.
+ * 3. extension match *.do: extension table.
+ * 4. ant pattern         : only when the AntPathMatcher is enabled, linear scan of the patterns that contain wildcards.
+ * <p>
+ * The index works with positions. position = the index of the pattern in the array that the index was built from,
+ * so that the caller decides the priority (UrlMapper = sort order, FilterMapper = definition order).
+ *
+ * @author wangzihao
+ */
+public class UrlPatternIndex {
+    private static final int[] EMPTY = {};
+    private final String[] patterns;
+    private final Map<String, int[]> exactMap = new HashMap<>();
+    private final Map<String, int[]> prefixMap = new HashMap<>();
+    private final Map<String, int[]> extensionMap = new HashMap<>();
+    private final int[] allPositions;
+    private final int[] antPositions;
+
+    public UrlPatternIndex(String[] normPatterns) {
+        this.patterns = normPatterns;
+        List<Integer> allList = new ArrayList<>();
+        List<Integer> antList = new ArrayList<>();
+        for (int i = 0; i < normPatterns.length; i++) {
+            String pattern = normPatterns[i];
+            // Case 1 - Exact Match
+            put(exactMap, pattern, i);
+            if ("/*".equals(pattern)) {
+                // Case 2 - Path Match all
+                allList.add(i);
+            } else if (pattern.endsWith("/*")) {
+                // Case 2 - Path Match ("/.../*")
+                put(prefixMap, pattern.substring(0, pattern.length() - 2), i);
+            } else if (pattern.startsWith("*.")) {
+                // Case 3 - Extension Match
+                put(extensionMap, pattern.substring(2), i);
+            }
+            if (pattern.indexOf('*') != -1 || pattern.indexOf('?') != -1 || pattern.indexOf('{') != -1) {
+                antList.add(i);
+            }
+        }
+        this.allPositions = toArray(allList);
+        this.antPositions = toArray(antList);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static void put(Map<String, int[]> map, String key, int position) {
+        int[] old = map.get(key);
+        if (old == null) {
+            map.put(key, new int[]{position});
+        } else {
+            int[] positions = Arrays.copyOf(old, old.length + 1);
+            positions[old.length] = position;
+            map.put(key, positions);
+        }
+    }
+
+    private static int min(int[] positions, int min) {
+        if (positions != null) {
+            for (int position : positions) {
+                if (position < min) {
+                    min = position;
+                }
+            }
+        }
+        return min;
+    }
+
+    private static void set(int[] positions, BitSet bitSet) {
+        if (positions != null) {
+            for (int position : positions) {
+                bitSet.set(position);
+            }
+        }
+    }
+
+    private static String extension(String path) {
+        int slash = path.lastIndexOf('/');
+        int period = path.lastIndexOf('.');
+        if (slash >= 0 && period > slash && period != path.length() - 1) {
+            return path.substring(period + 1);
+        }
+        return null;
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Find the smallest matching position
+     *
+     * @param path           relativePathNoQueryString
+     * @param antPathMatcher null if not enable
+     * @return smallest position. -1 if not found
+     */
+    public int first(String path, AntPathMatcher antPathMatcher) {
+        int min = allPositions.length > 0 ? allPositions[0] : Integer.MAX_VALUE;
+        min = min(exactMap.get(path), min);
+        if (!prefixMap.isEmpty()) {
+            min = min(prefixMap.get(path), min);
+            for (int i = path.indexOf('/'); i != -1; i = path.indexOf('/', i + 1)) {
+                min = min(prefixMap.get(path.substring(0, i)), min);
+            }
+        }
+        if (!extensionMap.isEmpty()) {
+            String extension = extension(path);
+            if (extension != null) {
+                min = min(extensionMap.get(extension), min);
+            }
+        }
+        if (antPathMatcher != null) {
+            for (int position : antPositions) {
+                if (position >= min) {
+                    break;
+                }
+                if (antPathMatcher.match(patterns[position], path, "*")) {
+                    min = position;
+                    break;
+                }
+            }
+        }
+        return min == Integer.MAX_VALUE ? -1 : min;
+    }
+
+    /**
+     * Find all matching positions
+     *
+     * @param path           relativePathNoQueryString
+     * @param antPathMatcher null if not enable
+     * @return positions in ascending order
+     */
+    public int[] all(String path, AntPathMatcher antPathMatcher) {
+        BitSet bitSet = new BitSet(patterns.length);
+        set(allPositions, bitSet);
+        set(exactMap.get(path), bitSet);
+        if (!prefixMap.isEmpty()) {
+            set(prefixMap.get(path), bitSet);
+            for (int i = path.indexOf('/'); i != -1; i = path.indexOf('/', i + 1)) {
+                set(prefixMap.get(path.substring(0, i)), bitSet);
+            }
+        }
+        if (!extensionMap.isEmpty()) {
+            String extension = extension(path);
+            if (extension != null) {
+                set(extensionMap.get(extension), bitSet);
+            }
+        }
+        if (antPathMatcher != null) {
+            for (int position : antPositions) {
+                if (!bitSet.get(position) && antPathMatcher.match(patterns[position], path, "*")) {
+                    bitSet.set(position);
+                }
+            }
+        }
+        if (bitSet.isEmpty()) {
+            return EMPTY;
+        }
+        int[] positions = new int[bitSet.cardinality()];
+        for (int i = bitSet.nextSetBit(0), j = 0; i >= 0; i = bitSet.nextSetBit(i + 1)) {
+            positions[j++] = i;
+        }
+        return positions;
+    }
+
+    @Override
+    public String toString() {
+        return "UrlPatternIndex{" +
+                "exact=" + exactMap.size() +
+                ", all=" + allPositions.length +
+                ", prefix=" + prefixMap.size() +
+                ", extension=" + extensionMap.size() +
+                ", ant=" + antPositions.length +
+                '}';
+    }
+}
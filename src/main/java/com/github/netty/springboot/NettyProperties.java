@@ -6,7 +6,10 @@ import com.github.netty.core.util.NettyThreadPoolExecutor;
 import com.github.netty.protocol.DynamicProtocolChannelHandler;
 import com.github.netty.protocol.mysql.client.MysqlFrontendBusinessHandler;
 import com.github.netty.protocol.mysql.server.MysqlBackendBusinessHandler;
+import com.github.netty.protocol.nrpc.RpcClientPool;
+import com.github.netty.protocol.nrpc.service.RpcDBLog;
 import com.github.netty.protocol.nrpc.codec.DataCodecUtil;
+import com.github.netty.protocol.servlet.SessionSaveMode;
 import com.github.netty.protocol.servlet.util.HttpAbortPolicyWithReport;
 import com.github.netty.protocol.servlet.util.HttpConstants;
 import io.netty.handler.logging.LogLevel;
@@ -347,11 +350,31 @@ public class NettyProperties implements Serializable {
          */
         private boolean enablesLocalFileSession = false;
 
+        /**
+         * session存储 - 本地文件存储是否使用日志结构(追加写段文件+内存索引, 后台合并, 重启时回放恢复). false=每个session一个文件
+         */
+        private boolean enablesLocalFileSessionLog = true;
+
         /**
          * session存储 - session远程存储的url地址, 注: 如果不设置就不会开启
          */
         private String sessionRemoteServerAddress;
 
+        /**
+         * session存储 - session远程存储的连接数. 多个线程共享这些连接(多路复用), 每次选择处理中请求最少的连接
+         */
+        private int sessionRemoteClientPoolSize = 2;
+
+        /**
+         * session存储 - 保存时机. IMMEDIATE=每次请求都同步保存(默认), ON_CHANGE=属性或元数据变更才同步保存(仅访问时间变更会批量异步保存), WRITE_BEHIND=全部异步批量保存(同一个session多次保存会合并)
+         */
+        private SessionSaveMode sessionSaveMode = SessionSaveMode.IMMEDIATE;
+
+        /**
+         * session存储 - 异步批量保存的间隔(毫秒)
+         */
+        private long sessionWriteBehindIntervalMillis = 1000;
+
         /**
          * servlet文件存储的根目录。(servlet文件上传下载) 如果未指定，则使用临时目录。
          */
@@ -364,6 +387,10 @@ public class NettyProperties implements Serializable {
          * 是否开启UrlFilter的AntPathMatcher路径匹配,默认false不开启
          */
         private boolean enableUrlFilterAntPathMatcher = false;
+        /**
+         * 请求路由缓存的最大路径数量(每种DispatcherType). 缓存 path → servlet + filter链, 映射变更后自动失效. 0=不开启
+         */
+        private int dispatchCacheSize = 1024;
 
         /**
          * 是否开启DNS地址查询. true=开启 {@link javax.servlet.ServletRequest#getRemoteHost}
@@ -414,6 +441,14 @@ public class NettyProperties implements Serializable {
             this.enableUrlFilterAntPathMatcher = enableUrlFilterAntPathMatcher;
         }
 
+        public int getDispatchCacheSize() {
+            return dispatchCacheSize;
+        }
+
+        public void setDispatchCacheSize(int dispatchCacheSize) {
+            this.dispatchCacheSize = dispatchCacheSize;
+        }
+
         public boolean isMapperContextRootRedirectEnabled() {
             return mapperContextRootRedirectEnabled;
         }
@@ -538,6 +573,14 @@ public class NettyProperties implements Serializable {
             this.requestMaxHeaderSize = requestMaxHeaderSize;
         }
 
+        public boolean isEnablesLocalFileSessionLog() {
+            return enablesLocalFileSessionLog;
+        }
+
+        public void setEnablesLocalFileSessionLog(boolean enablesLocalFileSessionLog) {
+            this.enablesLocalFileSessionLog = enablesLocalFileSessionLog;
+        }
+
         public boolean isEnablesLocalFileSession() {
             return enablesLocalFileSession;
         }
@@ -546,6 +589,30 @@ public class NettyProperties implements Serializable {
             this.enablesLocalFileSession = enablesLocalFileSession;
         }
 
+        public SessionSaveMode getSessionSaveMode() {
+            return sessionSaveMode;
+        }
+
+        public void setSessionSaveMode(SessionSaveMode sessionSaveMode) {
+            this.sessionSaveMode = sessionSaveMode;
+        }
+
+        public long getSessionWriteBehindIntervalMillis() {
+            return sessionWriteBehindIntervalMillis;
+        }
+
+        public void setSessionWriteBehindIntervalMillis(long sessionWriteBehindIntervalMillis) {
+            this.sessionWriteBehindIntervalMillis = sessionWriteBehindIntervalMillis;
+        }
+
+        public int getSessionRemoteClientPoolSize() {
+            return sessionRemoteClientPoolSize;
+        }
+
+        public void setSessionRemoteClientPoolSize(int sessionRemoteClientPoolSize) {
+            this.sessionRemoteClientPoolSize = sessionRemoteClientPoolSize;
+        }
+
         public String getSessionRemoteServerAddress() {
             return sessionRemoteServerAddress;
         }
@@ -766,7 +833,7 @@ public class NettyProperties implements Serializable {
          */
         private boolean enabled = false;
         /**
-         * 编码-fastjson最快，jdk需要实现序列化接口
+         * 编码-fastjson最快，jdk需要实现序列化接口. binary为按方法参数类型生成的紧凑二进制格式(客户端与服务端需一致)
          */
         private Codec codec = Codec.jdk;
         /**
@@ -821,6 +888,124 @@ public class NettyProperties implements Serializable {
          * RPC服务端 - 用户接口的全局默认版本，可以用主动覆盖 {@link com.github.netty.annotation.NRpcService#version() }
          */
         private String serverDefaultVersion = "";
+        /**
+         * RPC客户端 - 连接后协商服务名称编号（true=开启）. 开启后同一连接上的请求用4字节编号代替服务名,版本号,方法名. 旧版本服务端不支持时自动使用全名
+         */
+        private boolean clientEnableSymbolId = true;
+        /**
+         * RPC服务端 - 是否允许客户端用服务名称编号调用（true=允许）
+         */
+        private boolean serverEnableSymbolId = true;
+        /**
+         * RPC客户端 - 是否开启批量写（true=开启）. 多个线程的请求放入队列, 由IO线程统一写出, 每批只flush一次
+         */
+        private boolean clientEnableWriteBatch = true;
+        /**
+         * RPC服务端 - 是否开启批量写（true=开启）. 同一次IO事件产生的响应和分块只flush一次
+         */
+        private boolean serverEnableWriteBatch = true;
+        /**
+         * RPC客户端/服务端 - 批量写每满多少个包就flush一次
+         */
+        private int writeBatchMaxPackets = 128;
+        /**
+         * RPC客户端/服务端 - 批量写待发送的字节数超过多少就flush一次
+         */
+        private int writeBatchMaxBytes = 64 * 1024;
+        /**
+         * RPC服务端 - 是否在IO线程直接执行所有非阻塞方法（true=开启）. 非阻塞方法=返回CompletableFuture,RpcEmitter,Publisher等,
+         * 省去线程池的切换. false=只有{@link com.github.netty.annotation.NRpcMethod#eventLoop()},{@link com.github.netty.annotation.NRpcService#eventLoop()}的方法在IO线程执行
+         */
+        private boolean serverEventLoopAsyncMethod = false;
+        /**
+         * RPC客户端 - 每个服务端地址的最少连接数
+         */
+        private int clientPoolMinConnections = 1;
+        /**
+         * RPC客户端 - 每个服务端地址的最多连接数. 连接繁忙时自动增加连接, 空闲时自动减少到最少连接数. 1=单连接
+         */
+        private int clientPoolMaxConnections = 4;
+        /**
+         * RPC客户端 - 选中的连接上未完成的请求数达到多少就增加一个连接
+         */
+        private int clientPoolGrowInFlight = 64;
+        /**
+         * RPC客户端 - 所有连接空闲多少毫秒后减少一个连接
+         */
+        private long clientPoolShrinkIdleMs = 60000;
+        /**
+         * RPC客户端 - 连接的选择方式. LEAST_IN_FLIGHT=未完成请求最少的连接, ROUND_ROBIN=轮询. 断开的连接会跳过并在后台重连
+         */
+        private RpcClientPool.Select clientPoolSelect = RpcClientPool.Select.LEAST_IN_FLIGHT;
+        /**
+         * RPC客户端 - 连续多少次超时或网络错误就摘除这个地址（小于等于0=不摘除）. 业务异常不计入. 内置的负载均衡会跳过被摘除的地址 {@link com.github.netty.springboot.client.AbstractNettyRpcLoadBalanced}
+         */
+        private int clientOutlierConsecutiveFailures = 5;
+        /**
+         * RPC客户端 - 地址被摘除的毫秒数. 再次被摘除时翻倍(最多10倍)
+         */
+        private long clientOutlierEjectionMs = 30000;
+        /**
+         * RPC客户端 - 响应耗时(peak EWMA)的衰减时间（毫秒）. 越小越快忘记慢响应
+         */
+        private long clientLatencyDecayMs = 10000;
+        /**
+         * RPC客户端 - 重试预算. 每个请求存入多少令牌, 每次重试或对冲请求(hedge)消耗1个令牌. 0.1=重试和对冲最多占请求数的10%, 防止重试放大故障服务器的负载
+         * {@link com.github.netty.annotation.NRpcMethod#retries()}, {@link com.github.netty.annotation.NRpcMethod#hedgeDelay()}
+         */
+        private double clientRetryBudgetRatio = 0.1D;
+        /**
+         * RPC客户端 - 重试预算. 每秒至少允许多少次重试或对冲请求(不消耗令牌). 请求量少的服务也能重试
+         */
+        private int clientRetryBudgetMinPerSecond = 10;
+        /**
+         * RPC客户端 - 对冲请求的延迟为0时, 使用这个方法最近响应耗时的百分位数作为延迟. 95=比95%的请求慢时发出对冲请求
+         */
+        private int clientHedgePercentile = 95;
+        /**
+         * RPC客户端 - 流式返回(RpcEmitter)时, 最多有多少个chunk未消费. 超过后服务端等待客户端消费后再发送（小于等于0=不限制）
+         */
+        private int clientChunkCreditWindow = 64;
+        /**
+         * RPC服务端 - 在IO线程执行的方法耗时超过多少毫秒就打印警告日志（小于等于0=不检测）. IO线程被阻塞会拖慢同一线程上的所有连接
+         */
+        private int serverEventLoopBlockedWarnMillis = 10;
+        /**
+         * RPC服务端 - 内置DB服务(RpcDBService,远程session用)的数据目录. 配置后开启持久化: 每个group一个预写日志(WAL)和定时快照, 重启时加载. 空=只存内存
+         */
+        private String serverDbDataDir;
+        /**
+         * RPC服务端 - 内置DB服务每个group的分片数. 不同分片的读写互不加锁
+         */
+        private int serverDbShards = 16;
+        /**
+         * RPC服务端 - 内置DB服务的日志刷盘方式. ALWAYS=每次写都fsync(并发的写共用一次fsync), BATCH=每隔serverDbFsyncIntervalMs毫秒fsync一次, OS=不fsync由操作系统刷盘
+         */
+        private RpcDBLog.FsyncPolicy serverDbFsync = RpcDBLog.FsyncPolicy.BATCH;
+        /**
+         * RPC服务端 - 内置DB服务BATCH刷盘的间隔（毫秒）
+         */
+        private long serverDbFsyncIntervalMs = 1000;
+        /**
+         * RPC服务端 - 内置DB服务的快照间隔（毫秒）. 快照后删除旧的日志, 重启时只加载快照和之后的日志（小于等于0=只在关闭时快照）
+         */
+        private long serverDbSnapshotIntervalMs = 5 * 60 * 1000;
+        /**
+         * RPC服务端 - 内置DB服务作为主节点时, 复制积压缓冲区的大小（字节）. 从节点断线重连后从缓冲区追赶, 落后太多就全量同步（小于等于0=不开启主从复制）
+         */
+        private long serverDbReplicationBacklogBytes = 0;
+        /**
+         * RPC服务端 - 内置DB服务作为从节点, 异步复制这个主节点的数据（格式: host:port）. 从节点只读. 空=不是从节点
+         */
+        private String serverDbReplicaOf;
+        /**
+         * RPC服务端 - 内置DB服务的值存到堆外内存(按大小分级的slab), 最多使用多少字节. 堆内只保留key和句柄, 减少大量session对老年代GC的影响. 超过后新的值存在堆内（小于等于0=不开启, 值都存在堆内）
+         */
+        private long serverDbOffHeapMaxBytes = 0;
+        /**
+         * RPC服务端 - 内置DB服务堆外内存使用内存映射文件的目录. 空=使用直接内存(DirectByteBuffer, 受-XX:MaxDirectMemorySize限制)
+         */
+        private String serverDbOffHeapMappedDir;
 
         public boolean isEnabled() {
             return enabled;
@@ -861,6 +1046,238 @@ public class NettyProperties implements Serializable {
             this.serverDefaultVersion = serverDefaultVersion;
         }
 
+        public boolean isClientEnableSymbolId() {
+            return clientEnableSymbolId;
+        }
+
+        public void setClientEnableSymbolId(boolean clientEnableSymbolId) {
+            this.clientEnableSymbolId = clientEnableSymbolId;
+        }
+
+        public boolean isServerEnableSymbolId() {
+            return serverEnableSymbolId;
+        }
+
+        public void setServerEnableSymbolId(boolean serverEnableSymbolId) {
+            this.serverEnableSymbolId = serverEnableSymbolId;
+        }
+
+        public boolean isClientEnableWriteBatch() {
+            return clientEnableWriteBatch;
+        }
+
+        public void setClientEnableWriteBatch(boolean clientEnableWriteBatch) {
+            this.clientEnableWriteBatch = clientEnableWriteBatch;
+        }
+
+        public boolean isServerEnableWriteBatch() {
+            return serverEnableWriteBatch;
+        }
+
+        public void setServerEnableWriteBatch(boolean serverEnableWriteBatch) {
+            this.serverEnableWriteBatch = serverEnableWriteBatch;
+        }
+
+        public int getWriteBatchMaxPackets() {
+            return writeBatchMaxPackets;
+        }
+
+        public void setWriteBatchMaxPackets(int writeBatchMaxPackets) {
+            this.writeBatchMaxPackets = writeBatchMaxPackets;
+        }
+
+        public int getWriteBatchMaxBytes() {
+            return writeBatchMaxBytes;
+        }
+
+        public void setWriteBatchMaxBytes(int writeBatchMaxBytes) {
+            this.writeBatchMaxBytes = writeBatchMaxBytes;
+        }
+
+        public int getClientPoolMinConnections() {
+            return clientPoolMinConnections;
+        }
+
+        public void setClientPoolMinConnections(int clientPoolMinConnections) {
+            this.clientPoolMinConnections = clientPoolMinConnections;
+        }
+
+        public int getClientPoolMaxConnections() {
+            return clientPoolMaxConnections;
+        }
+
+        public void setClientPoolMaxConnections(int clientPoolMaxConnections) {
+            this.clientPoolMaxConnections = clientPoolMaxConnections;
+        }
+
+        public int getClientPoolGrowInFlight() {
+            return clientPoolGrowInFlight;
+        }
+
+        public void setClientPoolGrowInFlight(int clientPoolGrowInFlight) {
+            this.clientPoolGrowInFlight = clientPoolGrowInFlight;
+        }
+
+        public long getClientPoolShrinkIdleMs() {
+            return clientPoolShrinkIdleMs;
+        }
+
+        public void setClientPoolShrinkIdleMs(long clientPoolShrinkIdleMs) {
+            this.clientPoolShrinkIdleMs = clientPoolShrinkIdleMs;
+        }
+
+        public RpcClientPool.Select getClientPoolSelect() {
+            return clientPoolSelect;
+        }
+
+        public void setClientPoolSelect(RpcClientPool.Select clientPoolSelect) {
+            this.clientPoolSelect = clientPoolSelect;
+        }
+
+        public int getClientOutlierConsecutiveFailures() {
+            return clientOutlierConsecutiveFailures;
+        }
+
+        public void setClientOutlierConsecutiveFailures(int clientOutlierConsecutiveFailures) {
+            this.clientOutlierConsecutiveFailures = clientOutlierConsecutiveFailures;
+        }
+
+        public long getClientOutlierEjectionMs() {
+            return clientOutlierEjectionMs;
+        }
+
+        public void setClientOutlierEjectionMs(long clientOutlierEjectionMs) {
+            this.clientOutlierEjectionMs = clientOutlierEjectionMs;
+        }
+
+        public long getClientLatencyDecayMs() {
+            return clientLatencyDecayMs;
+        }
+
+        public void setClientLatencyDecayMs(long clientLatencyDecayMs) {
+            this.clientLatencyDecayMs = clientLatencyDecayMs;
+        }
+
+        public double getClientRetryBudgetRatio() {
+            return clientRetryBudgetRatio;
+        }
+
+        public void setClientRetryBudgetRatio(double clientRetryBudgetRatio) {
+            this.clientRetryBudgetRatio = clientRetryBudgetRatio;
+        }
+
+        public int getClientRetryBudgetMinPerSecond() {
+            return clientRetryBudgetMinPerSecond;
+        }
+
+        public void setClientRetryBudgetMinPerSecond(int clientRetryBudgetMinPerSecond) {
+            this.clientRetryBudgetMinPerSecond = clientRetryBudgetMinPerSecond;
+        }
+
+        public int getClientHedgePercentile() {
+            return clientHedgePercentile;
+        }
+
+        public void setClientHedgePercentile(int clientHedgePercentile) {
+            this.clientHedgePercentile = clientHedgePercentile;
+        }
+
+        public int getClientChunkCreditWindow() {
+            return clientChunkCreditWindow;
+        }
+
+        public void setClientChunkCreditWindow(int clientChunkCreditWindow) {
+            this.clientChunkCreditWindow = clientChunkCreditWindow;
+        }
+
+        public boolean isServerEventLoopAsyncMethod() {
+            return serverEventLoopAsyncMethod;
+        }
+
+        public void setServerEventLoopAsyncMethod(boolean serverEventLoopAsyncMethod) {
+            this.serverEventLoopAsyncMethod = serverEventLoopAsyncMethod;
+        }
+
+        public String getServerDbDataDir() {
+            return serverDbDataDir;
+        }
+
+        public void setServerDbDataDir(String serverDbDataDir) {
+            this.serverDbDataDir = serverDbDataDir;
+        }
+
+        public int getServerDbShards() {
+            return serverDbShards;
+        }
+
+        public void setServerDbShards(int serverDbShards) {
+            this.serverDbShards = serverDbShards;
+        }
+
+        public RpcDBLog.FsyncPolicy getServerDbFsync() {
+            return serverDbFsync;
+        }
+
+        public void setServerDbFsync(RpcDBLog.FsyncPolicy serverDbFsync) {
+            this.serverDbFsync = serverDbFsync;
+        }
+
+        public long getServerDbFsyncIntervalMs() {
+            return serverDbFsyncIntervalMs;
+        }
+
+        public void setServerDbFsyncIntervalMs(long serverDbFsyncIntervalMs) {
+            this.serverDbFsyncIntervalMs = serverDbFsyncIntervalMs;
+        }
+
+        public long getServerDbSnapshotIntervalMs() {
+            return serverDbSnapshotIntervalMs;
+        }
+
+        public void setServerDbSnapshotIntervalMs(long serverDbSnapshotIntervalMs) {
+            this.serverDbSnapshotIntervalMs = serverDbSnapshotIntervalMs;
+        }
+
+        public long getServerDbReplicationBacklogBytes() {
+            return serverDbReplicationBacklogBytes;
+        }
+
+        public void setServerDbReplicationBacklogBytes(long serverDbReplicationBacklogBytes) {
+            this.serverDbReplicationBacklogBytes = serverDbReplicationBacklogBytes;
+        }
+
+        public String getServerDbReplicaOf() {
+            return serverDbReplicaOf;
+        }
+
+        public void setServerDbReplicaOf(String serverDbReplicaOf) {
+            this.serverDbReplicaOf = serverDbReplicaOf;
+        }
+
+        public long getServerDbOffHeapMaxBytes() {
+            return serverDbOffHeapMaxBytes;
+        }
+
+        public void setServerDbOffHeapMaxBytes(long serverDbOffHeapMaxBytes) {
+            this.serverDbOffHeapMaxBytes = serverDbOffHeapMaxBytes;
+        }
+
+        public String getServerDbOffHeapMappedDir() {
+            return serverDbOffHeapMappedDir;
+        }
+
+        public void setServerDbOffHeapMappedDir(String serverDbOffHeapMappedDir) {
+            this.serverDbOffHeapMappedDir = serverDbOffHeapMappedDir;
+        }
+
+        public int getServerEventLoopBlockedWarnMillis() {
+            return serverEventLoopBlockedWarnMillis;
+        }
+
+        public void setServerEventLoopBlockedWarnMillis(int serverEventLoopBlockedWarnMillis) {
+            this.serverEventLoopBlockedWarnMillis = serverEventLoopBlockedWarnMillis;
+        }
+
         public int getClientReconnectScheduledIntervalMs() {
             return clientReconnectScheduledIntervalMs;
         }
@@ -953,6 +1370,7 @@ public class NettyProperties implements Serializable {
             fastjson,
             jackson,
             jdk,
+            binary,
             auto
         }
 
@@ -0,0 +1,79 @@
+package com.github.netty.springboot.client;
+
+import com.github.netty.protocol.nrpc.RpcClientPool;
+import com.github.netty.protocol.nrpc.RpcClientStats;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Load balancing of the address list. (the service discovery is {@link #getAddressList(NettyRpcRequest)})
+ * the ejected address (too many timeouts or transport errors) is skipped, if all the addresses are ejected then use all.
+ *
+ * @author wangzihao
+ * @see RpcClientStats
+ * @see P2CNettyRpcLoadBalanced
+ * @see PeakEwmaNettyRpcLoadBalanced
+ * @see ConsistentHashNettyRpcLoadBalanced
+ */
+public abstract class AbstractNettyRpcLoadBalanced implements NettyRpcLoadBalanced {
+
+    /**
+     * Get the addresses of the service
+     *
+     * @param request request
+     * @return The IP addresses
+     */
+    protected abstract List<InetSocketAddress> getAddressList(NettyRpcRequest request);
+
+    /**
+     * Pick an IP address
+     *
+     * @param request     request
+     * @param addressList The IP addresses. (size greater than 1)
+     * @return The IP address
+     */
+    protected abstract InetSocketAddress choose(NettyRpcRequest request, List<InetSocketAddress> addressList);
+
+    @Override
+    public InetSocketAddress chooseAddress(NettyRpcRequest request) {
+        List<InetSocketAddress> addressList = getAddressList(request);
+        if (addressList == null || addressList.isEmpty()) {
+            return null;
+        }
+        if (addressList.size() == 1) {
+            return addressList.get(0);
+        }
+        return choose(request, addressList);
+    }
+
+    protected RpcClientStats getStats(NettyRpcRequest request, InetSocketAddress address) {
+        RpcClientPool clientPool = request.getClientPoolMap().get(address);
+        return clientPool != null ? clientPool.getStats() : null;
+    }
+
+    protected boolean isEjected(NettyRpcRequest request, InetSocketAddress address) {
+        RpcClientStats stats = getStats(request, address);
+        return stats != null && stats.isEjected();
+    }
+
+    /**
+     * @param request request
+     * @param address address
+     * @return the requests wait response of the address. (all connections)
+     */
+    protected int getInFlightCount(NettyRpcRequest request, InetSocketAddress address) {
+        RpcClientPool clientPool = request.getClientPoolMap().get(address);
+        return clientPool != null ? clientPool.getInFlightCount() : 0;
+    }
+
+    /**
+     * @param request request
+     * @param address address
+     * @return peak EWMA latency (milliseconds). 0 if no response
+     */
+    protected double getLatencyMillis(NettyRpcRequest request, InetSocketAddress address) {
+        RpcClientStats stats = getStats(request, address);
+        return stats != null ? stats.getLatencyMillis() : 0D;
+    }
+}
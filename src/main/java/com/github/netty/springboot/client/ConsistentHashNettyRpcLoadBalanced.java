@@ -0,0 +1,144 @@
+package com.github.netty.springboot.client;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Consistent hashing on the request key. the same key go to the same address. (cache affinity)
+ * ketama ring, {@link #getVirtualNodes()} points per address. add or remove an address only move the keys of it.
+ * the ejected address is skipped to the next address on the ring. (the ring is not changed, the keys come back after the ejection)
+ *
+ * @author wangzihao
+ */
+public abstract class ConsistentHashNettyRpcLoadBalanced extends AbstractNettyRpcLoadBalanced {
+    private int virtualNodes = 160;
+    private volatile Ring ring;
+
+    /**
+     * @param request request
+     * @return the hash key. default is the first argument, if no argument then the method name
+     */
+    protected Object getHashKey(NettyRpcRequest request) {
+        Object[] args = request.getArgs();
+        if (args != null && args.length > 0 && args[0] != null) {
+            return args[0];
+        }
+        return request.getMethod().getName();
+    }
+
+    @Override
+    protected InetSocketAddress choose(NettyRpcRequest request, List<InetSocketAddress> addressList) {
+        Ring ring = this.ring;
+        if (ring == null || !ring.isSameAddresses(addressList)) {
+            ring = new Ring(addressList, virtualNodes);
+            this.ring = ring;
+        }
+        int index = ring.indexOf(mix(getHashKey(request).hashCode()));
+        int length = ring.points.length;
+        for (int i = 0; i < length; i++) {
+            InetSocketAddress address = ring.addresses[(index + i) % length];
+            if (!isEjected(request, address)) {
+                return address;
+            }
+        }
+        // all ejected
+        return ring.addresses[index];
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.ring = null;
+    }
+
+    /**
+     * murmur3 fmix32. the hashCode of the key is not uniform
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static class Ring {
+        /**
+         * the order of the discovery is not the same every time. (the ring is the same)
+         */
+        private final Set<InetSocketAddress> addressSet;
+        private final int sourceSize;
+        /**
+         * sorted
+         */
+        private final int[] points;
+        private final InetSocketAddress[] addresses;
+
+        private Ring(List<InetSocketAddress> sourceList, int virtualNodes) {
+            this.addressSet = new HashSet<>(sourceList);
+            this.sourceSize = sourceList.size();
+            // sorted, the same point of the addresses not depend on the order
+            List<InetSocketAddress> addressList = new ArrayList<>(addressSet);
+            addressList.sort(Comparator.comparing(InetSocketAddress::getHostString).thenComparingInt(InetSocketAddress::getPort));
+            // 4 points per md5
+            int group = (virtualNodes + 3) / 4;
+            long[] entries = new long[addressList.size() * group * 4];
+            int count = 0;
+            MessageDigest md5;
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            for (int i = 0; i < addressList.size(); i++) {
+                InetSocketAddress address = addressList.get(i);
+                String name = address.getHostString() + ":" + address.getPort();
+                for (int g = 0; g < group; g++) {
+                    byte[] digest = md5.digest((name + "-" + g).getBytes(StandardCharsets.UTF_8));
+                    for (int h = 0; h < 4; h++) {
+                        int point = (digest[3 + h * 4] & 0xFF) << 24
+                                | (digest[2 + h * 4] & 0xFF) << 16
+                                | (digest[1 + h * 4] & 0xFF) << 8
+                                | (digest[h * 4] & 0xFF);
+                        // high 32 bits = point, low 32 bits = address index
+                        entries[count++] = ((long) point << 32) | i;
+                    }
+                }
+            }
+            Arrays.sort(entries);
+            this.points = new int[count];
+            this.addresses = new InetSocketAddress[count];
+            for (int i = 0; i < count; i++) {
+                points[i] = (int) (entries[i] >> 32);
+                addresses[i] = addressList.get((int) entries[i]);
+            }
+        }
+
+        private boolean isSameAddresses(List<InetSocketAddress> addressList) {
+            return addressList.size() == sourceSize && addressSet.containsAll(addressList);
+        }
+
+        /**
+         * @return the first point greater than or equal to the hash. (wrap to 0)
+         */
+        private int indexOf(int hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == points.length ? 0 : index;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.github.netty.annotation.NRpcParam;
 import com.github.netty.core.util.*;
 import com.github.netty.protocol.nrpc.*;
 import com.github.netty.protocol.nrpc.exception.RpcConnectException;
+import com.github.netty.protocol.nrpc.exception.RpcTimeoutException;
+import com.github.netty.protocol.nrpc.exception.RpcWriteException;
 import com.github.netty.springboot.NettyProperties;
 import io.netty.util.concurrent.FastThreadLocal;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
@@ -13,18 +15,22 @@ import org.springframework.web.bind.annotation.*;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
  * RPC client proxy (thread safe)
- * 1. Management rpc client different ip addresses. Ip address corresponds to a client only.
+ * 1. Management rpc client different ip addresses. Ip address corresponds to a connection pool. {@link RpcClientPool}
  * 2. In selecting ip address, will call NettyRpcLoadBalanced.class.
+ * 3. The idempotent method can hedge or retry other address, limited by the retry budget. {@link NRpcMethod#hedgeDelay()}, {@link NRpcMethod#retries()}
  *
  * @author wangzihao
  * @see com.github.netty.springboot.client.NettyRpcLoadBalanced#chooseAddress(NettyRpcRequest)
@@ -43,7 +49,15 @@ import java.util.function.Supplier;
  * @see RequestPart
  */
 public class NettyRpcClientProxy implements InvocationHandler {
-    private static final Map<InetSocketAddress, RpcClient> CLIENT_MAP = new ConcurrentHashMap<>(64);
+    private static final Map<InetSocketAddress, RpcClientPool> CLIENT_POOL_MAP = new ConcurrentHashMap<>(64);
+    /**
+     * the responses of {@link NRpcMethod#cacheExpiry()}. share by all the connections (the invalidate push from any address)
+     */
+    private static final RpcClientCache CLIENT_CACHE = new RpcClientCache();
+    /**
+     * choose again if the load balanced return the same address
+     */
+    private static final int OTHER_ADDRESS_MAX_PICK = 3;
     private static final FastThreadLocal<DefaultNettyRpcRequest> REQUEST_THREAD_LOCAL = new FastThreadLocal<DefaultNettyRpcRequest>() {
         @Override
         protected DefaultNettyRpcRequest initialValue() throws Exception {
@@ -69,6 +83,11 @@ public class NettyRpcClientProxy implements InvocationHandler {
     private int timeout;
     private final NettyProperties properties;
     private Supplier<NettyRpcLoadBalanced> loadBalancedSupplier;
+    private final NettyRpcRetryBudget retryBudget;
+    /**
+     * the latency of the method of {@link NRpcMethod#hedgeDelay()} = 0
+     */
+    private final Map<Method, LatencyWindow> latencyWindowMap = new ConcurrentHashMap<>(8);
 
     NettyRpcClientProxy(String serviceName, String requestMappingName, Class interfaceClass, NettyProperties properties, Supplier<NettyRpcLoadBalanced> loadBalancedSupplier) {
         this.serviceName = serviceName;
@@ -79,6 +98,7 @@ public class NettyRpcClientProxy implements InvocationHandler {
         this.version = RpcServerInstance.getVersion(interfaceClass, properties.getNrpc().getClientDefaultVersion());
         this.rpcInstanceKey = RpcClient.getClientInstanceKey(interfaceClass, this.requestMappingName, version);
         this.timeout = properties.getNrpc().getClientServerResponseTimeout();
+        this.retryBudget = new NettyRpcRetryBudget(properties.getNrpc().getClientRetryBudgetRatio(), properties.getNrpc().getClientRetryBudgetMinPerSecond());
     }
 
     public static NettyRpcRequest getRequest() {
@@ -89,8 +109,27 @@ public class NettyRpcClientProxy implements InvocationHandler {
         return FILTER_CHAIN_THREAD_LOCAL.get();
     }
 
+    /**
+     * @return address mapping the first connection of the pool. (a copy)
+     * @see #getClientPoolMap()
+     */
     public static Map<InetSocketAddress, RpcClient> getClientMap() {
-        return CLIENT_MAP;
+        Map<InetSocketAddress, RpcClient> clientMap = new LinkedHashMap<>(CLIENT_POOL_MAP.size());
+        for (Map.Entry<InetSocketAddress, RpcClientPool> entry : CLIENT_POOL_MAP.entrySet()) {
+            RpcClient rpcClient = entry.getValue().getPrimaryClient();
+            if (rpcClient != null) {
+                clientMap.put(entry.getKey(), rpcClient);
+            }
+        }
+        return clientMap;
+    }
+
+    public static Map<InetSocketAddress, RpcClientPool> getClientPoolMap() {
+        return CLIENT_POOL_MAP;
+    }
+
+    public static RpcClientCache getClientCache() {
+        return CLIENT_CACHE;
     }
 
     @Override
@@ -123,16 +162,7 @@ public class NettyRpcClientProxy implements InvocationHandler {
 
             RpcClient rpcClient = getClient(address);
             request.rpcClient = rpcClient;
-
-            RpcClient.Sender sender = rpcClient.getRpcInstance(rpcInstanceKey);
-            if (sender == null) {
-                sender = rpcClient.newRpcInstance(interfaceClass, timeout,
-                        version, requestMappingName,
-                        annotationMethodToParameterNamesFunction,
-                        annotationMethodToMethodNameFunction,
-                        properties.getNrpc().isClientMethodOverwriteCheck());
-            }
-            request.sender = sender;
+            request.sender = getSender(rpcClient);
 
             filterChain.nettyRpcFilterList = getNettyRpcFilterList();
             filterChain.doFilter(request);
@@ -143,6 +173,98 @@ public class NettyRpcClientProxy implements InvocationHandler {
         }
     }
 
+    private RpcClient.Sender getSender(RpcClient rpcClient) {
+        RpcClient.Sender sender = rpcClient.getRpcInstance(rpcInstanceKey);
+        if (sender == null) {
+            sender = rpcClient.newRpcInstance(interfaceClass, timeout,
+                    version, requestMappingName,
+                    annotationMethodToParameterNamesFunction,
+                    annotationMethodToMethodNameFunction,
+                    properties.getNrpc().isClientMethodOverwriteCheck());
+        }
+        return sender;
+    }
+
+    /**
+     * Call the sender. the idempotent method can hedge or retry other address, limited by the retry budget.
+     *
+     * @param request request
+     * @return the result of the method
+     * @throws Throwable Throwable
+     * @see NRpcMethod#hedgeDelay()
+     * @see NRpcMethod#retries()
+     */
+    private Object invokeSender(DefaultNettyRpcRequest request) throws Throwable {
+        RpcClient.Sender sender = request.sender;
+        RpcMethod<RpcClient> rpcMethod = sender.getRpcMethod(request.method);
+        int hedgeDelay = rpcMethod != null ? rpcMethod.getHedgeDelay() : -1;
+        int retries = rpcMethod != null ? rpcMethod.getRetries() : 0;
+        if (hedgeDelay < 0 && retries <= 0) {
+            return sender.invoke(request.proxy, request.method, request.args);
+        }
+
+        retryBudget.deposit();
+        LatencyWindow latencyWindow = hedgeDelay == 0
+                ? latencyWindowMap.computeIfAbsent(request.method, k -> new LatencyWindow(properties.getNrpc().getClientHedgePercentile()))
+                : null;
+        for (int retry = 0; ; retry++) {
+            long beginNanos = System.nanoTime();
+            try {
+                Object result;
+                long delay = latencyWindow != null ? latencyWindow.getPercentileMillis() : hedgeDelay;
+                if (delay >= 0) {
+                    InetSocketAddress primaryAddress = request.remoteAddress;
+                    result = sender.invokeHedged(request.proxy, request.method, request.args, delay, () -> {
+                        RpcClient.Sender hedgeSender = chooseOtherSender(request, primaryAddress);
+                        return hedgeSender != null && retryBudget.tryWithdraw() ? hedgeSender : null;
+                    });
+                } else {
+                    result = sender.invoke(request.proxy, request.method, request.args);
+                }
+                if (latencyWindow != null) {
+                    latencyWindow.add((System.nanoTime() - beginNanos) / 1000000L);
+                }
+                return result;
+            } catch (RpcTimeoutException | RpcConnectException | RpcWriteException e) {
+                if (retry >= retries) {
+                    throw e;
+                }
+                RpcClient.Sender retrySender = chooseOtherSender(request, request.remoteAddress);
+                if (retrySender == null || !retryBudget.tryWithdraw()) {
+                    throw e;
+                }
+                retrySender.setTimeout(request.timeout);
+                request.rpcClient = retrySender.getRpcClient();
+                request.remoteAddress = retrySender.getRpcClient().getRemoteAddress();
+                request.sender = retrySender;
+                sender = retrySender;
+            }
+        }
+    }
+
+    /**
+     * @param request request
+     * @param exclude the address of the first request
+     * @return the sender of other address. null if no other address
+     */
+    private RpcClient.Sender chooseOtherSender(NettyRpcRequest request, InetSocketAddress exclude) {
+        for (int i = 0; i < OTHER_ADDRESS_MAX_PICK; i++) {
+            try {
+                InetSocketAddress address = chooseAddress(request);
+                if (!address.equals(exclude)) {
+                    return getSender(getClient(address));
+                }
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public NettyRpcRetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
     public List<NettyRpcFilter> getNettyRpcFilterList() {
         List<NettyRpcFilter> nettyRpcFilterList = properties.getApplication().getBeanForType(NettyRpcFilter.class);
         nettyRpcFilterList.sort(AnnotationAwareOrderComparator.INSTANCE);
@@ -194,31 +316,61 @@ public class NettyRpcClientProxy implements InvocationHandler {
     }
 
     /**
-     * Get the RPC client (from the current thread, if not, create it automatically)
+     * Get the RPC client (choose a connection of the address, if not, create it automatically)
      *
      * @param address InetSocketAddress
      * @return RpcClient
      */
     public RpcClient getClient(InetSocketAddress address) {
-        RpcClient rpcClient = CLIENT_MAP.get(address);
-        if (rpcClient == null) {
-            synchronized (CLIENT_MAP) {
-                rpcClient = CLIENT_MAP.get(address);
-                if (rpcClient == null) {
+        return getClientPool(address).choose();
+    }
+
+    /**
+     * Get the connection pool of the address (if not, create it automatically)
+     *
+     * @param address InetSocketAddress
+     * @return RpcClientPool
+     */
+    public RpcClientPool getClientPool(InetSocketAddress address) {
+        RpcClientPool clientPool = CLIENT_POOL_MAP.get(address);
+        if (clientPool == null) {
+            synchronized (CLIENT_POOL_MAP) {
+                clientPool = CLIENT_POOL_MAP.get(address);
+                if (clientPool == null) {
                     NettyProperties.Nrpc nrpc = properties.getNrpc();
-                    rpcClient = new RpcClient(address);
-                    rpcClient.getAopList().addAll(properties.getApplication().getBeanForType(RpcClientAop.class));
-                    rpcClient.setIoThreadCount(nrpc.getClientIoThreads());
-                    rpcClient.setIoRatio(nrpc.getClientIoRatio());
-                    rpcClient.setConnectTimeout(nrpc.getClientConnectTimeout());
-                    rpcClient.setIdleTimeMs(nrpc.getClientHeartIntervalTimeMs());
-                    rpcClient.setReconnectScheduledIntervalMs(nrpc.getClientReconnectScheduledIntervalMs());
-                    rpcClient.setEnableRpcHeartLog(nrpc.isClientEnableHeartLog());
-                    rpcClient.setEnableReconnectScheduledTask(nrpc.isClientReconnectScheduledTaskEnable());
-                    CLIENT_MAP.put(address, rpcClient);
+                    clientPool = new RpcClientPool(address, this::newClient);
+                    clientPool.setMinConnections(nrpc.getClientPoolMinConnections());
+                    clientPool.setMaxConnections(nrpc.getClientPoolMaxConnections());
+                    clientPool.setGrowInFlight(nrpc.getClientPoolGrowInFlight());
+                    clientPool.setShrinkIdleMs(nrpc.getClientPoolShrinkIdleMs());
+                    clientPool.setSelect(nrpc.getClientPoolSelect());
+                    clientPool.getStats().setConsecutiveFailures(nrpc.getClientOutlierConsecutiveFailures());
+                    clientPool.getStats().setEjectionMs(nrpc.getClientOutlierEjectionMs());
+                    clientPool.getStats().setDecayMs(nrpc.getClientLatencyDecayMs());
+                    CLIENT_POOL_MAP.put(address, clientPool);
                 }
             }
         }
+        return clientPool;
+    }
+
+    protected RpcClient newClient(InetSocketAddress address) {
+        NettyProperties.Nrpc nrpc = properties.getNrpc();
+        RpcClient rpcClient = new RpcClient(address);
+        rpcClient.getAopList().addAll(properties.getApplication().getBeanForType(RpcClientAop.class));
+        rpcClient.setIoThreadCount(nrpc.getClientIoThreads());
+        rpcClient.setIoRatio(nrpc.getClientIoRatio());
+        rpcClient.setConnectTimeout(nrpc.getClientConnectTimeout());
+        rpcClient.setIdleTimeMs(nrpc.getClientHeartIntervalTimeMs());
+        rpcClient.setReconnectScheduledIntervalMs(nrpc.getClientReconnectScheduledIntervalMs());
+        rpcClient.setEnableRpcHeartLog(nrpc.isClientEnableHeartLog());
+        rpcClient.setEnableReconnectScheduledTask(nrpc.isClientReconnectScheduledTaskEnable());
+        rpcClient.setEnableSymbolId(nrpc.isClientEnableSymbolId());
+        rpcClient.setEnableWriteBatch(nrpc.isClientEnableWriteBatch());
+        rpcClient.setWriteBatchMaxPackets(nrpc.getWriteBatchMaxPackets());
+        rpcClient.setWriteBatchMaxBytes(nrpc.getWriteBatchMaxBytes());
+        rpcClient.setChunkCreditWindow(nrpc.getClientChunkCreditWindow());
+        rpcClient.setCache(CLIENT_CACHE);
         return rpcClient;
     }
 
@@ -282,6 +434,40 @@ public class NettyRpcClientProxy implements InvocationHandler {
                 '}';
     }
 
+    /**
+     * the percentile of the last {@link #SIZE} latencies. (sort per {@link #SORT_INTERVAL} samples)
+     */
+    private static class LatencyWindow {
+        private static final int SIZE = 128;
+        private static final int SORT_INTERVAL = 32;
+        private final long[] samples = new long[SIZE];
+        private final AtomicInteger count = new AtomicInteger();
+        private final int percentile;
+        /**
+         * -1 = not enough samples, no hedge
+         */
+        private volatile long percentileMillis = -1;
+
+        LatencyWindow(int percentile) {
+            this.percentile = Math.max(1, Math.min(100, percentile));
+        }
+
+        void add(long latencyMillis) {
+            int index = count.getAndIncrement() & Integer.MAX_VALUE;
+            samples[index & (SIZE - 1)] = latencyMillis;
+            if ((index + 1) % SORT_INTERVAL == 0) {
+                int size = Math.min(index + 1, SIZE);
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                percentileMillis = sorted[Math.min(size - 1, size * percentile / 100)];
+            }
+        }
+
+        long getPercentileMillis() {
+            return percentileMillis;
+        }
+    }
+
     private static class NettyRpcFilterChain implements NettyRpcFilter.FilterChain, Recyclable {
         private List<NettyRpcFilter> nettyRpcFilterList;
         private int count = 0;
@@ -390,7 +576,12 @@ public class NettyRpcClientProxy implements InvocationHandler {
 
         @Override
         public Map<InetSocketAddress, RpcClient> getClientMap() {
-            return CLIENT_MAP;
+            return NettyRpcClientProxy.getClientMap();
+        }
+
+        @Override
+        public Map<InetSocketAddress, RpcClientPool> getClientPoolMap() {
+            return CLIENT_POOL_MAP;
         }
 
         @Override
@@ -438,7 +629,7 @@ public class NettyRpcClientProxy implements InvocationHandler {
             if (responseGetFlag.compareAndSet(false, true)) {
                 sender.setTimeout(timeout);
                 try {
-                    response = sender.invoke(getProxy(), getMethod(), getArgs());
+                    response = clientProxy.invokeSender(this);
                 } catch (Throwable t) {
                     throwable = t;
                     throw t;
@@ -4,6 +4,8 @@ import java.net.InetSocketAddress;
 
 /**
  * Load balancing
+ * the built-in balancing of the address list: {@link P2CNettyRpcLoadBalanced}, {@link PeakEwmaNettyRpcLoadBalanced},
+ * {@link ConsistentHashNettyRpcLoadBalanced}
  *
  * @author wangzihao
  */
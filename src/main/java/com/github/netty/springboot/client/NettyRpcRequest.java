@@ -2,10 +2,12 @@ package com.github.netty.springboot.client;
 
 import com.github.netty.core.util.ApplicationX;
 import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcClientPool;
 import com.github.netty.springboot.NettyProperties;
 
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.Map;
 import java.util.function.Supplier;
 
@@ -87,12 +89,21 @@ public interface NettyRpcRequest {
     ApplicationX getApplication();
 
     /**
-     * address mapping client instance
+     * address mapping client instance (the first connection of the pool)
      *
      * @return clients
      */
     Map<InetSocketAddress, RpcClient> getClientMap();
 
+    /**
+     * address mapping the connection pool. default empty (the custom request before the connection pool)
+     *
+     * @return client pools
+     */
+    default Map<InetSocketAddress, RpcClientPool> getClientPoolMap() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Get interface class
      *
@@ -0,0 +1,109 @@
+package com.github.netty.springboot.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket of the retry and the hedged request. the extra requests are limited to {@link #ratio} of the requests.
+ * each request deposit ratio token, each retry (or hedge) withdraw 1 token.
+ * {@link #minPerSecond} retries are always allowed per second. (the low traffic service can also retry)
+ * so the retry never amplify the load of the slow or down server.
+ *
+ * @author wangzihao
+ */
+public class NettyRpcRetryBudget {
+    /**
+     * 1 token = 1000 units
+     */
+    private static final long UNIT = 1000L;
+    private final AtomicLong tokens = new AtomicLong();
+    private final long depositUnits;
+    private final long maxUnits;
+    private final int minPerSecond;
+    private long reserveSecond;
+    private int reserveCount;
+    private final LongAdder totalRetryCount = new LongAdder();
+    private final LongAdder totalRejectCount = new LongAdder();
+
+    /**
+     * @param ratio        deposit per request. (0.1 = retry 10% of the requests)
+     * @param minPerSecond always allowed retries per second
+     */
+    public NettyRpcRetryBudget(double ratio, int minPerSecond) {
+        this.depositUnits = Math.max(0L, Math.round(ratio * UNIT));
+        // burst = 10 seconds of the minimum, at least 100 tokens
+        this.maxUnits = Math.max(100L, minPerSecond * 10L) * UNIT;
+        this.minPerSecond = Math.max(0, minPerSecond);
+    }
+
+    /**
+     * a request. (not the retry)
+     */
+    public void deposit() {
+        long depositUnits = this.depositUnits;
+        if (depositUnits == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxUnits) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxUnits, current + depositUnits)));
+    }
+
+    /**
+     * @return true = can retry (or hedge)
+     */
+    public boolean tryWithdraw() {
+        long current;
+        while ((current = tokens.get()) >= UNIT) {
+            if (tokens.compareAndSet(current, current - UNIT)) {
+                totalRetryCount.increment();
+                return true;
+            }
+        }
+        if (tryReserve()) {
+            totalRetryCount.increment();
+            return true;
+        }
+        totalRejectCount.increment();
+        return false;
+    }
+
+    private synchronized boolean tryReserve() {
+        long second = System.currentTimeMillis() / 1000L;
+        if (second != reserveSecond) {
+            reserveSecond = second;
+            reserveCount = 0;
+        }
+        if (reserveCount < minPerSecond) {
+            reserveCount++;
+            return true;
+        }
+        return false;
+    }
+
+    public double getTokens() {
+        return (double) tokens.get() / UNIT;
+    }
+
+    public long getTotalRetryCount() {
+        return totalRetryCount.sum();
+    }
+
+    public long getTotalRejectCount() {
+        return totalRejectCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "NettyRpcRetryBudget{" +
+                "tokens=" + getTokens() +
+                ", minPerSecond=" + minPerSecond +
+                ", totalRetryCount=" + totalRetryCount +
+                ", totalRejectCount=" + totalRejectCount +
+                '}';
+    }
+}
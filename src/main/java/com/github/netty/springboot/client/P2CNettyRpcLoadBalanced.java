@@ -0,0 +1,60 @@
+package com.github.netty.springboot.client;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices. pick two random addresses, use the lower cost one. (cost = in-flight requests)
+ * no global scan, no herd to the single best address.
+ *
+ * @author wangzihao
+ */
+public abstract class P2CNettyRpcLoadBalanced extends AbstractNettyRpcLoadBalanced {
+    /**
+     * pick again if the both are ejected
+     */
+    private static final int MAX_PICK = 3;
+
+    @Override
+    protected InetSocketAddress choose(NettyRpcRequest request, List<InetSocketAddress> addressList) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = addressList.size();
+        InetSocketAddress a = null;
+        InetSocketAddress b = null;
+        for (int i = 0; i < MAX_PICK; i++) {
+            int indexA = random.nextInt(size);
+            int indexB = random.nextInt(size - 1);
+            if (indexB >= indexA) {
+                indexB++;
+            }
+            a = addressList.get(indexA);
+            b = addressList.get(indexB);
+            boolean ejectedA = isEjected(request, a);
+            boolean ejectedB = isEjected(request, b);
+            if (ejectedA && !ejectedB) {
+                return b;
+            } else if (ejectedB && !ejectedA) {
+                return a;
+            } else if (!ejectedA) {
+                return cost(request, a) <= cost(request, b) ? a : b;
+            }
+        }
+        for (InetSocketAddress address : addressList) {
+            if (!isEjected(request, address)) {
+                return address;
+            }
+        }
+        // all ejected
+        return cost(request, a) <= cost(request, b) ? a : b;
+    }
+
+    /**
+     * @param request request
+     * @param address address
+     * @return the lower is the better
+     */
+    protected double cost(NettyRpcRequest request, InetSocketAddress address) {
+        return getInFlightCount(request, address);
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.netty.springboot.client;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Power of two choices on peak EWMA latency. (cost = latency * (in-flight requests + 1))
+ * a slow address is avoided after one slow response, and come back when the latency decay.
+ *
+ * @author wangzihao
+ * @see com.github.netty.protocol.nrpc.RpcClientStats
+ */
+public abstract class PeakEwmaNettyRpcLoadBalanced extends P2CNettyRpcLoadBalanced {
+
+    @Override
+    protected double cost(NettyRpcRequest request, InetSocketAddress address) {
+        // +1ms. the address of no response yet is ranked by the in-flight
+        return (getLatencyMillis(request, address) + 1D) * (getInFlightCount(request, address) + 1);
+    }
+}
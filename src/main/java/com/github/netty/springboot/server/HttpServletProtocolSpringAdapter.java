@@ -91,6 +91,7 @@ public class HttpServletProtocolSpringAdapter extends HttpServletProtocol {
         servletContext.setServerAddress(address);
         servletContext.setEnableUrlServletAntPathMatcher(httpServlet.isEnableUrlServletAntPathMatcher());
         servletContext.setEnableUrlFilterAntPathMatcher(httpServlet.isEnableUrlFilterAntPathMatcher());
+        servletContext.setDispatchCacheSize(httpServlet.getDispatchCacheSize());
         servletContext.setMapperContextRootRedirectEnabled(httpServlet.isMapperContextRootRedirectEnabled());
         servletContext.setUseRelativeRedirects(httpServlet.isUseRelativeRedirects());
         servletContext.setEnableLookupFlag(httpServlet.isEnableNsLookup());
@@ -103,6 +104,8 @@ public class HttpServletProtocolSpringAdapter extends HttpServletProtocol {
         servletContext.getErrorPageManager().setShowErrorMessage(httpServlet.isShowExceptionMessage());
         //Session timeout
         servletContext.setSessionTimeout((int) webServerFactory.getSession().getTimeout().getSeconds());
+        servletContext.setSessionSaveMode(httpServlet.getSessionSaveMode());
+        servletContext.setSessionWriteBehindIntervalMillis(httpServlet.getSessionWriteBehindIntervalMillis());
         servletContext.setSessionService(newSessionService(properties, servletContext));
         for (MimeMappings.Mapping mapping : webServerFactory.getMimeMappings()) {
             servletContext.getMimeMappings().add(mapping.getExtension(), mapping.getMimeType());
@@ -186,11 +189,16 @@ public class HttpServletProtocolSpringAdapter extends HttpServletProtocol {
                     1,
                     properties.getNrpc().isClientEnableHeartLog(),
                     properties.getNrpc().getClientHeartIntervalTimeMs(),
-                    properties.getNrpc().getClientReconnectScheduledIntervalMs());
+                    properties.getNrpc().getClientReconnectScheduledIntervalMs(),
+                    httpServlet.getSessionRemoteClientPoolSize());
             sessionService = compositeSessionService;
         } else if (httpServlet.isEnablesLocalFileSession()) {
             //Enable session file storage
-            sessionService = new SessionLocalFileServiceImpl(servletContext.getResourceManager(), servletContext);
+            if (httpServlet.isEnablesLocalFileSessionLog()) {
+                sessionService = new SessionLocalLogFileServiceImpl(servletContext.getResourceManager(), servletContext);
+            } else {
+                sessionService = new SessionLocalFileServiceImpl(servletContext.getResourceManager(), servletContext);
+            }
         } else {
             sessionService = new SessionLocalMemoryServiceImpl(servletContext);
         }
@@ -31,6 +31,7 @@ import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.ResourceLoader;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -129,6 +130,31 @@ public class NettyEmbeddedAutoConfiguration {
         protocol.setMessageMaxLength(nettyProperties.getNrpc().getServerMessageMaxLength());
         protocol.setMethodOverwriteCheck(nettyProperties.getNrpc().isServerMethodOverwriteCheck());
         protocol.setServerDefaultVersion(nettyProperties.getNrpc().getServerDefaultVersion());
+        protocol.setEnableSymbolId(nettyProperties.getNrpc().isServerEnableSymbolId());
+        protocol.setEnableWriteBatch(nettyProperties.getNrpc().isServerEnableWriteBatch());
+        protocol.setWriteBatchMaxPackets(nettyProperties.getNrpc().getWriteBatchMaxPackets());
+        protocol.setWriteBatchMaxBytes(nettyProperties.getNrpc().getWriteBatchMaxBytes());
+        protocol.setEventLoopAsyncMethod(nettyProperties.getNrpc().isServerEventLoopAsyncMethod());
+        protocol.setEventLoopBlockedWarnMillis(nettyProperties.getNrpc().getServerEventLoopBlockedWarnMillis());
+        String dbDataDir = nettyProperties.getNrpc().getServerDbDataDir();
+        if (dbDataDir != null && !dbDataDir.isEmpty()) {
+            protocol.setDbDataDir(new File(dbDataDir));
+        }
+        protocol.setDbShards(nettyProperties.getNrpc().getServerDbShards());
+        protocol.setDbFsyncPolicy(nettyProperties.getNrpc().getServerDbFsync());
+        protocol.setDbFsyncIntervalMs(nettyProperties.getNrpc().getServerDbFsyncIntervalMs());
+        protocol.setDbSnapshotIntervalMs(nettyProperties.getNrpc().getServerDbSnapshotIntervalMs());
+        protocol.setDbOffHeapMaxBytes(nettyProperties.getNrpc().getServerDbOffHeapMaxBytes());
+        String dbOffHeapMappedDir = nettyProperties.getNrpc().getServerDbOffHeapMappedDir();
+        if (dbOffHeapMappedDir != null && !dbOffHeapMappedDir.isEmpty()) {
+            protocol.setDbOffHeapMappedDir(new File(dbOffHeapMappedDir));
+        }
+        protocol.setDbReplicationBacklogBytes(nettyProperties.getNrpc().getServerDbReplicationBacklogBytes());
+        String dbReplicaOf = nettyProperties.getNrpc().getServerDbReplicaOf();
+        if (dbReplicaOf != null && !dbReplicaOf.isEmpty()) {
+            String[] addressArr = dbReplicaOf.split(":");
+            protocol.setDbReplicaOf(new InetSocketAddress(addressArr[0], Integer.parseInt(addressArr[1])));
+        }
         protocol.setExecutorSupplier(newExecutorSupplier(nettyProperties.getNrpc().getThreadPool(), factory));
         return protocol;
     }
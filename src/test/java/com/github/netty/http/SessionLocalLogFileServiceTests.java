@@ -0,0 +1,189 @@
+package com.github.netty.http;
+
+import com.github.netty.core.util.ResourceManager;
+import com.github.netty.protocol.servlet.Session;
+import com.github.netty.protocol.servlet.SessionLocalLogFileServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * log-structured local file session service
+ * the compaction, the changeSessionId, and the restart with a truncated tail segment
+ */
+public class SessionLocalLogFileServiceTests {
+    @TempDir
+    File dir;
+    private SessionLocalLogFileServiceImpl service;
+
+    @AfterEach
+    public void close() {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    private SessionLocalLogFileServiceImpl restart() {
+        if (service != null) {
+            service.close();
+        }
+        service = new SessionLocalLogFileServiceImpl(new ResourceManager(dir.getAbsolutePath()), null);
+        return service;
+    }
+
+    private static Session newSession(String id, String value) {
+        Session session = new Session(id, 3600);
+        Map<String, Object> attributeMap = new HashMap<>();
+        attributeMap.put("value", value);
+        session.setAttributeMap(attributeMap);
+        return session;
+    }
+
+    private static String value(Session session) {
+        return session == null ? null : (String) session.getAttributeMap().get("value");
+    }
+
+    private File[] segmentFiles() {
+        File[] files = service.getDir().listFiles((d, name) -> name.endsWith(".seg"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * @return the bytes of the record of the session
+     */
+    private long recordLength() {
+        restart();
+        service.saveSession(newSession("len", "0"));
+        service.flush();
+        long length = segmentFiles()[0].length();
+        service.removeSession("len");
+        service.close();
+        for (File file : segmentFiles()) {
+            Assert.isTrue(file.delete(), "delete " + file);
+        }
+        service = null;
+        return length;
+    }
+
+    @Test
+    public void compact() {
+        long recordLength = recordLength();
+        restart().setSegmentMaxBytes(recordLength * 6);
+        service.setCompactGarbageRatio(0.5D);
+
+        // segment 1. a1..a5 and x. (x is garbage after the remove, 1/6 garbage)
+        for (int i = 1; i <= 5; i++) {
+            service.saveSession(newSession("a" + i, "a" + i));
+        }
+        service.saveSession(newSession("x", "x"));
+        // segment 2. remove x, z * 4 (3 garbage) and w1
+        service.removeSession("x");
+        for (int i = 1; i <= 4; i++) {
+            service.saveSession(newSession("z", "z" + i));
+        }
+        service.saveSession(newSession("w1", "w1"));
+        // segment 3. the active segment
+        service.saveSession(newSession("w2", "w2"));
+        Assert.isTrue(service.getSegmentCount() == 3, "segments " + service.getSegmentCount());
+
+        service.compact();
+        File[] files = segmentFiles();
+        Assert.isTrue(files.length == 2 && files[0].getName().endsWith("1.seg"), "compact segment 2 only " + Arrays.toString(files));
+        Assert.isTrue("z4".equals(value(service.getSession("z"))) && "w1".equals(value(service.getSession("w1"))), "live records copied");
+        Assert.isNull(service.getSession("x"), "removed");
+        Assert.isTrue(service.count() == 8, "count " + service.count());
+
+        // the remove record of x is copied. the put record of x in the segment 1 is not replayed
+        restart();
+        Assert.isNull(service.getSession("x"), "removed after restart");
+        Assert.isTrue(service.count() == 8, "count after restart " + service.count());
+        for (int i = 1; i <= 5; i++) {
+            Assert.isTrue(("a" + i).equals(value(service.getSession("a" + i))), "a" + i);
+        }
+        Assert.isTrue("z4".equals(value(service.getSession("z"))), "latest z");
+        Assert.isTrue("w1".equals(value(service.getSession("w1"))) && "w2".equals(value(service.getSession("w2"))), "w");
+
+        // all sealed segments are garbage, they are deleted. the remove records are not required any more
+        for (int i = 1; i <= 5; i++) {
+            service.removeSession("a" + i);
+        }
+        service.removeSession("z");
+        service.removeSession("w1");
+        service.removeSession("w2");
+        service.setCompactGarbageRatio(0D);
+        service.compact();
+        service.compact();
+        Assert.isTrue(service.count() == 0, "empty");
+        restart();
+        Assert.isTrue(service.count() == 0, "empty after restart");
+    }
+
+    @Test
+    public void changeSessionId() {
+        restart();
+        service.saveSession(newSession("old", "v"));
+        service.saveSession(newSession("other", "o"));
+        service.changeSessionId("old", "new");
+        Assert.isNull(service.getSession("old"), "old id");
+        Session session = service.getSession("new");
+        Assert.isTrue(session != null && "new".equals(session.getId()) && "v".equals(value(session)), "new id");
+        Assert.isTrue(service.count() == 2, "count");
+
+        // the unknown id
+        service.changeSessionId("unknown", "new2");
+        Assert.isNull(service.getSession("new2"), "unknown id");
+
+        restart();
+        Assert.isNull(service.getSession("old"), "old id after restart");
+        session = service.getSession("new");
+        Assert.isTrue(session != null && "new".equals(session.getId()) && "v".equals(value(session)), "new id after restart");
+        Assert.isTrue("o".equals(value(service.getSession("other"))) && service.count() == 2, "other after restart");
+    }
+
+    @Test
+    public void truncatedTail() throws IOException {
+        restart();
+        service.saveSession(newSession("a", "a"));
+        service.flush();
+        long validLength = segmentFiles()[0].length();
+        service.saveSession(newSession("b", "b"));
+        service.close();
+
+        // crash when writing the record of b
+        File segment = segmentFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        restart();
+        Assert.isTrue("a".equals(value(service.getSession("a"))), "a");
+        Assert.isNull(service.getSession("b"), "torn b");
+        Assert.isTrue(service.count() == 1 && segment.length() == validLength, "truncate the tail");
+
+        // append after the truncated tail
+        service.saveSession(newSession("c", "c"));
+        restart();
+        Assert.isTrue("a".equals(value(service.getSession("a"))) && "c".equals(value(service.getSession("c"))), "a and c");
+        Assert.isTrue(service.count() == 2, "count");
+
+        // the broken crc of the last record
+        service.close();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        restart();
+        Assert.isTrue("a".equals(value(service.getSession("a"))) && service.getSession("c") == null, "broken crc");
+        Assert.isTrue(segment.length() == validLength, "truncate the broken crc");
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.netty.http;
+
+import com.github.netty.core.util.AntPathMatcher;
+import com.github.netty.protocol.servlet.util.FilterMapper;
+import com.github.netty.protocol.servlet.util.ServletUtil;
+import com.github.netty.protocol.servlet.util.UrlMapper;
+import com.github.netty.protocol.servlet.util.UrlPatternIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import javax.servlet.DispatcherType;
+import java.util.*;
+
+/**
+ * url pattern index test
+ * the index against the linear scan of {@link ServletUtil#matchFiltersURL(String, String)} before
+ */
+public class UrlPatternIndexTests {
+    private static final String[] PATTERNS = {
+            // exact
+            "/a", "/a/b", "/a/b/c.do", "/index.html",
+            // prefix
+            "/a/*", "/a/b/*", "/ab/*", "/static/*",
+            // extension
+            "*.do", "*.html", "*.gz", "*.tar.gz",
+            // ant
+            "/api/**/user", "/a/?c", "/users/{id}", "/t/a*", "/**/*.js",
+            // all
+            "/*"
+    };
+    private static final String[] PATHS = {
+            "", "/", "/a", "/a/", "/ab", "/abc", "/a/b", "/a/bc", "/a/b/", "/a/b/c", "/a/b/c.do", "/a/b/c.do/x",
+            "/ab/c", "/x.do", "/x/y.do", "/x.do.bak", "/x.", "/.do", "/index.html", "/static/index.html",
+            "/f.tar.gz", "/f.gz", "/api/user", "/api/v1/v2/user", "/api/v1/user/x", "/a/xc", "/a/c",
+            "/users/1", "/users/1/2", "/t/a", "/t/abc", "/t/a/b", "/js/app.js", "/app.js", "/static/x.js"
+    };
+
+    private static String norm(String pattern) {
+        if (pattern.isEmpty() || "/*".equals(pattern) || "*".equals(pattern) || "/**".equals(pattern)) {
+            return "/*";
+        }
+        return ServletUtil.normPrefixPath(ServletUtil.normSuffixPath(pattern));
+    }
+
+    private static boolean match(String pattern, String path, AntPathMatcher antPathMatcher) {
+        return ServletUtil.matchFiltersURL(pattern, path)
+                || (antPathMatcher != null && antPathMatcher.match(pattern, path, "*"));
+    }
+
+    private static int scanFirst(String[] patterns, String path, AntPathMatcher antPathMatcher) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (match(patterns[i], path, antPathMatcher)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] scanAll(String[] patterns, String path, AntPathMatcher antPathMatcher) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < patterns.length; i++) {
+            if (match(patterns[i], path, antPathMatcher)) {
+                list.add(i);
+            }
+        }
+        int[] positions = new int[list.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = list.get(i);
+        }
+        return positions;
+    }
+
+    private static List<String[]> patternOrders() {
+        List<String[]> orders = new ArrayList<>();
+        List<String> patterns = new ArrayList<>(Arrays.asList(PATTERNS));
+        orders.add(patterns.toArray(new String[0]));
+        // without the all pattern, the no match case
+        orders.add(patterns.subList(0, patterns.size() - 1).toArray(new String[0]));
+        // duplicate patterns
+        List<String> duplicate = new ArrayList<>(patterns);
+        duplicate.addAll(Arrays.asList("/a/*", "*.do", "/a"));
+        orders.add(duplicate.toArray(new String[0]));
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            Collections.shuffle(patterns, random);
+            orders.add(patterns.toArray(new String[0]));
+        }
+        return orders;
+    }
+
+    @Test
+    public void index() {
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        for (String[] patterns : patternOrders()) {
+            UrlPatternIndex index = new UrlPatternIndex(patterns);
+            for (String path : PATHS) {
+                for (AntPathMatcher matcher : new AntPathMatcher[]{null, antPathMatcher}) {
+                    String message = Arrays.toString(patterns) + " path = " + path + ", ant = " + (matcher != null);
+                    Assert.isTrue(index.first(path, matcher) == scanFirst(patterns, path, matcher), "first " + message);
+                    Assert.isTrue(Arrays.equals(index.all(path, matcher), scanAll(patterns, path, matcher)), "all " + message);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void filterMapper() {
+        String[] patterns = {"/a/*", "*.do", "/a/b", "/api/**/user", "/", "/*", "/static/*", "*.html", "/users/{id}"};
+        for (boolean ant : new boolean[]{false, true}) {
+            FilterMapper<Object> filterMapper = new FilterMapper<>();
+            filterMapper.setEnableAntPathMatcher(ant);
+            String[] normPatterns = new String[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                filterMapper.addMapping(patterns[i], "", "filter" + i, true, EnumSet.of(DispatcherType.REQUEST));
+                normPatterns[i] = norm(patterns[i]);
+            }
+            AntPathMatcher antPathMatcher = ant ? new AntPathMatcher() : null;
+            for (String path : PATHS) {
+                List<FilterMapper.Element<Object>> list = new ArrayList<>();
+                filterMapper.addMappingObjects(path, DispatcherType.REQUEST, list);
+                List<String> names = new ArrayList<>();
+                for (FilterMapper.Element<Object> element : list) {
+                    names.add(element.getObjectName());
+                }
+                List<String> scanNames = new ArrayList<>();
+                for (int position : scanAll(normPatterns, path, antPathMatcher)) {
+                    scanNames.add("filter" + position);
+                }
+                Assert.isTrue(names.equals(scanNames), "path = " + path + ", ant = " + ant + ", " + names + " != " + scanNames);
+
+                // the other dispatcher type
+                list.clear();
+                filterMapper.addMappingObjects(path, DispatcherType.FORWARD, list);
+                Assert.isTrue(list.isEmpty(), "dispatcher type");
+            }
+        }
+    }
+
+    @Test
+    public void urlMapper() {
+        UrlMapper<Object> urlMapper = new UrlMapper<>();
+        urlMapper.addMapping("/", "", "default");
+        urlMapper.addMapping("/a", "", "exact");
+        urlMapper.addMapping("/a/b/*", "", "prefix2");
+        urlMapper.addMapping("/a/*", "", "prefix");
+        urlMapper.addMapping("*.do", "", "extension");
+        urlMapper.addMapping("/api/**/user", "", "ant");
+        String[][] cases = {
+                // path, servlet, servlet with ant
+                {"/a", "exact", "exact"},
+                {"/a/", "prefix", "prefix"},
+                {"/a/x", "prefix", "prefix"},
+                {"/a/b", "prefix2", "prefix2"},
+                {"/a/b/c.do", "prefix2", "prefix2"},
+                {"/ab", "default", "default"},
+                {"/x.do", "extension", "extension"},
+                {"/x/y.do", "extension", "extension"},
+                {"/x.dox", "default", "default"},
+                {"/api/v1/user", "default", "ant"},
+                {"/api/v1/user.do", "extension", "extension"},
+                {"/", "default", "default"},
+                {"/other", "default", "default"}
+        };
+        for (String[] c : cases) {
+            urlMapper.setEnableAntPathMatcher(false);
+            Assert.isTrue(c[1].equals(urlMapper.getMappingObjectByServletPath(c[0]).getObjectName()), "path = " + c[0]);
+            urlMapper.setEnableAntPathMatcher(true);
+            Assert.isTrue(c[2].equals(urlMapper.getMappingObjectByServletPath(c[0]).getObjectName()), "ant path = " + c[0]);
+        }
+
+        // the index is rebuilt after the mapping change
+        int modCount = urlMapper.getModCount();
+        urlMapper.addMapping("/other", "", "other");
+        Assert.isTrue(urlMapper.getModCount() != modCount, "modCount");
+        Assert.isTrue("other".equals(urlMapper.getMappingObjectByServletPath("/other").getObjectName()), "rebuild");
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.netty.javaxservlet;
+
+import com.github.netty.protocol.servlet.util.ByteBufCharsetEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ServletPrintWriter encode benchmark. (template engine style, many small writes)
+ * <p>
+ * stringBytes    = the old ServletPrintWriter. String → byte[] → ioBuffer for each write.
+ * byteBufEncoder = the current ServletPrintWriter. encode chars into the pooled response buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServletPrintWriterBenchmark {
+    private static final String[] FRAGMENTS = {
+            "<tr class=\"row\">", "<td>", "wangzihao", "</td>", "<td>", "spring-boot-protocol 你好", "</td>",
+            "<td>", "42", "</td>", "<td>", "Lorem ipsum dolor sit amet, consectetur adipiscing elit", "</td>", "</tr>\n"
+    };
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    @Param({"UTF-8", "ISO-8859-1", "GBK"})
+    private String charsetName;
+    private Charset charset;
+    private ByteBufCharsetEncoder encoder;
+    private char[] chars;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ServletPrintWriterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        charset = Charset.forName(charsetName);
+        encoder = new ByteBufCharsetEncoder(charset);
+        chars = String.join("", FRAGMENTS).toCharArray();
+    }
+
+    @Benchmark
+    public void stringBytes(Blackhole blackhole) {
+        for (int i = 0; i < 20; i++) {
+            for (String fragment : FRAGMENTS) {
+                // write(String)
+                byte[] bytes = fragment.getBytes(charset);
+                ByteBuf buf = allocator.ioBuffer(bytes.length);
+                buf.writeBytes(bytes);
+                blackhole.consume(buf);
+                buf.release();
+            }
+            // write(char[], off, len)
+            byte[] bytes = String.valueOf(chars, 0, chars.length).getBytes(charset);
+            ByteBuf buf = allocator.ioBuffer(bytes.length);
+            buf.writeBytes(bytes);
+            blackhole.consume(buf);
+            buf.release();
+        }
+    }
+
+    @Benchmark
+    public void byteBufEncoder(Blackhole blackhole) {
+        ByteBuf buffer = allocator.ioBuffer(8192);
+        for (int i = 0; i < 20; i++) {
+            for (String fragment : FRAGMENTS) {
+                // write(String)
+                buffer.ensureWritable(encoder.maxBytes(fragment.length()));
+                encoder.encode(fragment, 0, fragment.length(), buffer);
+            }
+            // write(char[], off, len)
+            for (int off = 0; off < chars.length; ) {
+                int end = ByteBufCharsetEncoder.chunkEnd(chars, off, chars.length);
+                buffer.ensureWritable(encoder.maxBytes(end - off));
+                encoder.encode(chars, off, end, buffer);
+                off = end;
+            }
+        }
+        blackhole.consume(buffer);
+        buffer.release();
+    }
+}
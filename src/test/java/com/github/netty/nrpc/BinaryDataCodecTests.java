@@ -0,0 +1,221 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcMethod;
+import com.github.netty.protocol.nrpc.RpcServerInstance;
+import com.github.netty.protocol.nrpc.codec.BinaryDataCodec;
+import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * binary codec test
+ * the client method and the server method are different versions of the same method. (schema evolution)
+ */
+public class BinaryDataCodecTests {
+    private final BinaryDataCodec codec = new BinaryDataCodec();
+
+    static {
+        BinaryDataCodec.addTypedAllowList(Dog.class.getName());
+    }
+
+    private static <T> RpcMethod<T> method(Class<?> source, String name) {
+        Map<String, RpcMethod<T>> methodMap = RpcMethod.getMethodMap(source);
+        return methodMap.get(name);
+    }
+
+    private Object[] call(Class<?> clientSource, Class<?> serverSource, String name, Object... args) {
+        RpcMethod<RpcClient> clientMethod = method(clientSource, name);
+        RpcMethod<RpcServerInstance> serverMethod = method(serverSource, name);
+        return codec.decodeRequestData(codec.encodeRequestData(args, clientMethod), serverMethod);
+    }
+
+    private Object reply(Class<?> serverSource, Class<?> clientSource, String name, Object result) {
+        RpcMethod<RpcServerInstance> serverMethod = method(serverSource, name);
+        RpcMethod<RpcClient> clientMethod = method(clientSource, name);
+        return codec.decodeResponseData(codec.encodeResponseData(result, serverMethod), clientMethod);
+    }
+
+    @Test
+    public void addedFieldAndParameter() {
+        UserV2 user = new UserV2();
+        user.name = "wang";
+        user.age = 10;
+        user.tags = Arrays.asList("a", "b");
+        user.email = "wang@github.com";
+        user.level = 3;
+
+        // new client, old server. the new field and the new parameter are skipped
+        Object[] args = call(ServiceV2.class, ServiceV1.class, "save", user, 7, "added");
+        Assert.isTrue(args.length == 2, "parameter count");
+        UserV1 serverUser = (UserV1) args[0];
+        Assert.isTrue("wang".equals(serverUser.name) && serverUser.age == 10, "old fields");
+        Assert.isTrue(Arrays.asList("a", "b").equals(serverUser.tags), "old list field");
+        Assert.isTrue(Integer.valueOf(7).equals(args[1]), "old parameter");
+    }
+
+    @Test
+    public void removedField() {
+        UserV1 user = new UserV1();
+        user.name = "wang";
+        user.age = 10;
+
+        // old server, new client. the field not in the writer reads null or zero
+        UserV2 clientUser = (UserV2) reply(ServiceV1.class, ServiceV2.class, "save", user);
+        Assert.isTrue("wang".equals(clientUser.name) && clientUser.age == 10, "old fields");
+        Assert.isNull(clientUser.email, "added object field");
+        Assert.isTrue(clientUser.level == 0, "added int field");
+
+        // old client, new server. the parameter not in the writer reads null or zero
+        Object[] args = call(ServiceV1.class, ServiceV2.class, "save", user, 7);
+        Assert.isTrue(args.length == 3, "parameter count");
+        Assert.isNull(args[2], "added parameter");
+    }
+
+    @Test
+    public void nullValues() {
+        UserV1 user = new UserV1();
+        user.tags = Arrays.asList("a", null);
+
+        Object[] args = call(ServiceV1.class, ServiceV1.class, "save", null, 7);
+        Assert.isNull(args[0], "null argument");
+
+        args = call(ServiceV1.class, ServiceV1.class, "save", user, 7);
+        UserV1 serverUser = (UserV1) args[0];
+        Assert.isNull(serverUser.name, "null field");
+        Assert.isTrue(Arrays.asList("a", null).equals(serverUser.tags), "null element");
+
+        Assert.isNull(reply(ServiceV1.class, ServiceV1.class, "save", null), "null result");
+    }
+
+    @Test
+    public void polymorphicValues() {
+        Dog dog = new Dog();
+        dog.name = "dog";
+        dog.bark = true;
+
+        // the interface declared type
+        Animal animal = (Animal) reply(Zoo.class, Zoo.class, "feed", dog);
+        Assert.isTrue(animal instanceof Dog && ((Dog) animal).bark && "dog".equals(animal.getName()), "sub class");
+
+        // the element of the interface
+        Cat cat = new Cat();
+        cat.name = "cat";
+        Object[] args = call(Zoo.class, Zoo.class, "feedAll", Arrays.asList(dog, cat));
+        List<?> animals = (List<?>) args[0];
+        Assert.isTrue(animals.get(0) instanceof Dog && animals.get(1) instanceof Cat, "sub class element");
+
+        // the Object declared type. jdk class and the allow list
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("dog", dog);
+        map.put("date", new Date(1000));
+        map.put("set", new TreeSet<>(Arrays.asList("b", "a")));
+        Map<?, ?> result = (Map<?, ?>) reply(Zoo.class, Zoo.class, "any", map);
+        Assert.isTrue(result.get("dog") instanceof Dog, "allowed class in Object");
+        Assert.isTrue(new Date(1000).equals(result.get("date")), "jdk class in Object");
+        Assert.isTrue(result.get("set") instanceof TreeSet, "jdk collection in Object");
+    }
+
+    @Test
+    public void rejectNotSubClass() {
+        Cat cat = new Cat();
+        cat.name = "cat";
+        byte[] data = codec.encodeChunkResponseData(new NotAnimal());
+        Assertions.assertThrows(RpcDecodeException.class, () -> codec.decodeChunkResponseData(data, Animal.class));
+        Assert.isTrue(codec.decodeChunkResponseData(codec.encodeChunkResponseData(cat), Animal.class) instanceof Cat, "sub class");
+    }
+
+    @Test
+    public void rejectNotAllowedClass() {
+        byte[] data = codec.encodeChunkResponseData(new Evil());
+        int newCount = Evil.NEW_COUNT.get();
+        Assertions.assertThrows(RpcDecodeException.class, () -> codec.decodeChunkResponseData(data, Object.class));
+        Assertions.assertThrows(RpcDecodeException.class, () -> codec.decodeChunkResponseData(
+                codec.encodeChunkResponseData(new Evil[]{new Evil()}), Object.class));
+        Assert.isTrue(Evil.NEW_COUNT.get() == newCount + 1, "not instantiated by the reader");
+
+        // in the Object element
+        RpcMethod<RpcServerInstance> serverMethod = method(Zoo.class, "any");
+        RpcMethod<RpcClient> clientMethod = method(Zoo.class, "any");
+        byte[] response = codec.encodeResponseData(Collections.singletonList(new Evil()), serverMethod);
+        Assertions.assertThrows(RpcDecodeException.class, () -> codec.decodeResponseData(response, clientMethod));
+    }
+
+    public interface Animal {
+        String getName();
+    }
+
+    public static class UserV1 {
+        public String name;
+        public int age;
+        public List<String> tags;
+    }
+
+    public static class UserV2 {
+        public String name;
+        public int age;
+        public List<String> tags;
+        public String email;
+        public int level;
+    }
+
+    public static class ServiceV1 {
+        public UserV1 save(UserV1 user, int n) {
+            return user;
+        }
+    }
+
+    public static class ServiceV2 {
+        public UserV2 save(UserV2 user, int n, String added) {
+            return user;
+        }
+    }
+
+    public static class Zoo {
+        public Animal feed(Animal animal) {
+            return animal;
+        }
+
+        public void feedAll(List<Animal> animals) {
+        }
+
+        public Object any(Object value) {
+            return value;
+        }
+    }
+
+    public static class Dog implements Animal {
+        public String name;
+        public boolean bark;
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Cat implements Animal {
+        public String name;
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class NotAnimal {
+        public String name = "not";
+    }
+
+    public static class Evil {
+        static final AtomicInteger NEW_COUNT = new AtomicInteger();
+
+        public Evil() {
+            NEW_COUNT.incrementAndGet();
+        }
+    }
+}
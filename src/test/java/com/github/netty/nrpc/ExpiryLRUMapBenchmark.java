@@ -0,0 +1,235 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.core.util.ExpiryLRUMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * ExpiryLRUMap expiry. the timing wheel against the scanner before.
+ * <p>
+ * engine=skipList    = the ExpiresScan before (copied in {@link SkipListScanner}). the node is added to the global ConcurrentSkipListSet
+ * (sorted by the expiry timestamp), O(log n). every 100ms a thread scans the headSet(now), and one notify thread takes the nodes from a LinkedBlockingQueue
+ * engine=timingWheel = ExpiryLRUMap.TimingWheel. the node is linked to the bucket of the shard, O(1). the expired nodes are delivered in batches
+ * <p>
+ * putRemove = put(timeout) + remove. the schedule and the cancel. pending = the timers already scheduled (not expired in the benchmark)
+ * expire    = put {@link #EXPIRE_COUNT} entries expiring after {@link #EXPIRE_TIMEOUT}ms, until the last expiry callback. score - EXPIRE_TIMEOUT = the delivery latency
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpiryLRUMapBenchmark {
+    private static final long TIMEOUT = 60_000;
+    private static final long EXPIRE_TIMEOUT = 50;
+    private static final int EXPIRE_COUNT = 10_000;
+    @Param({"skipList", "timingWheel"})
+    private String engine;
+    @Param({"0", "100000"})
+    private int pending;
+    private ExpiryLRUMap<String, String> map;
+    private SkipListScanner scanner;
+    private volatile CountDownLatch expiredLatch;
+    private int expireSequence;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExpiryLRUMapBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        map = new ExpiryLRUMap<>();
+        map.setOnExpiryBatchConsumer(list -> {
+            for (int i = 0; i < list.size(); i++) {
+                expired();
+            }
+        });
+        if ("skipList".equals(engine)) {
+            scanner = new SkipListScanner(100, node -> expired());
+        }
+        for (int i = 0; i < pending; i++) {
+            put("pending" + i, TIMEOUT);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (scanner != null) {
+            scanner.close();
+        }
+        map.clear();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object putRemove1Thread(Key key) {
+        return putRemove(key.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object putRemove8Thread(Key key) {
+        return putRemove(key.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void expire() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(EXPIRE_COUNT);
+        expiredLatch = latch;
+        String prefix = "expire" + (expireSequence++) + "-";
+        for (int i = 0; i < EXPIRE_COUNT; i++) {
+            put(prefix + i, EXPIRE_TIMEOUT);
+        }
+        latch.await();
+    }
+
+    private void expired() {
+        CountDownLatch latch = expiredLatch;
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private Object putRemove(String key) {
+        SkipListScanner.Timer timer = put(key, TIMEOUT);
+        String value = map.remove(key);
+        if (timer != null) {
+            scanner.cancel(timer);
+        }
+        return value;
+    }
+
+    private SkipListScanner.Timer put(String key, long timeout) {
+        if (scanner != null) {
+            // the map without the timing wheel, and the timer of the scanner
+            map.put(key, key, -1);
+            return scanner.schedule(map, key, key, timeout);
+        } else {
+            map.put(key, key, timeout);
+            return null;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Key {
+        private final String prefix = Thread.currentThread().getName() + "-";
+        private int sequence;
+
+        String next() {
+            return prefix + (sequence++ & 1023);
+        }
+    }
+
+    /**
+     * ExpiryLRUMap.ExpiresScan and ExpiresNotify before the timing wheel
+     */
+    static class SkipListScanner implements Runnable {
+        private final ConcurrentSkipListSet<Timer> noExpiryNodes = new ConcurrentSkipListSet<>((o1, o2) -> {
+            if (o1 == o2) {
+                return 0;
+            }
+            long x = o1.expiryTimestamp;
+            long y = o2.expiryTimestamp;
+            return x <= y ? -1 : 1;
+        });
+        private final BlockingQueue<Timer> expiryNotifyQueue = new LinkedBlockingQueue<>();
+        private final ScheduledExecutorService scheduled = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SkipListScanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Thread notifyThread;
+
+        SkipListScanner(long intervalMillis, Consumer<Timer> onExpiry) {
+            this.notifyThread = new Thread(() -> {
+                while (true) {
+                    Timer timer;
+                    try {
+                        timer = expiryNotifyQueue.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    onExpiry.accept(timer);
+                }
+            }, "SkipListScanner-Notify");
+            notifyThread.setDaemon(true);
+            notifyThread.start();
+            scheduled.scheduleWithFixedDelay(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        Timer schedule(ExpiryLRUMap<String, String> map, String key, String value, long timeout) {
+            Timer timer = new Timer(map, key, value, System.currentTimeMillis() + timeout);
+            noExpiryNodes.add(timer);
+            return timer;
+        }
+
+        void cancel(Timer timer) {
+            noExpiryNodes.remove(timer);
+        }
+
+        void close() {
+            scheduled.shutdownNow();
+            notifyThread.interrupt();
+            noExpiryNodes.clear();
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (noExpiryNodes.isEmpty()) {
+                    return;
+                }
+                Timer now = new Timer(null, null, null, System.currentTimeMillis());
+                NavigableSet<Timer> expiryNodes = noExpiryNodes.headSet(now);
+                if (expiryNodes.isEmpty()) {
+                    return;
+                }
+                Iterator<Timer> iterator = expiryNodes.iterator();
+                List<Timer> removeList = new ArrayList<>();
+                while (iterator.hasNext()) {
+                    Timer expiryRemoveNode = iterator.next();
+                    synchronized (expiryRemoveNode) {
+                        if (!expiryRemoveNode.map.remove(expiryRemoveNode.key, expiryRemoveNode.value)) {
+                            continue;
+                        }
+                    }
+                    iterator.remove();
+                    removeList.add(expiryRemoveNode);
+                }
+                for (Timer expiryRemoveNode : removeList) {
+                    expiryNotifyQueue.offer(expiryRemoveNode);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        static class Timer {
+            private final ExpiryLRUMap<String, String> map;
+            private final String key;
+            private final String value;
+            private final long expiryTimestamp;
+
+            Timer(ExpiryLRUMap<String, String> map, String key, String value, long expiryTimestamp) {
+                this.map = map;
+                this.key = key;
+                this.value = value;
+                this.expiryTimestamp = expiryTimestamp;
+            }
+        }
+    }
+}
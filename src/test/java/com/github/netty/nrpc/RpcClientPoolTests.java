@@ -0,0 +1,102 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.annotation.NRpcService;
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcClientPool;
+import com.github.netty.protocol.nrpc.RpcServer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.AbstractScheduledEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.*;
+
+/**
+ * connection pool test
+ * the shrink connection close, and leave no scheduled task in the shared worker
+ */
+public class RpcClientPoolTests {
+
+    private static Set<Object> scheduledTasks(EventLoopGroup worker) throws Exception {
+        Field field = AbstractScheduledEventExecutor.class.getDeclaredField("scheduledTaskQueue");
+        field.setAccessible(true);
+        Set<Object> tasks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (EventExecutor executor : worker) {
+            // read the queue in the event loop
+            tasks.addAll(executor.submit(() -> {
+                Collection<?> queue = (Collection<?>) field.get(executor);
+                return queue == null ? Collections.emptyList() : new ArrayList<>(queue);
+            }).get());
+        }
+        return tasks;
+    }
+
+    @Test
+    public void shrink() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RpcServer server = new RpcServer(port);
+        server.addInstance(new HelloServiceImpl());
+        server.run();
+        server.getBootstrapFuture().sync();
+
+        RpcClientPool pool = new RpcClientPool(new InetSocketAddress("127.0.0.1", port), RpcClient::new);
+        try {
+            pool.setMinConnections(2);
+            pool.setMaxConnections(2);
+            pool.choose();
+            RpcClient[] clients = pool.getClients();
+            Assert.isTrue(clients.length == 2, "init connections");
+
+            // the timeout wheel of the first connection
+            Assert.isTrue("hi".equals(clients[0].newInstance(HelloService.class).hello()), "first connection");
+            EventLoopGroup worker = clients[0].getWorker();
+            Set<Object> firstTasks = scheduledTasks(worker);
+
+            // the timeout wheel of the second connection, in the shared worker
+            Assert.isTrue("hi".equals(clients[1].newInstance(HelloService.class).hello()), "second connection");
+            Assert.isTrue(clients[1].getWorker() == worker, "shared worker");
+            Assert.isTrue(clients[1].getRpcDoneTable().getTimerFuture() != null, "second timer");
+            Set<Object> tasks = scheduledTasks(worker);
+            tasks.removeAll(firstTasks);
+            Assert.isTrue(!tasks.isEmpty(), "second connection tasks");
+
+            pool.setMinConnections(1);
+            pool.setShrinkIdleMs(0);
+            Thread.sleep(10);
+            pool.choose();
+            Assert.isTrue(pool.size() == 1, "shrink");
+            for (int i = 0; i < 50 && clients[1].channel() != null; i++) {
+                Thread.sleep(100);
+            }
+            Assert.isNull(clients[1].channel(), "close after shrink");
+            Assert.isNull(clients[1].getRpcDoneTable().getTimerFuture(), "second timer cancel");
+
+            tasks = scheduledTasks(worker);
+            tasks.removeAll(firstTasks);
+            Assert.isTrue(tasks.isEmpty(), "no scheduled task of the closed connection. " + tasks);
+            Assert.isTrue("hi".equals(pool.choose().newInstance(HelloService.class).hello()), "first connection after shrink");
+        } finally {
+            pool.close();
+            server.stop();
+        }
+    }
+
+    @NRpcService(value = "/poolHello", timeout = 5000)
+    public interface HelloService {
+        String hello();
+    }
+
+    public static class HelloServiceImpl implements HelloService {
+        @Override
+        public String hello() {
+            return "hi";
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.annotation.NRpcParam;
+import com.github.netty.core.util.AnnotationMethodToParameterNamesFunction;
+import com.github.netty.protocol.nrpc.RpcMethod;
+import com.github.netty.protocol.nrpc.codec.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request and response data of the codec. (encode + decode, no network)
+ * <p>
+ * request  = client encodeRequestData, server decodeRequestData. (a bean, an int, a string)
+ * response = server encodeResponseData, client decodeResponseData. (a bean with a list of 20 beans)
+ * the encoded size of each codec is printed in the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcCodecBenchmark {
+    @Param({"jdk", "fastjson", "jackson", "binary"})
+    private String codec;
+    private DataCodec dataCodec;
+    private RpcMethod rpcMethod;
+    private Object[] args;
+    private Order result;
+    private ByteBuf buffer;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RpcCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        switch (codec) {
+            case "fastjson": {
+                dataCodec = new FastJsonDataCodec();
+                break;
+            }
+            case "jackson": {
+                dataCodec = new JacksonDataCodec();
+                break;
+            }
+            case "binary": {
+                dataCodec = new BinaryDataCodec();
+                break;
+            }
+            default: {
+                dataCodec = new JdkDataCodec();
+                break;
+            }
+        }
+        rpcMethod = (RpcMethod) RpcMethod.getMethodMap(null, OrderService.class,
+                new AnnotationMethodToParameterNamesFunction(NRpcParam.class), Method::getName, false).get("save");
+        args = new Object[]{newOrder(1), 10086, "remark"};
+        result = newOrder(20);
+        buffer = ByteBufAllocator.DEFAULT.directBuffer(64 * 1024);
+
+        dataCodec.encodeRequestData(args, rpcMethod, buffer);
+        int requestLength = buffer.readableBytes();
+        buffer.clear();
+        dataCodec.encodeResponseData(result, rpcMethod, buffer);
+        int responseLength = buffer.readableBytes();
+        buffer.clear();
+        System.out.println(codec + " request = " + requestLength + " bytes, response = " + responseLength + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public Object request() {
+        buffer.clear();
+        dataCodec.encodeRequestData(args, rpcMethod, buffer);
+        return dataCodec.decodeRequestData(buffer, rpcMethod);
+    }
+
+    @Benchmark
+    public Object response() {
+        buffer.clear();
+        dataCodec.encodeResponseData(result, rpcMethod, buffer);
+        return dataCodec.decodeResponseData(buffer, rpcMethod);
+    }
+
+    private static Order newOrder(int itemCount) {
+        Order order = new Order();
+        order.id = 1234567890123L;
+        order.userName = "wangzihao";
+        order.amount = 99.5;
+        order.paid = true;
+        order.items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            Item item = new Item();
+            item.sku = "sku-" + i;
+            item.count = i;
+            item.price = i * 10L;
+            order.items.add(item);
+        }
+        return order;
+    }
+
+    public interface OrderService {
+        Order save(@NRpcParam("order") Order order, @NRpcParam("userId") int userId, @NRpcParam("remark") String remark);
+    }
+
+    public static class Order implements Serializable {
+        public long id;
+        public String userName;
+        public double amount;
+        public boolean paid;
+        public List<Item> items;
+    }
+
+    public static class Item implements Serializable {
+        public String sku;
+        public int count;
+        public long price;
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.protocol.nrpc.RpcPacket;
+import com.github.netty.protocol.nrpc.codec.DataCodec;
+import com.github.netty.protocol.nrpc.codec.RpcDecoder;
+import com.github.netty.protocol.nrpc.codec.RpcEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * rpc codec test
+ * encode with {@link RpcEncoder}, decode with {@link RpcDecoder}
+ */
+public class RpcCodecTests {
+
+    private static RpcPacket.ResponsePacket newResponse(int requestId, String message, byte[] data) {
+        RpcPacket.ResponsePacket packet = RpcPacket.ResponsePacket.newInstance(RpcPacket.TYPE_RESPONSE_LAST);
+        packet.setRequestId(requestId);
+        packet.setStatus(RpcPacket.ResponsePacket.SERVER_ERROR);
+        packet.setMessage(message);
+        packet.setEncode(DataCodec.Encode.BINARY);
+        packet.setData(data);
+        return packet;
+    }
+
+    private static RpcPacket.ResponsePacket roundTrip(EmbeddedChannel encoder, EmbeddedChannel decoder, RpcPacket.ResponsePacket packet) {
+        Assert.isTrue(encoder.writeOutbound(packet), "encode");
+        ByteBuf frame = encoder.readOutbound();
+        Assert.isTrue(decoder.writeInbound(frame), "decode");
+        return decoder.readInbound();
+    }
+
+    @Test
+    public void responseMessageLongerThan255Bytes() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcDecoder());
+
+        // 1 + 3 * 100 utf-8 bytes. the 255th byte is in the middle of a char
+        StringBuilder message = new StringBuilder("a");
+        for (int i = 0; i < 100; i++) {
+            message.append('错');
+        }
+        byte[] data = "{\"name\":\"wang\"}".getBytes(StandardCharsets.UTF_8);
+        RpcPacket.ResponsePacket response = roundTrip(encoder, decoder, newResponse(1, message.toString(), data));
+
+        String decodeMessage = response.getMessage();
+        Assert.isTrue(decodeMessage.getBytes(StandardCharsets.UTF_8).length == 253, "truncate on the char boundary");
+        Assert.isTrue(message.toString().startsWith(decodeMessage), "message prefix");
+        Assert.isTrue(response.getRequestId() == 1, "requestId");
+        Assert.isTrue(response.getStatus() == RpcPacket.ResponsePacket.SERVER_ERROR, "status");
+        Assert.isTrue(Arrays.equals(data, response.getData()), "data after the message");
+
+        // the next frame on the same channel
+        RpcPacket.ResponsePacket next = roundTrip(encoder, decoder, newResponse(2, "ok", data));
+        Assert.isTrue("ok".equals(next.getMessage()), "next message");
+        Assert.isTrue(next.getRequestId() == 2, "next requestId");
+        Assert.isTrue(Arrays.equals(data, next.getData()), "next data");
+
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Test
+    public void responseMessage255Bytes() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcDecoder());
+
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 85; i++) {
+            message.append('错');
+        }
+        RpcPacket.ResponsePacket response = roundTrip(encoder, decoder, newResponse(1, message.toString(), null));
+        Assert.isTrue(message.toString().equals(response.getMessage()), "not truncated");
+
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.protocol.nrpc.service.RpcDBLog;
+import com.github.netty.protocol.nrpc.service.RpcDBServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * write-ahead log and snapshot of the durable RpcDBService
+ * the broken tail replay, the snapshot + wal recovery, and the fsync policy
+ */
+public class RpcDBLogTests {
+    @TempDir
+    File dir;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private RpcDBLog load(RpcDBLog.FsyncPolicy fsyncPolicy, MapHandler handler) throws IOException {
+        RpcDBLog log = new RpcDBLog(dir, fsyncPolicy);
+        log.load(handler);
+        return log;
+    }
+
+    private File wal(long seq) {
+        return new File(dir, "wal-" + seq + ".log");
+    }
+
+    @Test
+    public void tornTail() throws IOException {
+        RpcDBLog log = load(RpcDBLog.FsyncPolicy.ALWAYS, new MapHandler());
+        log.commit(log.put("a", Long.MAX_VALUE, bytes("1")));
+        log.commit(log.put("b", 100L, bytes("2")));
+        log.commit(log.remove("a"));
+        log.commit(log.maxSize(10));
+        log.close();
+        long validLength = wal(0).length();
+
+        // crash when writing. the half record, and the record with a wrong crc
+        try (FileOutputStream out = new FileOutputStream(wal(0), true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1, 0});
+        }
+        MapHandler handler = new MapHandler();
+        log = load(RpcDBLog.FsyncPolicy.ALWAYS, handler);
+        Assert.isTrue(handler.records == 4, "replay the valid records " + handler.records);
+        Assert.isTrue(handler.map.size() == 1 && "2".equals(string(handler.map.get("b"))), "state " + handler.map.keySet());
+        Assert.isTrue(handler.expiryMap.get("b") == 100L && handler.maxSize == 10, "expiry and maxSize");
+        Assert.isTrue(log.getWalBytes() == validLength && wal(0).length() == validLength, "truncate the broken tail");
+
+        // the new record after the truncated tail
+        log.commit(log.put("c", Long.MAX_VALUE, bytes("3")));
+        log.close();
+        try (RandomAccessFile file = new RandomAccessFile(wal(0), "rw")) {
+            // flip a byte of the last record
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        handler = new MapHandler();
+        load(RpcDBLog.FsyncPolicy.ALWAYS, handler).close();
+        Assert.isTrue(handler.records == 4 && !handler.map.containsKey("c"), "skip the record with the wrong crc");
+        Assert.isTrue(wal(0).length() == validLength, "truncate the wrong crc");
+    }
+
+    @Test
+    public void snapshotAndLog() throws IOException {
+        MapHandler state = new MapHandler();
+        RpcDBLog log = load(RpcDBLog.FsyncPolicy.ALWAYS, state);
+        for (String key : Arrays.asList("a", "b", "c")) {
+            log.put(key, Long.MAX_VALUE, bytes(key));
+            state.put(key, Long.MAX_VALUE, bytes(key));
+        }
+        log.snapshot(state::writeTo);
+        Assert.isTrue(log.getWalBytes() == 0, "new wal after the snapshot");
+        Assert.isTrue(!wal(0).exists() && wal(1).exists() && new File(dir, "snapshot-1.dat").exists(), "snapshot files");
+
+        // the records after the snapshot
+        log.put("d", Long.MAX_VALUE, bytes("d"));
+        log.remove("a");
+        log.changeKey("b", "e", 200L, bytes("b"));
+        log.maxSize(5);
+        log.close();
+
+        MapHandler handler = new MapHandler();
+        log = load(RpcDBLog.FsyncPolicy.ALWAYS, handler);
+        Assert.isTrue(handler.map.keySet().equals(new HashSet<>(Arrays.asList("c", "d", "e"))), "recover " + handler.map.keySet());
+        Assert.isTrue("b".equals(string(handler.map.get("e"))) && handler.expiryMap.get("e") == 200L, "change key");
+        Assert.isTrue(handler.maxSize == 5, "maxSize");
+
+        // the second snapshot delete the old files. the put before the snapshot is in the snapshot (fuzzy) and the wal
+        log.put("f", Long.MAX_VALUE, bytes("f"));
+        handler.put("f", Long.MAX_VALUE, bytes("f"));
+        log.snapshot(handler::writeTo);
+        log.close();
+        Assert.isTrue(!wal(1).exists() && !new File(dir, "snapshot-1.dat").exists(), "delete the old files");
+        MapHandler handler2 = new MapHandler();
+        load(RpcDBLog.FsyncPolicy.ALWAYS, handler2).close();
+        Assert.isTrue(handler2.map.keySet().equals(handler.map.keySet()), "recover the second snapshot " + handler2.map.keySet());
+    }
+
+    @Test
+    public void brokenSnapshot() throws IOException {
+        MapHandler state = new MapHandler();
+        RpcDBLog log = load(RpcDBLog.FsyncPolicy.ALWAYS, state);
+        log.put("a", Long.MAX_VALUE, bytes("a"));
+        state.put("a", Long.MAX_VALUE, bytes("a"));
+        log.snapshot(state::writeTo);
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "snapshot-1.dat"), true)) {
+            out.write(1);
+        }
+        try {
+            load(RpcDBLog.FsyncPolicy.ALWAYS, new MapHandler());
+            Assert.isTrue(false, "the snapshot is written by rename, the broken snapshot is not a crash");
+        } catch (IOException e) {
+            Assert.isTrue(e.getMessage().contains("Broken snapshot"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void fsyncPolicy() throws IOException {
+        // ALWAYS. the commit return after the fsync
+        RpcDBLog log = load(RpcDBLog.FsyncPolicy.ALWAYS, new MapHandler());
+        long position = log.put("a", Long.MAX_VALUE, bytes("a"));
+        Assert.isTrue(log.getSyncPosition() < position, "not sync before commit");
+        log.commit(position);
+        Assert.isTrue(log.getSyncPosition() >= position, "always sync");
+        log.close();
+
+        // BATCH. the commit not sync, the flush (every interval) sync all
+        File batchDir = new File(dir, "batch");
+        log = new RpcDBLog(batchDir, RpcDBLog.FsyncPolicy.BATCH);
+        log.load(new MapHandler());
+        position = log.put("a", Long.MAX_VALUE, bytes("a"));
+        log.commit(position);
+        long position2 = log.put("b", Long.MAX_VALUE, bytes("b"));
+        log.commit(position2);
+        Assert.isTrue(log.getSyncPosition() < position, "batch not sync on commit");
+        log.flush();
+        Assert.isTrue(log.getSyncPosition() == position2 && log.getWritePosition() == position2, "batch sync on flush");
+        log.close();
+
+        // OS. never sync on commit, the records are visible to the next process
+        File osDir = new File(dir, "os");
+        log = new RpcDBLog(osDir, RpcDBLog.FsyncPolicy.OS);
+        log.load(new MapHandler());
+        position = log.put("a", Long.MAX_VALUE, bytes("a"));
+        log.commit(position);
+        Assert.isTrue(log.getSyncPosition() < position, "os not sync on commit");
+        MapHandler handler = new MapHandler();
+        RpcDBLog reader = new RpcDBLog(osDir, RpcDBLog.FsyncPolicy.OS);
+        reader.load(handler);
+        Assert.isTrue(handler.map.containsKey("a"), "os page cache");
+        reader.close();
+        log.close();
+    }
+
+    @Test
+    public void interrupted() throws IOException {
+        RpcDBLog log = load(RpcDBLog.FsyncPolicy.ALWAYS, new MapHandler());
+        Thread.currentThread().interrupt();
+        try {
+            log.commit(log.put("a", Long.MAX_VALUE, bytes("a")));
+            Assert.isTrue(Thread.currentThread().isInterrupted(), "restore the interrupt");
+        } finally {
+            Thread.interrupted();
+        }
+        log.commit(log.put("b", Long.MAX_VALUE, bytes("b")));
+        log.close();
+        MapHandler handler = new MapHandler();
+        load(RpcDBLog.FsyncPolicy.ALWAYS, handler).close();
+        Assert.isTrue(handler.map.size() == 2, "write when interrupted");
+    }
+
+    @Test
+    public void restartService() throws IOException {
+        File dataDir = new File(dir, "service");
+        RpcDBServiceImpl service = new RpcDBServiceImpl(dataDir, 2, RpcDBLog.FsyncPolicy.ALWAYS, 0, 0);
+        service.put("a", bytes("1"));
+        service.put4("b", bytes("2"), -1, "group");
+        service.put("c", bytes("3"));
+        service.remove("c");
+        service.changeKey("a", "d");
+        service.snapshot();
+        service.put("e", bytes("5"));
+        service.close();
+
+        service = new RpcDBServiceImpl(dataDir, 2, RpcDBLog.FsyncPolicy.ALWAYS, 0, 0);
+        try {
+            Assert.isTrue("1".equals(string(service.get("d"))) && service.get("a") == null, "change key");
+            Assert.isTrue("2".equals(string(service.get2("b", "group"))), "group");
+            Assert.isTrue(service.get("c") == null && "5".equals(string(service.get("e"))), "remove and the wal after the snapshot");
+        } finally {
+            service.close();
+        }
+    }
+
+    static class MapHandler implements RpcDBLog.RecordHandler {
+        final Map<String, byte[]> map = new LinkedHashMap<>();
+        final Map<String, Long> expiryMap = new LinkedHashMap<>();
+        long maxSize = -1;
+        int records;
+
+        @Override
+        public void put(String key, long expiryTimestamp, byte[] data) {
+            map.put(key, data);
+            expiryMap.put(key, expiryTimestamp);
+            records++;
+        }
+
+        @Override
+        public void remove(String key) {
+            map.remove(key);
+            expiryMap.remove(key);
+            records++;
+        }
+
+        @Override
+        public void changeKey(String oldKey, String newKey, long expiryTimestamp, byte[] data) {
+            map.remove(oldKey);
+            expiryMap.remove(oldKey);
+            map.put(newKey, data);
+            expiryMap.put(newKey, expiryTimestamp);
+            records++;
+        }
+
+        @Override
+        public void maxSize(long maxSize) {
+            this.maxSize = maxSize;
+            records++;
+        }
+
+        void writeTo(RpcDBLog.RecordHandler handler) throws IOException {
+            for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+                handler.put(entry.getKey(), expiryMap.get(entry.getKey()), entry.getValue());
+            }
+            if (maxSize != -1) {
+                handler.maxSize(maxSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.protocol.nrpc.service.RpcDBServiceImpl;
+import com.github.netty.protocol.nrpc.service.RpcDBSlabStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * off-heap slab store of the RpcDBService
+ * the size class, the chunk reuse, the heap fallback, and the handles freed once by the service
+ */
+public class RpcDBSlabStoreTests {
+    @TempDir
+    File dir;
+
+    private static byte[] data(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private static long chunkSize(RpcDBSlabStore store, byte[] data) {
+        long chunkBytes = store.getChunkBytes();
+        Object handle = store.allocate(data);
+        Assert.isTrue(handle instanceof RpcDBSlabStore.Handle, "off-heap " + data.length);
+        long chunkSize = store.getChunkBytes() - chunkBytes;
+        store.free((RpcDBSlabStore.Handle) handle);
+        return chunkSize;
+    }
+
+    @Test
+    public void sizeClass() {
+        RpcDBSlabStore store = new RpcDBSlabStore(1024 * 1024, 4096, null);
+        // 64, 80, 104 ... 8 bytes align, 1.25 growth
+        Assert.isTrue(chunkSize(store, data(1, 1)) == 64, "min chunk");
+        Assert.isTrue(chunkSize(store, data(64, 1)) == 64, "exact chunk");
+        Assert.isTrue(chunkSize(store, data(65, 1)) == 80, "next chunk");
+        Assert.isTrue(chunkSize(store, data(81, 1)) == 104, "next chunk 2");
+        Assert.isTrue(chunkSize(store, data(4096, 1)) == 4096, "page size");
+        long previous = 0;
+        for (int length = 1; length <= 4096; length += 37) {
+            long chunkSize = chunkSize(store, data(length, 1));
+            Assert.isTrue(chunkSize >= length && chunkSize >= previous && chunkSize % 8 == 0, "smallest chunk of enough size " + length);
+            Assert.isTrue(length <= 64 || chunkSize < length * 1.25D + 8, "waste of the chunk " + length + ", " + chunkSize);
+            previous = chunkSize;
+        }
+
+        // larger than the page
+        byte[] large = data(4097, 1);
+        Assert.isTrue(store.allocate(large) == large && store.getHeapFallbackCount() == 1, "heap fallback");
+
+        // the page of each size class
+        Object handle64 = store.allocate(data(10, 1));
+        Object handle80 = store.allocate(data(70, 2));
+        List<long[]> stats = store.getSizeClassStats();
+        Assert.isTrue(stats.get(0)[0] == 64 && stats.get(0)[2] == 1 && stats.get(0)[3] == 10, "stats 64");
+        Assert.isTrue(stats.get(1)[0] == 80 && stats.get(1)[2] == 1 && stats.get(1)[3] == 70, "stats 80");
+        Assert.isTrue(Arrays.equals(store.read((RpcDBSlabStore.Handle) handle80), data(70, 2)), "read");
+        Assert.isTrue(store.getValueCount() == 2 && store.getUsedBytes() == 80, "used");
+        store.free((RpcDBSlabStore.Handle) handle64);
+        store.free((RpcDBSlabStore.Handle) handle80);
+        Assert.isTrue(store.getValueCount() == 0 && store.getUsedBytes() == 0 && store.getChunkBytes() == 0, "free");
+        store.close();
+    }
+
+    @Test
+    public void reuse() {
+        // one page. 16 chunks of 64 bytes
+        RpcDBSlabStore store = new RpcDBSlabStore(1024, 1024, null);
+        RpcDBSlabStore.Handle[] handles = new RpcDBSlabStore.Handle[16];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = (RpcDBSlabStore.Handle) store.allocate(data(64, i));
+        }
+        Assert.isTrue(store.getCapacityBytes() == 1024 && store.getHeapFallbackCount() == 0, "one page");
+
+        // the freed chunk is reused by the same size class, no new page
+        store.free(handles[3]);
+        store.free(handles[7]);
+        Object reuse1 = store.allocate(data(60, 100));
+        Object reuse2 = store.allocate(data(50, 101));
+        Assert.isTrue(reuse1 instanceof RpcDBSlabStore.Handle && reuse2 instanceof RpcDBSlabStore.Handle, "reuse");
+        Assert.isTrue(store.getCapacityBytes() == 1024 && store.getValueCount() == 16, "no new page");
+        Assert.isTrue(Arrays.equals(store.read((RpcDBSlabStore.Handle) reuse1), data(60, 100))
+                && Arrays.equals(store.read((RpcDBSlabStore.Handle) reuse2), data(50, 101)), "reuse data");
+        for (int i = 0; i < handles.length; i++) {
+            if (i != 3 && i != 7) {
+                Assert.isTrue(Arrays.equals(store.read(handles[i]), data(64, i)), "not overwritten " + i);
+            }
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> store.read(handles[3]));
+
+        // free is idempotent. the chunk is not listed twice
+        store.free(handles[0]);
+        store.free(handles[0]);
+        Assert.isTrue(store.getValueCount() == 15, "free once");
+        Object reuse3 = store.allocate(data(64, 102));
+        Object fallback = store.allocate(data(64, 103));
+        Assert.isTrue(reuse3 instanceof RpcDBSlabStore.Handle && fallback instanceof byte[], "one free chunk");
+        Assert.isTrue(Arrays.equals(store.read((RpcDBSlabStore.Handle) reuse3), data(64, 102)), "reuse data 3");
+        store.close();
+    }
+
+    @Test
+    public void maxBytes() {
+        RpcDBSlabStore store = new RpcDBSlabStore(2048, 1024, null);
+        Object handle64 = store.allocate(data(64, 1));
+        Object handle80 = store.allocate(data(80, 2));
+        Assert.isTrue(handle64 instanceof RpcDBSlabStore.Handle && handle80 instanceof RpcDBSlabStore.Handle, "two pages");
+        Assert.isTrue(store.getCapacityBytes() == 2048, "capacity");
+
+        // the page is not returned to the other size class
+        byte[] data104 = data(100, 3);
+        Assert.isTrue(store.allocate(data104) == data104 && store.getHeapFallbackCount() == 1, "max bytes");
+        store.free((RpcDBSlabStore.Handle) handle80);
+        Assert.isTrue(store.allocate(data104) == data104 && store.getHeapFallbackCount() == 2, "max bytes after free");
+        Assert.isTrue(store.allocate(data(70, 4)) instanceof RpcDBSlabStore.Handle, "same size class");
+
+        // the closed store allocate no page
+        store.close();
+        Assert.isTrue(store.allocate(data(64, 5)) instanceof RpcDBSlabStore.Handle, "the chunk of the page");
+        byte[] data128 = data(128, 6);
+        Assert.isTrue(store.allocate(data128) == data128, "no page after close");
+    }
+
+    @Test
+    public void mapped() {
+        RpcDBSlabStore store = new RpcDBSlabStore(4096, 1024, dir);
+        File mappedFile = store.getMappedFile();
+        Object handle = store.allocate(data(200, 7));
+        Assert.isTrue(mappedFile.exists() && mappedFile.length() == 1024, "mapped page");
+        Assert.isTrue(Arrays.equals(store.read((RpcDBSlabStore.Handle) handle), data(200, 7)), "read");
+        store.close();
+        Assert.isTrue(!mappedFile.exists(), "delete the mapped file");
+    }
+
+    @Test
+    public void serviceFree() {
+        RpcDBSlabStore store = new RpcDBSlabStore(1024 * 1024, 4096, null);
+        RpcDBServiceImpl service = new RpcDBServiceImpl(1, store);
+        try {
+            // overwrite
+            service.put("a", data(100, 1));
+            service.put("a", data(100, 2));
+            Assert.isTrue(store.getValueCount() == 1 && Arrays.equals(service.get("a"), data(100, 2)), "overwrite");
+            service.put("a", null);
+            Assert.isTrue(store.getValueCount() == 0 && service.get("a") == null, "overwrite null");
+
+            // remove, change key
+            service.put("b", data(100, 3));
+            service.changeKey("b", "c");
+            Assert.isTrue(store.getValueCount() == 1 && Arrays.equals(service.get("c"), data(100, 3)), "change key");
+            service.remove("c");
+            service.remove("c");
+            Assert.isTrue(store.getValueCount() == 0, "remove");
+
+            // lru eviction
+            service.setMaxSize(2);
+            for (int i = 0; i < 5; i++) {
+                service.put("lru" + i, data(100, i));
+            }
+            Assert.isTrue(store.getValueCount() == service.count("/sharing") && store.getValueCount() <= 2, "eviction " + store);
+            Assert.isTrue(Arrays.equals(service.get("lru4"), data(100, 4)), "most recent");
+            for (int i = 0; i < 5; i++) {
+                service.remove("lru" + i);
+            }
+            Assert.isTrue(store.getValueCount() == 0, "remove lru");
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void serviceExpiry() throws InterruptedException {
+        RpcDBSlabStore store = new RpcDBSlabStore(1024 * 1024, 4096, null);
+        RpcDBServiceImpl service = new RpcDBServiceImpl(1, store);
+        try {
+            service.put3("a", data(100, 1), 1);
+            service.put3("b", data(100, 2), 1);
+            // the covered node of a is notified on expiry too. the handle is freed on the overwrite
+            service.put("a", data(100, 3));
+            Assert.isTrue(store.getValueCount() == 2, "overwrite");
+
+            for (int i = 0; i < 50 && store.getValueCount() != 1; i++) {
+                Thread.sleep(100);
+            }
+            Assert.isTrue(store.getValueCount() == 1 && service.get("b") == null, "expiry " + store);
+            // the expiry notify of the covered node
+            Thread.sleep(500);
+            Assert.isTrue(store.getValueCount() == 1, "free once " + store);
+
+            // the chunk of a is not reused by the others
+            for (int i = 0; i < 4; i++) {
+                service.put("c" + i, data(100, 10 + i));
+            }
+            Assert.isTrue(Arrays.equals(service.get("a"), data(100, 3)), "a");
+            for (int i = 0; i < 4; i++) {
+                Assert.isTrue(Arrays.equals(service.get("c" + i), data(100, 10 + i)), "c" + i);
+            }
+            Assert.isTrue(store.getValueCount() == 5, "count " + store);
+        } finally {
+            service.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.protocol.nrpc.RpcPacket;
+import com.github.netty.protocol.nrpc.codec.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response data round trip. codec encode -> RpcEncoder -> wire -> RpcDecoder -> codec decode
+ * <p>
+ * bytes  = the byte[] codec api. (copy to the frame, copy out of the frame)
+ * buffer = the ByteBuf codec api. (encode into the frame buffer, decode from the slice of the frame)
+ * the wire is one direct buffer copy in both modes, as the socket read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcDataCodecBenchmark {
+    @Param({"jdk", "fastjson", "jackson"})
+    private String codec;
+    @Param({"bytes", "buffer"})
+    private String mode;
+    @Param({"51200", "512000"})
+    private int size;
+    private DataCodec dataCodec;
+    private EmbeddedChannel encoderChannel;
+    private EmbeddedChannel decoderChannel;
+    private String data;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RpcDataCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        switch (codec) {
+            case "fastjson": {
+                dataCodec = new FastJsonDataCodec();
+                break;
+            }
+            case "jackson": {
+                dataCodec = new JacksonDataCodec();
+                break;
+            }
+            default: {
+                dataCodec = new JdkDataCodec();
+                break;
+            }
+        }
+        StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        data = builder.toString();
+        encoderChannel = new EmbeddedChannel(new RpcEncoder());
+        decoderChannel = new EmbeddedChannel(new RpcDecoder());
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoderChannel.finishAndReleaseAll();
+        decoderChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        RpcPacket.ResponseLastPacket response = RpcPacket.ResponsePacket.newLastPacket();
+        response.setRequestId(1);
+        response.setStatus(RpcPacket.ResponsePacket.OK);
+        response.setMessage("ok");
+        response.setEncode(DataCodec.Encode.APP);
+        boolean buffer = "buffer".equals(mode);
+        if (buffer) {
+            ByteBuf dataBuf = ByteBufAllocator.DEFAULT.ioBuffer();
+            dataCodec.encodeChunkResponseData(data, dataBuf);
+            response.setDataBuf(dataBuf);
+        } else {
+            response.setData(dataCodec.encodeChunkResponseData(data));
+        }
+        encoderChannel.writeOutbound(response);
+        ByteBuf frame = encoderChannel.readOutbound();
+        ByteBuf wire = ByteBufAllocator.DEFAULT.directBuffer(frame.readableBytes());
+        wire.writeBytes(frame);
+        frame.release();
+
+        decoderChannel.writeInbound(wire);
+        RpcPacket.ResponsePacket packet = decoderChannel.readInbound();
+        try {
+            if (buffer && packet.getDataBuf() != null) {
+                return dataCodec.decodeChunkResponseData(packet.getDataBuf(), String.class);
+            } else {
+                return dataCodec.decodeChunkResponseData(packet.getData(), String.class);
+            }
+        } finally {
+            packet.recycle();
+        }
+    }
+}
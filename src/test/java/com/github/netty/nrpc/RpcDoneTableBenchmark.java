@@ -0,0 +1,97 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.core.util.ExpiryLRUMap;
+import com.github.netty.protocol.nrpc.ChunkAck;
+import com.github.netty.protocol.nrpc.RpcDone;
+import com.github.netty.protocol.nrpc.RpcDoneTable;
+import com.github.netty.protocol.nrpc.RpcPacket;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RpcClient in-flight table benchmark. (put, then remove by the response)
+ * <p>
+ * map*   = the old rpcDoneMap. ExpiryLRUMap&lt;Integer,RpcDone&gt;
+ * table* = the current RpcDoneTable. int keys, timing wheel in the event loop
+ * *Sync    = sync request. never expire, the caller remove it
+ * *Timeout = reactive request. expire by timeout
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RpcDoneTableBenchmark {
+    private static final RpcDone RPC_DONE = new RpcDone() {
+        @Override
+        public void chunk(RpcPacket.ResponseChunkPacket rpcResponse, ChunkAck ack) {
+        }
+
+        @Override
+        public void done(RpcPacket.ResponseLastPacket rpcResponse) {
+        }
+
+        @Override
+        public void doneTimeout(int requestId, long createTimestamp, long expiryTimestamp) {
+        }
+    };
+    private final AtomicInteger requestIdIncr = new AtomicInteger();
+    private ExpiryLRUMap<Integer, RpcDone> map;
+    private RpcDoneTable table;
+    private EventLoop eventLoop;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RpcDoneTableBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        map = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
+        table = new RpcDoneTable(new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null));
+        eventLoop = new DefaultEventLoop();
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventLoop.shutdownGracefully();
+    }
+
+    @Benchmark
+    public Object mapSync() {
+        int requestId = requestIdIncr.getAndIncrement() & Integer.MAX_VALUE;
+        map.put(requestId, RPC_DONE);
+        return map.remove(requestId);
+    }
+
+    @Benchmark
+    public Object tableSync() {
+        int requestId = requestIdIncr.getAndIncrement() & Integer.MAX_VALUE;
+        table.put(requestId, RPC_DONE, -1, eventLoop);
+        return table.remove(requestId);
+    }
+
+    @Benchmark
+    public Object mapTimeout() {
+        int requestId = requestIdIncr.getAndIncrement() & Integer.MAX_VALUE;
+        map.put(requestId, RPC_DONE, 1000);
+        return map.remove(requestId);
+    }
+
+    @Benchmark
+    public Object tableTimeout() {
+        int requestId = requestIdIncr.getAndIncrement() & Integer.MAX_VALUE;
+        table.put(requestId, RPC_DONE, 1000, eventLoop);
+        return table.remove(requestId);
+    }
+}
@@ -0,0 +1,188 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.core.util.ExpiryLRUMap;
+import com.github.netty.protocol.nrpc.ChunkAck;
+import com.github.netty.protocol.nrpc.RpcDone;
+import com.github.netty.protocol.nrpc.RpcDoneTable;
+import com.github.netty.protocol.nrpc.RpcPacket;
+import io.netty.channel.DefaultEventLoop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * in-flight request table test
+ * timeout, the late response, the requestId wrap, the overflow and close
+ */
+public class RpcDoneTableTests {
+    private final ExpiryLRUMap<Integer, RpcDone> overflowMap = new ExpiryLRUMap<>(16, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    private final TestEventLoop eventLoop = new TestEventLoop();
+
+    @AfterEach
+    public void close() {
+        eventLoop.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void timeout() throws InterruptedException {
+        RpcDoneTable table = new RpcDoneTable(16, 4, 5, 8, overflowMap);
+        Done slow = new Done();
+        Done fast = new Done();
+        table.put(1, slow, 50, eventLoop);
+        table.put(2, fast, 60_000, eventLoop);
+
+        Assert.isTrue(slow.timeoutLatch.await(5, TimeUnit.SECONDS), "timeout fired");
+        Assert.isTrue(slow.timeoutRequestId == 1, "timeout requestId");
+        Assert.isTrue(slow.expiryTimestamp - slow.createTimestamp == 50, "timeout deadline");
+        Assert.isTrue(System.currentTimeMillis() >= slow.expiryTimestamp, "not before the deadline");
+        Assert.isTrue(table.size() == 1 && table.get(2) == fast, "the other request");
+        Assert.isTrue(fast.timeoutCount.get() == 0, "not timeout");
+    }
+
+    @Test
+    public void lateResponse() throws InterruptedException {
+        RpcDoneTable table = new RpcDoneTable(16, 4, 5, 8, overflowMap);
+        Done done = new Done();
+        table.put(7, done, 20, eventLoop);
+        Assert.isTrue(done.timeoutLatch.await(5, TimeUnit.SECONDS), "timeout fired");
+
+        // the response after the timeout is dropped by the receiver
+        Assert.isNull(table.get(7), "late response get");
+        Assert.isNull(table.remove(7), "late response remove");
+
+        // the slot is reused. the old timeout is not fired again
+        Done next = new Done();
+        table.put(7 + 16, next, 60_000, eventLoop);
+        Thread.sleep(50);
+        Assert.isTrue(done.timeoutCount.get() == 1, "timeout once");
+        Assert.isTrue(next.timeoutCount.get() == 0 && table.remove(7 + 16) == next, "reuse slot");
+    }
+
+    @Test
+    public void removeBeforeTimeout() throws InterruptedException {
+        RpcDoneTable table = new RpcDoneTable(16, 4, 5, 8, overflowMap);
+        Done done = new Done();
+        table.put(3, done, 20, eventLoop);
+        Assert.isTrue(table.remove(3) == done, "response");
+        Thread.sleep(100);
+        Assert.isTrue(done.timeoutCount.get() == 0, "not timeout after remove");
+        Assert.isTrue(table.size() == 0, "size");
+    }
+
+    @Test
+    public void requestIdWrap() {
+        RpcDoneTable table = new RpcDoneTable(16, 4, 5, 8, overflowMap);
+        int[] requestIds = {Integer.MAX_VALUE - 1, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0};
+        Done[] dones = new Done[requestIds.length];
+        for (int i = 0; i < requestIds.length; i++) {
+            dones[i] = new Done();
+            table.put(requestIds[i], dones[i], -1, eventLoop);
+        }
+        Assert.isTrue(table.size() == requestIds.length, "size");
+        for (int i = 0; i < requestIds.length; i++) {
+            Assert.isTrue(table.get(requestIds[i]) == dones[i], "get " + requestIds[i]);
+        }
+        for (int i = requestIds.length - 1; i >= 0; i--) {
+            Assert.isTrue(table.remove(requestIds[i]) == dones[i], "remove " + requestIds[i]);
+            Assert.isNull(table.remove(requestIds[i]), "remove twice " + requestIds[i]);
+        }
+        Assert.isTrue(table.size() == 0 && overflowMap.isEmpty(), "empty");
+    }
+
+    @Test
+    public void overflow() {
+        // 4 slots. the requestId 0,4,8... are the same slot, probe 2 slots
+        RpcDoneTable table = new RpcDoneTable(4, 2, 5, 8, overflowMap);
+        Done[] dones = new Done[6];
+        for (int i = 0; i < dones.length; i++) {
+            dones[i] = new Done();
+            table.put(i * 4, dones[i], -1, eventLoop);
+        }
+        Assert.isTrue(table.size() == 6, "size");
+        Assert.isTrue(overflowMap.size() == 4, "overflow size");
+        for (int i = 0; i < dones.length; i++) {
+            Assert.isTrue(table.get(i * 4) == dones[i], "get " + i);
+        }
+        Assert.isTrue(table.remove(0) == dones[0], "remove slot");
+        Assert.isTrue(table.remove(12) == dones[3], "remove overflow");
+
+        // the free slot is used again
+        Done next = new Done();
+        table.put(24, next, -1, eventLoop);
+        Assert.isTrue(overflowMap.size() == 3 && table.get(24) == next, "reuse slot");
+        Assert.isTrue(table.size() == 5, "size after remove");
+    }
+
+    @Test
+    public void closeTable() throws Exception {
+        RpcDoneTable table = new RpcDoneTable(4, 2, 5, 8, overflowMap);
+        Done[] dones = new Done[4];
+        for (int i = 0; i < dones.length; i++) {
+            dones[i] = new Done();
+            table.put(i * 4, dones[i], 60_000, eventLoop);
+        }
+        Thread.sleep(50);
+        Assert.isTrue(table.getTimerFuture() != null, "timer start");
+        Assert.isTrue(eventLoop.scheduledTasks(), "timer scheduled");
+
+        Assert.isTrue(table.close("client stop") == 4, "close count");
+        for (int i = 0; i < dones.length; i++) {
+            RpcPacket.ResponseLastPacket response = dones[i].response;
+            Assert.isTrue(response != null && response.getRequestId() == i * 4, "done " + i);
+            Assert.isTrue(response.getStatus() == RpcPacket.ResponsePacket.SERVER_ERROR, "error status");
+            Assert.isTrue("client stop".equals(response.getMessage()), "error message");
+        }
+        Assert.isTrue(table.size() == 0 && overflowMap.isEmpty(), "empty");
+        Assert.isNull(table.getTimerFuture(), "timer future");
+        Assert.isTrue(!eventLoop.scheduledTasks(), "timer cancel");
+
+        // close again and the late response
+        Assert.isTrue(table.close("client stop") == 0, "close twice");
+        Assert.isNull(table.remove(4), "late response");
+
+        // put after close, the timer restart
+        Done done = new Done();
+        table.put(100, done, 20, eventLoop);
+        Assert.isTrue(done.timeoutLatch.await(5, TimeUnit.SECONDS), "timeout after restart");
+        table.close("client stop");
+        Assert.isTrue(!eventLoop.scheduledTasks(), "timer cancel after restart");
+    }
+
+    static class TestEventLoop extends DefaultEventLoop {
+        boolean scheduledTasks() throws Exception {
+            // the cancel from the other thread is removed by the event loop
+            return submit(() -> nextScheduledTaskNano() != -1).get();
+        }
+    }
+
+    static class Done implements RpcDone {
+        final AtomicInteger timeoutCount = new AtomicInteger();
+        final CountDownLatch timeoutLatch = new CountDownLatch(1);
+        volatile RpcPacket.ResponseLastPacket response;
+        volatile int timeoutRequestId;
+        volatile long createTimestamp;
+        volatile long expiryTimestamp;
+
+        @Override
+        public void chunk(RpcPacket.ResponseChunkPacket rpcResponse, ChunkAck ack) {
+        }
+
+        @Override
+        public void done(RpcPacket.ResponseLastPacket rpcResponse) {
+            this.response = rpcResponse;
+        }
+
+        @Override
+        public void doneTimeout(int requestId, long createTimestamp, long expiryTimestamp) {
+            this.timeoutRequestId = requestId;
+            this.createTimestamp = createTimestamp;
+            this.expiryTimestamp = expiryTimestamp;
+            timeoutCount.incrementAndGet();
+            timeoutLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.annotation.NRpcParam;
+import com.github.netty.annotation.NRpcService;
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcServer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NRPC round trip of the method return CompletableFuture. (completed in the method)
+ * <p>
+ * eventLoop=false = the server invoke the method in the thread pool
+ * eventLoop=true  = the server invoke the method in the event loop. (NRpcService#eventLoop)
+ * latency1Thread    = one caller. (us/op)
+ * throughput32Thread = many callers on one connection. (ops/ms)
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcEventLoopBenchmark {
+    @Param({"false", "true"})
+    private boolean eventLoop;
+    private ExecutorService threadPool;
+    private RpcServer server;
+    private RpcClient client;
+    private EchoService echoService;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RpcEventLoopBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        threadPool = Executors.newFixedThreadPool(8);
+        server = new RpcServer(port);
+        server.setExecutorSupplier(() -> threadPool);
+        server.setEventLoopAsyncMethod(eventLoop);
+        server.addInstance(new EchoServiceImpl());
+        server.run();
+        server.getBootstrapFuture().sync();
+
+        client = new RpcClient("127.0.0.1", port);
+        echoService = client.newInstance(EchoService.class);
+        echoService.echo("warmup").get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.stop();
+        threadPool.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object latency1Thread() throws Exception {
+        return echoService.echo("a").get();
+    }
+
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object throughput32Thread() throws Exception {
+        return echoService.echo("a").get();
+    }
+
+    @NRpcService(value = "/benchmark/asyncEcho", timeout = 5000)
+    public interface EchoService {
+        CompletableFuture<String> echo(@NRpcParam("value") String value);
+    }
+
+    @NRpcService(value = "/benchmark/asyncEcho")
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public CompletableFuture<String> echo(String value) {
+            return CompletableFuture.completedFuture(value);
+        }
+    }
+}
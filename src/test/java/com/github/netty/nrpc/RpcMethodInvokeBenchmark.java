@@ -0,0 +1,69 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.protocol.nrpc.RpcMethod;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server method dispatch.
+ * <p>
+ * invokeWithArguments = copy the args with the instance, and MethodHandle#invokeWithArguments. (before)
+ * reflect             = Method#invoke
+ * invoker             = RpcMethod#invoke. the spread exact type handle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcMethodInvokeBenchmark {
+    private final EchoServiceImpl instance = new EchoServiceImpl();
+    private final Object[] args = {"a", 1, 2L};
+    private RpcMethod<Object> rpcMethod;
+    private MethodHandle methodHandle;
+    private Method method;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RpcMethodInvokeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        rpcMethod = RpcMethod.<Object>getMethodMap(EchoServiceImpl.class).get("echo");
+        methodHandle = rpcMethod.getMethodHandle();
+        method = rpcMethod.getMethod();
+    }
+
+    @Benchmark
+    public Object invokeWithArguments() throws Throwable {
+        Object[] methodHandleArgs = new Object[args.length + 1];
+        methodHandleArgs[0] = instance;
+        System.arraycopy(args, 0, methodHandleArgs, 1, args.length);
+        return methodHandle.invokeWithArguments(methodHandleArgs);
+    }
+
+    @Benchmark
+    public Object reflect() throws Throwable {
+        return method.invoke(instance, args);
+    }
+
+    @Benchmark
+    public Object invoker() throws Throwable {
+        return rpcMethod.invoke(instance, args);
+    }
+
+    public static class EchoServiceImpl {
+        public String echo(String value, int a, long b) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.annotation.NRpcService;
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcMethod;
+import com.github.netty.protocol.nrpc.RpcPacket;
+import com.github.netty.protocol.nrpc.RpcServer;
+import com.github.netty.protocol.nrpc.codec.RpcSymbolTable;
+import com.github.netty.protocol.nrpc.exception.RpcResponseException;
+import io.netty.channel.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.net.ServerSocket;
+import java.util.concurrent.Callable;
+
+/**
+ * interned service and method ids of the connection
+ * the unknown id fallback (status 410), the id bound to an unknown method, and the peer without the ids
+ */
+public class RpcSymbolTableTests {
+    private RpcServer server;
+    private RpcClient client;
+
+    private void start(boolean serverEnableSymbolId, boolean clientEnableSymbolId) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RpcServer(port);
+        server.setEnableSymbolId(serverEnableSymbolId);
+        server.addInstance(new SymbolServiceImpl());
+        server.run();
+        server.getBootstrapFuture().sync();
+        client = new RpcClient("127.0.0.1", port);
+        client.setEnableSymbolId(clientEnableSymbolId);
+    }
+
+    @AfterEach
+    public void stop() {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * the symbol table is only access in the event loop
+     */
+    private <T> T inEventLoop(Callable<T> callable) throws Exception {
+        return client.channel().eventLoop().submit(callable).get();
+    }
+
+    private RpcSymbolTable awaitSymbolTable() throws Exception {
+        Channel channel = client.channel();
+        for (int i = 0; i < 50; i++) {
+            if (inEventLoop(() -> {
+                RpcSymbolTable symbolTable = RpcSymbolTable.get(channel);
+                return symbolTable != null && symbolTable.isEnabled();
+            })) {
+                return RpcSymbolTable.get(channel);
+            }
+            Thread.sleep(100);
+        }
+        return RpcSymbolTable.get(channel);
+    }
+
+    private RpcMethod<RpcClient> clientMethod(String methodName) {
+        return client.getRpcInstance(RpcClient.getClientInstanceKey(ClientSymbolService.class, "/symbol", ""))
+                .getRpcMethodMap().get(methodName);
+    }
+
+    @Test
+    public void symbolId() throws Exception {
+        start(true, true);
+        ClientSymbolService service = client.newInstance(ClientSymbolService.class);
+        Assert.isTrue("a".equals(service.a()), "first call");
+        RpcSymbolTable symbolTable = awaitSymbolTable();
+        Assert.isTrue(symbolTable != null && symbolTable.isEnabled(), "hello");
+
+        for (int i = 0; i < 3; i++) {
+            Assert.isTrue("a".equals(service.a()) && "b".equals(service.b()), "call by id");
+        }
+        Assert.isTrue(inEventLoop(() -> symbolTable.getSymbolId(clientMethod("a"), "/symbol", "", "a")) != -1, "a defined");
+        Assert.isTrue(inEventLoop(() -> symbolTable.getSymbolId(clientMethod("b"), "/symbol", "", "b")) != -1, "b defined");
+    }
+
+    @Test
+    public void unknownSymbolFallback() throws Exception {
+        start(true, true);
+        ClientSymbolService service = client.newInstance(ClientSymbolService.class);
+        Assert.isTrue("a".equals(service.a()), "first call");
+        RpcSymbolTable symbolTable = awaitSymbolTable();
+        Assert.isTrue(symbolTable != null && symbolTable.isEnabled(), "hello");
+        Assert.isTrue("a".equals(service.a()), "define a");
+
+        // the client think the id of b is defined, the server not. (e.g. the server forget the ids)
+        int symbolId = inEventLoop(() -> symbolTable.newSymbolId(clientMethod("b"), "/symbol", "", "b"));
+        Assert.isTrue(symbolId != -1, "client only id");
+
+        // status 410, the client clear the ids and resend by full name
+        Assert.isTrue("b".equals(service.b()), "resend by full name");
+        Assert.isTrue(inEventLoop(() -> symbolTable.getSymbolId(clientMethod("a"), "/symbol", "", "a")) == -1, "clear the ids");
+        Assert.isTrue("b".equals(service.b()) && "a".equals(service.a()), "define again");
+        Assert.isTrue("b".equals(service.b()) && "a".equals(service.a()), "call by id again");
+    }
+
+    @Test
+    public void removeSymbol() throws Exception {
+        start(true, true);
+        ClientSymbolService service = client.newInstance(ClientSymbolService.class);
+        Assert.isTrue("a".equals(service.a()), "first call");
+        RpcSymbolTable symbolTable = awaitSymbolTable();
+        Assert.isTrue(symbolTable != null && symbolTable.isEnabled(), "hello");
+        Assert.isTrue("a".equals(service.a()), "define a");
+        int symbolIdA = inEventLoop(() -> symbolTable.getSymbolId(clientMethod("a"), "/symbol", "", "a"));
+
+        // the client forget the ids, the next id is the id of a
+        inEventLoop(() -> {
+            symbolTable.clear();
+            return null;
+        });
+        RpcResponseException exception = Assertions.assertThrows(RpcResponseException.class, service::missing);
+        Assert.isTrue(exception.getStatus() == RpcPacket.ResponsePacket.NO_SUCH_METHOD, "define unknown method " + exception);
+        int symbolIdMissing = inEventLoop(() -> symbolTable.getSymbolId(clientMethod("missing"), "/symbol", "", "missing"));
+        Assert.isTrue(symbolIdMissing == symbolIdA, "reuse id");
+
+        // the id is unbound by the server. not call a
+        exception = Assertions.assertThrows(RpcResponseException.class, service::missing);
+        Assert.isTrue(exception.getStatus() == RpcPacket.ResponsePacket.NO_SUCH_METHOD, "call unknown method by id " + exception);
+        Assert.isTrue("a".equals(service.a()) && "b".equals(service.b()), "other method");
+    }
+
+    @Test
+    public void serverDisableSymbolId() throws Exception {
+        start(false, true);
+        ClientSymbolService service = client.newInstance(ClientSymbolService.class);
+        Assert.isTrue("a".equals(service.a()), "first call");
+        Thread.sleep(200);
+        Channel channel = client.channel();
+        Assert.isTrue(!inEventLoop(() -> RpcSymbolTable.get(channel).isEnabled()), "no hello reply");
+        for (int i = 0; i < 3; i++) {
+            Assert.isTrue("a".equals(service.a()) && "b".equals(service.b()), "call by full name");
+        }
+        Assert.isTrue(inEventLoop(() -> RpcSymbolTable.get(channel).size()) == 0, "no id");
+    }
+
+    @Test
+    public void clientDisableSymbolId() throws Exception {
+        start(true, false);
+        ClientSymbolService service = client.newInstance(ClientSymbolService.class);
+        for (int i = 0; i < 3; i++) {
+            Assert.isTrue("a".equals(service.a()) && "b".equals(service.b()), "call by full name");
+        }
+        Channel channel = client.channel();
+        Assert.isNull(inEventLoop(() -> RpcSymbolTable.get(channel)), "no symbol table");
+    }
+
+    @NRpcService(value = "/symbol", timeout = 5000)
+    public interface SymbolService {
+        String a();
+
+        String b();
+    }
+
+    @NRpcService(value = "/symbol", timeout = 5000)
+    public interface ClientSymbolService {
+        String a();
+
+        String b();
+
+        String missing();
+    }
+
+    public static class SymbolServiceImpl implements SymbolService {
+        @Override
+        public String a() {
+            return "a";
+        }
+
+        @Override
+        public String b() {
+            return "b";
+        }
+    }
+}
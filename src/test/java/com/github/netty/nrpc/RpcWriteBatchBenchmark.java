@@ -0,0 +1,92 @@
+package com.github.netty.nrpc;
+
+import com.github.netty.annotation.NRpcParam;
+import com.github.netty.annotation.NRpcService;
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcServer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NRPC round trip with and without the batch write. (client requests and server responses)
+ * <p>
+ * writeBatch=false = writeAndFlush per packet
+ * writeBatch=true  = ChannelBatchWriter. one flush per event loop task
+ * latency1Thread    = one caller, the latency cost of the batch write. (us/op)
+ * throughput32Thread = many callers on one connection. (ops/ms)
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcWriteBatchBenchmark {
+    @Param({"false", "true"})
+    private boolean writeBatch;
+    private RpcServer server;
+    private RpcClient client;
+    private EchoService echoService;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RpcWriteBatchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        server = new RpcServer(port);
+        server.setEnableWriteBatch(writeBatch);
+        server.addInstance(new EchoServiceImpl());
+        server.run();
+        server.getBootstrapFuture().sync();
+
+        client = new RpcClient("127.0.0.1", port);
+        client.setEnableWriteBatch(writeBatch);
+        echoService = client.newInstance(EchoService.class);
+        echoService.echo("warmup");
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object latency1Thread() {
+        return echoService.echo("a");
+    }
+
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object throughput32Thread() {
+        return echoService.echo("a");
+    }
+
+    @NRpcService(value = "/benchmark/echo", timeout = 5000)
+    public interface EchoService {
+        String echo(@NRpcParam("value") String value);
+    }
+
+    @NRpcService(value = "/benchmark/echo")
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+    }
+}